@@ -31,19 +31,29 @@
  */
 
 package org.availlang.raa;
+import org.availlang.raa.api.APIRequest;
 import org.availlang.raa.api.AuthenticationContext;
+import org.availlang.raa.api.RequestPriority;
+import org.availlang.raa.client.AdaptiveConcurrencyLimiter;
 import org.availlang.raa.client.Client;
 import org.availlang.raa.exceptions.ApplicationException;
 import org.availlang.raa.exceptions.InitializationException;
 
 import javax.annotation.Nullable;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.StringJoiner;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor.AbortPolicy;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 
 /**
@@ -56,6 +66,31 @@ import java.util.function.BiConsumer;
  * potential runtime features such as logging.
  * </p>
  *
+ * <p>
+ * The queue of tasks waiting for a thread in each {@linkplain
+ * #scheduleTask(RequestPriority, Runnable) lane} is unbounded. Tasks are
+ * scheduled by the timer and by tasks already running, neither of which may
+ * be made to wait or to run the task itself, and a task refused would leave
+ * its {@link APIRequest} without an outcome. Most of them are bounded
+ * upstream instead:
+ * </p>
+ *
+ * <ul>
+ *     <li>requests waiting to be authenticated, by the capacity of the
+ *     {@link AuthenticationContext}'s waiting requests;</li>
+ *     <li>requests waiting for a slot, and then being sent, by the limits of
+ *     the {@link AdaptiveConcurrencyLimiter};</li>
+ *     <li>the workers of a segmented download, by its connection count.</li>
+ * </ul>
+ *
+ * <p>
+ * What remains unbounded is the sending of requests made while the account
+ * is authenticated, each of which is scheduled at once, and the retries and
+ * hedges scheduled by the timer. A producer that makes requests faster than
+ * they are sent grows the queue; {@link #queuedTasks(RequestPriority)}
+ * reports its length.
+ * </p>
+ *
  * @author Richard Arriaga &lt;rich@availlang.org&gt;
  */
 @SuppressWarnings("NullableProblems")
@@ -78,6 +113,7 @@ public class ApplicationRuntime
 	 *     <li>Abnormal exit: {@link #FAILED_CONNECTION}</li>
 	 *     <li>Abnormal exit: {@link #BAD_RESPONSE}</li>
 	 *     <li>Abnormal exit: {@link #BAD_STATE}</li>
+	 *     <li>Abnormal exit: {@link #DEADLINE_EXCEEDED}</li>
 	 * </ol>
 	 */
 	public enum ExitCode
@@ -128,7 +164,12 @@ public class ApplicationRuntime
 		 * The application attempted to perform an un-allowed action for the
 		 * current {@link ApplicationState}.
 		 */
-		BAD_STATE(10);
+		BAD_STATE(10),
+
+		/**
+		 * A request was not sent before its deadline.
+		 */
+		DEADLINE_EXCEEDED(11);
 
 		/**
 		 * The status code for {@link System#exit(int)}.
@@ -156,15 +197,16 @@ public class ApplicationRuntime
 	}
 
 	/**
-	 * A synchronization object for setting the state.
+	 * A synchronization object for changing the {@link Client} or the account
+	 * information. The {@link #state} itself is never guarded by it.
 	 */
 	public static final Object stateLock = new Object();
 
 	/**
 	 * The current {@link ApplicationState} of the running application.
 	 */
-	private static volatile ApplicationState state =
-		ApplicationState.APPLICATION_UNINITIALIZED;
+	private static final AtomicReference<ApplicationState> state =
+		new AtomicReference<>(ApplicationState.APPLICATION_UNINITIALIZED);
 
 	/**
 	 * Answer the current {@link ApplicationState} of the running application.
@@ -173,21 +215,41 @@ public class ApplicationRuntime
 	 */
 	public static ApplicationState state ()
 	{
-		return state;
+		return state.get();
 	}
 
 	/**
-	 * Set the {@link #state}.
+	 * Set the {@link #state}, whatever it currently is.
 	 *
 	 * @param state
 	 *        An {@link ApplicationState}.
 	 */
 	public static void setState (final ApplicationState state)
 	{
-		synchronized (stateLock)
-		{
-			ApplicationRuntime.state = state;
-		}
+		ApplicationRuntime.state.set(state);
+	}
+
+	/**
+	 * Move the {@link #state} to {@code next} if it is still {@code
+	 * expected}.
+	 *
+	 * @param expected
+	 *        The {@link ApplicationState} the application is expected to be
+	 *        in.
+	 * @param next
+	 *        The {@code ApplicationState} to move to; it must be an
+	 *        {@linkplain ApplicationState#canBecome(ApplicationState)
+	 *        acceptable} successor of {@code expected}.
+	 * @return {@code true} if the state was changed; {@code false} if the
+	 *         application was no longer in the {@code expected} state.
+	 */
+	public static boolean compareAndSetState (
+		final ApplicationState expected,
+		final ApplicationState next)
+	{
+		assert expected.canBecome(next)
+			: String.format("%s cannot become %s", expected, next);
+		return state.compareAndSet(expected, next);
 	}
 
 	/**
@@ -240,7 +302,7 @@ public class ApplicationRuntime
 			AuthenticationContext.soleInstance
 				.updateAccountInfo("", "");
 			AuthenticationContext.setAuthenticator(authenticator);
-			state = ApplicationState.ACCOUNT_UNINITIALIZED;
+			state.set(ApplicationState.ACCOUNT_UNINITIALIZED);
 		}
 	}
 
@@ -255,7 +317,7 @@ public class ApplicationRuntime
 		// AuthenticationContext, so best to clear it.
 		AuthenticationContext.soleInstance
 			.updateAccountInfo("", "");
-		state = ApplicationState.APPLICATION_UNINITIALIZED;
+		state.set(ApplicationState.APPLICATION_UNINITIALIZED);
 	}
 
 	/**
@@ -275,22 +337,538 @@ public class ApplicationRuntime
 	}
 
 	/**
-	 * The {@link ThreadPoolExecutor} used by this application.
+	 * An {@code ApplicationThread} is a {@link Thread} of the {@link
+	 * ThreadPoolExecutor} of a {@link Lane} or of the {@link #timer}.
 	 */
-	private static final ThreadPoolExecutor threadPoolExecutor =
-		new ThreadPoolExecutor(
-			Runtime.getRuntime().availableProcessors(),
-			Runtime.getRuntime().availableProcessors() << 2,
-			10L,
-			TimeUnit.SECONDS,
-			new LinkedBlockingQueue<>(),
-			runnable ->
+	private static final class ApplicationThread
+	extends Thread
+	{
+		/**
+		 * Construct an {@link ApplicationThread}.
+		 *
+		 * @param runnable
+		 *        The {@link Runnable} to run.
+		 */
+		ApplicationThread (final Runnable runnable)
+		{
+			super(runnable);
+			setDaemon(true);
+		}
+	}
+
+	/**
+	 * Is the current {@link Thread} one of the application's own? Such a
+	 * thread must never wait for work that only the application's threads
+	 * can do, lest they all end up waiting.
+	 *
+	 * @return {@code true} if it is; {@code false} otherwise.
+	 */
+	public static boolean isApplicationThread ()
+	{
+		return Thread.currentThread() instanceof ApplicationThread
+			|| virtualApplicationThread.get() != null;
+	}
+
+	/**
+	 * Marks the virtual threads that run {@linkplain
+	 * #scheduleTask(RequestPriority, Runnable) scheduled tasks}; virtual
+	 * threads cannot be {@link ApplicationThread}s.
+	 */
+	private static final ThreadLocal<Boolean> virtualApplicationThread =
+		new ThreadLocal<>();
+
+	/**
+	 * The {@link ThreadFactory} of the virtual threads that run the
+	 * {@linkplain #scheduleTask(RequestPriority, Runnable) scheduled tasks},
+	 * one per task, or {@code null} if the {@link ThreadPoolExecutor} of each
+	 * {@link Lane} runs them.
+	 */
+	private static volatile @Nullable ThreadFactory virtualThreadFactory;
+
+	/**
+	 * The number of tasks virtual threads run at once in each {@link Lane}
+	 * unless {@linkplain #setTargetConcurrency(RequestPriority, int)
+	 * configured otherwise}. A virtual thread blocked on I/O holds no platform
+	 * thread, so it is far greater than {@link #DEFAULT_TARGET_CONCURRENCY};
+	 * it only keeps the application from opening more connections than the
+	 * server or the host will tolerate.
+	 */
+	public static final int DEFAULT_VIRTUAL_CONCURRENCY = 10_000;
+
+	/**
+	 * A {@code ConcurrencyCap} is the {@link Semaphore} whose permits the
+	 * tasks run by virtual threads hold while they run. It is a subclass so
+	 * that {@link #setLimit(int)} can {@linkplain Semaphore#reducePermits(int)
+	 * reduce} the permits without waiting for them.
+	 */
+	private static final class ConcurrencyCap
+	extends Semaphore
+	{
+		/**
+		 * The serial version identifier.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The number of tasks that may run at once.
+		 */
+		private int limit;
+
+		/**
+		 * Change the number of tasks that may run at once. Tasks already
+		 * running are not interrupted if there are more of them than the new
+		 * limit.
+		 *
+		 * @param limit
+		 *        The positive number of tasks.
+		 */
+		synchronized void setLimit (final int limit)
+		{
+			if (limit > this.limit)
 			{
-				final Thread thread = new Thread(runnable);
-				thread.setDaemon(true);
-				return thread;
-			},
-			new AbortPolicy());
+				release(limit - this.limit);
+			}
+			else
+			{
+				reducePermits(this.limit - limit);
+			}
+			this.limit = limit;
+		}
+
+		/**
+		 * Answer the number of tasks that may run at once.
+		 *
+		 * @return A positive {@code int}.
+		 */
+		synchronized int limit ()
+		{
+			return limit;
+		}
+
+		/**
+		 * Construct a {@link ConcurrencyCap}.
+		 *
+		 * @param limit
+		 *        The positive number of tasks that may run at once.
+		 */
+		ConcurrencyCap (final int limit)
+		{
+			super(limit, true);
+			this.limit = limit;
+		}
+	}
+
+	/**
+	 * Run each {@linkplain #scheduleTask(RequestPriority, Runnable) scheduled
+	 * task} on a virtual thread of its own, or go back to running them on the
+	 * {@link ThreadPoolExecutor} of each {@link Lane}. Virtual threads need
+	 * Java 21 or later; with an earlier Java, the pools go on running the
+	 * tasks.
+	 *
+	 * @param use
+	 *        Whether to use virtual threads.
+	 * @return {@code true} if virtual threads now run the tasks; {@code
+	 *         false} if the {@code ThreadPoolExecutor}s do.
+	 */
+	public static boolean useVirtualThreads (final boolean use)
+	{
+		if (!use)
+		{
+			virtualThreadFactory = null;
+			return false;
+		}
+		if (virtualThreadFactory == null)
+		{
+			virtualThreadFactory = newVirtualThreadFactory();
+		}
+		return virtualThreadFactory != null;
+	}
+
+	/**
+	 * Answer a {@link ThreadFactory} of virtual threads. The application is
+	 * compiled for Java versions that predate them, so it is obtained
+	 * reflectively.
+	 *
+	 * @return A {@code ThreadFactory}, or {@code null} if this Java has no
+	 *         virtual threads.
+	 */
+	private static @Nullable ThreadFactory newVirtualThreadFactory ()
+	{
+		try
+		{
+			final Class<?> builderClass =
+				Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass
+				.getMethod("name", String.class, long.class)
+				.invoke(builder, "application-virtual-", 0L);
+			return (ThreadFactory)
+				builderClass.getMethod("factory").invoke(builder);
+		}
+		catch (final ReflectiveOperationException e)
+		{
+			// Either no virtual threads, or only as a disabled preview.
+			return null;
+		}
+	}
+
+	/**
+	 * The number of tasks each {@link Lane}'s {@link ThreadPoolExecutor} runs
+	 * at once unless {@linkplain #setTargetConcurrency(RequestPriority, int)
+	 * configured otherwise}. Most tasks spend their time blocked on the
+	 * network, so it is a multiple of the number of processors.
+	 */
+	public static final int DEFAULT_TARGET_CONCURRENCY =
+		Runtime.getRuntime().availableProcessors() << 2;
+
+	/**
+	 * A {@code Lane} runs the tasks {@linkplain
+	 * #scheduleTask(RequestPriority, Runnable) scheduled} for one {@link
+	 * RequestPriority}, with threads and a concurrency of its own, so that a
+	 * lane full of long downloads never keeps a listing from a thread.
+	 */
+	private static final class Lane
+	{
+		/**
+		 * The {@link ThreadPoolExecutor} that runs the lane's tasks unless
+		 * {@linkplain #useVirtualThreads(boolean) virtual threads} do.
+		 *
+		 * <p>
+		 * A {@code ThreadPoolExecutor} only starts threads beyond its core
+		 * pool size when its queue is full, which an unbounded queue never
+		 * is, so the core pool size is the target concurrency itself. A
+		 * thread is started for each task submitted until there are that
+		 * many, and any idle for ten seconds stop, so the pool grows with the
+		 * tasks blocked on I/O and shrinks back when they are done.
+		 * </p>
+		 */
+		private final ThreadPoolExecutor threadPoolExecutor =
+			new ThreadPoolExecutor(
+				DEFAULT_TARGET_CONCURRENCY,
+				DEFAULT_TARGET_CONCURRENCY,
+				10L,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				ApplicationThread::new,
+				new AbortPolicy());
+
+		/**
+		 * The {@link ConcurrencyCap} of the lane's tasks run by virtual
+		 * threads.
+		 */
+		private final ConcurrencyCap virtualConcurrency =
+			new ConcurrencyCap(DEFAULT_VIRTUAL_CONCURRENCY);
+
+		/**
+		 * The number of the lane's virtual threads that have yet to finish.
+		 */
+		private final AtomicInteger virtualThreads = new AtomicInteger();
+
+		/**
+		 * The number of the lane's tasks virtual threads have completed.
+		 */
+		private final LongAdder virtualCompleted = new LongAdder();
+
+		/**
+		 * Run the provided {@link Runnable} with the {@link
+		 * #threadPoolExecutor}, or start a virtual thread to run it if they
+		 * are in use.
+		 *
+		 * @param r
+		 *        The {@code Runnable} to execute.
+		 */
+		void execute (final Runnable r)
+		{
+			final ThreadFactory factory = virtualThreadFactory;
+			if (factory == null)
+			{
+				threadPoolExecutor.execute(r);
+				return;
+			}
+			virtualThreads.incrementAndGet();
+			factory.newThread(() ->
+			{
+				virtualApplicationThread.set(Boolean.TRUE);
+				try
+				{
+					// A virtual thread waiting for a permit holds no platform
+					// thread.
+					virtualConcurrency.acquireUninterruptibly();
+					try
+					{
+						r.run();
+					}
+					finally
+					{
+						virtualConcurrency.release();
+						virtualCompleted.increment();
+					}
+				}
+				finally
+				{
+					virtualThreads.decrementAndGet();
+				}
+			}).start();
+		}
+
+		/**
+		 * Set the number of the lane's tasks run at once.
+		 *
+		 * @param concurrency
+		 *        The positive number of tasks.
+		 */
+		void setTargetConcurrency (final int concurrency)
+		{
+			if (virtualThreadFactory != null)
+			{
+				virtualConcurrency.setLimit(concurrency);
+				return;
+			}
+			synchronized (threadPoolExecutor)
+			{
+				// The core pool size may never exceed the maximum, even
+				// briefly.
+				if (concurrency > threadPoolExecutor.getMaximumPoolSize())
+				{
+					threadPoolExecutor.setMaximumPoolSize(concurrency);
+					threadPoolExecutor.setCorePoolSize(concurrency);
+				}
+				else
+				{
+					threadPoolExecutor.setCorePoolSize(concurrency);
+					threadPoolExecutor.setMaximumPoolSize(concurrency);
+				}
+			}
+		}
+
+		/**
+		 * Answer the number of the lane's tasks run at once when there is
+		 * more than enough work.
+		 *
+		 * @return A positive {@code int}.
+		 */
+		int parallelism ()
+		{
+			return virtualThreadFactory == null
+				? threadPoolExecutor.getCorePoolSize()
+				: virtualConcurrency.limit();
+		}
+
+		/**
+		 * Answer the number of the lane's tasks running.
+		 *
+		 * @return An {@code int}.
+		 */
+		int activeTasks ()
+		{
+			return virtualThreadFactory == null
+				? threadPoolExecutor.getActiveCount()
+				: Math.max(
+					0,
+					virtualConcurrency.limit()
+						- virtualConcurrency.availablePermits());
+		}
+
+		/**
+		 * Answer the number of the lane's tasks waiting for a thread, or for
+		 * a virtual thread to be allowed to run them.
+		 *
+		 * @return An {@code int}.
+		 */
+		int queuedTasks ()
+		{
+			return threadPoolExecutor.getQueue().size()
+				+ virtualConcurrency.getQueueLength();
+		}
+
+		/**
+		 * Answer the approximate number of the lane's tasks completed.
+		 *
+		 * @return A {@code long}.
+		 */
+		long completedTasks ()
+		{
+			return threadPoolExecutor.getCompletedTaskCount()
+				+ virtualCompleted.sum();
+		}
+
+		/**
+		 * Answer the number of threads the {@link #threadPoolExecutor}
+		 * currently has, or the number of virtual threads yet to finish.
+		 *
+		 * @return An {@code int}.
+		 */
+		int poolSize ()
+		{
+			return virtualThreadFactory == null
+				? threadPoolExecutor.getPoolSize()
+				: virtualThreads.get();
+		}
+
+		/**
+		 * Construct a {@link Lane}.
+		 */
+		Lane ()
+		{
+			threadPoolExecutor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	/**
+	 * The {@link Lane} of each {@link RequestPriority}.
+	 */
+	private static final Map<RequestPriority, Lane> lanes =
+		new EnumMap<>(RequestPriority.class);
+
+	static
+	{
+		for (final RequestPriority priority : RequestPriority.values())
+		{
+			lanes.put(priority, new Lane());
+		}
+	}
+
+	/**
+	 * Set the number of tasks of the {@link RequestPriority#INTERACTIVE} lane
+	 * run at once; see {@link #setTargetConcurrency(RequestPriority, int)}.
+	 *
+	 * @param concurrency
+	 *        The positive number of tasks.
+	 */
+	public static void setTargetConcurrency (final int concurrency)
+	{
+		setTargetConcurrency(RequestPriority.INTERACTIVE, concurrency);
+	}
+
+	/**
+	 * Set the number of tasks of a lane run at once by its {@link
+	 * ThreadPoolExecutor} or, if they {@linkplain #useVirtualThreads(boolean)
+	 * are in use}, by virtual threads.
+	 *
+	 * @param lane
+	 *        The {@link RequestPriority} of the lane.
+	 * @param concurrency
+	 *        The positive number of tasks.
+	 */
+	public static void setTargetConcurrency (
+		final RequestPriority lane,
+		final int concurrency)
+	{
+		assert concurrency > 0;
+		lanes.get(lane).setTargetConcurrency(concurrency);
+	}
+
+	/**
+	 * Answer the number of tasks of the {@link RequestPriority#INTERACTIVE}
+	 * lane run at once when there is more than enough work; see {@link
+	 * #setTargetConcurrency(int)}.
+	 *
+	 * @return A positive {@code int}.
+	 */
+	public static int parallelism ()
+	{
+		return parallelism(RequestPriority.INTERACTIVE);
+	}
+
+	/**
+	 * Answer the number of tasks of a lane run at once when there is more
+	 * than enough work; see {@link #setTargetConcurrency(RequestPriority,
+	 * int)}.
+	 *
+	 * @param lane
+	 *        The {@link RequestPriority} of the lane.
+	 * @return A positive {@code int}.
+	 */
+	public static int parallelism (final RequestPriority lane)
+	{
+		return lanes.get(lane).parallelism();
+	}
+
+	/**
+	 * Answer the number of tasks of a lane running.
+	 *
+	 * @param lane
+	 *        The {@link RequestPriority} of the lane.
+	 * @return An {@code int}.
+	 */
+	public static int activeTasks (final RequestPriority lane)
+	{
+		return lanes.get(lane).activeTasks();
+	}
+
+	/**
+	 * Answer the number of tasks of a lane waiting for a thread of its
+	 * {@link ThreadPoolExecutor}, or for a virtual thread to be allowed to
+	 * run them.
+	 *
+	 * @param lane
+	 *        The {@link RequestPriority} of the lane.
+	 * @return An {@code int}.
+	 */
+	public static int queuedTasks (final RequestPriority lane)
+	{
+		return lanes.get(lane).queuedTasks();
+	}
+
+	/**
+	 * Answer the approximate number of tasks of a lane completed.
+	 *
+	 * @param lane
+	 *        The {@link RequestPriority} of the lane.
+	 * @return A {@code long}.
+	 */
+	public static long completedTasks (final RequestPriority lane)
+	{
+		return lanes.get(lane).completedTasks();
+	}
+
+	/**
+	 * Answer the number of threads the {@link ThreadPoolExecutor} of a lane
+	 * currently has, or the number of its virtual threads yet to finish.
+	 *
+	 * @param lane
+	 *        The {@link RequestPriority} of the lane.
+	 * @return An {@code int}.
+	 */
+	public static int poolSize (final RequestPriority lane)
+	{
+		return lanes.get(lane).poolSize();
+	}
+
+	/**
+	 * Answer a description of the gauges of the tasks of a lane.
+	 *
+	 * @param lane
+	 *        The {@link RequestPriority} of the lane.
+	 * @return A String.
+	 */
+	public static String executorGauges (final RequestPriority lane)
+	{
+		return String.format(
+			"%s: %d/%d %sthreads, %d active, %d queued, %d completed",
+			lane,
+			poolSize(lane),
+			parallelism(lane),
+			virtualThreadFactory == null ? "" : "virtual ",
+			activeTasks(lane),
+			queuedTasks(lane),
+			completedTasks(lane));
+	}
+
+	/**
+	 * Answer a description of the gauges of the tasks of every lane.
+	 *
+	 * @return A String.
+	 */
+	public static String executorGauges ()
+	{
+		final StringJoiner joiner = new StringJoiner("; ");
+		for (final RequestPriority lane : lanes.keySet())
+		{
+			joiner.add(executorGauges(lane));
+		}
+		return joiner.toString();
+	}
 
 	/**
 	 * The {@link ScheduledThreadPoolExecutor} used by this application to run
@@ -299,12 +877,7 @@ public class ApplicationRuntime
 	private static final ScheduledThreadPoolExecutor timer =
 		new ScheduledThreadPoolExecutor(
 			1,
-			runnable ->
-			{
-				final Thread thread = new Thread(runnable);
-				thread.setDaemon(true);
-				return thread;
-			},
+			ApplicationThread::new,
 			new AbortPolicy());
 
 	/**
@@ -325,15 +898,37 @@ public class ApplicationRuntime
 	}
 
 	/**
-	 * Schedule the provided {@link Runnable} with the {@link
-	 * #threadPoolExecutor}.
+	 * Schedule the provided {@link Runnable} in the {@link
+	 * RequestPriority#INTERACTIVE} lane, which also runs the application's own
+	 * work, such as authenticating; see {@link
+	 * #scheduleTask(RequestPriority, Runnable)}.
 	 *
 	 * @param r
 	 *        The {@link Runnable} to execute.
 	 */
 	public static void scheduleTask (final Runnable r)
 	{
-		threadPoolExecutor.execute(r);
+		scheduleTask(RequestPriority.INTERACTIVE, r);
+	}
+
+	/**
+	 * Schedule the provided {@link Runnable} in the lane of the provided
+	 * {@link RequestPriority}, with that lane's {@link ThreadPoolExecutor},
+	 * or start a virtual thread to run it if they {@linkplain
+	 * #useVirtualThreads(boolean) are in use}. The tasks of one lane never
+	 * wait for a thread, or a permit, held by those of another.
+	 *
+	 * @param lane
+	 *        The {@code RequestPriority} of the lane, which should be that of
+	 *        the {@link APIRequest} the task sends or completes.
+	 * @param r
+	 *        The {@link Runnable} to execute.
+	 */
+	public static void scheduleTask (
+		final RequestPriority lane,
+		final Runnable r)
+	{
+		lanes.get(lane).execute(r);
 	}
 
 	/**
@@ -38,11 +38,13 @@ import org.availlang.raa.client.Client;
  * application.
  *
  * <p>
- * <em>NOTE:</em> This could be extended to make it more like a state machine
- * that knows its next acceptable states. Each state change location would need
- * to be evaluated to see what valid state transitions there might be. The
- * enum then could be extended to answer the acceptable state transitions
- * and have them be checked at each transition. I obviously didn't do this...
+ * The authentication cycle is a small state machine: {@link
+ * #canBecome(ApplicationState)} answers its acceptable transitions, and
+ * {@link ApplicationRuntime#compareAndSetState(ApplicationState,
+ * ApplicationState)} checks them as it makes them. Changes to the account or
+ * the {@link Client} are imposed with {@link
+ * ApplicationRuntime#setState(ApplicationState)} regardless of the current
+ * state.
  * </p>
  *
  * @author Richard Arriaga &lt;rich@availlang.org&gt;
@@ -67,5 +69,29 @@ public enum ApplicationState
 	/**
 	 * Has no {@link Client}, o account info,  and is not authenticated.
 	 */
-	APPLICATION_UNINITIALIZED
+	APPLICATION_UNINITIALIZED;
+
+	/**
+	 * Answer whether the authentication cycle may move the application from
+	 * this state to the provided state.
+	 *
+	 * @param next
+	 *        The proposed next {@link ApplicationState}.
+	 * @return {@code true} if the transition is acceptable; {@code false}
+	 *         otherwise.
+	 */
+	public boolean canBecome (final ApplicationState next)
+	{
+		switch (this)
+		{
+			case ACCOUNT_INITIALIZED:
+			case AUTHENTICATED:
+				return next == AUTHENTICATING;
+			case AUTHENTICATING:
+				// Back to ACCOUNT_INITIALIZED if the authentication fails.
+				return next == AUTHENTICATED || next == ACCOUNT_INITIALIZED;
+			default:
+				return false;
+		}
+	}
 }
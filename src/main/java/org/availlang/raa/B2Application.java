@@ -34,12 +34,20 @@ package org.availlang.raa;
 
 import org.availlang.raa.ApplicationRuntime.ExitCode;
 import org.availlang.raa.api.AuthenticationContext;
+import org.availlang.raa.api.RequestPriority;
 import org.availlang.raa.api.b2api.B2AuthorizeAccountRequest;
 import org.availlang.raa.api.b2api.B2BucketListFileNamesRequest;
 import org.availlang.raa.api.b2api.B2BucketListFileNamesResponse;
 import org.availlang.raa.api.b2api.B2DownloadFileByIdRequest;
 import org.availlang.raa.api.b2api.B2ListBucketsRequest;
+import org.availlang.raa.client.AdaptiveConcurrencyLimiter;
+import org.availlang.raa.client.Client;
+import org.availlang.raa.client.CoalescingClient;
+import org.availlang.raa.client.HedgingClient;
+import org.availlang.raa.client.RetryingClient;
+import org.availlang.raa.client.http.AsyncHTTPClient;
 import org.availlang.raa.client.http.HTTPClient;
+import org.availlang.raa.client.http.HTTPConnectionPool;
 import org.availlang.raa.exceptions.ApplicationException;
 import org.availlang.raa.utilities.ConsoleUtility;
 import org.availlang.raa.utilities.PropertiesManager;
@@ -446,6 +454,42 @@ public class B2Application
 		PropertiesManager.updateAccountInfo(accountId, appKey);
 	}
 
+	/**
+	 * Answer a new instance of the {@link Client} selected by {@link
+	 * PropertiesManager#clientType()}, behind an {@link
+	 * AdaptiveConcurrencyLimiter} so that the number of requests in flight
+	 * follows what the server can sustain, a {@link HedgingClient} so that
+	 * one slow listing does not stall the whole chain of pages, and a {@link
+	 * RetryingClient} so that a transient failure does not end the
+	 * application, all behind a {@link CoalescingClient} so that identical
+	 * requests made at the same time share one call.
+	 *
+	 * @return A {@code Client}.
+	 */
+	private static Client newClient ()
+	{
+		final String clientType = PropertiesManager.clientType();
+		final Client client;
+		switch (clientType)
+		{
+			case PropertiesManager.ASYNC_HTTP_CLIENT:
+				client = new AsyncHTTPClient();
+				break;
+			case PropertiesManager.HTTP_CLIENT:
+				client = new HTTPClient();
+				break;
+			default:
+				System.err.println(
+					"Unknown client type \"" + clientType + "\"; using "
+						+ PropertiesManager.HTTP_CLIENT);
+				client = new HTTPClient();
+				break;
+		}
+		return new CoalescingClient(
+			new RetryingClient(
+				new HedgingClient(new AdaptiveConcurrencyLimiter(client))));
+	}
+
 	/**
 	 * The main entry point for this application.
 	 *
@@ -454,15 +498,28 @@ public class B2Application
 	 * ExitCode}.
 	 * </p>
 	 *
+	 * <p>
+	 * The JDK sizes its keep-alive cache from the {@code http.maxConnections}
+	 * system property the first time a connection is made, so that property
+	 * is set here, once for the whole process, to let the cache hold every
+	 * connection an {@link HTTPConnectionPool} releases rather than the JDK
+	 * default of five per destination.
+	 * </p>
+	 *
 	 * @param args
 	 *        Expects a single String argument that is the location of the file
 	 *        to read and perform the aggregation on.
 	 */
 	public static void main (final String[] args)
 	{
+		System.setProperty("http.keepAlive", "true");
+		System.setProperty(
+			"http.maxConnections",
+			Integer.toString(
+				HTTPConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST));
 		final ConsoleUtility consoleUtility = ConsoleUtility.newUtility();
 		ApplicationRuntime.initialize(
-			new HTTPClient(),
+			newClient(),
 			B2AuthorizeAccountRequest::authenticate);
 		if (!PropertiesManager.propertiesFileExists())
 		{
@@ -470,6 +527,20 @@ public class B2Application
 			setupAccount(consoleUtility);
 		}
 		PropertiesManager.retrieveAccountInfo();
+		AuthenticationContext.setQueueCapacity(
+			PropertiesManager.queueCapacity());
+		if (PropertiesManager.virtualThreads()
+			&& !ApplicationRuntime.useVirtualThreads(true))
+		{
+			System.err.println(
+				"Virtual threads need Java 21 or later; using a pool of "
+					+ PropertiesManager.PLATFORM_THREADS + " threads");
+		}
+		ApplicationRuntime.setTargetConcurrency(
+			PropertiesManager.targetConcurrency());
+		ApplicationRuntime.setTargetConcurrency(
+			RequestPriority.BULK,
+			PropertiesManager.bulkConcurrency());
 		selectTopLevelOption(consoleUtility);
 		ApplicationRuntime.block();
 	}
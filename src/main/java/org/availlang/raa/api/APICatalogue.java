@@ -54,6 +54,9 @@ public enum APICatalogue
 	{
 		@Override
 		public HTTPProtocolMethod supportedHTTPMethod () { return GET; }
+
+		@Override
+		public boolean isCoalescable () { return true; }
 	},
 
 	/**
@@ -63,6 +66,12 @@ public enum APICatalogue
 	{
 		@Override
 		public HTTPProtocolMethod supportedHTTPMethod () { return POST; }
+
+		@Override
+		public boolean isHedgeable () { return true; }
+
+		@Override
+		public boolean isCoalescable () { return true; }
 	},
 
 	/**
@@ -72,6 +81,12 @@ public enum APICatalogue
 	{
 		@Override
 		public HTTPProtocolMethod supportedHTTPMethod () { return POST; }
+
+		@Override
+		public boolean isHedgeable () { return true; }
+
+		@Override
+		public boolean isCoalescable () { return true; }
 	},
 
 	/**
@@ -81,6 +96,9 @@ public enum APICatalogue
 	{
 		@Override
 		public HTTPProtocolMethod supportedHTTPMethod () { return POST; }
+
+		@Override
+		public RequestPriority priority () { return RequestPriority.BULK; }
 	};
 
 	/**
@@ -90,4 +108,48 @@ public enum APICatalogue
 	 * @return An {@code HTTPProtocolMethod}.
 	 */
 	public abstract HTTPProtocolMethod supportedHTTPMethod ();
+
+	/**
+	 * Answer whether a slow {@link APIRequest} of this kind may be hedged by
+	 * sending a duplicate and taking whichever response arrives first. Only
+	 * operations that are idempotent, and whose responses are small enough
+	 * that fetching one twice costs little, are hedgeable.
+	 *
+	 * @return {@code true} if the request may be hedged; {@code false}
+	 *         otherwise.
+	 */
+	public boolean isHedgeable ()
+	{
+		// Default to false as a duplicate of anything that changes state or
+		// transfers a lot of data would do more harm than good.
+		return false;
+	}
+
+	/**
+	 * Answer whether concurrent, identical {@link APIRequest}s of this kind
+	 * may share a single call to the server, each receiving the same
+	 * response. Only operations that read state, and whose responses are
+	 * parsed rather than written to disk, are coalescable.
+	 *
+	 * @return {@code true} if identical requests may be coalesced; {@code
+	 *         false} otherwise.
+	 */
+	public boolean isCoalescable ()
+	{
+		// Default to false as sharing the outcome of anything that changes
+		// state would hide all but one of the changes.
+		return false;
+	}
+
+	/**
+	 * Answer the {@link RequestPriority} that {@link APIRequest}s of this kind
+	 * wait with unless {@linkplain APIRequest#setPriority(RequestPriority)
+	 * given another}.
+	 *
+	 * @return A {@code RequestPriority}.
+	 */
+	public RequestPriority priority ()
+	{
+		return RequestPriority.INTERACTIVE;
+	}
 }
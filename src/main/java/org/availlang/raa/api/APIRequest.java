@@ -33,13 +33,22 @@
 package org.availlang.raa.api;
 import com.avail.utility.json.JSONFriendly;
 import com.avail.utility.json.JSONObject;
+import com.avail.utility.json.JSONWriter;
 import org.availlang.raa.ApplicationRuntime.ExitCode;
 import org.availlang.raa.ApplicationState;
 import org.availlang.raa.B2File;
 import org.availlang.raa.exceptions.ApplicationException;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * A {@code APIRequest} is a Backblaze API that is a member of a specific {@link
@@ -65,13 +74,107 @@ implements JSONFriendly
 
 	/**
 	 * Answer the {@link Consumer} that accepts an {@link ApplicationException}
-	 * to call in the event of a managed failure.
+	 * to call in the event of a managed failure. The failure passes through
+	 * the installed {@link RequestInterceptor}s first.
 	 *
 	 * @return A {@code Consumer}.
 	 */
 	public Consumer<ApplicationException> failureContinuation ()
 	{
-		return failureContinuation;
+		return exception ->
+		{
+			Consumer<ApplicationException> next = failureContinuation;
+			for (final RequestInterceptor interceptor : interceptors())
+			{
+				final Consumer<ApplicationException> outer = next;
+				next = e -> interceptor.failure(e, outer);
+			}
+			next.accept(exception);
+		};
+	}
+
+	/**
+	 * The {@link RequestInterceptor}s installed on this {@link APIRequest},
+	 * in the order they were installed, keyed by the object that installed
+	 * them.
+	 */
+	private final Map<Object, RequestInterceptor> interceptors =
+		new LinkedHashMap<>();
+
+	/**
+	 * Answer the {@link RequestInterceptor}s installed on this {@link
+	 * APIRequest}, in the order they were installed.
+	 *
+	 * @return A {@link List}.
+	 */
+	private List<RequestInterceptor> interceptors ()
+	{
+		synchronized (interceptors)
+		{
+			return interceptors.isEmpty()
+				? Collections.emptyList()
+				: new ArrayList<>(interceptors.values());
+		}
+	}
+
+	/**
+	 * Install a {@link RequestInterceptor} on this {@link APIRequest} unless
+	 * one is already installed under the same key. The interceptor sees the
+	 * outcome of the request before any installed earlier, and before the
+	 * request's own continuations.
+	 *
+	 * @param key
+	 *        The object that identifies the interceptor, usually the {@link
+	 *        org.availlang.raa.client.Client Client} that installs it.
+	 * @param interceptor
+	 *        The {@code RequestInterceptor} to install.
+	 * @return {@code true} if the interceptor was installed; {@code false} if
+	 *         one was already installed under the key.
+	 */
+	public boolean addInterceptor (
+		final Object key,
+		final RequestInterceptor interceptor)
+	{
+		synchronized (interceptors)
+		{
+			return interceptors.putIfAbsent(key, interceptor) == null;
+		}
+	}
+
+	/**
+	 * Answer the {@link RequestInterceptor} installed on this {@link
+	 * APIRequest} under the provided key, first installing the one supplied
+	 * if there is none.
+	 *
+	 * @param key
+	 *        The object that identifies the interceptor.
+	 * @param supplier
+	 *        The {@link Supplier} of the {@code RequestInterceptor} to install
+	 *        if there is none.
+	 * @return The installed {@code RequestInterceptor}.
+	 */
+	public RequestInterceptor interceptor (
+		final Object key,
+		final Supplier<? extends RequestInterceptor> supplier)
+	{
+		synchronized (interceptors)
+		{
+			return interceptors.computeIfAbsent(key, k -> supplier.get());
+		}
+	}
+
+	/**
+	 * Remove the {@link RequestInterceptor} installed under the provided key.
+	 *
+	 * @param key
+	 *        The object that identifies the interceptor.
+	 */
+	public void removeInterceptor (final Object key)
+	{
+		synchronized (interceptors)
+		{
+			interceptors.remove(key);
+		}
 	}
 
 	/**
@@ -198,6 +301,34 @@ implements JSONFriendly
 		return authorizationToken;
 	}
 
+	/**
+	 * The identifier of the account this {@link APIRequest} is sent for, set
+	 * by the {@link AuthenticationContext} that sends it.
+	 */
+	private String accountId = "";
+
+	/**
+	 * Set the {@link #accountId}.
+	 *
+	 * @param accountId
+	 *        The String to set.
+	 */
+	public void setAccountId (final String accountId)
+	{
+		this.accountId = accountId;
+	}
+
+	/**
+	 * Answer the identifier of the account this {@link APIRequest} is sent
+	 * for.
+	 *
+	 * @return A String.
+	 */
+	public String accountId ()
+	{
+		return accountId;
+	}
+
 	/**
 	 * Does this {@link APIRequest} download files?
 	 *
@@ -223,6 +354,159 @@ implements JSONFriendly
 		return true;
 	}
 
+	/**
+	 * Answer a key that, together with the {@link #catalogue()}, fully
+	 * determines the body {@linkplain #writeTo(JSONWriter) written} for this
+	 * {@link APIRequest}. A client may cache the encoded body under the key
+	 * and send the cached bytes for any later request with an equal key.
+	 *
+	 * @return A String, or {@code null} if the body must be encoded for
+	 *         every request.
+	 */
+	public @Nullable String bodyCacheKey ()
+	{
+		// Default to null as most request bodies differ from request to
+		// request
+		return null;
+	}
+
+	/**
+	 * The {@link RequestPriority} this {@link APIRequest} waits with, or
+	 * {@code null} if it waits with that of its {@link #catalogue()}.
+	 */
+	private volatile @Nullable RequestPriority priority;
+
+	/**
+	 * Set the {@link RequestPriority} this {@link APIRequest} waits with to be
+	 * sent, in place of that of its {@link #catalogue()}.
+	 *
+	 * @param priority
+	 *        The {@code RequestPriority}.
+	 */
+	public void setPriority (final RequestPriority priority)
+	{
+		this.priority = priority;
+	}
+
+	/**
+	 * Answer the {@link RequestPriority} this {@link APIRequest} waits with to
+	 * be sent.
+	 *
+	 * @return A {@code RequestPriority}.
+	 */
+	public RequestPriority priority ()
+	{
+		final RequestPriority set = priority;
+		return set != null ? set : catalogue().priority();
+	}
+
+	/**
+	 * The {@link System#nanoTime()} after which this {@link APIRequest} is no
+	 * longer worth sending, or {@code 0} if it has no deadline.
+	 */
+	private volatile long deadline;
+
+	/**
+	 * Give this {@link APIRequest} a deadline: if it has not been sent within
+	 * the provided time from now, it fails rather than being sent late.
+	 *
+	 * @param timeoutMillis
+	 *        The time in milliseconds from now until the deadline.
+	 */
+	public void setTimeout (final long timeoutMillis)
+	{
+		// Never 0, which means no deadline.
+		deadline = (System.nanoTime() + timeoutMillis * 1_000_000L) | 1;
+	}
+
+	/**
+	 * Has this {@link APIRequest} passed its {@linkplain #setTimeout(long)
+	 * deadline}?
+	 *
+	 * @return {@code true} if it has; {@code false} if it has not, or has no
+	 *         deadline.
+	 */
+	public boolean hasExpired ()
+	{
+		final long d = deadline;
+		return d != 0 && System.nanoTime() - d > 0;
+	}
+
+	/**
+	 * The {@link Runnable}s that abort the attempts to send this {@link
+	 * APIRequest} that are in flight.
+	 */
+	private final Set<Runnable> cancellers = new LinkedHashSet<>();
+
+	/**
+	 * Register a {@link Runnable} that aborts an attempt to send this {@link
+	 * APIRequest}, such as by closing its connection. An aborted attempt must
+	 * still report its failure.
+	 *
+	 * @param canceller
+	 *        The {@code Runnable}.
+	 */
+	public void addCanceller (final Runnable canceller)
+	{
+		synchronized (cancellers)
+		{
+			cancellers.add(canceller);
+		}
+	}
+
+	/**
+	 * Unregister a {@link Runnable} registered by {@link
+	 * #addCanceller(Runnable)}, as its attempt is about to report its outcome.
+	 *
+	 * @param canceller
+	 *        The {@code Runnable}.
+	 */
+	public void removeCanceller (final Runnable canceller)
+	{
+		synchronized (cancellers)
+		{
+			cancellers.remove(canceller);
+		}
+	}
+
+	/**
+	 * The number of times {@link #cancelAttempts()} has been called.
+	 */
+	private int cancellations;
+
+	/**
+	 * Abort every attempt to send this {@link APIRequest} that is still in
+	 * flight, as the outcome of an attempt that has already completed makes
+	 * them redundant.
+	 */
+	public void cancelAttempts ()
+	{
+		final List<Runnable> cancelled;
+		synchronized (cancellers)
+		{
+			cancellations++;
+			cancelled = new ArrayList<>(cancellers);
+			cancellers.clear();
+		}
+		cancelled.forEach(Runnable::run);
+	}
+
+	/**
+	 * Answer the number of times the attempts to send this {@link APIRequest}
+	 * have been {@linkplain #cancelAttempts() cancelled}. An attempt still in
+	 * flight when this number changes was cancelled, and its outcome only
+	 * reflects that.
+	 *
+	 * @return An {@code int}.
+	 */
+	public int cancellations ()
+	{
+		synchronized (cancellers)
+		{
+			return cancellations;
+		}
+	}
+
 	/**
 	 * Answer the {@link B2File} to download.
 	 */
@@ -275,14 +559,24 @@ implements JSONFriendly
 
 	/**
 	 * A {@link Consumer} that accepts a {@link JSONObject} that is used to
-	 * build the {@link Response}.
+	 * build the {@link Response}. The content passes through the installed
+	 * {@link RequestInterceptor}s first.
 	 *
 	 * @return A {@code Consumer}.
 	 */
 	public final Consumer<JSONObject> contentConsumer ()
 	{
 		return jsonObject ->
-			responseConsumer.accept(createResponse(jsonObject));
+		{
+			Consumer<JSONObject> next = content ->
+				responseConsumer.accept(createResponse(content));
+			for (final RequestInterceptor interceptor : interceptors())
+			{
+				final Consumer<JSONObject> outer = next;
+				next = content -> interceptor.content(content, outer);
+			}
+			next.accept(jsonObject);
+		};
 	}
 
 	@Override
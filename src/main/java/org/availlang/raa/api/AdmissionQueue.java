@@ -0,0 +1,358 @@
+/*
+ * AdmissionQueue.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.api;
+import org.availlang.raa.exceptions.DeadlineException;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@code AdmissionQueue} holds the {@link APIRequest}s waiting to be sent,
+ * up to a capacity, ordered by {@link RequestPriority} and then by arrival.
+ *
+ * <p>
+ * A producer that finds the queue full can either wait for space with {@link
+ * #put(APIRequest)}, or learn of it from {@link #offer(APIRequest)} and try
+ * again later. Neither takes a lock unless the queue is full. A request that
+ * has passed its {@linkplain APIRequest#setTimeout(long) deadline} by the
+ * time it reaches the head of the queue fails with a {@link
+ * DeadlineException} instead of being answered by {@link #poll()}.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+final class AdmissionQueue
+{
+	/**
+	 * The waiting {@link APIRequest}s of each {@link RequestPriority}.
+	 */
+	private final Map<RequestPriority, Queue<APIRequest<?>>> queues =
+		new EnumMap<>(RequestPriority.class);
+
+	/**
+	 * The number of {@link APIRequest}s admitted and not yet polled.
+	 */
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * The number of {@link APIRequest}s that may wait at once.
+	 */
+	private volatile int capacity;
+
+	/**
+	 * A synchronization object that producers {@linkplain #put(APIRequest)
+	 * waiting} for space wait on.
+	 */
+	private final Object spaceAvailable = new Object();
+
+	/**
+	 * The number of producers waiting for space.
+	 */
+	private volatile int blocked;
+
+	/**
+	 * Answer the number of {@link APIRequest}s waiting.
+	 *
+	 * @return An {@code int}.
+	 */
+	int size ()
+	{
+		return size.get();
+	}
+
+	/**
+	 * Answer the number of {@link APIRequest}s that may wait at once.
+	 *
+	 * @return A positive {@code int}.
+	 */
+	int capacity ()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Set the number of {@link APIRequest}s that may wait at once. Requests
+	 * already waiting are kept even if there are more of them than the new
+	 * capacity.
+	 *
+	 * @param capacity
+	 *        The positive capacity.
+	 */
+	void setCapacity (final int capacity)
+	{
+		assert capacity > 0;
+		this.capacity = capacity;
+		synchronized (spaceAvailable)
+		{
+			spaceAvailable.notifyAll();
+		}
+	}
+
+	/**
+	 * Reserve space for an {@link APIRequest}, if there is any.
+	 *
+	 * @return {@code true} if space was reserved; {@code false} if the queue
+	 *         is full.
+	 */
+	private boolean reserve ()
+	{
+		int current = size.get();
+		while (current < capacity)
+		{
+			if (size.compareAndSet(current, current + 1))
+			{
+				return true;
+			}
+			current = size.get();
+		}
+		return false;
+	}
+
+	/**
+	 * Enqueue an {@link APIRequest} for which space has been reserved.
+	 *
+	 * @param request
+	 *        The {@code APIRequest}.
+	 */
+	private void enqueue (final APIRequest<?> request)
+	{
+		queues.get(request.priority()).add(request);
+	}
+
+	/**
+	 * Admit the provided {@link APIRequest} if there is space for it.
+	 *
+	 * @param request
+	 *        The {@code APIRequest}.
+	 * @return {@code true} if it was admitted; {@code false} if the queue is
+	 *         full.
+	 */
+	boolean offer (final APIRequest<?> request)
+	{
+		if (!reserve())
+		{
+			return false;
+		}
+		enqueue(request);
+		return true;
+	}
+
+	/**
+	 * Admit the provided {@link APIRequest}, waiting for space if necessary.
+	 *
+	 * @param request
+	 *        The {@code APIRequest}.
+	 * @throws InterruptedException
+	 *         If the thread was interrupted while waiting; the request was
+	 *         not admitted.
+	 */
+	void put (final APIRequest<?> request) throws InterruptedException
+	{
+		if (!reserve())
+		{
+			synchronized (spaceAvailable)
+			{
+				// Announce the wait before checking again, so that a poll
+				// that makes space after the check is sure to notify.
+				blocked++;
+				try
+				{
+					while (!reserve())
+					{
+						spaceAvailable.wait();
+					}
+				}
+				finally
+				{
+					blocked--;
+				}
+			}
+		}
+		enqueue(request);
+	}
+
+	/**
+	 * Admit the provided {@link APIRequest} even if the queue is full. This is
+	 * for requests that cannot be refused, such as those already admitted
+	 * once, or that are made by threads that must not wait.
+	 *
+	 * @param request
+	 *        The {@code APIRequest}.
+	 */
+	void add (final APIRequest<?> request)
+	{
+		size.incrementAndGet();
+		enqueue(request);
+	}
+
+	/**
+	 * Remove and answer the waiting {@link APIRequest} of the highest
+	 * {@link RequestPriority} that arrived first, failing any expired
+	 * requests found on the way.
+	 *
+	 * @return An {@code APIRequest}, or {@code null} if none is waiting.
+	 */
+	@Nullable APIRequest<?> poll ()
+	{
+		for (final RequestPriority priority : queues.keySet())
+		{
+			final APIRequest<?> request = poll(priority);
+			if (request != null)
+			{
+				return request;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remove and answer the waiting {@link APIRequest} of the provided {@link
+	 * RequestPriority} that arrived first, failing any expired requests found
+	 * on the way.
+	 *
+	 * @param priority
+	 *        The {@code RequestPriority} of the request.
+	 * @return An {@code APIRequest}, or {@code null} if none of that priority
+	 *         is waiting.
+	 */
+	@Nullable APIRequest<?> poll (final RequestPriority priority)
+	{
+		final Queue<APIRequest<?>> queue = queues.get(priority);
+		APIRequest<?> request = queue.poll();
+		while (request != null)
+		{
+			release(1);
+			if (!request.hasExpired())
+			{
+				return request;
+			}
+			request.failureContinuation().accept(
+				new DeadlineException(request));
+			request = queue.poll();
+		}
+		return null;
+	}
+
+	/**
+	 * Remove every waiting {@link APIRequest} at once, adding them to the
+	 * provided {@link Collection} in the order {@link #poll()} would answer
+	 * them, and failing any expired requests.
+	 *
+	 * @param requests
+	 *        The {@code Collection} to add the requests to.
+	 * @return The number of requests added.
+	 */
+	int drainTo (final Collection<? super APIRequest<?>> requests)
+	{
+		int removed = 0;
+		int added = 0;
+		for (final Queue<APIRequest<?>> queue : queues.values())
+		{
+			APIRequest<?> request = queue.poll();
+			while (request != null)
+			{
+				removed++;
+				if (request.hasExpired())
+				{
+					request.failureContinuation().accept(
+						new DeadlineException(request));
+				}
+				else
+				{
+					requests.add(request);
+					added++;
+				}
+				request = queue.poll();
+			}
+		}
+		release(removed);
+		return added;
+	}
+
+	/**
+	 * Discard every waiting {@link APIRequest}.
+	 */
+	void clear ()
+	{
+		for (final Queue<APIRequest<?>> queue : queues.values())
+		{
+			while (queue.poll() != null)
+			{
+				release(1);
+			}
+		}
+	}
+
+	/**
+	 * Release the space of {@link APIRequest}s that have been removed.
+	 *
+	 * @param count
+	 *        The number of requests removed.
+	 */
+	private void release (final int count)
+	{
+		if (count == 0)
+		{
+			return;
+		}
+		size.addAndGet(-count);
+		if (blocked > 0)
+		{
+			synchronized (spaceAvailable)
+			{
+				spaceAvailable.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Construct an {@link AdmissionQueue}.
+	 *
+	 * @param capacity
+	 *        The number of {@link APIRequest}s that may wait at once.
+	 */
+	AdmissionQueue (final int capacity)
+	{
+		assert capacity > 0;
+		this.capacity = capacity;
+		for (final RequestPriority priority : RequestPriority.values())
+		{
+			queues.put(priority, new ConcurrentLinkedQueue<>());
+		}
+	}
+}
@@ -31,19 +31,36 @@
  */
 
 package org.availlang.raa.api;
+import com.avail.utility.json.JSONObject;
 import org.availlang.raa.ApplicationRuntime;
 import org.availlang.raa.ApplicationRuntime.ExitCode;
 import org.availlang.raa.ApplicationState;
+import org.availlang.raa.client.Client;
 import org.availlang.raa.exceptions.ApplicationException;
 import org.availlang.raa.exceptions.PropertiesException;
+import org.availlang.raa.exceptions.ResponseException;
 import org.availlang.raa.exceptions.StateException;
 import org.availlang.raa.utilities.PropertiesManager;
 
 import javax.annotation.Nullable;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * An {@code AuthenticationContext} is a context that contains account and
@@ -56,9 +73,23 @@ import java.util.function.BiConsumer;
  * identifies the server's active session, with each request in order to access
  * the account in a secure way. This requires that the authentication state be
  * checked prior to each request. Because requests are processed concurrently,
- * it is necessary to synchronize this process when sending each request to the
- * Backblaze server to ensure changes have not been made to the authentication
- * state since the request was first created.
+ * and the check is made for every one of them, it takes no lock: a request
+ * made while the application is authenticated is sent at once, and one made
+ * while it is authenticating is queued and sent by whichever of the
+ * authentication or the request itself next observes the {@link
+ * ApplicationState#AUTHENTICATED} state.
+ * </p>
+ *
+ * <p>
+ * The {@link #soleInstance} serves the account configured for the
+ * application, and its state is the {@linkplain ApplicationRuntime#state()
+ * application's}. Further accounts are each served by a {@linkplain
+ * #session(String, String) session}: an {@code AuthenticationContext} with
+ * its own state, credentials, queue of waiting requests and counts, that
+ * shares the {@link Client} and the threads of the {@link
+ * ApplicationRuntime} with every other. So that one account cannot starve
+ * the rest, no account's waiting requests are sent more than a {@linkplain
+ * #FAIR_SHARE fair share} at a time.
  * </p>
  *
  * <p>
@@ -76,6 +107,107 @@ public class AuthenticationContext
 	public static final AuthenticationContext soleInstance =
 		new AuthenticationContext();
 
+	/**
+	 * The sessions of this application, by the identifier of the account
+	 * each serves.
+	 */
+	private static final ConcurrentHashMap<String, AuthenticationContext>
+		sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Answer the session for the given account, starting it if there is none.
+	 * A new session is {@link ApplicationState#ACCOUNT_INITIALIZED}; it must
+	 * be {@linkplain #authorize() authorized} before its authenticated {@link
+	 * APIRequest}s are sent.
+	 *
+	 * @param accountId
+	 *        The identifier for the account.
+	 * @param applicationKey
+	 *        The application key for the account.
+	 * @return An {@code AuthenticationContext}.
+	 */
+	public static AuthenticationContext session (
+		final String accountId,
+		final String applicationKey)
+	{
+		return sessions.computeIfAbsent(
+			accountId,
+			id -> new AuthenticationContext(id, applicationKey));
+	}
+
+	/**
+	 * Answer the sessions of this application.
+	 *
+	 * @return A {@link Collection} of {@code AuthenticationContext}s.
+	 */
+	public static Collection<AuthenticationContext> sessions ()
+	{
+		return Collections.unmodifiableCollection(sessions.values());
+	}
+
+	/**
+	 * The {@link ApplicationState} of a session, or {@code null} for the
+	 * {@link #soleInstance}, whose state is the {@linkplain
+	 * ApplicationRuntime#state() application's}.
+	 */
+	private final @Nullable AtomicReference<ApplicationState> sessionState;
+
+	/**
+	 * Answer the current {@link ApplicationState} of this {@link
+	 * AuthenticationContext}.
+	 *
+	 * @return An {@code ApplicationState}.
+	 */
+	public ApplicationState state ()
+	{
+		return sessionState == null
+			? ApplicationRuntime.state()
+			: sessionState.get();
+	}
+
+	/**
+	 * Set the {@linkplain #state() state}, whatever it currently is.
+	 *
+	 * @param state
+	 *        An {@link ApplicationState}.
+	 */
+	private void setState (final ApplicationState state)
+	{
+		if (sessionState == null)
+		{
+			ApplicationRuntime.setState(state);
+		}
+		else
+		{
+			sessionState.set(state);
+		}
+	}
+
+	/**
+	 * Move the {@linkplain #state() state} to {@code next} if it is still
+	 * {@code expected}.
+	 *
+	 * @param expected
+	 *        The {@link ApplicationState} this is expected to be in.
+	 * @param next
+	 *        The {@code ApplicationState} to move to; it must be an
+	 *        {@linkplain ApplicationState#canBecome(ApplicationState)
+	 *        acceptable} successor of {@code expected}.
+	 * @return {@code true} if the state was changed; {@code false} otherwise.
+	 */
+	private boolean compareAndSetState (
+		final ApplicationState expected,
+		final ApplicationState next)
+	{
+		if (sessionState == null)
+		{
+			return ApplicationRuntime.compareAndSetState(expected, next);
+		}
+		assert expected.canBecome(next)
+			: String.format("%s cannot become %s", expected, next);
+		return sessionState.compareAndSet(expected, next);
+	}
+
 	/**
 	 * The application key for the account.
 	 */
@@ -112,14 +244,15 @@ public class AuthenticationContext
 	 * @return {@code true} if the account information has been added to the
 	 *         application; {@code false} otherwise.
 	 */
-	private static boolean isAccountInitialized ()
+	private boolean isAccountInitialized ()
 	{
-		return soleInstance.accountId != null
-			&& soleInstance.applicationKey != null;
+		return accountId != null && applicationKey != null;
 	}
 
 	/**
-	 * Update the account information being used.
+	 * Update the account information being used. A {@linkplain
+	 * #session(String, String) session} always serves the account it was
+	 * started for, so this is only meant for the {@link #soleInstance}.
 	 *
 	 * @param accountId
 	 *        The identifier for the account.
@@ -141,8 +274,9 @@ public class AuthenticationContext
 
 			// Drop the waiting requests as they would have been for the
 			// previous account info.
-			waitingRequestQueue.clear();
-			ApplicationRuntime.setState(ApplicationState.ACCOUNT_INITIALIZED);
+			waitingRequests.clear();
+			setState(ApplicationState.ACCOUNT_INITIALIZED);
+			abandonAuthentication("The account was changed");
 		}
 	}
 
@@ -151,16 +285,21 @@ public class AuthenticationContext
 	 */
 	private void clearAuthenticationCredentials ()
 	{
-		this.authorizationToken = null;
-		this.downloadUrl = null;
-		this.apiUrl = null;
+		this.credentials = null;
 	}
 
 	/**
 	 * A {@link BiConsumer} that accepts two Strings; the {@link #accountId} and
 	 * the {@link #applicationKey} that can be run to authenticate the account.
+	 * It is shared by every {@code AuthenticationContext}.
 	 */
-	private @Nullable BiConsumer<String, String> authenticator;
+	private static volatile @Nullable BiConsumer<String, String> authenticator;
+
+	/**
+	 * A synchronization object that guards the {@link
+	 * #reauthenticateScheduledFuture}. {@link APIRequest}s never wait for it.
+	 */
+	private final Object authenticationLock = new Object();
 
 	/**
 	 * Clean up the {@link AuthenticationContext}. Mostly used for testing.
@@ -168,7 +307,11 @@ public class AuthenticationContext
 	public static void cleanUp ()
 	{
 		soleInstance.clearAuthenticationCredentials();
-		soleInstance.authenticator = null;
+		AuthenticationContext.authenticator = null;
+		for (final AuthenticationContext session : sessions.values())
+		{
+			session.close();
+		}
 	}
 
 	/**
@@ -184,56 +327,256 @@ public class AuthenticationContext
 	{
 		synchronized (ApplicationRuntime.stateLock)
 		{
-			soleInstance.authenticator = authenticator;
+			AuthenticationContext.authenticator = authenticator;
 		}
 	}
 
 	/**
-	 * A {@link BlockingQueue} for holding {@link APIRequest}s waiting to
-	 * be sent to the B2 API server while the application authenticates with
-	 * the server.
+	 * The number of {@link APIRequest}s that may wait to be sent unless
+	 * {@linkplain #setQueueCapacity(int) configured otherwise}.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+	/**
+	 * The {@link AdmissionQueue} of {@link APIRequest}s waiting to be sent to
+	 * the B2 API server, either while the application authenticates with the
+	 * server or until a thread is free to send them.
 	 */
-	private final BlockingQueue<APIRequest<?>> waitingRequestQueue =
-		new LinkedBlockingQueue<>();
+	private final AdmissionQueue waitingRequests =
+		new AdmissionQueue(DEFAULT_QUEUE_CAPACITY);
 
 	/**
-	 * The number of {@link APIRequest}s in the {@link #waitingRequestQueue}.
+	 * The number of {@link APIRequest}s in the {@link #waitingRequests}.
 	 *
 	 * @return An {@code integer}.
 	 */
 	public static int queueCount ()
 	{
-		return soleInstance.waitingRequestQueue.size();
+		return soleInstance.waitingRequests.size();
+	}
+
+	/**
+	 * Set the number of {@link APIRequest}s that may wait to be sent at once,
+	 * for each account; beyond it, {@link #processRequest(APIRequest)} waits
+	 * for space and {@link #offerRequest(APIRequest)} refuses the request.
+	 * Sessions started later are given the same capacity.
+	 *
+	 * @param capacity
+	 *        The positive capacity.
+	 */
+	public static void setQueueCapacity (final int capacity)
+	{
+		soleInstance.waitingRequests.setCapacity(capacity);
+		for (final AuthenticationContext session : sessions.values())
+		{
+			session.waitingRequests.setCapacity(capacity);
+		}
 	}
 
 	/**
-	 * Authenticate this application with the Backblaze server.
+	 * Authenticate this application with the Backblaze server, waiting until
+	 * it is authenticated. If it cannot be, the application exits.
 	 *
 	 * <p>
-	 * <strong>NOTE:</strong> This method causes a synchronization, forcing
-	 * {@link APIRequest}s to wait until it completes.
+	 * <strong>NOTE:</strong> This waits for the application's own threads,
+	 * so it must never be called from one of them; they {@linkplain
+	 * #authenticateAsync() compose} on the authentication instead.
 	 * </p>
 	 */
 	public static void authenticate ()
 	{
-		synchronized (ApplicationRuntime.stateLock)
+		assert !ApplicationRuntime.isApplicationThread();
+		try
+		{
+			authenticateAsync().join();
+		}
+		catch (final CompletionException e)
 		{
-			ApplicationRuntime.setState(ApplicationState.AUTHENTICATING);
-			soleInstance.privateAuthenticate();
+			e.getCause().printStackTrace();
+			(e.getCause() instanceof ApplicationException
+				? ((ApplicationException) e.getCause()).exitCode
+				: ExitCode.AUTHENTICATION_FAILURE).shutdown();
 		}
 	}
 
 	/**
-	 * This method contains the core implementation for authenticating the
-	 * application.
+	 * Authenticate this application with the Backblaze server without
+	 * waiting for it, as {@link #authorize()} does for the {@link
+	 * #soleInstance}.
+	 *
+	 * @return A {@link CompletableFuture} that completes with the {@code
+	 *         soleInstance} once it is authenticated.
+	 */
+	public static CompletableFuture<AuthenticationContext> authenticateAsync ()
+	{
+		return soleInstance.authorize();
+	}
+
+	/**
+	 * Authenticate the account of this {@link AuthenticationContext} with the
+	 * Backblaze server. The {@link #authenticator} runs on the application's
+	 * threads and the caller's thread never waits for it.
+	 *
+	 * <p>
+	 * <strong>NOTE:</strong> Authentications are made one at a time; a call
+	 * made while one is in progress answers that authentication. Authenticated
+	 * {@link APIRequest}s made meanwhile wait in the {@link #waitingRequests}
+	 * until it completes, but the threads that make them do not.
+	 * </p>
 	 *
 	 * <p>
-	 * <strong>NOTE:</strong> This method should only every be in
+	 * If the {@link #soleInstance} has no credentials yet and the {@linkplain
+	 * PropertiesManager#credentialCacheEnabled() credential cache} is in use,
+	 * credentials cached by a previous run for the same account are reused
+	 * while they remain valid, saving the round trip to the server.
 	 * </p>
+	 *
+	 * <p>
+	 * Only a state that {@linkplain ApplicationState#canBecome(ApplicationState)
+	 * can become} {@link ApplicationState#AUTHENTICATING} is authenticated, so
+	 * a {@linkplain #close() closed} session never is again.
+	 * </p>
+	 *
+	 * @return A {@link CompletableFuture} that completes with this {@code
+	 *         AuthenticationContext} once it is authenticated, or
+	 *         exceptionally with the {@link ApplicationException} that kept
+	 *         it from being authenticated; a {@link StateException} if the
+	 *         account cannot be authenticated in its current state.
 	 */
-	private void privateAuthenticate ()
+	public CompletableFuture<AuthenticationContext> authorize ()
 	{
-		clearAuthenticationCredentials();
+		while (true)
+		{
+			final CompletableFuture<AuthenticationContext> pending =
+				authentication.get();
+			if (pending != null)
+			{
+				return pending;
+			}
+			final ApplicationState state = state();
+			if (state == ApplicationState.AUTHENTICATING)
+			{
+				// Another caller is about to begin the authentication, or the
+				// state was imposed; either way, join or begin it.
+				return beginAuthentication();
+			}
+			if (!state.canBecome(ApplicationState.AUTHENTICATING))
+			{
+				return CompletableFuture.failedFuture(new StateException(
+					"Cannot authenticate while " + state));
+			}
+			if (compareAndSetState(state, ApplicationState.AUTHENTICATING))
+			{
+				break;
+			}
+		}
+		if (credentials == null && restoreCachedCredentials())
+		{
+			if (compareAndSetState(
+				ApplicationState.AUTHENTICATING,
+				ApplicationState.AUTHENTICATED))
+			{
+				sendWaitingRequests();
+			}
+			return CompletableFuture.completedFuture(this);
+		}
+		return beginAuthentication();
+	}
+
+	/**
+	 * The {@link CompletableFuture} of the authentication in progress, or
+	 * {@code null} if there is none. It is completed by whichever of {@link
+	 * #updateCredentials(String, String, String, long) updateCredentials} or
+	 * {@link #failAuthentication(ApplicationException) failAuthentication}
+	 * the {@link #authenticator} leads to.
+	 */
+	private final AtomicReference<CompletableFuture<AuthenticationContext>>
+		authentication = new AtomicReference<>();
+
+	/**
+	 * Answer the authentication in progress, starting one by scheduling the
+	 * {@link #authenticator} if there is none. The {@linkplain #state()
+	 * state} is left as it is.
+	 *
+	 * @return A {@link CompletableFuture} that completes with this {@link
+	 *         AuthenticationContext} once the authentication completes.
+	 */
+	private CompletableFuture<AuthenticationContext> beginAuthentication ()
+	{
+		final CompletableFuture<AuthenticationContext> future =
+			new CompletableFuture<>();
+		while (!authentication.compareAndSet(null, future))
+		{
+			final CompletableFuture<AuthenticationContext> pending =
+				authentication.get();
+			if (pending != null)
+			{
+				return pending;
+			}
+		}
+		ApplicationRuntime.scheduleTask(this::runAuthenticator);
+		return future;
+	}
+
+	/**
+	 * Restore the {@link #credentials} from the credential cache, if it is in
+	 * use and holds valid credentials for the account.
+	 *
+	 * @return {@code true} if the credentials were restored; {@code false}
+	 *         otherwise.
+	 */
+	private boolean restoreCachedCredentials ()
+	{
+		final String accountId = this.accountId;
+		return this == soleInstance
+			&& accountId != null
+			&& PropertiesManager.credentialCacheEnabled()
+			&& PropertiesManager.retrieveCachedCredentials(accountId);
+	}
+
+	/**
+	 * Obtain new credentials for the account in the background, ahead of the
+	 * expiry of the current ones. Unlike {@link #authorize()}, this leaves
+	 * the account {@link ApplicationState#AUTHENTICATED}: the current
+	 * credentials keep serving {@link APIRequest}s until the new ones replace
+	 * them. If the account is not authenticated, this authenticates it.
+	 */
+	private void refresh ()
+	{
+		final ApplicationState state = state();
+		final CompletableFuture<AuthenticationContext> refreshed;
+		if (state == ApplicationState.AUTHENTICATED)
+		{
+			refreshed = beginAuthentication();
+		}
+		else if (state != ApplicationState.ACCOUNT_UNINITIALIZED)
+		{
+			refreshed = authorize();
+		}
+		else
+		{
+			// A closed session is never authenticated again.
+			return;
+		}
+		// The current credentials serve until they are rejected, when the
+		// account is authenticated again.
+		refreshed.exceptionally(e ->
+		{
+			e.printStackTrace();
+			return this;
+		});
+	}
+
+	/**
+	 * Run the {@link #authenticator} for the account, which leads to new
+	 * {@link #credentials} or to a failure; either completes the {@link
+	 * #authentication}. The previous credentials are kept until then, as
+	 * requests already on their way to the {@link Client} still use them.
+	 */
+	private void runAuthenticator ()
+	{
+		final BiConsumer<String, String> authenticator =
+			AuthenticationContext.authenticator;
 		if (authenticator == null)
 		{
 			System.err.println(
@@ -248,188 +591,803 @@ public class AuthenticationContext
 			}
 			catch (final PropertiesException e)
 			{
-				e.printStackTrace();
-				ExitCode.AUTHENTICATION_FAILURE.shutdown();
+				failAuthentication(e);
+				return;
 			}
 		}
-		authenticator.accept(accountId, applicationKey);
-		ApplicationRuntime.setState(ApplicationState.AUTHENTICATED);
-		// Make all the requests waiting for authentication to complete
-		waitingRequestQueue.forEach(this::sendRequest);
-		waitingRequestQueue.clear();
+		authenticationCount.incrementAndGet();
+		try
+		{
+			authenticator.accept(accountId, applicationKey);
+		}
+		catch (final RuntimeException e)
+		{
+			failAuthentication(new ApplicationException(
+				ExitCode.AUTHENTICATION_FAILURE,
+				"The authenticator failed",
+				e));
+		}
 	}
 
 	/**
-	 * Process the provided {@link APIRequest}.
+	 * Complete the {@link #authentication} in progress, if any, with the
+	 * provided failure. If the account was being authenticated, rather than
+	 * refreshed, it returns to {@link ApplicationState#ACCOUNT_INITIALIZED}
+	 * and the {@link APIRequest}s waiting for it fail.
 	 *
-	 * @param request
-	 *        A {@code SecureRequest}.
+	 * @param exception
+	 *        The {@link ApplicationException} that kept the account from
+	 *        being authenticated.
 	 */
-	private void privateProcessRequest (
-		final APIRequest<?> request)
+	private void failAuthentication (final ApplicationException exception)
 	{
-		// Make an opportune check of the volatile application state
-		switch (ApplicationRuntime.state())
+		final CompletableFuture<AuthenticationContext> future =
+			authentication.getAndSet(null);
+		if (compareAndSetState(
+			ApplicationState.AUTHENTICATING,
+			ApplicationState.ACCOUNT_INITIALIZED))
 		{
-			case APPLICATION_UNINITIALIZED:
-			{    // Requests shouldn't be fielded now, this is a bug.
-				final ApplicationException ex =
-					new ApplicationException(
-						ExitCode.UNEXPECTED_EXCEPTION,
-						"Should not be making requests before app is "
-							+ "initialized!");
-				ex.printStackTrace();
-				ex.exitCode.shutdown();
-				break;
-			}
-			case ACCOUNT_UNINITIALIZED:
-				// Any requests coming in have to be from a prior initialized
-				// account and as such should be thrown away? Potentailly call
-				// the failbackContinuation?
-				break;
-			case ACCOUNT_INITIALIZED:
-			case AUTHENTICATED:
+			final List<APIRequest<?>> failed =
+				new ArrayList<>(waitingRequests.size());
+			waitingRequests.drainTo(failed);
+			for (final APIRequest<?> request : failed)
 			{
-				synchronized (ApplicationRuntime.stateLock)
-				{
-					switch (ApplicationRuntime.state())
-					{
-						case AUTHENTICATED:
-							sendRequest(request);
-							break;
-						case ACCOUNT_INITIALIZED:
-						{
-							if (request.isAuthenticatedRequest())
-							{
-								waitingRequestQueue.add(request);
-							}
-							else
-							{
-								sendRequest(request);
-							}
-							break;
-						}
-						case ACCOUNT_UNINITIALIZED:
-							// Any requests coming in have to be from a prior initialized
-							// account and as such should be thrown away? Potentailly call
-							// the failbackContinuation?
-							break;
-						case AUTHENTICATING:
-							waitingRequestQueue.add(request);
-							break;
-						case APPLICATION_UNINITIALIZED:
-						{    // Requests shouldn't be fielded now, this is a bug.
-							final ApplicationException ex =
-								new ApplicationException(
-									ExitCode.UNEXPECTED_EXCEPTION,
-									"Should not be making requests before app is "
-										+ "initialized!");
-							ex.printStackTrace();
-							ex.exitCode.shutdown();
-							break;
-						}
-					}
-				}
-				break;
+				request.failureContinuation().accept(exception);
 			}
-			case AUTHENTICATING:
-				waitingRequestQueue.add(request);
-				break;
+		}
+		if (future != null)
+		{
+			future.completeExceptionally(exception);
 		}
 	}
 
 	/**
-	 * Process the provided {@link APIRequest}.
+	 * Report that the given account could not be authenticated, to the
+	 * {@linkplain #session(String, String) session} or the {@link
+	 * #soleInstance} that serves it.
 	 *
-	 * @param request
-	 *        A {@code SecureRequest}.
+	 * @param accountId
+	 *        The identifier of the account that was not authorized.
+	 * @param exception
+	 *        The {@link ApplicationException} that kept it from being
+	 *        authorized.
 	 */
-	public static void processRequest (final APIRequest<?> request)
+	public static void authenticationFailed (
+		final String accountId,
+		final ApplicationException exception)
+	{
+		final AuthenticationContext context = context(accountId);
+		if (context != null)
+		{
+			context.failAuthentication(exception);
+		}
+	}
+
+	/**
+	 * Answer the {@link AuthenticationContext} that serves the given account:
+	 * its {@linkplain #session(String, String) session} if there is one, or
+	 * else the {@link #soleInstance} if it serves the account.
+	 *
+	 * @param accountId
+	 *        The identifier of the account.
+	 * @return An {@code AuthenticationContext}, or {@code null} if the
+	 *         account has since been changed or its session closed.
+	 */
+	private static @Nullable AuthenticationContext context (
+		final String accountId)
 	{
-		soleInstance.privateProcessRequest(request);
+		final AuthenticationContext session = sessions.get(accountId);
+		if (session == null && accountId.equals(soleInstance.accountId))
+		{
+			return soleInstance;
+		}
+		return session;
 	}
 
 	/**
-	 * Send the {@link APIRequest} to the B2 API server.
+	 * Send every {@link APIRequest} in the {@link #waitingRequests}, in order
+	 * of {@link RequestPriority}. This must only be done after observing the
+	 * {@link ApplicationState#AUTHENTICATED} state.
 	 *
-	 * @param request
-	 *        The {@code SecureRequest}
+	 * <p>
+	 * After an authentication there may be many thousands of them, so they
+	 * are removed from the queue at once and {@linkplain #stamp(APIRequest,
+	 * Credentials) stamped} with the same credentials in a single pass; a few
+	 * {@link Drain} tasks in the {@linkplain
+	 * ApplicationRuntime#scheduleTask(RequestPriority, Runnable) lane} of each
+	 * priority, rather than one per request, then share the work of passing
+	 * them to the {@link Client}. How long it took is recorded as the
+	 * {@linkplain #lastDrain(RequestPriority) last drain} of the lane once the
+	 * last of its requests has been passed on.
+	 * </p>
+	 */
+	private void sendWaitingRequests ()
+	{
+		final long start = System.nanoTime();
+		final List<APIRequest<?>> drained =
+			new ArrayList<>(waitingRequests.size());
+		if (waitingRequests.drainTo(drained) == 0)
+		{
+			return;
+		}
+		final Credentials current = credentials;
+		final Map<RequestPriority, Queue<APIRequest<?>>> ready =
+			new EnumMap<>(RequestPriority.class);
+		for (final APIRequest<?> request : drained)
+		{
+			if (current == null
+				|| !request.validSendStates().contains(
+					ApplicationState.AUTHENTICATED))
+			{
+				// Reported the same way as a request sent individually.
+				sendRequest(request, ApplicationState.AUTHENTICATED);
+			}
+			else
+			{
+				stamp(request, current);
+				ready.computeIfAbsent(
+						request.priority(),
+						lane -> new ConcurrentLinkedQueue<>())
+					.add(request);
+			}
+		}
+		for (final Map.Entry<RequestPriority, Queue<APIRequest<?>>> entry
+			: ready.entrySet())
+		{
+			final Drain drain =
+				new Drain(entry.getKey(), entry.getValue(), start);
+			final int tasks = Math.min(
+				drain.total,
+				ApplicationRuntime.parallelism(drain.lane));
+			for (int i = 0; i < tasks; i++)
+			{
+				ApplicationRuntime.scheduleTask(drain.lane, drain);
+			}
+		}
+	}
+
+	/**
+	 * The number of {@link APIRequest}s a {@link Drain} task passes to the
+	 * {@link Client} before it yields its thread to the tasks of other
+	 * accounts.
 	 */
-	private void sendRequest (final APIRequest<?> request)
+	private static final int FAIR_SHARE = 64;
+
+	/**
+	 * A {@code Drain} is a task that passes stamped {@link APIRequest}s of
+	 * one {@link RequestPriority} to the {@link Client}, a {@linkplain
+	 * #FAIR_SHARE fair share} at a time; it then schedules itself again behind
+	 * the tasks of every other account in its lane, so the thousands of
+	 * requests one account held while authenticating do not keep the others
+	 * waiting.
+	 */
+	private final class Drain
+	implements Runnable
 	{
-		if (request.validSendStates().contains(ApplicationRuntime.state()))
+		/**
+		 * The {@link RequestPriority} of the requests, and so the lane the
+		 * drain's tasks run in.
+		 */
+		final RequestPriority lane;
+
+		/**
+		 * The stamped {@link APIRequest}s, shared by every task of the drain.
+		 */
+		private final Queue<APIRequest<?>> ready;
+
+		/**
+		 * The number of {@link APIRequest}s the drain started with.
+		 */
+		final int total;
+
+		/**
+		 * The {@link System#nanoTime()} at which the drain started.
+		 */
+		private final long start;
+
+		/**
+		 * The {@link System#nanoTime()} by which the requests were stamped.
+		 */
+		private final long stamped = System.nanoTime();
+
+		/**
+		 * The number of {@link APIRequest}s not yet passed to the {@link
+		 * Client}.
+		 */
+		private final AtomicInteger remaining;
+
+		@Override
+		public void run ()
 		{
-			ApplicationRuntime.scheduleTask(() ->
+			for (int i = 0; i < FAIR_SHARE; i++)
 			{
-				if (request.usesAuthorizationToken())
+				final APIRequest<?> request = ready.poll();
+				if (request == null)
+				{
+					return;
+				}
+				dispatch(request);
+				if (remaining.decrementAndGet() == 0)
 				{
-					final String token = authorizationToken;
-					assert token != null;
-					request.setAuthorizationToken(token);
+					lastDrains.put(
+						lane,
+						new DrainStatistics(
+							lane,
+							total,
+							stamped - start,
+							System.nanoTime() - start));
 				}
-				final String url =
-					request.isDownloadRequest() ? downloadUrl : apiUrl;
-				assert url != null;
-				request.setBaseClientLocationIdentifier(url);
-				ApplicationRuntime.client().processRequest(request);
-			});
+			}
+			if (!ready.isEmpty())
+			{
+				ApplicationRuntime.scheduleTask(lane, this);
+			}
 		}
-		else
+
+		/**
+		 * Construct a {@link Drain}.
+		 *
+		 * @param lane
+		 *        The {@link RequestPriority} of the requests.
+		 * @param ready
+		 *        The stamped {@link APIRequest}s.
+		 * @param start
+		 *        The {@link System#nanoTime()} at which the drain started.
+		 */
+		Drain (
+			final RequestPriority lane,
+			final Queue<APIRequest<?>> ready,
+			final long start)
 		{
-			request.failureContinuation().accept(
-				new StateException(String.format(
-					"Attempted to send a %s while in the state %s",
-					request.getClass().getSimpleName(),
-					ApplicationRuntime.state().name())));
+			this.lane = lane;
+			this.ready = ready;
+			this.total = ready.size();
+			this.start = start;
+			this.remaining = new AtomicInteger(total);
 		}
 	}
 
 	/**
-	 * The authorization token to use with all secure API calls.
+	 * A {@code DrainStatistics} describes how the {@link APIRequest}s of one
+	 * {@link RequestPriority} that waited while the account was being
+	 * authenticated were sent once it was.
 	 */
-	private @Nullable String authorizationToken;
+	public static final class DrainStatistics
+	{
+		/**
+		 * The {@link RequestPriority} of the requests.
+		 */
+		public final RequestPriority lane;
 
-	/**
-	 * The String url that is to be used for future downloads.
-	 */
-	private @Nullable String downloadUrl;
+		/**
+		 * The number of {@link APIRequest}s sent.
+		 */
+		public final int requests;
+
+		/**
+		 * The time, in nanoseconds, taken to drain and stamp the requests.
+		 */
+		public final long stampNanos;
+
+		/**
+		 * The time, in nanoseconds, taken to pass every request to the
+		 * {@link Client}, including the {@link #stampNanos}.
+		 */
+		public final long totalNanos;
+
+		@Override
+		public String toString ()
+		{
+			return String.format(
+				"Sent %d waiting %s requests in %d ms (drained and stamped "
+					+ "in %d ms)",
+				requests,
+				lane,
+				TimeUnit.NANOSECONDS.toMillis(totalNanos),
+				TimeUnit.NANOSECONDS.toMillis(stampNanos));
+		}
+
+		/**
+		 * Construct a {@link DrainStatistics}.
+		 *
+		 * @param lane
+		 *        The {@link RequestPriority} of the requests.
+		 * @param requests
+		 *        The number of {@link APIRequest}s sent.
+		 * @param stampNanos
+		 *        The time, in nanoseconds, taken to drain and stamp the
+		 *        requests.
+		 * @param totalNanos
+		 *        The time, in nanoseconds, taken to pass every request to the
+		 *        {@link Client}.
+		 */
+		DrainStatistics (
+			final RequestPriority lane,
+			final int requests,
+			final long stampNanos,
+			final long totalNanos)
+		{
+			this.lane = lane;
+			this.requests = requests;
+			this.stampNanos = stampNanos;
+			this.totalNanos = totalNanos;
+		}
+	}
 
 	/**
-	 * The String to make authenticated API calls to.
+	 * The {@link DrainStatistics} of the last {@link Drain} of each {@link
+	 * RequestPriority} to finish.
 	 */
-	private @Nullable String apiUrl;
+	private final Map<RequestPriority, DrainStatistics> lastDrains =
+		new ConcurrentHashMap<>();
 
 	/**
-	 * The {@link ScheduledFuture} that holds the timer until the application
-	 * is re-authenticated.
+	 * Answer the {@link DrainStatistics} of the last time the {@link
+	 * APIRequest}s of the provided {@link RequestPriority} that waited while
+	 * the account was being authenticated were all sent.
+	 *
+	 * @param lane
+	 *        The {@code RequestPriority}.
+	 * @return A {@code DrainStatistics}, or {@code null} if no requests of
+	 *         that priority have waited.
 	 */
-	private @Nullable ScheduledFuture<?> reauthenticateScheduledFuture;
+	public @Nullable DrainStatistics lastDrain (final RequestPriority lane)
+	{
+		return lastDrains.get(lane);
+	}
 
 	/**
-	 * Reset the {@link ScheduledFuture} ({@link
-	 * #reauthenticateScheduledFuture}) that holds the timer until the
-	 * application is re-authenticated.
+	 * Send the waiting {@link APIRequest} of the provided {@link
+	 * RequestPriority} that arrived first, if the application is still {@link
+	 * ApplicationState#AUTHENTICATED}; otherwise it is sent once the
+	 * authentication in progress completes.
 	 *
-	 * @param timeUntilExpires
-	 *        The time in milliseconds until the application is
-	 *        re-authenticated.
+	 * @param lane
+	 *        The {@code RequestPriority}, whose lane the caller runs in.
 	 */
-	private void resetReauthenticateScheduledFuture (
-		final long timeUntilExpires)
+	private void sendNextWaitingRequest (final RequestPriority lane)
 	{
-		if (reauthenticateScheduledFuture != null)
+		if (state() == ApplicationState.AUTHENTICATED)
 		{
-			reauthenticateScheduledFuture.cancel(false);
+			final APIRequest<?> request = waitingRequests.poll(lane);
+			if (request != null)
+			{
+				send(request, ApplicationState.AUTHENTICATED);
+			}
 		}
-		reauthenticateScheduledFuture =
-			ApplicationRuntime.startTimer(
-				timeUntilExpires, AuthenticationContext::authenticate);
 	}
 
 	/**
-	 * Update the data that authorizes the application to use with all secure
-	 * API calls.
-	 *
+	 * {@code Admission} describes what to do with an {@link APIRequest} when
+	 * the {@link #waitingRequests} are full.
+	 */
+	private enum Admission
+	{
+		/**
+		 * Wait for space, unless the thread is one of the application's
+		 * own, which must never wait for the requests it would send.
+		 */
+		WAIT,
+
+		/** Refuse the request. */
+		OFFER,
+
+		/** Admit the request anyway. */
+		FORCE
+	}
+
+	/**
+	 * Queue the provided {@link APIRequest} in the {@link #waitingRequests}
+	 * until the application is authenticated and a thread is free to send it.
+	 *
+	 * @param request
+	 *        The {@code APIRequest} to queue.
+	 * @param admission
+	 *        What to do if the {@code waitingRequests} are full.
+	 * @return {@code true} if the request was queued; {@code false} if it was
+	 *         refused.
+	 */
+	private boolean await (
+		final APIRequest<?> request,
+		final Admission admission)
+	{
+		if (admission == Admission.OFFER)
+		{
+			if (!waitingRequests.offer(request))
+			{
+				return false;
+			}
+		}
+		else if (admission == Admission.WAIT
+			&& !ApplicationRuntime.isApplicationThread())
+		{
+			try
+			{
+				waitingRequests.put(request);
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				request.failureContinuation().accept(
+					new StateException(String.format(
+						"Interrupted while waiting to queue a %s",
+						request.getClass().getSimpleName())));
+				return true;
+			}
+		}
+		else
+		{
+			waitingRequests.add(request);
+		}
+		// Once authenticated, every queued request gets a task in its lane to
+		// send the next one of its priority. The authentication may also have
+		// completed, and sent the waiting requests, after the state was
+		// observed but before this request was queued; if so, nothing else
+		// would send it.
+		if (state() == ApplicationState.AUTHENTICATED)
+		{
+			final RequestPriority lane = request.priority();
+			ApplicationRuntime.scheduleTask(
+				lane,
+				() -> sendNextWaitingRequest(lane));
+		}
+		return true;
+	}
+
+	/**
+	 * Process the provided {@link APIRequest}.
+	 *
+	 * @param request
+	 *        A {@code SecureRequest}.
+	 * @param admission
+	 *        What to do if the {@link #waitingRequests} are full.
+	 * @return {@code true} if the request was accepted; {@code false} if it
+	 *         was refused.
+	 */
+	private boolean privateProcessRequest (
+		final APIRequest<?> request,
+		final Admission admission)
+	{
+		// A single read of the state decides what happens to the request
+		final ApplicationState state = state();
+		switch (state)
+		{
+			case APPLICATION_UNINITIALIZED:
+			{    // Requests shouldn't be fielded now, this is a bug.
+				final ApplicationException ex =
+					new ApplicationException(
+						ExitCode.UNEXPECTED_EXCEPTION,
+						"Should not be making requests before app is "
+							+ "initialized!");
+				ex.printStackTrace();
+				ex.exitCode.shutdown();
+				break;
+			}
+			case ACCOUNT_UNINITIALIZED:
+				// Any requests coming in have to be from a prior initialized
+				// account and as such should be thrown away? Potentailly call
+				// the failbackContinuation?
+				break;
+			case ACCOUNT_INITIALIZED:
+				if (!request.isAuthenticatedRequest())
+				{
+					sendRequest(request, state);
+					break;
+				}
+				return await(request, admission);
+			case AUTHENTICATED:
+			case AUTHENTICATING:
+				return await(request, admission);
+		}
+		return true;
+	}
+
+	/**
+	 * Process the provided {@link APIRequest}. If too many requests are
+	 * already waiting to be sent, this waits for space, unless called from
+	 * one of the application's own threads.
+	 *
+	 * @param request
+	 *        A {@code SecureRequest}.
+	 */
+	public static void processRequest (final APIRequest<?> request)
+	{
+		soleInstance.privateProcessRequest(request, Admission.WAIT);
+	}
+
+	/**
+	 * Process the provided {@link APIRequest}, unless too many requests are
+	 * already waiting to be sent.
+	 *
+	 * @param request
+	 *        A {@code SecureRequest}.
+	 * @return {@code true} if the request was accepted; {@code false} if it
+	 *         was refused, and should be offered again later.
+	 */
+	public static boolean offerRequest (final APIRequest<?> request)
+	{
+		return soleInstance.privateProcessRequest(request, Admission.OFFER);
+	}
+
+	/**
+	 * Send the {@link APIRequest} to the B2 API server from the application's
+	 * {@linkplain ApplicationRuntime#scheduleTask(RequestPriority, Runnable)
+	 * lane} of its {@link RequestPriority}.
+	 *
+	 * @param request
+	 *        The {@code SecureRequest}
+	 * @param state
+	 *        The {@link ApplicationState} observed when deciding to send it.
+	 */
+	private void sendRequest (
+		final APIRequest<?> request,
+		final ApplicationState state)
+	{
+		ApplicationRuntime.scheduleTask(
+			request.priority(),
+			() -> send(request, state));
+	}
+
+	/**
+	 * Send the {@link APIRequest} to the B2 API server.
+	 *
+	 * @param request
+	 *        The {@code SecureRequest}
+	 * @param state
+	 *        The {@link ApplicationState} observed when deciding to send it.
+	 */
+	private void send (
+		final APIRequest<?> request,
+		final ApplicationState state)
+	{
+		if (!request.validSendStates().contains(state))
+		{
+			request.failureContinuation().accept(
+				new StateException(String.format(
+					"Attempted to send a %s while in the state %s",
+					request.getClass().getSimpleName(),
+					state.name())));
+			return;
+		}
+		final Credentials current = credentials;
+		if (current == null)
+		{
+			// The account was changed after the request was made.
+			request.failureContinuation().accept(
+				new StateException(String.format(
+					"Attempted to send a %s without credentials",
+					request.getClass().getSimpleName())));
+			return;
+		}
+		stamp(request, current);
+		dispatch(request);
+	}
+
+	/**
+	 * Pass the stamped {@link APIRequest} to the {@link Client}.
+	 *
+	 * @param request
+	 *        The {@code APIRequest}.
+	 */
+	private void dispatch (final APIRequest<?> request)
+	{
+		sentCount.incrementAndGet();
+		ApplicationRuntime.client().processRequest(request);
+	}
+
+	/**
+	 * Stamp the provided {@link APIRequest} with the account, and with the
+	 * authorization token and location from the provided {@link
+	 * Credentials}.
+	 *
+	 * @param request
+	 *        The {@code APIRequest} about to be sent.
+	 * @param current
+	 *        The current {@code Credentials}.
+	 */
+	private void stamp (
+		final APIRequest<?> request,
+		final Credentials current)
+	{
+		final String accountId = this.accountId;
+		if (accountId != null)
+		{
+			request.setAccountId(accountId);
+		}
+		if (request.usesAuthorizationToken())
+		{
+			request.setAuthorizationToken(current.authorizationToken);
+			final Replay replay = (Replay) request.interceptor(
+				this, () -> new Replay(request));
+			replay.credentials = current;
+		}
+		request.setBaseClientLocationIdentifier(
+			request.isDownloadRequest()
+				? current.downloadUrl
+				: current.apiUrl);
+	}
+
+	/**
+	 * A {@code Replay} is the {@link RequestInterceptor} that sends an {@link
+	 * APIRequest} again, once, if the server rejects its authorization token
+	 * as {@linkplain ResponseException#isExpiredAuthorization() expired}. The
+	 * first such rejection of the current {@link Credentials} triggers a
+	 * single re-authentication; every rejected request waits for it in the
+	 * {@link #waitingRequests}, just as requests made while
+	 * authenticating do.
+	 */
+	private final class Replay
+	implements RequestInterceptor
+	{
+		/**
+		 * The {@link Credentials} the request was last sent with.
+		 */
+		volatile @Nullable Credentials credentials;
+
+		/**
+		 * Whether the request has already been replayed; a token rejected
+		 * again straight after authenticating will not be fixed by another.
+		 */
+		private boolean replayed;
+
+		@Override
+		public void content (
+			final JSONObject content,
+			final Consumer<JSONObject> next)
+		{
+			next.accept(content);
+		}
+
+		@Override
+		public void failure (
+			final ApplicationException exception,
+			final Consumer<ApplicationException> next)
+		{
+			final Credentials rejected = credentials;
+			if (replayed
+				|| rejected == null
+				|| !(exception instanceof ResponseException)
+				|| !((ResponseException) exception).isExpiredAuthorization())
+			{
+				next.accept(exception);
+				return;
+			}
+			replayed = true;
+			reauthenticate(rejected);
+			// The request was admitted once already, so it is not refused.
+			privateProcessRequest(request, Admission.FORCE);
+		}
+
+		/**
+		 * The {@link APIRequest} to replay.
+		 */
+		private final APIRequest<?> request;
+
+		/**
+		 * Construct a {@link Replay}.
+		 *
+		 * @param request
+		 *        The {@link APIRequest} to replay.
+		 */
+		Replay (final APIRequest<?> request)
+		{
+			this.request = request;
+		}
+	}
+
+	/**
+	 * Authenticate the application again because the server rejected the
+	 * provided {@link Credentials}, unless another rejection of them already
+	 * has, or they have since been replaced.
+	 *
+	 * @param rejected
+	 *        The rejected {@code Credentials}.
+	 */
+	private void reauthenticate (final Credentials rejected)
+	{
+		if (credentials == rejected
+			&& compareAndSetState(
+				ApplicationState.AUTHENTICATED,
+				ApplicationState.AUTHENTICATING))
+		{
+			// A refresh already in progress serves as well as a new one.
+			beginAuthentication();
+		}
+	}
+
+	/**
+	 * {@code Credentials} are the data, from a single authentication, used
+	 * with all secure API calls. They are replaced as a whole, so a request
+	 * never mixes the data of two authentications.
+	 */
+	private static final class Credentials
+	{
+		/**
+		 * The authorization token to use with all secure API calls.
+		 */
+		final String authorizationToken;
+
+		/**
+		 * The String url that is to be used for future downloads.
+		 */
+		final String downloadUrl;
+
+		/**
+		 * The String to make authenticated API calls to.
+		 */
+		final String apiUrl;
+
+		/**
+		 * Construct {@link Credentials}.
+		 *
+		 * @param authorizationToken
+		 *        The authorization token to use with all secure API calls.
+		 * @param downloadUrl
+		 *        The String url that is to be used for future downloads.
+		 * @param apiUrl
+		 *        The String to make authenticated API calls to.
+		 */
+		Credentials (
+			final String authorizationToken,
+			final String downloadUrl,
+			final String apiUrl)
+		{
+			this.authorizationToken = authorizationToken;
+			this.downloadUrl = downloadUrl;
+			this.apiUrl = apiUrl;
+		}
+	}
+
+	/**
+	 * The {@link Credentials} from the most recent authentication, or {@code
+	 * null} if the account has not been authenticated.
+	 */
+	private volatile @Nullable Credentials credentials;
+
+	/**
+	 * The fraction of the lifetime of the {@link #credentials} after which
+	 * they are {@linkplain #refresh() refreshed}. The rest of the lifetime
+	 * leaves ample time for the refresh to complete, retries included,
+	 * before the current credentials expire.
+	 */
+	private static final double REFRESH_AFTER = 0.75;
+
+	/**
+	 * The {@link ScheduledFuture} that holds the timer until the application
+	 * is re-authenticated.
+	 */
+	private @Nullable ScheduledFuture<?> reauthenticateScheduledFuture;
+
+	/**
+	 * Reset the {@link ScheduledFuture} ({@link
+	 * #reauthenticateScheduledFuture}) that holds the timer until the
+	 * application's credentials are {@linkplain #refresh() refreshed}.
+	 *
+	 * @param timeUntilExpires
+	 *        The time in milliseconds until the current credentials expire.
+	 */
+	private void resetReauthenticateScheduledFuture (
+		final long timeUntilExpires)
+	{
+		synchronized (authenticationLock)
+		{
+			if (reauthenticateScheduledFuture != null)
+			{
+				reauthenticateScheduledFuture.cancel(false);
+			}
+			// The refresh runs the authenticator, which must not hold up the
+			// timer.
+			reauthenticateScheduledFuture =
+				ApplicationRuntime.startTimer(
+					(long) (timeUntilExpires * REFRESH_AFTER),
+					() -> ApplicationRuntime.scheduleTask(this::refresh));
+		}
+	}
+
+	/**
+	 * Update the data that authorizes the application to use with all secure
+	 * API calls.
+	 *
 	 * @param authorizationToken
 	 *        The authorization token to use with all secure API calls. This
 	 *        authorization token is valid for the next {@code timeUntilExpires}
@@ -439,7 +1397,7 @@ public class AuthenticationContext
 	 * @param apiUrl
 	 *        The String to make authenticated API calls to.
 	 * @param timeUntilExpires
-	 *        The time in milliseconds until the {@link #authorizationToken}
+	 *        The time in milliseconds until the {@code authorizationToken}
 	 *        will expire.
 	 */
 	public static void setAuthorizationData (
@@ -448,14 +1406,285 @@ public class AuthenticationContext
 		final String apiUrl,
 		final long timeUntilExpires)
 	{
-		soleInstance.authorizationToken = authorizationToken;
-		soleInstance.downloadUrl = downloadUrl;
-		soleInstance.apiUrl = apiUrl;
+		soleInstance.updateCredentials(
+			authorizationToken, downloadUrl, apiUrl, timeUntilExpires);
+	}
+
+	/**
+	 * Update the data that authorizes the given account to use with all
+	 * secure API calls. It goes to the {@linkplain #session(String, String)
+	 * session} for the account if there is one, or else to the {@link
+	 * #soleInstance} if it serves the account; otherwise the account has
+	 * since been changed or its session closed, and it is discarded.
+	 *
+	 * @param accountId
+	 *        The identifier of the account that was authorized.
+	 * @param authorizationToken
+	 *        The authorization token to use with all secure API calls. This
+	 *        authorization token is valid for the next {@code timeUntilExpires}
+	 *        milliseconds.
+	 * @param downloadUrl
+	 *        The String url that is to be used for future downloads.
+	 * @param apiUrl
+	 *        The String to make authenticated API calls to.
+	 * @param timeUntilExpires
+	 *        The time in milliseconds until the {@code authorizationToken}
+	 *        will expire.
+	 */
+	public static void setAuthorizationData (
+		final String accountId,
+		final String authorizationToken,
+		final String downloadUrl,
+		final String apiUrl,
+		final long timeUntilExpires)
+	{
+		final AuthenticationContext context = context(accountId);
+		if (context != null)
+		{
+			context.updateCredentials(
+				authorizationToken, downloadUrl, apiUrl, timeUntilExpires);
+		}
+	}
+
+	/**
+	 * Replace the {@link #credentials} of this {@link AuthenticationContext}
+	 * with those of a new authentication, and keep them in the credential
+	 * cache if this is the {@link #soleInstance} and the cache is in use. This
+	 * completes the {@link #authentication} in progress.
+	 *
+	 * @param authorizationToken
+	 *        The authorization token to use with all secure API calls.
+	 * @param downloadUrl
+	 *        The String url that is to be used for future downloads.
+	 * @param apiUrl
+	 *        The String to make authenticated API calls to.
+	 * @param timeUntilExpires
+	 *        The time in milliseconds until the {@code authorizationToken}
+	 *        will expire.
+	 */
+	private void updateCredentials (
+		final String authorizationToken,
+		final String downloadUrl,
+		final String apiUrl,
+		final long timeUntilExpires)
+	{
+		credentials = new Credentials(authorizationToken, downloadUrl, apiUrl);
+		resetReauthenticateScheduledFuture(timeUntilExpires);
+		final CompletableFuture<AuthenticationContext> future =
+			authentication.getAndSet(null);
+		// The account may have been changed while authenticating, in which
+		// case this authentication, and the requests it held, are obsolete.
+		if (compareAndSetState(
+			ApplicationState.AUTHENTICATING, ApplicationState.AUTHENTICATED))
+		{
+			sendWaitingRequests();
+		}
+		if (future != null)
+		{
+			future.complete(this);
+		}
+		final String accountId = this.accountId;
+		if (this == soleInstance
+			&& accountId != null
+			&& PropertiesManager.credentialCacheEnabled())
+		{
+			PropertiesManager.cacheCredentials(
+				accountId,
+				authorizationToken,
+				downloadUrl,
+				apiUrl,
+				System.currentTimeMillis() + timeUntilExpires);
+		}
+	}
+
+	/**
+	 * Update the data that authorizes the application to use with all secure
+	 * API calls, as {@link #setAuthorizationData(String, String, String, long)
+	 * setAuthorizationData} does, but without caching it; the data was itself
+	 * restored from the credential cache.
+	 *
+	 * @param authorizationToken
+	 *        The authorization token to use with all secure API calls.
+	 * @param downloadUrl
+	 *        The String url that is to be used for future downloads.
+	 * @param apiUrl
+	 *        The String to make authenticated API calls to.
+	 * @param timeUntilExpires
+	 *        The time in milliseconds until the {@code authorizationToken}
+	 *        will expire.
+	 */
+	public static void restoreAuthorizationData (
+		final String authorizationToken,
+		final String downloadUrl,
+		final String apiUrl,
+		final long timeUntilExpires)
+	{
+		soleInstance.credentials =
+			new Credentials(authorizationToken, downloadUrl, apiUrl);
 		soleInstance.resetReauthenticateScheduledFuture(timeUntilExpires);
 	}
 
 	/**
-	 * Construct a {@link AuthenticationContext}.
+	 * The number of {@link APIRequest}s passed to the {@link Client}.
+	 */
+	private final AtomicLong sentCount = new AtomicLong();
+
+	/**
+	 * The number of times the {@link #authenticator} has been run.
+	 */
+	private final AtomicLong authenticationCount = new AtomicLong();
+
+	/**
+	 * Answer the identifier of the account of this {@link
+	 * AuthenticationContext}.
+	 *
+	 * @return A String, or {@code null} if there is no account.
+	 */
+	public @Nullable String account ()
+	{
+		return accountId;
+	}
+
+	/**
+	 * Answer the number of {@link APIRequest}s waiting to be sent.
+	 *
+	 * @return An {@code int}.
+	 */
+	public int waiting ()
+	{
+		return waitingRequests.size();
+	}
+
+	/**
+	 * Answer the number of {@link APIRequest}s passed to the {@link Client}.
+	 *
+	 * @return A {@code long}.
+	 */
+	public long sent ()
+	{
+		return sentCount.get();
+	}
+
+	/**
+	 * Answer the number of times the account has been authenticated with the
+	 * server; credentials restored from the cache are not counted.
+	 *
+	 * @return A {@code long}.
+	 */
+	public long authentications ()
+	{
+		return authenticationCount.get();
+	}
+
+	/**
+	 * Process the provided {@link APIRequest} for the account of this {@link
+	 * AuthenticationContext}, as {@link #processRequest(APIRequest)} does for
+	 * the {@link #soleInstance}.
+	 *
+	 * @param request
+	 *        A {@code SecureRequest}.
+	 */
+	public void process (final APIRequest<?> request)
+	{
+		privateProcessRequest(request, Admission.WAIT);
+	}
+
+	/**
+	 * Process the provided {@link APIRequest} for the account of this {@link
+	 * AuthenticationContext}, as {@link #offerRequest(APIRequest)} does for
+	 * the {@link #soleInstance}.
+	 *
+	 * @param request
+	 *        A {@code SecureRequest}.
+	 * @return {@code true} if the request was accepted; {@code false} if it
+	 *         was refused, and should be offered again later.
+	 */
+	public boolean offer (final APIRequest<?> request)
+	{
+		return privateProcessRequest(request, Admission.OFFER);
+	}
+
+	/**
+	 * End this {@linkplain #session(String, String) session}: it stops
+	 * refreshing its credentials, drops its waiting {@link APIRequest}s, and
+	 * ignores any made afterward. {@link #session(String, String)} starts a
+	 * new session for the account.
+	 */
+	public void close ()
+	{
+		if (accountId == null || !sessions.remove(accountId, this))
+		{
+			return;
+		}
+		setState(ApplicationState.ACCOUNT_UNINITIALIZED);
+		synchronized (authenticationLock)
+		{
+			final ScheduledFuture<?> future = reauthenticateScheduledFuture;
+			if (future != null)
+			{
+				future.cancel(false);
+			}
+		}
+		clearAuthenticationCredentials();
+		waitingRequests.clear();
+		abandonAuthentication("The session was closed");
+	}
+
+	/**
+	 * Fail the {@link #authentication} in progress, if any, as it no longer
+	 * serves the account.
+	 *
+	 * @param reason
+	 *        Why it no longer serves the account.
+	 */
+	private void abandonAuthentication (final String reason)
+	{
+		final CompletableFuture<AuthenticationContext> pending =
+			authentication.getAndSet(null);
+		if (pending != null)
+		{
+			pending.completeExceptionally(new StateException(
+				reason + " while authenticating"));
+		}
+	}
+
+	@Override
+	public String toString ()
+	{
+		return String.format(
+			"%s(%s, %s, %d waiting, %d sent, %d authentications)",
+			getClass().getSimpleName(),
+			accountId,
+			state(),
+			waiting(),
+			sent(),
+			authentications());
+	}
+
+	/**
+	 * Construct the {@link #soleInstance}.
 	 */
-	private AuthenticationContext () { /* Do Nothing */ }
+	private AuthenticationContext ()
+	{
+		this.sessionState = null;
+	}
+
+	/**
+	 * Construct a {@linkplain #session(String, String) session}.
+	 *
+	 * @param accountId
+	 *        The identifier for the account.
+	 * @param applicationKey
+	 *        The application key for the account.
+	 */
+	private AuthenticationContext (
+		final String accountId,
+		final String applicationKey)
+	{
+		this.accountId = accountId;
+		this.applicationKey = applicationKey;
+		this.sessionState =
+			new AtomicReference<>(ApplicationState.ACCOUNT_INITIALIZED);
+		waitingRequests.setCapacity(soleInstance.waitingRequests.capacity());
+	}
 }
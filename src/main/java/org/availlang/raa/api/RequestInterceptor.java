@@ -0,0 +1,77 @@
+/*
+ * RequestInterceptor.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.api;
+import com.avail.utility.json.JSONObject;
+import org.availlang.raa.client.Client;
+import org.availlang.raa.exceptions.ApplicationException;
+
+import java.util.function.Consumer;
+
+/**
+ * A {@code RequestInterceptor} observes, and may alter, the outcome of an
+ * {@link APIRequest} before it reaches the request's own continuations.
+ *
+ * <p>
+ * Interceptors are {@linkplain APIRequest#addInterceptor(Object,
+ * RequestInterceptor) installed} by {@link Client}s that wrap other {@code
+ * Client}s, so that they learn when a request they passed on has completed.
+ * The most recently installed interceptor sees the outcome first; each passes
+ * it on by calling {@code next}, or withholds it by not doing so.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public interface RequestInterceptor
+{
+	/**
+	 * Intercept the content of a successful response.
+	 *
+	 * @param content
+	 *        The {@link JSONObject} the response is to be built from.
+	 * @param next
+	 *        The {@link Consumer} that passes the content on.
+	 */
+	void content (final JSONObject content, final Consumer<JSONObject> next);
+
+	/**
+	 * Intercept a failure.
+	 *
+	 * @param exception
+	 *        The {@link ApplicationException} that describes the failure.
+	 * @param next
+	 *        The {@link Consumer} that passes the failure on.
+	 */
+	void failure (
+		final ApplicationException exception,
+		final Consumer<ApplicationException> next);
+}
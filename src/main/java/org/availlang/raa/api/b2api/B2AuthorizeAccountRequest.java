@@ -131,7 +131,9 @@ extends APIRequest<B2AuthorizeAccountResponse>
 	}
 
 	/**
-	 * Authorize access to the B2 account.
+	 * Authorize access to the B2 account. The outcome, new credentials or a
+	 * failure, is reported to the {@link AuthenticationContext} that serves
+	 * the account.
 	 *
 	 * @param acctId
 	 *        The {@link AuthenticationContext#accountId()}.
@@ -144,25 +146,20 @@ extends APIRequest<B2AuthorizeAccountResponse>
 		final String acctId,
 		final String appKey)
 	{
-		final Consumer<ApplicationException> failureContinuation = ex ->
-		{
-			ex.printStackTrace();
-			ex.exitCode.shutdown();
-		};
 		final B2AuthorizeAccountRequest request =
 			new B2AuthorizeAccountRequest(
 				acctId,
 				appKey,
 				response ->
 				{
-					//noinspection Convert2MethodRef
 					AuthenticationContext.setAuthorizationData(
+						acctId,
 						response.authorizationToken(),
 						response.downloadUrl(),
 						response.apiUrl(),
 						response.timeUntilExpires());
 				},
-				failureContinuation);
+				ex -> AuthenticationContext.authenticationFailed(acctId, ex));
 		ApplicationRuntime.client().processRequest(request);
 	}
 
@@ -34,20 +34,79 @@ package org.availlang.raa.api.b2api;
 import com.avail.utility.json.JSONObject;
 import org.availlang.raa.api.APIResponse;
 
+import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.Set;
 
 /**
- * A {@code B2ListBucketsResponse} is is an {@link APIResponse} that is the
- * result of a {@link B2ListBucketsRequest}.
+ * A {@code B2DownloadFileResponse} is an {@link APIResponse} that is the
+ * result of a {@link B2DownloadFileByIdRequest}. Its content describes the
+ * file that was written to disk, built from the headers of the download
+ * response.
  *
  * @author Richard Arriaga &lt;rich@availlang.org&gt;
- * @see <a href="https://www.backblaze.com/b2/docs/b2_list_buckets.html">
- *     List B2 Buckets</a>
+ * @see <a href="https://www.backblaze.com/b2/docs/b2_download_file_by_id.html">
+ *     Download File By Id</a>
  */
 public class B2DownloadFileResponse
 extends APIResponse
 {
+	/**
+	 * Answer the unique id of the downloaded file.
+	 *
+	 * @return A String.
+	 */
+	public String fileId ()
+	{
+		return content().getString("fileId");
+	}
+
+	/**
+	 * Answer the name of the downloaded file.
+	 *
+	 * @return A String.
+	 */
+	public String fileName ()
+	{
+		return content().getString("fileName");
+	}
+
+	/**
+	 * Answer the number of bytes written to disk.
+	 *
+	 * @return A {@code long}.
+	 */
+	public long contentLength ()
+	{
+		return content().getNumber("contentLength").getLong();
+	}
+
+	/**
+	 * Answer the lowercase hexadecimal SHA-1 digest of the file as reported
+	 * by B2.
+	 *
+	 * @return A String, or {@code null} if B2 reported none, as is the case
+	 *         for a large file whose uploader did not supply one.
+	 */
+	public @Nullable String contentSha1 ()
+	{
+		return content().containsKey("contentSha1")
+			? content().getString("contentSha1")
+			: null;
+	}
+
+	/**
+	 * Answer whether the data written to disk was checked against the {@link
+	 * #contentSha1()}.
+	 *
+	 * @return {@code true} if the download was verified; {@code false} if
+	 *         there was no digest to check or verification was disabled.
+	 */
+	public boolean isVerified ()
+	{
+		return content().getBoolean("verified");
+	}
+
 	/**
 	 * Answer the {@link Set} of Strings that represent the {@link
 	 * B2ListBucketsRequest}s this {@link B2DownloadFileResponse} is compatible
@@ -40,10 +40,10 @@ import org.availlang.raa.B2Bucket.BucketType;
 import org.availlang.raa.api.APICatalogue;
 import org.availlang.raa.api.APIGroup;
 import org.availlang.raa.api.APIRequest;
-import org.availlang.raa.api.AuthenticationContext;
 import org.availlang.raa.exceptions.ApplicationException;
 import org.availlang.raa.exceptions.CompatibilityException;
 
+import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -118,12 +118,19 @@ extends APIRequest<B2ListBucketsResponse>
 		}
 	}
 
+	@Override
+	public @Nullable String bodyCacheKey ()
+	{
+		// The body only ever varies with the account.
+		return accountId();
+	}
+
 	@Override
 	public void writeTo (final JSONWriter writer)
 	{
 		writer.startObject();
 		writer.write("accountId");
-		writer.write(AuthenticationContext.accountId());
+		writer.write(accountId());
 		writer.write("bucketTypes");
 		writer.startArray();
 		for (final BucketType type : BucketType.values())
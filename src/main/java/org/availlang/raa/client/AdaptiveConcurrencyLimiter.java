@@ -0,0 +1,784 @@
+/*
+ * AdaptiveConcurrencyLimiter.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client;
+import com.avail.utility.json.JSONObject;
+import org.availlang.raa.ApplicationRuntime;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.api.APIRequest;
+import org.availlang.raa.api.APIResponse;
+import org.availlang.raa.api.RequestInterceptor;
+import org.availlang.raa.api.RequestPriority;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.exceptions.DeadlineException;
+import org.availlang.raa.exceptions.ResponseException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * An {@code AdaptiveConcurrencyLimiter} is a {@link Client} that limits the
+ * number of {@link APIRequest}s another {@code Client} has in flight to each
+ * {@link APICatalogue} endpoint, adjusting each limit as it goes.
+ *
+ * <p>
+ * Each limit grows additively, by about one request per round trip, while
+ * the endpoint keeps the requests it is given busy and answers them about as
+ * quickly as it usually does. The latency measured includes any time spent
+ * waiting to be sent, so it also rises when requests back up anywhere on
+ * this side of the network. It shrinks multiplicatively when the endpoint
+ * asks the client to {@linkplain ResponseException#isThrottled() back off},
+ * or, more gently, when its latency climbs well above the usual. At most one
+ * decrease is made per round trip, so a burst of {@code 503}s from requests
+ * that were all in flight together counts only once.
+ * </p>
+ *
+ * <p>
+ * An attempt {@linkplain APIRequest#cancelAttempts() cancelled} because
+ * another attempt at the same request, such as a hedge, answered first only
+ * frees its slot. Its failure and its latency say nothing about the endpoint,
+ * so neither adjusts the limit.
+ * </p>
+ *
+ * <p>
+ * Requests beyond the limit wait in order for a slot rather than failing. A
+ * waiting request is sent from a task {@linkplain
+ * ApplicationRuntime#scheduleTask(RequestPriority, Runnable) scheduled} in
+ * its lane when a slot frees, unless it has passed its {@linkplain
+ * APIRequest#setTimeout(long) deadline} by then, when it fails with a {@link
+ * DeadlineException} instead.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public class AdaptiveConcurrencyLimiter
+implements Client
+{
+	/**
+	 * The default number of requests allowed in flight to each endpoint
+	 * before any have completed.
+	 */
+	public static final int DEFAULT_INITIAL_LIMIT = 16;
+
+	/**
+	 * The default smallest limit.
+	 */
+	public static final int DEFAULT_MINIMUM_LIMIT = 1;
+
+	/**
+	 * The default largest limit.
+	 */
+	public static final int DEFAULT_MAXIMUM_LIMIT = 256;
+
+	/**
+	 * The factor a limit is multiplied by when the endpoint throttles a
+	 * request.
+	 */
+	private static final double THROTTLED_BACKOFF = 0.5;
+
+	/**
+	 * The factor a limit is multiplied by when the endpoint's latency climbs
+	 * past the {@link #LATENCY_TOLERANCE}.
+	 */
+	private static final double LATENCY_BACKOFF = 0.9;
+
+	/**
+	 * How many times its usual latency an endpoint may take to answer before
+	 * the limit is decreased.
+	 */
+	private static final double LATENCY_TOLERANCE = 2.0;
+
+	/**
+	 * How many times its usual latency an endpoint may take to answer while
+	 * the limit is still increased. Latency between this and the {@link
+	 * #LATENCY_TOLERANCE} holds the limit steady.
+	 */
+	private static final double GROWTH_TOLERANCE = 1.25;
+
+	/**
+	 * The weight of each new sample in the recent latency.
+	 */
+	private static final double RECENT_WEIGHT = 0.2;
+
+	/**
+	 * The weight of each new sample in the usual latency while it is above
+	 * the usual latency. The usual latency falls straight to the recent
+	 * latency whenever that is lower, so that it tracks the latency of an
+	 * unloaded endpoint rather than following the latency up as the limit
+	 * grows.
+	 */
+	private static final double USUAL_WEIGHT = 0.002;
+
+	/**
+	 * An {@code EndpointLimit} is the limit on, and the statistics of, the
+	 * requests sent to a single {@link APICatalogue} endpoint.
+	 */
+	public static final class EndpointLimit
+	{
+		/**
+		 * The {@link APICatalogue} endpoint limited.
+		 */
+		public final APICatalogue catalogue;
+
+		/**
+		 * The smallest limit.
+		 */
+		private final int minimumLimit;
+
+		/**
+		 * The largest limit.
+		 */
+		private final int maximumLimit;
+
+		/**
+		 * The number of requests allowed in flight at once.
+		 */
+		private double limit;
+
+		/**
+		 * The number of requests in flight.
+		 */
+		private int inFlight;
+
+		/**
+		 * The requests waiting for a slot, in the order they arrived.
+		 */
+		private final Queue<APIRequest<?>> waiting = new ArrayDeque<>();
+
+		/**
+		 * The exponentially weighted average of recent latencies, in
+		 * nanoseconds, or {@code 0} before the first request completes.
+		 */
+		private double recentLatency;
+
+		/**
+		 * The latency, in nanoseconds, that recent latencies are judged
+		 * against; the lowest recent latency, drifting slowly upward.
+		 */
+		private double usualLatency;
+
+		/**
+		 * The {@link System#nanoTime()} of the last decrease of the limit.
+		 */
+		private long lastDecrease;
+
+		/**
+		 * The number of requests completed.
+		 */
+		private long completed;
+
+		/**
+		 * The number of requests that the endpoint throttled.
+		 */
+		private long throttled;
+
+		/**
+		 * The number of requests that failed for any other reason.
+		 */
+		private long failed;
+
+		/**
+		 * The number of attempts cancelled because another attempt at the
+		 * same request answered first.
+		 */
+		private long cancelled;
+
+		/**
+		 * Answer the number of requests allowed in flight at once.
+		 *
+		 * @return An {@code int}.
+		 */
+		public synchronized int limit ()
+		{
+			return (int) limit;
+		}
+
+		/**
+		 * Answer the number of requests in flight.
+		 *
+		 * @return An {@code int}.
+		 */
+		public synchronized int inFlight ()
+		{
+			return inFlight;
+		}
+
+		/**
+		 * Answer the number of requests waiting for a slot.
+		 *
+		 * @return An {@code int}.
+		 */
+		public synchronized int waiting ()
+		{
+			return waiting.size();
+		}
+
+		/**
+		 * Answer the average latency of recent requests.
+		 *
+		 * @return The latency in milliseconds.
+		 */
+		public synchronized double recentLatencyMillis ()
+		{
+			return recentLatency / 1.0e6;
+		}
+
+		/**
+		 * Answer the number of requests completed.
+		 *
+		 * @return A {@code long}.
+		 */
+		public synchronized long completed ()
+		{
+			return completed;
+		}
+
+		/**
+		 * Answer the number of requests that the endpoint throttled.
+		 *
+		 * @return A {@code long}.
+		 */
+		public synchronized long throttled ()
+		{
+			return throttled;
+		}
+
+		/**
+		 * Answer the number of requests that failed for a reason other than
+		 * throttling.
+		 *
+		 * @return A {@code long}.
+		 */
+		public synchronized long failed ()
+		{
+			return failed;
+		}
+
+		/**
+		 * Answer the number of attempts cancelled because another attempt at
+		 * the same request answered first. These are not counted as {@link
+		 * #completed()}.
+		 *
+		 * @return A {@code long}.
+		 */
+		public synchronized long cancelled ()
+		{
+			return cancelled;
+		}
+
+		/**
+		 * Take a slot for the provided request if one is free, or else queue
+		 * the request to wait for one.
+		 *
+		 * @param request
+		 *        The {@link APIRequest} to send.
+		 * @return {@code true} if the request may be sent now; {@code false}
+		 *         if it is waiting.
+		 */
+		synchronized boolean admit (final APIRequest<?> request)
+		{
+			if (inFlight < (int) limit)
+			{
+				inFlight++;
+				return true;
+			}
+			waiting.add(request);
+			return false;
+		}
+
+		/**
+		 * Decrease the {@link #limit} by the provided factor, unless it was
+		 * already decreased within the last round trip.
+		 *
+		 * @param factor
+		 *        The factor to multiply the limit by.
+		 * @param now
+		 *        The current {@link System#nanoTime()}.
+		 */
+		private void decrease (final double factor, final long now)
+		{
+			if (now - lastDecrease >= (long) recentLatency)
+			{
+				limit = Math.max(minimumLimit, limit * factor);
+				lastDecrease = now;
+			}
+		}
+
+		/**
+		 * Release the slot of a completed request, adjust the {@link #limit}
+		 * by its outcome, and take slots for as many waiting requests as now
+		 * fit.
+		 *
+		 * @param latency
+		 *        How long the request took, in nanoseconds.
+		 * @param exception
+		 *        The {@link ApplicationException} the request failed with, or
+		 *        {@code null} if it succeeded.
+		 * @param expired
+		 *        The {@link List} to add the waiting {@link APIRequest}s that
+		 *        have passed their deadline to; they take no slots, and must
+		 *        be failed by the caller.
+		 * @return The {@code List} of waiting {@code APIRequest}s that may now
+		 *         be sent.
+		 */
+		synchronized List<APIRequest<?>> release (
+			final long latency,
+			final @Nullable ApplicationException exception,
+			final List<APIRequest<?>> expired)
+		{
+			final long now = System.nanoTime();
+			final boolean saturated = inFlight >= (int) limit;
+			inFlight--;
+			completed++;
+			if (exception instanceof ResponseException
+				&& ((ResponseException) exception).isThrottled())
+			{
+				throttled++;
+				decrease(THROTTLED_BACKOFF, now);
+			}
+			else
+			{
+				if (exception != null)
+				{
+					failed++;
+				}
+				if (recentLatency == 0)
+				{
+					recentLatency = latency;
+					usualLatency = latency;
+				}
+				else
+				{
+					recentLatency += RECENT_WEIGHT * (latency - recentLatency);
+					usualLatency = recentLatency < usualLatency
+						? recentLatency
+						: usualLatency
+							+ USUAL_WEIGHT * (latency - usualLatency);
+				}
+				if (recentLatency > LATENCY_TOLERANCE * usualLatency)
+				{
+					decrease(LATENCY_BACKOFF, now);
+				}
+				else if (exception == null
+					&& saturated
+					&& recentLatency <= GROWTH_TOLERANCE * usualLatency)
+				{
+					// Grow by one slot per full window of completions, which
+					// is to say about once per round trip.
+					limit = Math.min(maximumLimit, limit + 1.0 / limit);
+				}
+			}
+			return admitWaiting(expired);
+		}
+
+		/**
+		 * Release the slot of a cancelled attempt without adjusting the
+		 * {@link #limit}, and take slots for as many waiting requests as now
+		 * fit.
+		 *
+		 * @param expired
+		 *        The {@link List} to add the waiting {@link APIRequest}s that
+		 *        have passed their deadline to; they take no slots, and must
+		 *        be failed by the caller.
+		 * @return The {@code List} of waiting {@code APIRequest}s that may now
+		 *         be sent.
+		 */
+		synchronized List<APIRequest<?>> releaseCancelled (
+			final List<APIRequest<?>> expired)
+		{
+			inFlight--;
+			cancelled++;
+			return admitWaiting(expired);
+		}
+
+		/**
+		 * Take slots for as many waiting requests as fit, passing over those
+		 * that have {@linkplain APIRequest#hasExpired() expired} while they
+		 * waited.
+		 *
+		 * <p>
+		 * <strong>NOTE:</strong> Must be called while holding the monitor of
+		 * this {@link EndpointLimit}.
+		 * </p>
+		 *
+		 * @param expired
+		 *        The {@link List} to add the expired {@link APIRequest}s to.
+		 * @return The {@code List} of waiting {@code APIRequest}s that may now
+		 *         be sent.
+		 */
+		private List<APIRequest<?>> admitWaiting (
+			final List<APIRequest<?>> expired)
+		{
+			if (waiting.isEmpty() || inFlight >= (int) limit)
+			{
+				return Collections.emptyList();
+			}
+			final List<APIRequest<?>> admitted = new ArrayList<>();
+			while (!waiting.isEmpty() && inFlight < (int) limit)
+			{
+				final APIRequest<?> request = waiting.remove();
+				if (request.hasExpired())
+				{
+					expired.add(request);
+				}
+				else
+				{
+					admitted.add(request);
+					inFlight++;
+				}
+			}
+			return admitted;
+		}
+
+		@Override
+		public synchronized String toString ()
+		{
+			return String.format(
+				"%s: limit %d, %d in flight, %d waiting, %.1f ms recent "
+					+ "latency, %d completed (%d throttled, %d failed), %d "
+					+ "cancelled",
+				catalogue.name(),
+				(int) limit,
+				inFlight,
+				waiting.size(),
+				recentLatency / 1.0e6,
+				completed,
+				throttled,
+				failed,
+				cancelled);
+		}
+
+		/**
+		 * Construct an {@link EndpointLimit}.
+		 *
+		 * @param catalogue
+		 *        The {@link APICatalogue} endpoint limited.
+		 * @param initialLimit
+		 *        The number of requests allowed in flight before any have
+		 *        completed.
+		 * @param minimumLimit
+		 *        The smallest limit.
+		 * @param maximumLimit
+		 *        The largest limit.
+		 */
+		EndpointLimit (
+			final APICatalogue catalogue,
+			final int initialLimit,
+			final int minimumLimit,
+			final int maximumLimit)
+		{
+			this.catalogue = catalogue;
+			this.limit = initialLimit;
+			this.minimumLimit = minimumLimit;
+			this.maximumLimit = maximumLimit;
+			this.lastDecrease = System.nanoTime();
+		}
+	}
+
+	/**
+	 * {@code Attempts} is the {@link RequestInterceptor} that releases the
+	 * slots taken by the attempts to send a single {@link APIRequest} as they
+	 * complete. A request usually has one attempt in flight at a time, but a
+	 * {@link HedgingClient} may send a second before the first completes.
+	 */
+	private final class Attempts
+	implements RequestInterceptor
+	{
+		/**
+		 * The {@link EndpointLimit} the slots were taken from.
+		 */
+		private final EndpointLimit endpoint;
+
+		/**
+		 * The {@link APIRequest} sent.
+		 */
+		private final APIRequest<?> request;
+
+		/**
+		 * The {@link System#nanoTime()} at which the slot of each attempt in
+		 * flight was taken, oldest first, so that the latency includes any
+		 * time spent waiting to be sent. Completions cannot be matched to
+		 * attempts, so each is assumed to be of the oldest.
+		 */
+		private final Queue<Long> starts = new ArrayDeque<>();
+
+		/**
+		 * The {@linkplain APIRequest#cancellations() cancellations} of the
+		 * {@link #request} when each attempt in {@link #starts} was sent.
+		 */
+		private final Queue<Integer> cancellations = new ArrayDeque<>();
+
+		/**
+		 * Whether this interceptor has been removed from the {@link
+		 * #request} because no attempts remain in flight.
+		 */
+		private boolean detached;
+
+		/**
+		 * Record an attempt whose slot was taken at the provided time.
+		 *
+		 * @param start
+		 *        The {@link System#nanoTime()} at which the slot was taken.
+		 * @return {@code true} if the attempt was recorded; {@code false} if
+		 *         this interceptor has already been detached and the attempt
+		 *         must be recorded by a new one.
+		 */
+		synchronized boolean add (final long start)
+		{
+			if (detached)
+			{
+				return false;
+			}
+			starts.add(start);
+			cancellations.add(request.cancellations());
+			return true;
+		}
+
+		/**
+		 * Release the slot of the oldest attempt in flight, if any.
+		 *
+		 * @param exception
+		 *        The {@link ApplicationException} the attempt failed with, or
+		 *        {@code null} if it succeeded.
+		 */
+		private void release (final @Nullable ApplicationException exception)
+		{
+			final Long start;
+			final Integer cancellationsWhenSent;
+			synchronized (this)
+			{
+				start = starts.poll();
+				cancellationsWhenSent = cancellations.poll();
+				if (starts.isEmpty())
+				{
+					detached = true;
+					request.removeInterceptor(AdaptiveConcurrencyLimiter.this);
+				}
+			}
+			if (start == null)
+			{
+				// A misbehaving client reported more outcomes than there
+				// were attempts.
+				return;
+			}
+			// An attempt that was in flight when the request's attempts were
+			// cancelled only reports its cancellation.
+			final List<APIRequest<?>> expired = new ArrayList<>(0);
+			final List<APIRequest<?>> sendable =
+				cancellationsWhenSent != request.cancellations()
+					? endpoint.releaseCancelled(expired)
+					: endpoint.release(
+						System.nanoTime() - start, exception, expired);
+			for (final APIRequest<?> next : sendable)
+			{
+				final long admitted = System.nanoTime();
+				ApplicationRuntime.scheduleTask(
+					next.priority(),
+					() -> send(endpoint, next, admitted));
+			}
+			// Fail the expired requests only now, outside the monitor of the
+			// endpoint, as their continuations may send more requests.
+			for (final APIRequest<?> next : expired)
+			{
+				next.failureContinuation().accept(
+					new DeadlineException(next));
+			}
+		}
+
+		@Override
+		public void content (
+			final JSONObject content,
+			final Consumer<JSONObject> next)
+		{
+			release(null);
+			next.accept(content);
+		}
+
+		@Override
+		public void failure (
+			final ApplicationException exception,
+			final Consumer<ApplicationException> next)
+		{
+			release(exception);
+			next.accept(exception);
+		}
+
+		/**
+		 * Construct an {@link Attempts}.
+		 *
+		 * @param endpoint
+		 *        The {@link EndpointLimit} the slots were taken from.
+		 * @param request
+		 *        The {@link APIRequest} sent.
+		 */
+		Attempts (final EndpointLimit endpoint, final APIRequest<?> request)
+		{
+			this.endpoint = endpoint;
+			this.request = request;
+		}
+	}
+
+	/**
+	 * The {@link Client} that sends the requests.
+	 */
+	private final Client client;
+
+	/**
+	 * The {@link EndpointLimit} of each {@link APICatalogue} endpoint.
+	 */
+	private final Map<APICatalogue, EndpointLimit> endpoints =
+		new EnumMap<>(APICatalogue.class);
+
+	/**
+	 * Answer the {@link EndpointLimit} of the provided endpoint.
+	 *
+	 * @param catalogue
+	 *        The {@link APICatalogue} endpoint.
+	 * @return An {@code EndpointLimit}.
+	 */
+	public EndpointLimit endpoint (final APICatalogue catalogue)
+	{
+		return endpoints.get(catalogue);
+	}
+
+	/**
+	 * Send the provided request, for which a slot has been taken, through
+	 * the {@link #client}.
+	 *
+	 * @param endpoint
+	 *        The {@link EndpointLimit} the slot was taken from.
+	 * @param request
+	 *        The {@link APIRequest} to send.
+	 * @param start
+	 *        The {@link System#nanoTime()} at which the slot was taken.
+	 */
+	private void send (
+		final EndpointLimit endpoint,
+		final APIRequest<?> request,
+		final long start)
+	{
+		Attempts attempts;
+		do
+		{
+			attempts = (Attempts) request.interceptor(
+				this, () -> new Attempts(endpoint, request));
+		}
+		while (!attempts.add(start));
+		client.processRequest(request);
+	}
+
+	@Override
+	public <Response extends APIResponse> void processRequest (
+		final APIRequest<Response> request)
+	{
+		final EndpointLimit endpoint = endpoints.get(request.catalogue());
+		if (endpoint.admit(request))
+		{
+			send(endpoint, request, System.nanoTime());
+		}
+	}
+
+	@Override
+	public String toString ()
+	{
+		final StringBuilder builder =
+			new StringBuilder("AdaptiveConcurrencyLimiter");
+		for (final EndpointLimit endpoint : endpoints.values())
+		{
+			builder.append('\n').append(endpoint);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Construct an {@link AdaptiveConcurrencyLimiter}.
+	 *
+	 * @param client
+	 *        The {@link Client} that sends the requests.
+	 * @param initialLimit
+	 *        The number of requests allowed in flight to each endpoint before
+	 *        any have completed.
+	 * @param minimumLimit
+	 *        The smallest limit.
+	 * @param maximumLimit
+	 *        The largest limit.
+	 */
+	public AdaptiveConcurrencyLimiter (
+		final Client client,
+		final int initialLimit,
+		final int minimumLimit,
+		final int maximumLimit)
+	{
+		if (minimumLimit < 1
+			|| initialLimit < minimumLimit
+			|| maximumLimit < initialLimit)
+		{
+			throw new IllegalArgumentException(String.format(
+				"limits must satisfy 1 <= minimum (%d) <= initial (%d) <= "
+					+ "maximum (%d)",
+				minimumLimit,
+				initialLimit,
+				maximumLimit));
+		}
+		this.client = client;
+		for (final APICatalogue catalogue : APICatalogue.values())
+		{
+			endpoints.put(
+				catalogue,
+				new EndpointLimit(
+					catalogue, initialLimit, minimumLimit, maximumLimit));
+		}
+	}
+
+	/**
+	 * Construct an {@link AdaptiveConcurrencyLimiter} with the default
+	 * limits.
+	 *
+	 * @param client
+	 *        The {@link Client} that sends the requests.
+	 */
+	public AdaptiveConcurrencyLimiter (final Client client)
+	{
+		this(
+			client,
+			DEFAULT_INITIAL_LIMIT,
+			DEFAULT_MINIMUM_LIMIT,
+			DEFAULT_MAXIMUM_LIMIT);
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ * CoalescingClient.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client;
+import com.avail.utility.json.JSONObject;
+import com.avail.utility.json.JSONWriter;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.api.APIRequest;
+import org.availlang.raa.api.APIResponse;
+import org.availlang.raa.api.RequestInterceptor;
+import org.availlang.raa.exceptions.ApplicationException;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A {@code CoalescingClient} is a {@link Client} that lets concurrent,
+ * identical {@linkplain APICatalogue#isCoalescable() coalescable} {@link
+ * APIRequest}s share a single call through another {@code Client}.
+ *
+ * <p>
+ * Requests are identical if they are of the same {@link APICatalogue}
+ * operation and have the same location, authorization token and {@linkplain
+ * APIRequest#writeTo(JSONWriter) body}, or {@linkplain
+ * APIRequest#bodyCacheKey() body cache key}. The first such request is sent;
+ * any that arrive before it completes wait for it, and then each receives its
+ * own {@link APIResponse} built from the shared content, or the shared
+ * failure.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public class CoalescingClient
+implements Client
+{
+	/**
+	 * A {@code Flight} is the {@link RequestInterceptor} that shares the
+	 * outcome of a single sent {@link APIRequest} with the identical requests
+	 * that arrived while it was in flight.
+	 */
+	private final class Flight
+	implements RequestInterceptor
+	{
+		/**
+		 * The key that identifies the requests sharing this flight.
+		 */
+		private final String key;
+
+		/**
+		 * The {@link APIRequest} sent.
+		 */
+		private final APIRequest<?> leader;
+
+		/**
+		 * The {@link APIRequest}s waiting for the outcome of the {@link
+		 * #leader}.
+		 */
+		private final List<APIRequest<?>> followers = new ArrayList<>();
+
+		/**
+		 * Whether the {@link #leader} has completed, after which no more
+		 * followers are accepted.
+		 */
+		private boolean landed;
+
+		/**
+		 * Add a follower to this flight, unless it has already landed.
+		 *
+		 * @param follower
+		 *        The identical {@link APIRequest}.
+		 * @return {@code true} if the follower will share the outcome of
+		 *         the {@link #leader}; {@code false} if it must be sent
+		 *         itself.
+		 */
+		synchronized boolean join (final APIRequest<?> follower)
+		{
+			if (landed)
+			{
+				return false;
+			}
+			followers.add(follower);
+			return true;
+		}
+
+		/**
+		 * Note that the {@link #leader} has completed.
+		 *
+		 * @return The {@link List} of followers to share its outcome with.
+		 */
+		private List<APIRequest<?>> land ()
+		{
+			flights.remove(key, this);
+			leader.removeInterceptor(CoalescingClient.this);
+			synchronized (this)
+			{
+				landed = true;
+				return followers;
+			}
+		}
+
+		@Override
+		public void content (
+			final JSONObject content,
+			final Consumer<JSONObject> next)
+		{
+			final List<APIRequest<?>> shared = land();
+			try
+			{
+				next.accept(content);
+			}
+			finally
+			{
+				for (final APIRequest<?> follower : shared)
+				{
+					follower.contentConsumer().accept(content);
+				}
+			}
+		}
+
+		@Override
+		public void failure (
+			final ApplicationException exception,
+			final Consumer<ApplicationException> next)
+		{
+			final List<APIRequest<?>> shared = land();
+			try
+			{
+				next.accept(exception);
+			}
+			finally
+			{
+				for (final APIRequest<?> follower : shared)
+				{
+					follower.failureContinuation().accept(exception);
+				}
+			}
+		}
+
+		/**
+		 * Construct a {@link Flight}.
+		 *
+		 * @param key
+		 *        The key that identifies the requests sharing this flight.
+		 * @param leader
+		 *        The {@link APIRequest} sent.
+		 */
+		Flight (final String key, final APIRequest<?> leader)
+		{
+			this.key = key;
+			this.leader = leader;
+		}
+	}
+
+	/**
+	 * The {@link Client} that sends the requests.
+	 */
+	private final Client client;
+
+	/**
+	 * The {@link Flight}s in progress, keyed by the {@linkplain
+	 * #key(APIRequest) key} of their requests.
+	 */
+	private final ConcurrentMap<String, Flight> flights =
+		new ConcurrentHashMap<>();
+
+	/**
+	 * The number of requests of each {@link APICatalogue} operation that
+	 * shared another's call rather than making their own.
+	 */
+	private final Map<APICatalogue, AtomicLong> coalesced =
+		new EnumMap<>(APICatalogue.class);
+
+	/**
+	 * Answer the number of requests of the provided operation that shared
+	 * another's call rather than making their own.
+	 *
+	 * @param catalogue
+	 *        The {@link APICatalogue} operation.
+	 * @return A {@code long}.
+	 */
+	public long coalesced (final APICatalogue catalogue)
+	{
+		return coalesced.get(catalogue).get();
+	}
+
+	/**
+	 * Answer the key that identifies requests identical to the provided one.
+	 * A request whose body is fully determined by its {@linkplain
+	 * APIRequest#bodyCacheKey() body cache key} is identified by that key,
+	 * so its body is not encoded just to be compared.
+	 *
+	 * @param request
+	 *        An {@link APIRequest}.
+	 * @return A String.
+	 */
+	private static String key (final APIRequest<?> request)
+	{
+		final String bodyCacheKey = request.bodyCacheKey();
+		final String body;
+		if (bodyCacheKey != null)
+		{
+			// No JSON body starts with '#', so the two never collide.
+			body = '#' + bodyCacheKey;
+		}
+		else
+		{
+			final JSONWriter writer = new JSONWriter();
+			request.writeTo(writer);
+			body = writer.toString();
+		}
+		return request.catalogue().name() + '\n'
+			+ request.baseClientLocationIdentifier() + '\n'
+			+ (request.usesAuthorizationToken()
+				? request.authorizationToken()
+				: "") + '\n'
+			+ body;
+	}
+
+	@Override
+	public <Response extends APIResponse> void processRequest (
+		final APIRequest<Response> request)
+	{
+		final APICatalogue catalogue = request.catalogue();
+		if (!catalogue.isCoalescable())
+		{
+			client.processRequest(request);
+			return;
+		}
+		final String key = key(request);
+		while (true)
+		{
+			final Flight flight = new Flight(key, request);
+			final Flight existing = flights.putIfAbsent(key, flight);
+			if (existing == null)
+			{
+				request.addInterceptor(this, flight);
+				client.processRequest(request);
+				return;
+			}
+			if (existing.leader != request && existing.join(request))
+			{
+				coalesced.get(catalogue).incrementAndGet();
+				return;
+			}
+			if (existing.leader == request)
+			{
+				// The same request sent again while still in flight cannot
+				// wait for itself.
+				client.processRequest(request);
+				return;
+			}
+			// The flight landed as this request arrived; try again.
+			flights.remove(key, existing);
+		}
+	}
+
+	@Override
+	public String toString ()
+	{
+		final StringBuilder builder = new StringBuilder("CoalescingClient");
+		for (final Map.Entry<APICatalogue, AtomicLong> entry :
+			coalesced.entrySet())
+		{
+			if (entry.getKey().isCoalescable())
+			{
+				builder.append(String.format(
+					"%n%s: %d coalesced",
+					entry.getKey().name(),
+					entry.getValue().get()));
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Construct a {@link CoalescingClient}.
+	 *
+	 * @param client
+	 *        The {@link Client} that sends the requests.
+	 */
+	public CoalescingClient (final Client client)
+	{
+		this.client = client;
+		for (final APICatalogue catalogue : APICatalogue.values())
+		{
+			coalesced.put(catalogue, new AtomicLong());
+		}
+	}
+}
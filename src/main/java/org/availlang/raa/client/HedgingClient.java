@@ -0,0 +1,542 @@
+/*
+ * HedgingClient.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client;
+import com.avail.utility.json.JSONObject;
+import org.availlang.raa.ApplicationRuntime;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.api.APIRequest;
+import org.availlang.raa.api.APIResponse;
+import org.availlang.raa.api.RequestInterceptor;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.metrics.Histogram;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A {@code HedgingClient} is a {@link Client} that cuts the tail latency of
+ * {@linkplain APICatalogue#isHedgeable() hedgeable} {@link APIRequest}s. When
+ * such a request has not been answered within a high percentile of the recent
+ * latencies of its operation, a duplicate is sent through another {@code
+ * Client}; the first to succeed is passed on and the other is {@linkplain
+ * APIRequest#cancelAttempts() cancelled}. A failure is held while the other
+ * attempt may still succeed, and only passed on if both fail.
+ *
+ * <p>
+ * A request may be sent again, such as by a {@link RetryingClient}, while an
+ * attempt cancelled in an earlier round is still reporting its cancellation.
+ * Like the {@link AdaptiveConcurrencyLimiter}, each attempt notes the
+ * request's {@linkplain APIRequest#cancellations() cancellations} when it is
+ * sent, so such a report is recognized and dropped rather than being taken
+ * for the outcome of the new round.
+ * </p>
+ *
+ * <p>
+ * The threshold adapts as the latency of the operation changes: it is taken
+ * from the latencies of the last complete window of {@value #WINDOW_SIZE}
+ * requests, or of the current window until the first is complete. No request
+ * is hedged until {@linkplain #minimumSamples enough} latencies have been
+ * seen, and each request is hedged at most once.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public class HedgingClient
+implements Client
+{
+	/**
+	 * The default percentile of recent latencies after which a request is
+	 * hedged.
+	 */
+	public static final double DEFAULT_PERCENTILE = 95;
+
+	/**
+	 * The default number of latencies that must be seen before any request
+	 * is hedged.
+	 */
+	public static final int DEFAULT_MINIMUM_SAMPLES = 20;
+
+	/**
+	 * The number of latencies in each window the threshold is taken from.
+	 */
+	private static final long WINDOW_SIZE = 1000;
+
+	/**
+	 * {@code HedgeStatistics} tracks the latencies, and counts the hedges, of
+	 * a single {@link APICatalogue} operation.
+	 */
+	public static final class HedgeStatistics
+	{
+		/**
+		 * The {@link APICatalogue} operation tracked.
+		 */
+		public final APICatalogue catalogue;
+
+		/**
+		 * The latencies, in nanoseconds, of the current window.
+		 */
+		private Histogram current = new Histogram();
+
+		/**
+		 * The latencies, in nanoseconds, of the last complete window, or
+		 * {@code null} if no window has yet been completed.
+		 */
+		private @Nullable Histogram previous;
+
+		/**
+		 * The number of requests sent without a hedge.
+		 */
+		private final AtomicLong requests = new AtomicLong();
+
+		/**
+		 * The number of hedges sent.
+		 */
+		private final AtomicLong hedges = new AtomicLong();
+
+		/**
+		 * Record the latency of an answered request.
+		 *
+		 * @param latency
+		 *        The latency in nanoseconds.
+		 */
+		synchronized void record (final long latency)
+		{
+			current.record(latency);
+			if (current.count() >= WINDOW_SIZE)
+			{
+				previous = current;
+				current = new Histogram();
+			}
+		}
+
+		/**
+		 * Answer how long a request should wait for an answer before it is
+		 * hedged.
+		 *
+		 * @param percentile
+		 *        The percentile of recent latencies to wait for.
+		 * @param minimumSamples
+		 *        The number of latencies that must have been seen.
+		 * @return The threshold in milliseconds, or {@code -1} if too few
+		 *         latencies have been seen.
+		 */
+		synchronized long thresholdMillis (
+			final double percentile,
+			final int minimumSamples)
+		{
+			final Histogram basis = previous != null ? previous : current;
+			if (basis.count() < minimumSamples)
+			{
+				return -1;
+			}
+			return Math.max(
+				1,
+				TimeUnit.NANOSECONDS.toMillis(basis.percentile(percentile)));
+		}
+
+		/**
+		 * Answer the number of requests sent, not counting hedges.
+		 *
+		 * @return A {@code long}.
+		 */
+		public long requests ()
+		{
+			return requests.get();
+		}
+
+		/**
+		 * Answer the number of hedges sent.
+		 *
+		 * @return A {@code long}.
+		 */
+		public long hedges ()
+		{
+			return hedges.get();
+		}
+
+		@Override
+		public synchronized String toString ()
+		{
+			final Histogram basis = previous != null ? previous : current;
+			return String.format(
+				"%s: %d requests, %d hedged, latency ns: %s",
+				catalogue.name(),
+				requests.get(),
+				hedges.get(),
+				basis);
+		}
+
+		/**
+		 * Construct a {@link HedgeStatistics}.
+		 *
+		 * @param catalogue
+		 *        The {@link APICatalogue} operation tracked.
+		 */
+		HedgeStatistics (final APICatalogue catalogue)
+		{
+			this.catalogue = catalogue;
+		}
+	}
+
+	/**
+	 * A {@code Hedge} is the {@link RequestInterceptor} that passes on one
+	 * outcome of each sending of a single {@link APIRequest}, whether from
+	 * the original or its hedge, and suppresses the other: the first success,
+	 * or the last failure if neither succeeds.
+	 */
+	private final class Hedge
+	implements RequestInterceptor
+	{
+		/**
+		 * The {@link APIRequest} hedged.
+		 */
+		private final APIRequest<?> request;
+
+		/**
+		 * The number of times the request has been sent to this {@link
+		 * HedgingClient}, such as by retries; this identifies the current
+		 * round of attempts.
+		 */
+		private int round;
+
+		/**
+		 * The {@link System#nanoTime()} at which the current round began.
+		 */
+		private long roundStart;
+
+		/**
+		 * Whether the current round has been hedged.
+		 */
+		private boolean hedged;
+
+		/**
+		 * Whether an outcome of the current round has been passed on.
+		 */
+		private boolean decided;
+
+		/**
+		 * The {@linkplain APIRequest#cancellations() cancellations} of the
+		 * {@link #request} when each attempt in flight was sent. An attempt
+		 * sent before the current number was cancelled. Completions cannot be
+		 * matched to attempts, so a failure is assumed to be of a cancelled
+		 * attempt if any is in flight, as a cancelled attempt always reports
+		 * one, and a success of one that was not.
+		 */
+		private final List<Integer> attempts = new ArrayList<>();
+
+		/**
+		 * Whether this interceptor has been removed from the {@link
+		 * #request} because no attempts remain in flight.
+		 */
+		private boolean detached;
+
+		/**
+		 * Begin a new round of attempts.
+		 *
+		 * @return The number of the round, or {@code 0} if this interceptor
+		 *         has already been detached and a new one must be installed.
+		 */
+		synchronized int begin ()
+		{
+			if (detached)
+			{
+				return 0;
+			}
+			round++;
+			roundStart = System.nanoTime();
+			hedged = false;
+			decided = false;
+			attempts.add(request.cancellations());
+			return round;
+		}
+
+		/**
+		 * Send a hedge for the provided round, unless it is over or has
+		 * already been hedged.
+		 *
+		 * @param hedgeRound
+		 *        The round to hedge.
+		 */
+		void hedge (final int hedgeRound)
+		{
+			synchronized (this)
+			{
+				if (hedgeRound != round || hedged || decided)
+				{
+					return;
+				}
+				hedged = true;
+				attempts.add(request.cancellations());
+			}
+			statistics(request.catalogue()).hedges.incrementAndGet();
+			client.processRequest(request);
+		}
+
+		/**
+		 * Note that an attempt has completed.
+		 *
+		 * @param exception
+		 *        The {@link ApplicationException} the attempt failed with, or
+		 *        {@code null} if it succeeded.
+		 * @return {@code true} if its outcome should be passed on; {@code
+		 *         false} if it is of a cancelled attempt, if another outcome
+		 *         has already been passed on, or if it is a failure and an
+		 *         attempt that may yet succeed is still in flight.
+		 */
+		private boolean complete (
+			final @Nullable ApplicationException exception)
+		{
+			final boolean passOn;
+			final boolean cancelOthers;
+			final long latency;
+			synchronized (this)
+			{
+				final Integer current = request.cancellations();
+				final boolean ofCancelled;
+				if (exception != null)
+				{
+					ofCancelled = attempts.stream().anyMatch(
+						sent -> !sent.equals(current));
+				}
+				else
+				{
+					ofCancelled = !attempts.contains(current);
+				}
+				if (ofCancelled)
+				{
+					attempts.stream()
+						.filter(sent -> !sent.equals(current))
+						.findFirst()
+						.ifPresent(attempts::remove);
+				}
+				else
+				{
+					attempts.remove(current);
+				}
+				final boolean othersLive = attempts.contains(current);
+				passOn = !decided
+					&& (exception == null || !ofCancelled && !othersLive);
+				if (passOn)
+				{
+					decided = true;
+				}
+				cancelOthers = passOn && othersLive;
+				latency = System.nanoTime() - roundStart;
+				if (attempts.isEmpty())
+				{
+					detached = true;
+					request.removeInterceptor(HedgingClient.this);
+				}
+			}
+			if (passOn)
+			{
+				statistics(request.catalogue()).record(latency);
+				if (cancelOthers)
+				{
+					request.cancelAttempts();
+				}
+			}
+			return passOn;
+		}
+
+		@Override
+		public void content (
+			final JSONObject content,
+			final Consumer<JSONObject> next)
+		{
+			if (complete(null))
+			{
+				next.accept(content);
+			}
+		}
+
+		@Override
+		public void failure (
+			final ApplicationException exception,
+			final Consumer<ApplicationException> next)
+		{
+			if (complete(exception))
+			{
+				next.accept(exception);
+			}
+		}
+
+		/**
+		 * Construct a {@link Hedge}.
+		 *
+		 * @param request
+		 *        The {@link APIRequest} hedged.
+		 */
+		Hedge (final APIRequest<?> request)
+		{
+			this.request = request;
+		}
+	}
+
+	/**
+	 * The {@link Client} that sends the requests and their hedges.
+	 */
+	private final Client client;
+
+	/**
+	 * The percentile of recent latencies after which a request is hedged.
+	 */
+	private final double percentile;
+
+	/**
+	 * The number of latencies that must be seen before any request is
+	 * hedged.
+	 */
+	private final int minimumSamples;
+
+	/**
+	 * The {@link HedgeStatistics} of each {@link APICatalogue} operation.
+	 */
+	private final Map<APICatalogue, HedgeStatistics> statistics =
+		new EnumMap<>(APICatalogue.class);
+
+	/**
+	 * Answer the {@link HedgeStatistics} of the provided operation.
+	 *
+	 * @param catalogue
+	 *        The {@link APICatalogue} operation.
+	 * @return A {@code HedgeStatistics}.
+	 */
+	public HedgeStatistics statistics (final APICatalogue catalogue)
+	{
+		return statistics.get(catalogue);
+	}
+
+	@Override
+	public <Response extends APIResponse> void processRequest (
+		final APIRequest<Response> request)
+	{
+		final APICatalogue catalogue = request.catalogue();
+		if (!catalogue.isHedgeable())
+		{
+			client.processRequest(request);
+			return;
+		}
+		final HedgeStatistics operation = statistics(catalogue);
+		operation.requests.incrementAndGet();
+		Hedge hedge;
+		int round;
+		do
+		{
+			hedge = (Hedge) request.interceptor(
+				this, () -> new Hedge(request));
+			round = hedge.begin();
+		}
+		while (round == 0);
+		final long threshold =
+			operation.thresholdMillis(percentile, minimumSamples);
+		if (threshold >= 0)
+		{
+			final Hedge scheduled = hedge;
+			final int scheduledRound = round;
+			// Send from the request's lane, as the client may block and the
+			// timer thread is shared by every timer in the application.
+			ApplicationRuntime.startTimer(
+				threshold,
+				() -> ApplicationRuntime.scheduleTask(
+					request.priority(),
+					() -> scheduled.hedge(scheduledRound)));
+		}
+		client.processRequest(request);
+	}
+
+	@Override
+	public String toString ()
+	{
+		final StringBuilder builder = new StringBuilder("HedgingClient");
+		for (final HedgeStatistics operation : statistics.values())
+		{
+			if (operation.catalogue.isHedgeable())
+			{
+				builder.append('\n').append(operation);
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Construct a {@link HedgingClient}.
+	 *
+	 * @param client
+	 *        The {@link Client} that sends the requests and their hedges.
+	 * @param percentile
+	 *        The percentile of recent latencies, between {@code 0} and {@code
+	 *        100}, after which a request is hedged.
+	 * @param minimumSamples
+	 *        The number of latencies that must be seen before any request is
+	 *        hedged.
+	 */
+	public HedgingClient (
+		final Client client,
+		final double percentile,
+		final int minimumSamples)
+	{
+		if (percentile <= 0 || percentile > 100 || minimumSamples < 1)
+		{
+			throw new IllegalArgumentException(String.format(
+				"invalid hedging: percentile %s, %d minimum samples",
+				percentile,
+				minimumSamples));
+		}
+		this.client = client;
+		this.percentile = percentile;
+		this.minimumSamples = minimumSamples;
+		for (final APICatalogue catalogue : APICatalogue.values())
+		{
+			statistics.put(catalogue, new HedgeStatistics(catalogue));
+		}
+	}
+
+	/**
+	 * Construct a {@link HedgingClient} that hedges after the {@linkplain
+	 * #DEFAULT_PERCENTILE default percentile} of recent latencies.
+	 *
+	 * @param client
+	 *        The {@link Client} that sends the requests and their hedges.
+	 */
+	public HedgingClient (final Client client)
+	{
+		this(client, DEFAULT_PERCENTILE, DEFAULT_MINIMUM_SAMPLES);
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * RetryPolicy.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.exceptions.ConnectionException;
+import org.availlang.raa.exceptions.DownloadException;
+import org.availlang.raa.exceptions.ResponseException;
+
+import java.io.EOFException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@code RetryPolicy} decides whether a failed {@link
+ * org.availlang.raa.api.APIRequest APIRequest} is worth trying again and how
+ * long to wait before doing so. A {@link RetryingClient} holds one for each
+ * {@link APICatalogue} operation.
+ *
+ * <p>
+ * A failure is retryable if it is a {@link ConnectionException}; a {@link
+ * ResponseException} with a {@code 408}, {@code 429}, {@code 500}, {@code
+ * 502}, {@code 503} or {@code 504} response code; or a {@link
+ * DownloadException} caused by the connection being reset or timing out part
+ * way through the data. Anything else, such as a bad request or a full disk,
+ * would only fail again.
+ * </p>
+ *
+ * <p>
+ * The wait before the n<sup>th</sup> retry is chosen uniformly at random
+ * between zero and the {@linkplain #initialDelayMillis initial delay} times
+ * 2<sup>n-1</sup>, capped at the {@linkplain #maximumDelayMillis maximum
+ * delay}, so that clients that failed together do not retry together. If the
+ * server sent a {@code Retry-After} header, the wait is at least as long as it
+ * asked for.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public final class RetryPolicy
+{
+	/**
+	 * The {@code RetryPolicy} that never retries.
+	 */
+	public static final RetryPolicy NEVER = new RetryPolicy(1, 0, 0);
+
+	/**
+	 * The default {@code RetryPolicy}: up to five attempts, waiting up to half
+	 * a second before the first retry and at most half a minute before any.
+	 */
+	public static final RetryPolicy DEFAULT =
+		new RetryPolicy(5, 500, 30_000);
+
+	/**
+	 * The most times a request is sent, including the first.
+	 */
+	public final int maximumAttempts;
+
+	/**
+	 * The longest wait, in milliseconds, before the first retry.
+	 */
+	public final long initialDelayMillis;
+
+	/**
+	 * The longest wait, in milliseconds, before any retry, unless the server
+	 * asks for longer.
+	 */
+	public final long maximumDelayMillis;
+
+	/**
+	 * Is the provided failure worth retrying?
+	 *
+	 * @param exception
+	 *        The {@link ApplicationException} the request failed with.
+	 * @return {@code true} if a later attempt might succeed; {@code false}
+	 *         otherwise.
+	 */
+	public boolean isRetryable (final ApplicationException exception)
+	{
+		if (exception instanceof ConnectionException)
+		{
+			return true;
+		}
+		if (exception instanceof ResponseException)
+		{
+			switch (((ResponseException) exception).responseCode)
+			{
+				case 408:
+				case ResponseException.TOO_MANY_REQUESTS:
+				case 500:
+				case 502:
+				case ResponseException.SERVICE_UNAVAILABLE:
+				case 504:
+					return true;
+				default:
+					return false;
+			}
+		}
+		if (exception instanceof DownloadException)
+		{
+			for (
+				Throwable cause = exception.getCause();
+				cause != null;
+				cause = cause.getCause())
+			{
+				if (cause instanceof SocketException
+					|| cause instanceof SocketTimeoutException
+					|| cause instanceof EOFException
+					|| cause instanceof HttpTimeoutException)
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Answer how long to wait before the provided retry.
+	 *
+	 * @param retry
+	 *        The number of the retry, starting at {@code 1}.
+	 * @param exception
+	 *        The {@link ApplicationException} the last attempt failed with.
+	 * @return The delay in milliseconds.
+	 */
+	public long delayMillis (
+		final int retry,
+		final ApplicationException exception)
+	{
+		final long ceiling = Math.min(
+			maximumDelayMillis,
+			initialDelayMillis << Math.min(retry - 1, 30));
+		final long delay = ceiling <= 0
+			? 0
+			: ThreadLocalRandom.current().nextLong(ceiling + 1);
+		if (exception instanceof ResponseException)
+		{
+			return Math.max(
+				delay, ((ResponseException) exception).retryAfterMillis);
+		}
+		return delay;
+	}
+
+	@Override
+	public String toString ()
+	{
+		return String.format(
+			"RetryPolicy{attempts: %d, initial delay: %d ms, maximum delay: "
+				+ "%d ms}",
+			maximumAttempts,
+			initialDelayMillis,
+			maximumDelayMillis);
+	}
+
+	/**
+	 * Construct a {@link RetryPolicy}.
+	 *
+	 * @param maximumAttempts
+	 *        The most times a request is sent, including the first.
+	 * @param initialDelayMillis
+	 *        The longest wait, in milliseconds, before the first retry.
+	 * @param maximumDelayMillis
+	 *        The longest wait, in milliseconds, before any retry, unless the
+	 *        server asks for longer.
+	 */
+	public RetryPolicy (
+		final int maximumAttempts,
+		final long initialDelayMillis,
+		final long maximumDelayMillis)
+	{
+		if (maximumAttempts < 1
+			|| initialDelayMillis < 0
+			|| maximumDelayMillis < initialDelayMillis)
+		{
+			throw new IllegalArgumentException(String.format(
+				"invalid retry policy: %d attempts, %d to %d ms",
+				maximumAttempts,
+				initialDelayMillis,
+				maximumDelayMillis));
+		}
+		this.maximumAttempts = maximumAttempts;
+		this.initialDelayMillis = initialDelayMillis;
+		this.maximumDelayMillis = maximumDelayMillis;
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * RetryingClient.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client;
+import com.avail.utility.json.JSONObject;
+import org.availlang.raa.ApplicationRuntime;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.api.APIRequest;
+import org.availlang.raa.api.APIResponse;
+import org.availlang.raa.api.RequestInterceptor;
+import org.availlang.raa.exceptions.ApplicationException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A {@code RetryingClient} is a {@link Client} that sends {@link APIRequest}s
+ * through another {@code Client} and, when one fails in a way its {@link
+ * RetryPolicy} deems transient, sends it again after a randomized, growing
+ * delay rather than passing the failure on.
+ *
+ * <p>
+ * Only the last failure of a request that runs out of attempts, or has passed
+ * its {@linkplain APIRequest#setTimeout(long) deadline}, or a failure that is
+ * not retryable, reaches the request's {@linkplain
+ * APIRequest#failureContinuation() failure continuation}.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public class RetryingClient
+implements Client
+{
+	/**
+	 * {@code RetryStatistics} counts the retries of a single {@link
+	 * APICatalogue} operation.
+	 */
+	public static final class RetryStatistics
+	{
+		/**
+		 * The {@link APICatalogue} operation counted.
+		 */
+		public final APICatalogue catalogue;
+
+		/**
+		 * The number of retries sent.
+		 */
+		private final AtomicLong retries = new AtomicLong();
+
+		/**
+		 * The number of requests that succeeded after at least one retry.
+		 */
+		private final AtomicLong recovered = new AtomicLong();
+
+		/**
+		 * The number of requests that failed after at least one retry.
+		 */
+		private final AtomicLong exhausted = new AtomicLong();
+
+		/**
+		 * Answer the number of retries sent.
+		 *
+		 * @return A {@code long}.
+		 */
+		public long retries ()
+		{
+			return retries.get();
+		}
+
+		/**
+		 * Answer the number of requests that succeeded after at least one
+		 * retry.
+		 *
+		 * @return A {@code long}.
+		 */
+		public long recovered ()
+		{
+			return recovered.get();
+		}
+
+		/**
+		 * Answer the number of requests that failed after at least one retry.
+		 *
+		 * @return A {@code long}.
+		 */
+		public long exhausted ()
+		{
+			return exhausted.get();
+		}
+
+		@Override
+		public String toString ()
+		{
+			return String.format(
+				"%s: %d retries, %d recovered, %d exhausted",
+				catalogue.name(),
+				retries.get(),
+				recovered.get(),
+				exhausted.get());
+		}
+
+		/**
+		 * Construct a {@link RetryStatistics}.
+		 *
+		 * @param catalogue
+		 *        The {@link APICatalogue} operation counted.
+		 */
+		RetryStatistics (final APICatalogue catalogue)
+		{
+			this.catalogue = catalogue;
+		}
+	}
+
+	/**
+	 * A {@code Retry} is the {@link RequestInterceptor} that resends a single
+	 * {@link APIRequest} when it fails transiently.
+	 */
+	private final class Retry
+	implements RequestInterceptor
+	{
+		/**
+		 * The {@link APIRequest} retried.
+		 */
+		private final APIRequest<?> request;
+
+		/**
+		 * The number of retries sent so far. Only one attempt is ever in
+		 * flight, so this needs no synchronization beyond that provided by
+		 * scheduling the next attempt.
+		 */
+		private int retries;
+
+		@Override
+		public void content (
+			final JSONObject content,
+			final Consumer<JSONObject> next)
+		{
+			request.removeInterceptor(RetryingClient.this);
+			if (retries > 0)
+			{
+				statistics(request.catalogue()).recovered.incrementAndGet();
+			}
+			next.accept(content);
+		}
+
+		@Override
+		public void failure (
+			final ApplicationException exception,
+			final Consumer<ApplicationException> next)
+		{
+			final APICatalogue catalogue = request.catalogue();
+			final RetryPolicy policy = policy(catalogue);
+			if (retries + 1 < policy.maximumAttempts
+				&& policy.isRetryable(exception)
+				&& !request.hasExpired())
+			{
+				retries++;
+				statistics(catalogue).retries.incrementAndGet();
+				final long delay = policy.delayMillis(retries, exception);
+				// Send from the request's lane, as the client may block and
+				// the timer thread is shared by every timer in the
+				// application.
+				ApplicationRuntime.startTimer(
+					delay,
+					() -> ApplicationRuntime.scheduleTask(
+						request.priority(),
+						() -> client.processRequest(request)));
+				return;
+			}
+			request.removeInterceptor(RetryingClient.this);
+			if (retries > 0)
+			{
+				statistics(catalogue).exhausted.incrementAndGet();
+			}
+			next.accept(exception);
+		}
+
+		/**
+		 * Construct a {@link Retry}.
+		 *
+		 * @param request
+		 *        The {@link APIRequest} retried.
+		 */
+		Retry (final APIRequest<?> request)
+		{
+			this.request = request;
+		}
+	}
+
+	/**
+	 * The {@link Client} that sends the requests.
+	 */
+	private final Client client;
+
+	/**
+	 * The {@link RetryPolicy} of each {@link APICatalogue} operation that
+	 * does not use the {@link #defaultPolicy}.
+	 */
+	private final Map<APICatalogue, RetryPolicy> policies =
+		new ConcurrentHashMap<>();
+
+	/**
+	 * The {@link RetryPolicy} of every {@link APICatalogue} operation without
+	 * one of its own.
+	 */
+	private volatile RetryPolicy defaultPolicy;
+
+	/**
+	 * The {@link RetryStatistics} of each {@link APICatalogue} operation.
+	 */
+	private final Map<APICatalogue, RetryStatistics> statistics =
+		new EnumMap<>(APICatalogue.class);
+
+	/**
+	 * Answer the {@link RetryPolicy} in effect for the provided operation.
+	 *
+	 * @param catalogue
+	 *        The {@link APICatalogue} operation.
+	 * @return A {@code RetryPolicy}.
+	 */
+	public RetryPolicy policy (final APICatalogue catalogue)
+	{
+		return policies.getOrDefault(catalogue, defaultPolicy);
+	}
+
+	/**
+	 * Set the {@link RetryPolicy} of the provided operation.
+	 *
+	 * @param catalogue
+	 *        The {@link APICatalogue} operation.
+	 * @param policy
+	 *        The {@code RetryPolicy} to use.
+	 */
+	public void setPolicy (
+		final APICatalogue catalogue,
+		final RetryPolicy policy)
+	{
+		policies.put(catalogue, policy);
+	}
+
+	/**
+	 * Set the {@link RetryPolicy} of every operation that has not been given
+	 * one of its own.
+	 *
+	 * @param policy
+	 *        The {@code RetryPolicy} to use.
+	 */
+	public void setDefaultPolicy (final RetryPolicy policy)
+	{
+		this.defaultPolicy = policy;
+	}
+
+	/**
+	 * Answer the {@link RetryStatistics} of the provided operation.
+	 *
+	 * @param catalogue
+	 *        The {@link APICatalogue} operation.
+	 * @return A {@code RetryStatistics}.
+	 */
+	public RetryStatistics statistics (final APICatalogue catalogue)
+	{
+		return statistics.get(catalogue);
+	}
+
+	@Override
+	public <Response extends APIResponse> void processRequest (
+		final APIRequest<Response> request)
+	{
+		request.addInterceptor(this, new Retry(request));
+		client.processRequest(request);
+	}
+
+	@Override
+	public String toString ()
+	{
+		final StringBuilder builder = new StringBuilder("RetryingClient");
+		for (final RetryStatistics operation : statistics.values())
+		{
+			builder.append('\n').append(operation);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Construct a {@link RetryingClient}.
+	 *
+	 * @param client
+	 *        The {@link Client} that sends the requests.
+	 * @param defaultPolicy
+	 *        The {@link RetryPolicy} of every {@link APICatalogue} operation
+	 *        until it is given one of its own.
+	 */
+	public RetryingClient (
+		final Client client,
+		final RetryPolicy defaultPolicy)
+	{
+		this.client = client;
+		this.defaultPolicy = defaultPolicy;
+		for (final APICatalogue catalogue : APICatalogue.values())
+		{
+			statistics.put(catalogue, new RetryStatistics(catalogue));
+		}
+	}
+
+	/**
+	 * Construct a {@link RetryingClient} that uses the {@linkplain
+	 * RetryPolicy#DEFAULT default} {@link RetryPolicy}.
+	 *
+	 * @param client
+	 *        The {@link Client} that sends the requests.
+	 */
+	public RetryingClient (final Client client)
+	{
+		this(client, RetryPolicy.DEFAULT);
+	}
+}
@@ -0,0 +1,638 @@
+/*
+ * AsyncHTTPClient.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import com.avail.utility.json.JSONObject;
+import org.availlang.raa.ApplicationRuntime.ExitCode;
+import org.availlang.raa.api.APIRequest;
+import org.availlang.raa.api.APIResponse;
+import org.availlang.raa.client.Client;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.exceptions.ConnectionException;
+import org.availlang.raa.exceptions.DownloadException;
+import org.availlang.raa.exceptions.ResponseException;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * An {@code AsyncHTTPClient} is a {@link Client} that uses the non-blocking
+ * {@link HttpClient} to communicate with the Backblaze API server.
+ *
+ * <p>
+ * Unlike {@link HTTPClient}, no thread is held for the duration of a request.
+ * Requests are multiplexed over HTTP/2 where the server supports it (falling
+ * back to pooled HTTP/1.1 connections otherwise) and each request's {@link
+ * APIRequest#contentConsumer()} or {@link APIRequest#failureContinuation()} is
+ * run on a small fixed pool of completion threads once the response arrives.
+ * Hundreds of outstanding list and download calls therefore need only a
+ * handful of threads.
+ * </p>
+ *
+ * <p>
+ * JSON responses are decoded by a completion thread straight off the body's
+ * {@link InputStream}, with the same streaming decoder {@link HTTPClient}
+ * uses, rather than being collected into an array first. Because that read
+ * blocks until the body arrives, the {@link HttpClient} delivers the body on
+ * its own executor and never on the completion threads.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public class AsyncHTTPClient
+implements Client
+{
+	/**
+	 * The default time to wait for a connection to be established.
+	 */
+	public static final Duration DEFAULT_CONNECT_TIMEOUT =
+		Duration.ofSeconds(30);
+
+	/**
+	 * The {@link ExecutorService} that runs the completion of every request.
+	 */
+	private final ExecutorService completionExecutor;
+
+	/**
+	 * The {@link HttpClient} that sends the requests.
+	 */
+	private final HttpClient httpClient;
+
+	/**
+	 * The {@link RequestBodyEncoder} that encodes the bodies of {@code POST}
+	 * requests.
+	 */
+	private final RequestBodyEncoder bodyEncoder = new RequestBodyEncoder();
+
+	/**
+	 * Answer the {@link HttpRequest} for the provided {@link APIRequest}.
+	 *
+	 * @param request
+	 *        The {@code APIRequest} to send.
+	 * @return An {@code HttpRequest}.
+	 * @throws IllegalArgumentException
+	 *         If the request's location is not a valid {@link URI}.
+	 */
+	private HttpRequest httpRequest (final APIRequest<?> request)
+	{
+		final HttpRequest.Builder builder =
+			HttpRequest.newBuilder(URI.create(HTTPClient.url(request)));
+		if (request.usesAuthorizationToken())
+		{
+			builder.header("Authorization", request.authorizationToken());
+		}
+		final HTTPProtocolMethod method =
+			request.catalogue().supportedHTTPMethod();
+		switch (method)
+		{
+			case GET:
+				return builder.GET().build();
+			case POST:
+			{
+				return builder
+					.header(
+						"Content-Type", "application/x-www-form-urlencoded")
+					.header("Charset", "UTF-8")
+					.POST(HttpRequest.BodyPublishers.ofByteArray(
+						bodyEncoder.encode(request)))
+					.build();
+			}
+			default:
+				new UnsupportedOperationException(
+						"HTTP " + method.name() + " is not supported")
+					.printStackTrace();
+				ExitCode.UNEXPECTED_EXCEPTION.shutdown();
+				return null;
+		}
+	}
+
+	/**
+	 * Report a {@link Throwable} that prevented an exchange from completing
+	 * to the {@link APIRequest}'s failure continuation.
+	 *
+	 * @param throwable
+	 *        The {@code Throwable} that completed the exchange exceptionally.
+	 * @param failureContinuation
+	 *        The {@link Consumer} that accepts a {@link Throwable} to call in
+	 *        the event of a failure.
+	 */
+	private static void reportThrowable (
+		final Throwable throwable,
+		final Consumer<ApplicationException> failureContinuation)
+	{
+		final Throwable cause = throwable instanceof CompletionException
+				&& throwable.getCause() != null
+			? throwable.getCause()
+			: throwable;
+		if (cause instanceof UnknownHostException)
+		{
+			System.err.println("Could not connect to server");
+			cause.printStackTrace();
+			ExitCode.COULD_NOT_CONNECT.shutdown();
+		}
+		else if (cause instanceof IOException)
+		{
+			failureContinuation.accept(
+				new ConnectionException("Unexpected Error", cause));
+		}
+		else if (cause instanceof ApplicationException)
+		{
+			failureContinuation.accept((ApplicationException) cause);
+		}
+		else
+		{
+			failureContinuation.accept(
+				new ApplicationException(
+					ExitCode.UNEXPECTED_EXCEPTION, "Unexpected Error", cause));
+		}
+	}
+
+	/**
+	 * Report a non-200 response to the {@link APIRequest}'s failure
+	 * continuation.
+	 *
+	 * @param response
+	 *        The failed {@link HttpResponse}.
+	 * @param details
+	 *        The body of the failed response.
+	 * @param failureContinuation
+	 *        The {@link Consumer} that accepts a {@link Throwable} to call in
+	 *        the event of a failure.
+	 */
+	private static void reportFailedResponse (
+		final HttpResponse<?> response,
+		final String details,
+		final Consumer<ApplicationException> failureContinuation)
+	{
+		System.err.println("Attempted to reach: " + response.uri());
+		System.err.println(details);
+		failureContinuation.accept(new ResponseException(
+			response.statusCode(),
+			"HTTP " + response.statusCode(),
+			details,
+			response.headers().firstValue("Retry-After").orElse(null)));
+	}
+
+	/**
+	 * Send an {@link APIRequest} whose response is a JSON object.
+	 *
+	 * @param request
+	 *        The {@code APIRequest} to send.
+	 * @param httpRequest
+	 *        The {@link HttpRequest} for the {@code APIRequest}.
+	 * @return A {@link CompletableFuture} that completes once the request's
+	 *         continuation has run.
+	 */
+	private CompletableFuture<Void> sendRegularRequest (
+		final APIRequest<?> request,
+		final HttpRequest httpRequest)
+	{
+		final Consumer<ApplicationException> failureContinuation =
+			request.failureContinuation();
+		final CompletableFuture<HttpResponse<InputStream>> exchange =
+			httpClient.sendAsync(httpRequest, BodyHandlers.ofInputStream());
+		// Let a hedged duplicate that answers first abort this exchange: the
+		// exchange completes once the headers arrive, so closing the body
+		// abandons a response that is still being decoded.
+		final Runnable canceller = () ->
+		{
+			exchange.cancel(true);
+			exchange.thenAccept(response ->
+			{
+				try
+				{
+					response.body().close();
+				}
+				catch (final IOException e)
+				{
+					// The body is being abandoned anyway.
+				}
+			});
+		};
+		request.addCanceller(canceller);
+		return exchange
+			.handleAsync((response, throwable) ->
+			{
+				if (throwable != null)
+				{
+					request.removeCanceller(canceller);
+					reportThrowable(throwable, failureContinuation);
+					return null;
+				}
+				if (response.statusCode() != 200)
+				{
+					final String details;
+					try
+					{
+						details = HTTPClient.readBody(response.body());
+					}
+					catch (final Throwable e)
+					{
+						request.removeCanceller(canceller);
+						reportThrowable(e, failureContinuation);
+						return null;
+					}
+					request.removeCanceller(canceller);
+					reportFailedResponse(
+						response, details, failureContinuation);
+					return null;
+				}
+				final JSONObject content;
+				try
+				{
+					content = HTTPClient.readJSONObject(response.body());
+				}
+				catch (final Throwable e)
+				{
+					reportThrowable(e, failureContinuation);
+					return null;
+				}
+				finally
+				{
+					request.removeCanceller(canceller);
+				}
+				try
+				{
+					request.contentConsumer().accept(content);
+				}
+				catch (final Throwable e)
+				{
+					failureContinuation.accept(
+						new ApplicationException(
+							ExitCode.UNEXPECTED_EXCEPTION,
+							"Unexpected Error",
+							e));
+				}
+				return null;
+			}, completionExecutor);
+	}
+
+	/**
+	 * A {@code DigestingFileSubscriber} writes the body of a successful
+	 * download response to the target file, computing its SHA-1 digest as the
+	 * data streams rather than reading the file back afterward. Its body is
+	 * the lowercase hexadecimal digest.
+	 */
+	private static final class DigestingFileSubscriber
+	implements BodySubscriber<String>
+	{
+		/**
+		 * The {@link File} being downloaded to.
+		 */
+		private final File targetFile;
+
+		/**
+		 * The SHA-1 {@link MessageDigest} of the data written so far.
+		 */
+		private final MessageDigest digest = ContentDigest.newSha1();
+
+		/**
+		 * The {@link CompletableFuture} that completes with the digest once
+		 * the whole body has been written.
+		 */
+		private final CompletableFuture<String> body =
+			new CompletableFuture<>();
+
+		/**
+		 * The {@link FileChannel} the body is written to.
+		 */
+		private @Nullable FileChannel channel;
+
+		/**
+		 * The {@link Subscription} that supplies the body.
+		 */
+		private @Nullable Subscription subscription;
+
+		@Override
+		public CompletionStage<String> getBody ()
+		{
+			return body;
+		}
+
+		/**
+		 * Close the {@link #channel} and complete the {@link #body}
+		 * exceptionally.
+		 *
+		 * @param throwable
+		 *        The reason the body could not be written.
+		 */
+		private void abandon (final Throwable throwable)
+		{
+			if (channel != null)
+			{
+				try
+				{
+					channel.close();
+				}
+				catch (final IOException e)
+				{
+					throwable.addSuppressed(e);
+				}
+			}
+			body.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onSubscribe (final Subscription subscription)
+		{
+			this.subscription = subscription;
+			try
+			{
+				channel = FileChannel.open(
+					targetFile.toPath(),
+					StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			}
+			catch (final IOException e)
+			{
+				subscription.cancel();
+				abandon(e);
+				return;
+			}
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext (final List<ByteBuffer> buffers)
+		{
+			assert channel != null && subscription != null;
+			try
+			{
+				for (final ByteBuffer buffer : buffers)
+				{
+					digest.update(buffer.duplicate());
+					while (buffer.hasRemaining())
+					{
+						channel.write(buffer);
+					}
+				}
+			}
+			catch (final IOException e)
+			{
+				subscription.cancel();
+				abandon(e);
+				return;
+			}
+			subscription.request(1);
+		}
+
+		@Override
+		public void onError (final Throwable throwable)
+		{
+			abandon(throwable);
+		}
+
+		@Override
+		public void onComplete ()
+		{
+			assert channel != null;
+			try
+			{
+				channel.close();
+			}
+			catch (final IOException e)
+			{
+				body.completeExceptionally(e);
+				return;
+			}
+			body.complete(ContentDigest.hex(digest.digest()));
+		}
+
+		/**
+		 * Construct a {@link DigestingFileSubscriber}.
+		 *
+		 * @param targetFile
+		 *        The {@link File} being downloaded to.
+		 */
+		DigestingFileSubscriber (final File targetFile)
+		{
+			this.targetFile = targetFile;
+		}
+	}
+
+	/**
+	 * Send a download {@link APIRequest}, streaming the accompanying data to
+	 * disk as it arrives.
+	 *
+	 * @param downloadRequest
+	 *        The {@code APIRequest} that contains the specifics of the
+	 *        download being performed.
+	 * @param httpRequest
+	 *        The {@link HttpRequest} for the {@code APIRequest}.
+	 * @return A {@link CompletableFuture} that completes once the request's
+	 *         continuation has run.
+	 */
+	private CompletableFuture<Void> sendDownloadRequest (
+		final APIRequest<?> downloadRequest,
+		final HttpRequest httpRequest)
+	{
+		final Consumer<ApplicationException> failureContinuation =
+			downloadRequest.failureContinuation();
+		final File targetFile = HTTPClient.targetFile(downloadRequest);
+		final AtomicBoolean receivingData = new AtomicBoolean(false);
+		// The body of a successful response is written to the target file;
+		// the body of a failed response is collected for the error report.
+		final BodyHandler<String> handler = responseInfo ->
+		{
+			if (responseInfo.statusCode() != 200)
+			{
+				return BodySubscribers.ofString(StandardCharsets.UTF_8);
+			}
+			receivingData.set(true);
+			return new DigestingFileSubscriber(targetFile);
+		};
+		return httpClient
+			.sendAsync(httpRequest, handler)
+			.handleAsync((response, throwable) ->
+			{
+				if (throwable != null)
+				{
+					if (receivingData.get())
+					{
+						failureContinuation.accept(
+							new DownloadException(
+								"could not download data to " +
+									targetFile.getAbsolutePath(),
+								throwable instanceof CompletionException
+									? throwable.getCause()
+									: throwable));
+					}
+					else
+					{
+						reportThrowable(throwable, failureContinuation);
+					}
+					return null;
+				}
+				if (response.statusCode() != 200)
+				{
+					reportFailedResponse(
+						response, response.body(), failureContinuation);
+					return null;
+				}
+				final String contentSha1 = ContentDigest.expectedSha1(
+					name -> response.headers().firstValue(name).orElse(null));
+				try
+				{
+					if (contentSha1 != null)
+					{
+						ContentDigest.verify(
+							targetFile.getAbsolutePath(),
+							contentSha1,
+							response.body());
+					}
+					downloadRequest.contentConsumer().accept(
+						HTTPClient.downloadContent(
+							downloadRequest,
+							targetFile.length(),
+							contentSha1,
+							contentSha1 != null));
+				}
+				catch (final DownloadException e)
+				{
+					failureContinuation.accept(e);
+				}
+				catch (final Throwable e)
+				{
+					failureContinuation.accept(
+						new ApplicationException(
+							ExitCode.UNEXPECTED_EXCEPTION,
+							"Unexpected Error",
+							e));
+				}
+				return null;
+			}, completionExecutor);
+	}
+
+	/**
+	 * Send the {@link APIRequest} without blocking the calling thread.
+	 *
+	 * @param request
+	 *        The {@code APIRequest} to send.
+	 * @return A {@link CompletableFuture} that completes once the request's
+	 *         {@linkplain APIRequest#contentConsumer() content consumer} or
+	 *         {@linkplain APIRequest#failureContinuation() failure
+	 *         continuation} has run.
+	 */
+	public <Response extends APIResponse> CompletableFuture<Void> sendAsync (
+		final APIRequest<Response> request)
+	{
+		final HttpRequest httpRequest;
+		try
+		{
+			httpRequest = httpRequest(request);
+		}
+		catch (final IllegalArgumentException e)
+		{
+			request.failureContinuation().accept(
+				new ConnectionException("Unexpected Error", e));
+			return CompletableFuture.completedFuture(null);
+		}
+		return request.isDownloadRequest()
+			? sendDownloadRequest(request, httpRequest)
+			: sendRegularRequest(request, httpRequest);
+	}
+
+	@Override
+	public <Response extends APIResponse> void processRequest (
+		final APIRequest<Response> request)
+	{
+		sendAsync(request);
+	}
+
+	/**
+	 * Construct an {@link AsyncHTTPClient}.
+	 *
+	 * @param completionThreads
+	 *        The number of threads used to complete requests.
+	 * @param connectTimeout
+	 *        The maximum time to wait for a connection to be established.
+	 */
+	public AsyncHTTPClient (
+		final int completionThreads,
+		final Duration connectTimeout)
+	{
+		this.completionExecutor = Executors.newFixedThreadPool(
+			completionThreads,
+			runnable ->
+			{
+				final Thread thread = new Thread(runnable);
+				thread.setDaemon(true);
+				return thread;
+			});
+		// The client keeps its default executor to deliver response bodies,
+		// since the completion threads block while reading them.
+		this.httpClient = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_2)
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.connectTimeout(connectTimeout)
+			.build();
+	}
+
+	/**
+	 * Construct an {@link AsyncHTTPClient} with one completion thread per
+	 * available processor and the {@linkplain #DEFAULT_CONNECT_TIMEOUT default
+	 * connect timeout}.
+	 */
+	public AsyncHTTPClient ()
+	{
+		this(
+			Runtime.getRuntime().availableProcessors(),
+			DEFAULT_CONNECT_TIMEOUT);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * BandwidthSchedule.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A {@code BandwidthSchedule} varies the bandwidth allowed to downloads by
+ * time of day.
+ *
+ * <p>
+ * Each entry gives the limit in effect from its time of day until the time of
+ * the next entry. The last entry stays in effect past midnight until the time
+ * of the first entry, so a schedule of {@code 08:00 → 1 MiB/s} and {@code
+ * 18:00 → unlimited} throttles downloads during the working day only.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public final class BandwidthSchedule
+{
+	/**
+	 * The limit, in bytes per second, in effect from each time of day.
+	 */
+	private final NavigableMap<LocalTime, Long> limits;
+
+	/**
+	 * Answer the bandwidth limit in effect at the provided time of day.
+	 *
+	 * @param time
+	 *        The {@link LocalTime} of interest.
+	 * @return The limit in bytes per second, or {@link
+	 *         DownloadConfiguration#UNLIMITED}.
+	 */
+	public long limitAt (final LocalTime time)
+	{
+		final Map.Entry<LocalTime, Long> entry = limits.floorEntry(time);
+		return entry != null
+			? entry.getValue()
+			: limits.lastEntry().getValue();
+	}
+
+	/**
+	 * Answer the limits of this {@link BandwidthSchedule}.
+	 *
+	 * @return An unmodifiable {@link NavigableMap} from the time of day each
+	 *         limit takes effect to the limit in bytes per second.
+	 */
+	public NavigableMap<LocalTime, Long> limits ()
+	{
+		return Collections.unmodifiableNavigableMap(limits);
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "BandwidthSchedule" + limits;
+	}
+
+	/**
+	 * Construct a {@link BandwidthSchedule}.
+	 *
+	 * @param limits
+	 *        A {@link Map} from the time of day each limit takes effect to the
+	 *        limit in bytes per second, or {@link
+	 *        DownloadConfiguration#UNLIMITED}. It must not be empty.
+	 * @throws IllegalArgumentException
+	 *         If {@code limits} is empty or has a negative limit.
+	 */
+	public BandwidthSchedule (final Map<LocalTime, Long> limits)
+	{
+		if (limits.isEmpty())
+		{
+			throw new IllegalArgumentException(
+				"a bandwidth schedule needs at least one limit");
+		}
+		for (final Map.Entry<LocalTime, Long> entry : limits.entrySet())
+		{
+			if (entry.getValue() < 0)
+			{
+				throw new IllegalArgumentException(
+					"bandwidth limit at " + entry.getKey()
+						+ " must not be negative: " + entry.getValue());
+			}
+		}
+		this.limits = new TreeMap<>(limits);
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * ByteRange.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+
+/**
+ * A {@code ByteRange} is an immutable, non-empty range of byte offsets within a
+ * downloaded file.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+final class ByteRange
+{
+	/**
+	 * The offset of the first byte in the range.
+	 */
+	final long first;
+
+	/**
+	 * The number of bytes in the range.
+	 */
+	final long count;
+
+	/**
+	 * Answer the offset just past the last byte in the range.
+	 *
+	 * @return A {@code long}.
+	 */
+	long end ()
+	{
+		return first + count;
+	}
+
+	/**
+	 * Answer the value of the HTTP {@code Range} header that requests this
+	 * {@link ByteRange}.
+	 *
+	 * @return A String.
+	 */
+	String header ()
+	{
+		return "bytes=" + first + "-" + (end() - 1);
+	}
+
+	@Override
+	public String toString ()
+	{
+		return first + "-" + (end() - 1);
+	}
+
+	/**
+	 * Construct a {@link ByteRange}.
+	 *
+	 * @param first
+	 *        The offset of the first byte in the range.
+	 * @param count
+	 *        The positive number of bytes in the range.
+	 */
+	ByteRange (final long first, final long count)
+	{
+		assert first >= 0 && count > 0;
+		this.first = first;
+		this.count = count;
+	}
+}
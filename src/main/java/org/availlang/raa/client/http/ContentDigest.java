@@ -0,0 +1,377 @@
+/*
+ * ContentDigest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import org.availlang.raa.exceptions.DownloadException;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * A {@code ContentDigest} computes the SHA-1 digest of a downloaded file as
+ * its bytes arrive and checks it against the digest B2 reported in the {@value
+ * #CONTENT_SHA1} response header.
+ *
+ * <p>
+ * SHA-1 must consume a file strictly in order. Whichever range currently
+ * starts at the end of the digested prefix is digested inline while it
+ * streams to disk, so a download over a single connection never reads the
+ * file back. A range that completes ahead of the prefix is instead read back
+ * from the file once the prefix reaches it; it was written moments before, so
+ * this is normally served from the page cache. Bytes written by an earlier,
+ * {@linkplain DownloadJournal resumed} attempt are necessarily read back.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+final class ContentDigest
+{
+	/**
+	 * The response header that carries the SHA-1 of the whole file.
+	 */
+	static final String CONTENT_SHA1 = "X-Bz-Content-Sha1";
+
+	/**
+	 * The response header that carries the SHA-1 of a large file, which B2
+	 * does not know itself and reports as {@code none} in the {@value
+	 * #CONTENT_SHA1} header; it is present only if the uploader supplied it.
+	 */
+	static final String LARGE_FILE_SHA1 = "X-Bz-Info-large_file_sha1";
+
+	/**
+	 * The prefix B2 puts on a {@value #CONTENT_SHA1} it did not verify
+	 * itself because the uploader supplied it after the data.
+	 */
+	private static final String UNVERIFIED_PREFIX = "unverified:";
+
+	/**
+	 * The {@link Pattern} of a hexadecimal SHA-1 digest.
+	 */
+	private static final Pattern sha1Pattern =
+		Pattern.compile("[0-9a-fA-F]{40}");
+
+	/**
+	 * The size of the buffer used to read ranges back from the file.
+	 */
+	private static final int READ_BACK_BUFFER_SIZE = 65536;
+
+	/**
+	 * Answer the SHA-1 digest of the whole file reported by a download
+	 * response.
+	 *
+	 * @param header
+	 *        A {@link Function} that answers the value of the named response
+	 *        header, or {@code null} if it is absent.
+	 * @return The lowercase hexadecimal digest, or {@code null} if the
+	 *         response reports none.
+	 */
+	static @Nullable String expectedSha1 (
+		final Function<String, String> header)
+	{
+		String sha1 = header.apply(CONTENT_SHA1);
+		if (sha1 == null || sha1.equals("none"))
+		{
+			sha1 = header.apply(LARGE_FILE_SHA1);
+		}
+		if (sha1 == null)
+		{
+			return null;
+		}
+		if (sha1.startsWith(UNVERIFIED_PREFIX))
+		{
+			sha1 = sha1.substring(UNVERIFIED_PREFIX.length());
+		}
+		return sha1Pattern.matcher(sha1).matches()
+			? sha1.toLowerCase()
+			: null;
+	}
+
+	/**
+	 * Answer a new SHA-1 {@link MessageDigest}.
+	 *
+	 * @return A {@code MessageDigest}.
+	 */
+	static MessageDigest newSha1 ()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (final NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to support SHA-1.
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Answer the lowercase hexadecimal representation of the provided digest.
+	 *
+	 * @param digest
+	 *        The digest bytes.
+	 * @return A String.
+	 */
+	static String hex (final byte[] digest)
+	{
+		final StringBuilder sb = new StringBuilder(digest.length * 2);
+		for (final byte b : digest)
+		{
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Check a computed digest against the expected one.
+	 *
+	 * @param fileDescription
+	 *        A description of the downloaded file for the error message.
+	 * @param expected
+	 *        The expected lowercase hexadecimal digest.
+	 * @param actual
+	 *        The computed lowercase hexadecimal digest.
+	 * @throws DownloadException
+	 *         If the digests differ.
+	 */
+	static void verify (
+		final String fileDescription,
+		final String expected,
+		final String actual)
+		throws DownloadException
+	{
+		if (!expected.equals(actual))
+		{
+			throw new DownloadException(String.format(
+				"SHA-1 of %s is %s; expected %s",
+				fileDescription,
+				actual,
+				expected));
+		}
+	}
+
+	/**
+	 * The SHA-1 {@link MessageDigest} being computed.
+	 */
+	private final MessageDigest digest = newSha1();
+
+	/**
+	 * The expected lowercase hexadecimal digest.
+	 */
+	final String expected;
+
+	/**
+	 * The total length of the file in bytes.
+	 */
+	private final long totalLength;
+
+	/**
+	 * The number of leading bytes of the file digested so far.
+	 */
+	private long digested;
+
+	/**
+	 * Whether the range starting at {@link #digested} is being digested
+	 * inline.
+	 */
+	private boolean inlineClaimed;
+
+	/**
+	 * The completed {@link ByteRange}s beyond the digested prefix, keyed by
+	 * their first byte.
+	 */
+	private final NavigableMap<Long, ByteRange> completed = new TreeMap<>();
+
+	/**
+	 * Claim the right to digest the provided range inline as it streams. This
+	 * is granted only to the range that starts where the digested prefix
+	 * ends.
+	 *
+	 * @param range
+	 *        The {@link ByteRange} about to be written.
+	 * @return The {@link MessageDigest} to update with the range's bytes in
+	 *         order, or {@code null} if the range must be read back later.
+	 */
+	synchronized @Nullable MessageDigest claimInline (final ByteRange range)
+	{
+		if (inlineClaimed || range.first != digested)
+		{
+			return null;
+		}
+		inlineClaimed = true;
+		return digest;
+	}
+
+	/**
+	 * Note that the provided range has been written in full, then digest any
+	 * completed ranges that now continue the digested prefix.
+	 *
+	 * @param range
+	 *        The completed {@link ByteRange}.
+	 * @param inline
+	 *        {@code true} if the range was digested inline; {@code false}
+	 *        otherwise.
+	 * @param channel
+	 *        The {@link FileChannel} the file is written through.
+	 * @throws IOException
+	 *         If a range could not be read back.
+	 */
+	synchronized void completed (
+		final ByteRange range,
+		final boolean inline,
+		final FileChannel channel)
+		throws IOException
+	{
+		if (inline)
+		{
+			assert inlineClaimed && range.first == digested;
+			inlineClaimed = false;
+			digested = range.end();
+		}
+		else
+		{
+			completed.put(range.first, range);
+		}
+		ByteRange next = inlineClaimed ? null : completed.remove(digested);
+		while (next != null)
+		{
+			readBack(next, channel);
+			digested = next.end();
+			next = completed.remove(digested);
+		}
+	}
+
+	/**
+	 * Note that the provided ranges were written by an earlier attempt.
+	 *
+	 * @param ranges
+	 *        The disjoint {@link ByteRange}s already in the file.
+	 */
+	synchronized void alreadyWritten (final Collection<ByteRange> ranges)
+	{
+		for (final ByteRange range : ranges)
+		{
+			completed.put(range.first, range);
+		}
+	}
+
+	/**
+	 * Feed the provided range of the file to the {@link #digest}.
+	 *
+	 * @param range
+	 *        The {@link ByteRange} to read.
+	 * @param channel
+	 *        The {@link FileChannel} to read from.
+	 * @throws IOException
+	 *         If the file could not be read.
+	 */
+	private void readBack (final ByteRange range, final FileChannel channel)
+		throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate(
+			(int) Math.min(READ_BACK_BUFFER_SIZE, range.count));
+		long position = range.first;
+		while (position < range.end())
+		{
+			buffer.clear();
+			buffer.limit(
+				(int) Math.min(buffer.capacity(), range.end() - position));
+			final int count = channel.read(buffer, position);
+			if (count == -1)
+			{
+				throw new IOException("file ends before byte " + position);
+			}
+			buffer.flip();
+			digest.update(buffer);
+			position += count;
+		}
+	}
+
+	/**
+	 * Digest whatever completed ranges remain, then check the digest of the
+	 * whole file against the {@link #expected} digest.
+	 *
+	 * @param fileDescription
+	 *        A description of the downloaded file for the error message.
+	 * @param channel
+	 *        The {@link FileChannel} the file was written through.
+	 * @throws IOException
+	 *         If a range could not be read back.
+	 * @throws DownloadException
+	 *         If the file is incomplete or its digest is not the expected one.
+	 */
+	synchronized void verify (
+		final String fileDescription,
+		final FileChannel channel)
+		throws IOException, DownloadException
+	{
+		ByteRange next = completed.remove(digested);
+		while (next != null)
+		{
+			readBack(next, channel);
+			digested = next.end();
+			next = completed.remove(digested);
+		}
+		if (digested != totalLength)
+		{
+			throw new DownloadException(String.format(
+				"Could not verify %s: only %d of %d bytes were digested",
+				fileDescription,
+				digested,
+				totalLength));
+		}
+		verify(fileDescription, expected, hex(digest.digest()));
+	}
+
+	/**
+	 * Construct a {@link ContentDigest}.
+	 *
+	 * @param expected
+	 *        The expected lowercase hexadecimal digest.
+	 * @param totalLength
+	 *        The total length of the file in bytes.
+	 */
+	ContentDigest (final String expected, final long totalLength)
+	{
+		this.expected = expected;
+		this.totalLength = totalLength;
+	}
+}
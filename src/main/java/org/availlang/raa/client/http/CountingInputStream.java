@@ -0,0 +1,103 @@
+/*
+ * CountingInputStream.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@code CountingInputStream} counts the bytes read through it.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+final class CountingInputStream
+extends FilterInputStream
+{
+	/**
+	 * The number of bytes read so far.
+	 */
+	private long count;
+
+	/**
+	 * Answer the number of bytes read so far.
+	 *
+	 * @return A {@code long}.
+	 */
+	long count ()
+	{
+		return count;
+	}
+
+	@Override
+	public int read () throws IOException
+	{
+		final int b = super.read();
+		if (b != -1)
+		{
+			count++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read (final byte[] b, final int off, final int len)
+		throws IOException
+	{
+		final int n = super.read(b, off, len);
+		if (n > 0)
+		{
+			count += n;
+		}
+		return n;
+	}
+
+	@Override
+	public long skip (final long n) throws IOException
+	{
+		final long skipped = super.skip(n);
+		count += skipped;
+		return skipped;
+	}
+
+	/**
+	 * Construct a {@link CountingInputStream}.
+	 *
+	 * @param in
+	 *        The {@link InputStream} to read from.
+	 */
+	CountingInputStream (final InputStream in)
+	{
+		super(in);
+	}
+}
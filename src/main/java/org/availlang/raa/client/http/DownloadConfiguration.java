@@ -0,0 +1,371 @@
+/*
+ * DownloadConfiguration.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import org.availlang.raa.api.APIRequest;
+
+import javax.annotation.Nullable;
+import java.time.LocalTime;
+
+/**
+ * A {@code DownloadConfiguration} holds the settings that govern how an {@link
+ * HTTPClient} transfers the data of a download {@link APIRequest}.
+ *
+ * <p>
+ * Settings may be changed at any time; a download uses the values in effect
+ * when it starts, except for the bandwidth limits, which apply to downloads
+ * already in progress from their next chunk of data.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public class DownloadConfiguration
+{
+	/**
+	 * The default maximum number of connections used to download a single
+	 * file.
+	 */
+	public static final int DEFAULT_SEGMENT_COUNT = 4;
+
+	/**
+	 * The default number of bytes requested by each ranged request.
+	 */
+	public static final long DEFAULT_SEGMENT_SIZE = 16L * 1024 * 1024;
+
+	/**
+	 * The maximum number of connections used to download a single file. A
+	 * value of {@code 1} disables segmented downloads entirely.
+	 */
+	private volatile int segmentCount = DEFAULT_SEGMENT_COUNT;
+
+	/**
+	 * Answer the maximum number of connections used to download a single file.
+	 * A value of {@code 1} disables segmented downloads entirely.
+	 *
+	 * @return An {@code int}.
+	 */
+	public int segmentCount ()
+	{
+		return segmentCount;
+	}
+
+	/**
+	 * Set the maximum number of connections used to download a single file.
+	 *
+	 * @param segmentCount
+	 *        A positive {@code int}; {@code 1} disables segmented downloads.
+	 */
+	public void setSegmentCount (final int segmentCount)
+	{
+		if (segmentCount < 1)
+		{
+			throw new IllegalArgumentException(
+				"segmentCount must be positive: " + segmentCount);
+		}
+		this.segmentCount = segmentCount;
+	}
+
+	/**
+	 * The number of bytes requested by each ranged request. Files no larger
+	 * than this are downloaded over a single connection.
+	 */
+	private volatile long segmentSize = DEFAULT_SEGMENT_SIZE;
+
+	/**
+	 * Answer the number of bytes requested by each ranged request. Files no
+	 * larger than this are downloaded over a single connection.
+	 *
+	 * @return A {@code long}.
+	 */
+	public long segmentSize ()
+	{
+		return segmentSize;
+	}
+
+	/**
+	 * Set the number of bytes requested by each ranged request.
+	 *
+	 * @param segmentSize
+	 *        A positive {@code long}.
+	 */
+	public void setSegmentSize (final long segmentSize)
+	{
+		if (segmentSize < 1)
+		{
+			throw new IllegalArgumentException(
+				"segmentSize must be positive: " + segmentSize);
+		}
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * The default size of the buffers that downloaded data is accumulated in
+	 * before being written to disk.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * The smallest permitted {@link #bufferSize()}.
+	 */
+	public static final int MINIMUM_BUFFER_SIZE = 8192;
+
+	/**
+	 * The size of the buffers that downloaded data is accumulated in before
+	 * being written to disk.
+	 */
+	private volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	/**
+	 * Answer the size of the buffers that downloaded data is accumulated in
+	 * before being written to disk. Larger buffers mean fewer, larger writes.
+	 *
+	 * @return An {@code int}.
+	 */
+	public int bufferSize ()
+	{
+		return bufferSize;
+	}
+
+	/**
+	 * Set the size of the buffers that downloaded data is accumulated in
+	 * before being written to disk.
+	 *
+	 * @param bufferSize
+	 *        An {@code int} no smaller than {@link #MINIMUM_BUFFER_SIZE}.
+	 */
+	public void setBufferSize (final int bufferSize)
+	{
+		if (bufferSize < MINIMUM_BUFFER_SIZE)
+		{
+			throw new IllegalArgumentException(
+				"bufferSize must be at least " + MINIMUM_BUFFER_SIZE + ": "
+					+ bufferSize);
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Whether downloads write to a {@code .part} file with a journal of
+	 * completed byte ranges, so an interrupted download can later be resumed
+	 * rather than restarted.
+	 */
+	private volatile boolean resumable = true;
+
+	/**
+	 * Answer whether downloads are resumable. A resumable download writes to a
+	 * {@code .part} file next to its target, journaling each completed byte
+	 * range, and only moves the file into place once it is complete. A later
+	 * attempt to download the same file requests only the missing bytes.
+	 *
+	 * @return {@code true} if downloads are resumable; {@code false} if they
+	 *         write directly to the target file and always start over.
+	 */
+	public boolean isResumable ()
+	{
+		return resumable;
+	}
+
+	/**
+	 * Set whether downloads are resumable.
+	 *
+	 * @param resumable
+	 *        {@code true} to make downloads resumable; {@code false}
+	 *        otherwise.
+	 */
+	public void setResumable (final boolean resumable)
+	{
+		this.resumable = resumable;
+	}
+
+	/**
+	 * Whether downloads are checked against the SHA-1 digest reported by the
+	 * server.
+	 */
+	private volatile boolean verifying = true;
+
+	/**
+	 * Answer whether downloads are checked against the SHA-1 digest reported
+	 * by the server. The digest is computed as the data streams to disk; a
+	 * mismatch fails the download with a {@link
+	 * org.availlang.raa.exceptions.DownloadException}.
+	 *
+	 * @return {@code true} if downloads are verified; {@code false} otherwise.
+	 */
+	public boolean isVerifying ()
+	{
+		return verifying;
+	}
+
+	/**
+	 * Set whether downloads are checked against the SHA-1 digest reported by
+	 * the server.
+	 *
+	 * @param verifying
+	 *        {@code true} to verify downloads; {@code false} otherwise.
+	 */
+	public void setVerifying (final boolean verifying)
+	{
+		this.verifying = verifying;
+	}
+
+	/**
+	 * The bandwidth limit that means there is no limit.
+	 */
+	public static final long UNLIMITED = 0;
+
+	/**
+	 * The most bytes per second that all downloads together may receive, or
+	 * {@link #UNLIMITED}.
+	 */
+	private volatile long bandwidthLimit = UNLIMITED;
+
+	/**
+	 * Answer the most bytes per second that all downloads together may
+	 * receive when there is no {@linkplain #bandwidthSchedule() schedule}.
+	 *
+	 * @return The limit in bytes per second, or {@link #UNLIMITED}.
+	 */
+	public long bandwidthLimit ()
+	{
+		return bandwidthLimit;
+	}
+
+	/**
+	 * Set the most bytes per second that all downloads together may receive
+	 * when there is no {@linkplain #bandwidthSchedule() schedule}.
+	 *
+	 * @param bandwidthLimit
+	 *        The limit in bytes per second, or {@link #UNLIMITED}.
+	 */
+	public void setBandwidthLimit (final long bandwidthLimit)
+	{
+		if (bandwidthLimit < 0)
+		{
+			throw new IllegalArgumentException(
+				"bandwidthLimit must not be negative: " + bandwidthLimit);
+		}
+		this.bandwidthLimit = bandwidthLimit;
+	}
+
+	/**
+	 * The {@link BandwidthSchedule} that overrides the {@link
+	 * #bandwidthLimit}, or {@code null} if none.
+	 */
+	private volatile @Nullable BandwidthSchedule bandwidthSchedule;
+
+	/**
+	 * Answer the {@link BandwidthSchedule} that varies the limit on all
+	 * downloads together by time of day.
+	 *
+	 * @return A {@code BandwidthSchedule}, or {@code null} if the {@link
+	 *         #bandwidthLimit()} applies at all times.
+	 */
+	public @Nullable BandwidthSchedule bandwidthSchedule ()
+	{
+		return bandwidthSchedule;
+	}
+
+	/**
+	 * Set the {@link BandwidthSchedule} that varies the limit on all
+	 * downloads together by time of day.
+	 *
+	 * @param bandwidthSchedule
+	 *        A {@code BandwidthSchedule}, or {@code null} to apply the {@link
+	 *        #bandwidthLimit()} at all times.
+	 */
+	public void setBandwidthSchedule (
+		final @Nullable BandwidthSchedule bandwidthSchedule)
+	{
+		this.bandwidthSchedule = bandwidthSchedule;
+	}
+
+	/**
+	 * Answer the most bytes per second that all downloads together may
+	 * receive right now.
+	 *
+	 * @return The limit in bytes per second, or {@link #UNLIMITED}.
+	 */
+	public long currentBandwidthLimit ()
+	{
+		final BandwidthSchedule schedule = bandwidthSchedule;
+		return schedule != null
+			? schedule.limitAt(LocalTime.now())
+			: bandwidthLimit;
+	}
+
+	/**
+	 * The most bytes per second that any one download may receive, or {@link
+	 * #UNLIMITED}.
+	 */
+	private volatile long perDownloadBandwidthLimit = UNLIMITED;
+
+	/**
+	 * Answer the most bytes per second that any one download may receive,
+	 * over all of its connections together.
+	 *
+	 * @return The limit in bytes per second, or {@link #UNLIMITED}.
+	 */
+	public long perDownloadBandwidthLimit ()
+	{
+		return perDownloadBandwidthLimit;
+	}
+
+	/**
+	 * Set the most bytes per second that any one download may receive, over
+	 * all of its connections together.
+	 *
+	 * @param perDownloadBandwidthLimit
+	 *        The limit in bytes per second, or {@link #UNLIMITED}.
+	 */
+	public void setPerDownloadBandwidthLimit (
+		final long perDownloadBandwidthLimit)
+	{
+		if (perDownloadBandwidthLimit < 0)
+		{
+			throw new IllegalArgumentException(
+				"perDownloadBandwidthLimit must not be negative: "
+					+ perDownloadBandwidthLimit);
+		}
+		this.perDownloadBandwidthLimit = perDownloadBandwidthLimit;
+	}
+
+	/**
+	 * Are segmented downloads enabled?
+	 *
+	 * @return {@code true} if files larger than the {@link #segmentSize()} are
+	 *         downloaded over multiple connections; {@code false} otherwise.
+	 */
+	public boolean isSegmented ()
+	{
+		return segmentCount > 1;
+	}
+}
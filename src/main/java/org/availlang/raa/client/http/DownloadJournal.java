@@ -0,0 +1,444 @@
+/*
+ * DownloadJournal.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import org.availlang.raa.B2File;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A {@code DownloadJournal} records which byte ranges of a resumable download
+ * have been durably written to its {@linkplain #partFile(File) part file}.
+ *
+ * <p>
+ * The journal is a small text sidecar file next to the part file. Its first
+ * line identifies the {@link B2File#fileId} and total length being
+ * downloaded, followed by the expected SHA-1 of the file if the server
+ * reported one; each following line records one completed range as {@code
+ * <first> <count>}. Ranges are only recorded after the part file has been
+ * forced to disk, so a crash can at worst lose the most recent progress, never
+ * claim bytes that were not written. A torn final line is ignored.
+ * </p>
+ *
+ * <p>
+ * B2 file ids identify an immutable version of a file, so a journal whose id
+ * and length match the requested file can safely be resumed.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+final class DownloadJournal
+{
+	/**
+	 * The suffix added to a target file's name to form its part file.
+	 */
+	private static final String PART_SUFFIX = ".part";
+
+	/**
+	 * The suffix added to a part file's name to form its journal.
+	 */
+	private static final String JOURNAL_SUFFIX = ".journal";
+
+	/**
+	 * Answer the part file that a resumable download writes to before it is
+	 * complete.
+	 *
+	 * @param targetFile
+	 *        The {@link File} being downloaded to.
+	 * @return A {@code File}.
+	 */
+	static File partFile (final File targetFile)
+	{
+		return new File(targetFile.getPath() + PART_SUFFIX);
+	}
+
+	/**
+	 * Answer the journal of the provided target file.
+	 *
+	 * @param targetFile
+	 *        The {@link File} being downloaded to.
+	 * @return A {@code File}.
+	 */
+	private static File journalFile (final File targetFile)
+	{
+		return new File(partFile(targetFile).getPath() + JOURNAL_SUFFIX);
+	}
+
+	/**
+	 * The {@link File} this journal is stored in.
+	 */
+	private final File journalFile;
+
+	/**
+	 * The {@link B2File#fileId} of the file being downloaded.
+	 */
+	private final String fileId;
+
+	/**
+	 * The total length of the file in bytes.
+	 */
+	final long totalLength;
+
+	/**
+	 * The expected lowercase hexadecimal SHA-1 digest of the whole file, or
+	 * {@code null} if the server did not report one.
+	 */
+	final @Nullable String contentSha1;
+
+	/**
+	 * The {@link ByteRange}s recorded as complete, in the order they were
+	 * recorded.
+	 */
+	private final List<ByteRange> completed = new ArrayList<>();
+
+	/**
+	 * The {@link Writer} that appends to the journal, or {@code null} if it
+	 * has not yet been opened.
+	 */
+	private @Nullable Writer writer;
+
+	/**
+	 * Load the journal of the provided target file, provided it describes the
+	 * same file and its part file still exists.
+	 *
+	 * @param targetFile
+	 *        The {@link File} being downloaded to.
+	 * @param fileId
+	 *        The {@link B2File#fileId} of the file being downloaded.
+	 * @return The {@code DownloadJournal}, or {@code null} if there is no
+	 *         usable journal.
+	 */
+	static @Nullable DownloadJournal load (
+		final File targetFile,
+		final String fileId)
+	{
+		final File journalFile = journalFile(targetFile);
+		if (!journalFile.isFile() || !partFile(targetFile).isFile())
+		{
+			return null;
+		}
+		try (final BufferedReader reader = Files.newBufferedReader(
+			journalFile.toPath(), StandardCharsets.UTF_8))
+		{
+			final String header = reader.readLine();
+			if (header == null)
+			{
+				return null;
+			}
+			final String[] identity = header.split(" ");
+			if (identity.length < 2 || identity.length > 3
+				|| !identity[0].equals(fileId))
+			{
+				return null;
+			}
+			final DownloadJournal journal = new DownloadJournal(
+				journalFile,
+				fileId,
+				Long.parseLong(identity[1]),
+				identity.length == 3 ? identity[2] : null);
+			String line = reader.readLine();
+			while (line != null)
+			{
+				final String[] fields = line.split(" ");
+				if (fields.length == 2)
+				{
+					try
+					{
+						final long first = Long.parseLong(fields[0]);
+						final long count = Long.parseLong(fields[1]);
+						if (first >= 0 && count > 0
+							&& first + count <= journal.totalLength)
+						{
+							journal.completed.add(new ByteRange(first, count));
+						}
+					}
+					catch (final NumberFormatException e)
+					{
+						// A torn write; ignore it.
+					}
+				}
+				line = reader.readLine();
+			}
+			return journal;
+		}
+		catch (final IOException | NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Create a new, empty journal for the provided target file, replacing any
+	 * existing one.
+	 *
+	 * @param targetFile
+	 *        The {@link File} being downloaded to.
+	 * @param fileId
+	 *        The {@link B2File#fileId} of the file being downloaded.
+	 * @param totalLength
+	 *        The total length of the file in bytes.
+	 * @param contentSha1
+	 *        The expected lowercase hexadecimal SHA-1 digest of the whole
+	 *        file, or {@code null} if the server did not report one.
+	 * @return A {@code DownloadJournal}.
+	 * @throws IOException
+	 *         If the journal could not be written.
+	 */
+	static DownloadJournal create (
+		final File targetFile,
+		final String fileId,
+		final long totalLength,
+		final @Nullable String contentSha1)
+		throws IOException
+	{
+		final DownloadJournal journal = new DownloadJournal(
+			journalFile(targetFile), fileId, totalLength, contentSha1);
+		final Writer writer = Files.newBufferedWriter(
+			journal.journalFile.toPath(),
+			StandardCharsets.UTF_8,
+			StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING);
+		writer.write(
+			fileId + " " + totalLength
+				+ (contentSha1 == null ? "" : " " + contentSha1) + "\n");
+		writer.flush();
+		journal.writer = writer;
+		return journal;
+	}
+
+	/**
+	 * Record that the provided {@link ByteRange} has been durably written to
+	 * the part file.
+	 *
+	 * @param range
+	 *        The completed {@code ByteRange}.
+	 * @throws IOException
+	 *         If the journal could not be written.
+	 */
+	synchronized void record (final ByteRange range) throws IOException
+	{
+		if (writer == null)
+		{
+			writer = Files.newBufferedWriter(
+				journalFile.toPath(),
+				StandardCharsets.UTF_8,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		}
+		writer.write(range.first + " " + range.count + "\n");
+		writer.flush();
+		completed.add(range);
+	}
+
+	/**
+	 * Answer the number of bytes recorded as complete.
+	 *
+	 * @return A {@code long}.
+	 */
+	synchronized long completedBytes ()
+	{
+		long total = 0;
+		for (final ByteRange range : merged())
+		{
+			total += range.count;
+		}
+		return total;
+	}
+
+	/**
+	 * Answer the ranges recorded as complete.
+	 *
+	 * @return A {@link List} of disjoint {@link ByteRange}s in ascending order.
+	 */
+	synchronized List<ByteRange> completedRanges ()
+	{
+		return merged();
+	}
+
+	/**
+	 * Answer the {@link #completed} ranges sorted and coalesced.
+	 *
+	 * <p>
+	 * <strong>NOTE:</strong> Must be called while holding the monitor of this
+	 * {@link DownloadJournal}.
+	 * </p>
+	 *
+	 * @return A {@link List} of disjoint {@link ByteRange}s in ascending order.
+	 */
+	private List<ByteRange> merged ()
+	{
+		final List<ByteRange> sorted = new ArrayList<>(completed);
+		sorted.sort(Comparator.comparingLong(r -> r.first));
+		final List<ByteRange> merged = new ArrayList<>();
+		for (final ByteRange range : sorted)
+		{
+			final int last = merged.size() - 1;
+			if (last >= 0 && range.first <= merged.get(last).end())
+			{
+				final ByteRange previous = merged.get(last);
+				final long end = Math.max(previous.end(), range.end());
+				merged.set(
+					last, new ByteRange(previous.first, end - previous.first));
+			}
+			else
+			{
+				merged.add(range);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Answer the ranges of the file that have not been recorded as complete,
+	 * split into pieces no larger than the provided segment size.
+	 *
+	 * @param segmentSize
+	 *        The maximum size of each answered {@link ByteRange}.
+	 * @return A {@link List} of {@code ByteRange}s in ascending order.
+	 */
+	synchronized List<ByteRange> missingRanges (final long segmentSize)
+	{
+		final List<ByteRange> missing = new ArrayList<>();
+		long position = 0;
+		for (final ByteRange range : merged())
+		{
+			addSegments(missing, position, range.first, segmentSize);
+			position = range.end();
+		}
+		addSegments(missing, position, totalLength, segmentSize);
+		return missing;
+	}
+
+	/**
+	 * Add the span of bytes from {@code start} to {@code end} to the provided
+	 * {@link List}, split into pieces no larger than the segment size.
+	 *
+	 * @param ranges
+	 *        The {@code List} of {@link ByteRange}s to add to.
+	 * @param start
+	 *        The offset of the first byte of the span.
+	 * @param end
+	 *        The offset just past the last byte of the span.
+	 * @param segmentSize
+	 *        The maximum size of each added {@code ByteRange}.
+	 */
+	static void addSegments (
+		final List<ByteRange> ranges,
+		final long start,
+		final long end,
+		final long segmentSize)
+	{
+		for (long first = start; first < end; first += segmentSize)
+		{
+			ranges.add(
+				new ByteRange(first, Math.min(segmentSize, end - first)));
+		}
+	}
+
+	/**
+	 * Close the journal's {@link Writer}, if open.
+	 */
+	synchronized void close ()
+	{
+		if (writer != null)
+		{
+			try
+			{
+				writer.close();
+			}
+			catch (final IOException e)
+			{
+				// Nothing more can be done; the journal is only advisory.
+			}
+			writer = null;
+		}
+	}
+
+	/**
+	 * Close and delete the journal. This is done once the download is
+	 * complete.
+	 *
+	 * @throws IOException
+	 *         If the journal could not be deleted.
+	 */
+	synchronized void delete () throws IOException
+	{
+		close();
+		Files.deleteIfExists(journalFile.toPath());
+	}
+
+	@Override
+	public String toString ()
+	{
+		return String.format(
+			"DownloadJournal{fileId: %s, length: %d, completed: %s}",
+			fileId,
+			totalLength,
+			completed);
+	}
+
+	/**
+	 * Construct a {@link DownloadJournal}.
+	 *
+	 * @param journalFile
+	 *        The {@link File} this journal is stored in.
+	 * @param fileId
+	 *        The {@link B2File#fileId} of the file being downloaded.
+	 * @param totalLength
+	 *        The total length of the file in bytes.
+	 * @param contentSha1
+	 *        The expected lowercase hexadecimal SHA-1 digest of the whole
+	 *        file, or {@code null} if the server did not report one.
+	 */
+	private DownloadJournal (
+		final File journalFile,
+		final String fileId,
+		final long totalLength,
+		final @Nullable String contentSha1)
+	{
+		this.journalFile = journalFile;
+		this.fileId = fileId;
+		this.totalLength = totalLength;
+		this.contentSha1 = contentSha1;
+	}
+}
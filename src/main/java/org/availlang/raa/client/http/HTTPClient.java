@@ -43,14 +43,23 @@ import org.availlang.raa.exceptions.ApplicationException;
 import org.availlang.raa.exceptions.ConnectionException;
 import org.availlang.raa.exceptions.DownloadException;
 import org.availlang.raa.exceptions.ResponseException;
+import org.availlang.raa.metrics.RequestPhase;
+import org.availlang.raa.metrics.RequestTimer;
+import org.availlang.raa.metrics.TransferMetrics;
 
+import javax.annotation.Nullable;
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -62,6 +71,12 @@ import java.util.function.Consumer;
 public class HTTPClient
 implements Client
 {
+	/**
+	 * The {@link HTTPConnectionPool} that persistent connections are leased
+	 * from.
+	 */
+	private final HTTPConnectionPool connectionPool;
+
 	/**
 	 * Answer the {@link URL} used for making this {@link APIRequest}.
 	 *
@@ -69,7 +84,7 @@ implements Client
 	 *        The {@code APIRequest} to process.
 	 * @return A String.
 	 */
-	private String url (final APIRequest<?> request)
+	static String url (final APIRequest<?> request)
 	{
 		//noinspection StringBufferReplaceableByString
 		return new StringBuilder(request.baseClientLocationIdentifier())
@@ -82,18 +97,73 @@ implements Client
 			.toString();
 	}
 
+	/**
+	 * Answer the {@link URL} of the provided {@link APIRequest}, resolving its
+	 * host so that the time spent on the lookup is timed on its own. The JVM
+	 * caches the resolved address, so the connection does not look it up
+	 * again.
+	 *
+	 * @param request
+	 *        The {@code APIRequest}.
+	 * @param timer
+	 *        The {@link RequestTimer} that times the exchange.
+	 * @return A {@code URL}.
+	 * @throws IOException
+	 *         If the URL is malformed or its host is unknown.
+	 */
+	private static URL resolve (
+		final APIRequest<?> request,
+		final RequestTimer timer)
+		throws IOException
+	{
+		final URL url = new URL(url(request));
+		InetAddress.getAllByName(url.getHost());
+		timer.phase(RequestPhase.RESOLVE);
+		return url;
+	}
+
 	/**
 	 * Create a {@link HttpURLConnection} for the provided {@link APIRequest}.
 	 *
 	 * @param request
 	 *        A {@code APIRequest}.
+	 * @param timer
+	 *        The {@link RequestTimer} that times the exchange.
 	 * @param failureContinuation
 	 *        The {@link Consumer} that accepts a {@link Throwable} to call in
 	 *        the event of a failure.
-	 * @return An {@code HttpURLConnection}.
+	 * @return An {@code HttpURLConnection} leased from the {@link
+	 *         #connectionPool}, or {@code null} if the connection failed.
 	 */
-	private HttpURLConnection createConnection (
+	private @Nullable HttpURLConnection createConnection (
 		final APIRequest<?> request,
+		final RequestTimer timer,
+		final Consumer<ApplicationException> failureContinuation)
+	{
+		return createConnection(request, null, timer, failureContinuation);
+	}
+
+	/**
+	 * Create a {@link HttpURLConnection} for the provided {@link APIRequest}
+	 * that only asks for the indicated range of the response body.
+	 *
+	 * @param request
+	 *        A {@code APIRequest}.
+	 * @param range
+	 *        The value of the HTTP {@code Range} header, or {@code null} to
+	 *        request the entire response body.
+	 * @param timer
+	 *        The {@link RequestTimer} that times the exchange.
+	 * @param failureContinuation
+	 *        The {@link Consumer} that accepts a {@link Throwable} to call in
+	 *        the event of a failure.
+	 * @return An {@code HttpURLConnection} leased from the {@link
+	 *         #connectionPool}, or {@code null} if the connection failed.
+	 */
+	@Nullable HttpURLConnection createConnection (
+		final APIRequest<?> request,
+		final @Nullable String range,
+		final RequestTimer timer,
 		final Consumer<ApplicationException> failureContinuation)
 	{
 		final HTTPProtocolMethod method =
@@ -101,9 +171,11 @@ implements Client
 		switch (method)
 		{
 			case GET:
-				return createHTTPGetConnection(request, failureContinuation);
+				return createHTTPGetConnection(
+					request, range, timer, failureContinuation);
 			case POST:
-				return createHTTPPostConnection(request, failureContinuation);
+				return createHTTPPostConnection(
+					request, range, timer, failureContinuation);
 			default:
 				new UnsupportedOperationException(
 						"HTTP " + method.name() + " is not supported")
@@ -119,20 +191,28 @@ implements Client
 	 *
 	 * @param request
 	 *        A {@code APIRequest}.
+	 * @param range
+	 *        The value of the HTTP {@code Range} header, or {@code null} to
+	 *        request the entire response body.
+	 * @param timer
+	 *        The {@link RequestTimer} that times the exchange.
 	 * @param failureContinuation
 	 *        The {@link Consumer} that accepts a {@link Throwable} to call in
 	 *        the event of a failure.
-	 * @return An {@code HttpURLConnection}.
+	 * @return An {@code HttpURLConnection} leased from the {@link
+	 *         #connectionPool}, or {@code null} if the connection failed.
 	 */
-	private HttpURLConnection createHTTPGetConnection (
+	private @Nullable HttpURLConnection createHTTPGetConnection (
 		final APIRequest<?> request,
+		final @Nullable String range,
+		final RequestTimer timer,
 		final Consumer<ApplicationException> failureContinuation)
 	{
 		HttpURLConnection connection = null;
 		try
 		{
-			final URL url = new URL(url(request));
-			connection = (HttpURLConnection) url.openConnection();
+			final URL url = resolve(request, timer);
+			connection = connectionPool.lease(url);
 			connection.setRequestMethod("GET");
 			if (request.usesAuthorizationToken())
 			{
@@ -140,6 +220,12 @@ implements Client
 					"Authorization",
 					request.authorizationToken());
 			}
+			if (range != null)
+			{
+				connection.setRequestProperty("Range", range);
+			}
+			connection.connect();
+			timer.phase(RequestPhase.CONNECT);
 			return connection;
 		}
 		catch (final UnknownHostException e)
@@ -148,17 +234,21 @@ implements Client
 			e.printStackTrace();
 			if (connection != null)
 			{
-				connection.disconnect();
+				connectionPool.release(connection, false);
 			}
 			ExitCode.COULD_NOT_CONNECT.shutdown();
 		}
 		catch (final IOException | IllegalArgumentException
 			| ResponseException | JSONException e)
 		{
+			if (connection != null)
+			{
+				connectionPool.release(connection, false);
+			}
 			failureContinuation.accept(
 				new ConnectionException("Unexpected Error", e));
 		}
-		return null; // Will never get here, but needed to make Java happy.
+		return null; // The failure has already been reported.
 	}
 
 	/**
@@ -167,25 +257,28 @@ implements Client
 	 *
 	 * @param request
 	 *        A {@code APIRequest}.
+	 * @param range
+	 *        The value of the HTTP {@code Range} header, or {@code null} to
+	 *        request the entire response body.
+	 * @param timer
+	 *        The {@link RequestTimer} that times the exchange.
 	 * @param failureContinuation
 	 *        The {@link Consumer} that accepts a {@link Throwable} to call in
 	 *        the event of a failure.
-	 * @return An {@code HttpURLConnection}.
+	 * @return An {@code HttpURLConnection} leased from the {@link
+	 *         #connectionPool}, or {@code null} if the connection failed.
 	 */
-	private HttpURLConnection createHTTPPostConnection (
+	private @Nullable HttpURLConnection createHTTPPostConnection (
 		final APIRequest<?> request,
+		final @Nullable String range,
+		final RequestTimer timer,
 		final Consumer<ApplicationException> failureContinuation)
 	{
 		HttpURLConnection connection = null;
 		try
 		{
-			final JSONWriter writer = new JSONWriter();
-			request.writeTo(writer);
-			byte postData[] = writer
-				.toString()
-				.getBytes(StandardCharsets.UTF_8);
-			final URL url = new URL(url(request));
-			connection = (HttpURLConnection) url.openConnection();
+			final URL url = resolve(request, timer);
+			connection = connectionPool.lease(url);
 			connection.setRequestMethod("POST");
 			if (request.usesAuthorizationToken())
 			{
@@ -193,15 +286,31 @@ implements Client
 					"Authorization",
 					request.authorizationToken());
 			}
+			if (range != null)
+			{
+				connection.setRequestProperty("Range", range);
+			}
 			connection.setRequestProperty(
 				"Content-Type", "application/x-www-form-urlencoded");
 			connection.setRequestProperty("Charset", "UTF-8");
-			connection.setRequestProperty(
-				"Content-Length", Integer.toString(postData.length));
 			connection.setDoOutput(true);
-			DataOutputStream outputStream =
-				new DataOutputStream(connection.getOutputStream());
-			outputStream.write(postData);
+			final HttpURLConnection leased = connection;
+			bodyEncoder.encode(request, (bytes, length) ->
+			{
+				// The connection buffers its own copy of the body: in
+				// streaming mode HttpURLConnection discards the body of a 401
+				// response, and with it the B2 code that says why the
+				// authorization token was rejected.
+				leased.connect();
+				timer.phase(RequestPhase.CONNECT);
+				try (final OutputStream outputStream =
+					leased.getOutputStream())
+				{
+					outputStream.write(bytes, 0, length);
+				}
+				timer.phase(RequestPhase.SEND);
+				timer.addBytesWritten(length);
+			});
 			return connection;
 		}catch (final UnknownHostException e)
 		{
@@ -209,16 +318,20 @@ implements Client
 			e.printStackTrace();
 			if (connection != null)
 			{
-				connection.disconnect();
+				connectionPool.release(connection, false);
 			}
 			ExitCode.COULD_NOT_CONNECT.shutdown();
 		}
 		catch (final IOException e)
 		{
+			if (connection != null)
+			{
+				connectionPool.release(connection, false);
+			}
 			failureContinuation.accept(
 				new ConnectionException("Unexpected Error", e));
 		}
-		return null; // Will never get here, but needed to make Java happy.
+		return null; // The failure has already been reported.
 	}
 
 	@Override
@@ -236,70 +349,410 @@ implements Client
 	}
 
 
+	/**
+	 * The size, in {@code char}s, of the buffer used to decode response
+	 * bodies.
+	 */
+	static final int READ_BUFFER_SIZE = 16384;
+
+	/**
+	 * Answer a {@link BufferedReader} that decodes the provided response
+	 * {@link InputStream} as UTF-8 using bulk reads.
+	 *
+	 * @param stream
+	 *        The response {@code InputStream}.
+	 * @return A {@code BufferedReader}.
+	 */
+	private static BufferedReader bodyReader (final InputStream stream)
+	{
+		return new BufferedReader(
+			new InputStreamReader(stream, StandardCharsets.UTF_8),
+			READ_BUFFER_SIZE);
+	}
+
+	/**
+	 * Read and discard whatever remains of the provided {@link Reader} so that
+	 * the underlying connection can be returned to the keep-alive cache.
+	 *
+	 * @param reader
+	 *        The {@code Reader} to exhaust.
+	 * @throws IOException
+	 *         If the reader could not be read.
+	 */
+	private static void drain (final Reader reader) throws IOException
+	{
+		final char[] buffer = new char[256];
+		//noinspection StatementWithEmptyBody
+		while (reader.read(buffer) != -1) { /* Discard */ }
+	}
+
+	/**
+	 * Read the entire body of the response, closing the {@link InputStream}
+	 * once it is exhausted so that the underlying connection can be returned to
+	 * the keep-alive cache.
+	 *
+	 * @param stream
+	 *        The response {@code InputStream}, or {@code null} if the response
+	 *        has no body.
+	 * @return The body as a String.
+	 * @throws IOException
+	 *         If the body could not be read.
+	 */
+	static String readBody (final @Nullable InputStream stream)
+		throws IOException
+	{
+		if (stream == null)
+		{
+			return "";
+		}
+		final StringBuilder sb = new StringBuilder();
+		try (final BufferedReader reader = bodyReader(stream))
+		{
+			final char[] buffer = new char[READ_BUFFER_SIZE];
+			int count = reader.read(buffer);
+			while (count != -1)
+			{
+				sb.append(buffer, 0, count);
+				count = reader.read(buffer);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Decode the JSON object in the body of the response directly from the
+	 * provided {@link InputStream}, without first copying the body into an
+	 * intermediate String. The stream is exhausted and closed so that the
+	 * underlying connection can be returned to the keep-alive cache.
+	 *
+	 * @param stream
+	 *        The response {@code InputStream}.
+	 * @return The decoded {@link JSONObject}.
+	 * @throws IOException
+	 *         If the body could not be read.
+	 * @throws JSONException
+	 *         If the body is not a well-formed JSON object.
+	 */
+	static JSONObject readJSONObject (final InputStream stream)
+		throws IOException, JSONException
+	{
+		try (final BufferedReader reader = bodyReader(stream))
+		{
+			// JSONReader requires a Reader that supports mark/reset, which
+			// BufferedReader does.
+			final JSONObject object =
+				(JSONObject) new JSONReader(reader).read();
+			// Any trailing whitespace must still be consumed.
+			drain(reader);
+			return object;
+		}
+	}
+
+	/**
+	 * Report the failed response to the {@link APIRequest}'s failure
+	 * continuation.
+	 *
+	 * @param connection
+	 *        The {@link HttpURLConnection} that received the failed response.
+	 * @param code
+	 *        The HTTP response code.
+	 * @param failureContinuation
+	 *        The {@link Consumer} that accepts a {@link Throwable} to call in
+	 *        the event of a failure.
+	 * @throws IOException
+	 *         If the error body could not be read.
+	 */
+	static void reportFailedResponse (
+		final HttpURLConnection connection,
+		final int code,
+		final Consumer<ApplicationException> failureContinuation)
+		throws IOException
+	{
+		final String body = readBody(connection.getErrorStream());
+		System.err.println("Attempted to reach: "
+			+ connection.getURL().toString());
+		System.err.println(body);
+		failureContinuation.accept(new ResponseException(
+			code,
+			connection.getResponseMessage(),
+			body,
+			connection.getHeaderField("Retry-After")));
+	}
+
+	/**
+	 * Process an {@link APIRequest} whose response is a JSON object.
+	 *
+	 * @param request
+	 *        The {@code APIRequest} to process.
+	 */
 	private <Response extends APIResponse> void processRegularRequest (
 		final APIRequest<Response> request)
 	{
 		final Consumer<JSONObject> contentConsumer = request.contentConsumer();
 		final Consumer<ApplicationException> failureContinuation =
 			request.failureContinuation();
-		HttpURLConnection connection = null;
+		final RequestTimer timer = metrics.startRequest(request.catalogue());
+		final HttpURLConnection connection =
+			createConnection(request, timer, failureContinuation);
+		if (connection == null)
+		{
+			// The failure has already been reported.
+			timer.finish(false);
+			return;
+		}
+		// Let a hedged duplicate that answers first abort this attempt by
+		// closing its connection, which fails the blocked read.
+		final Runnable canceller = connection::disconnect;
+		request.addCanceller(canceller);
+		boolean reusable = false;
 		try
 		{
-			connection = createConnection(request, failureContinuation);
 			final int code = connection.getResponseCode();
-			final InputStream in = code != 200
-				? new BufferedInputStream(connection.getErrorStream())
-				: new BufferedInputStream(connection.getInputStream());
-			final StringBuilder sb = new StringBuilder();
-			try (final InputStreamReader reader = new InputStreamReader(in))
-			{
-				int c = reader.read();
-				while (c != -1)
-				{
-					sb.append((char) c);
-					c = reader.read();
-				}
-			}
+			timer.phase(RequestPhase.FIRST_BYTE);
 			if (code != 200)
 			{
-				System.err.println("Attempted to reach: "
-					+ connection.getURL().toString());
-				System.err.println(sb);
-				failureContinuation.accept(new ResponseException(
-					code,
-					connection.getResponseMessage(),
-					sb.toString()));
+				request.removeCanceller(canceller);
+				reportFailedResponse(connection, code, failureContinuation);
+				reusable = true;
 			}
 			else
 			{
-				contentConsumer.accept((JSONObject) new JSONReader(
-					new StringReader(sb.toString())).read());
+				final CountingInputStream stream =
+					new CountingInputStream(connection.getInputStream());
+				final JSONObject content = readJSONObject(stream);
+				request.removeCanceller(canceller);
+				reusable = true;
+				timer.phase(RequestPhase.RECEIVE);
+				timer.addBytesRead(stream.count());
+				// The timings should not include the time the consumer takes.
+				timer.finish(true);
+				contentConsumer.accept(content);
 			}
 		}
 		catch (final IOException e)
 		{
+			request.removeCanceller(canceller);
 			failureContinuation.accept(
 				new ConnectionException("Unexpected Error", e));
 		}
 		catch (final Throwable e)
 		{
+			request.removeCanceller(canceller);
 			failureContinuation.accept(
 				new ApplicationException(
 					ExitCode.UNEXPECTED_EXCEPTION, "Unexpected Error", e));
 		}
 		finally
 		{
-			if (connection != null)
+			timer.finish(false);
+			connectionPool.release(connection, reusable);
+		}
+	}
+
+	/**
+	 * Answer the {@link File} the provided download {@link APIRequest} writes
+	 * its data to.
+	 *
+	 * @param downloadRequest
+	 *        The {@code APIRequest} that contains the specifics of the
+	 *        download being performed.
+	 * @return A {@code File}.
+	 */
+	static File targetFile (final APIRequest<?> downloadRequest)
+	{
+		return new File(
+			downloadRequest.outputPath() + File.separator
+				+ downloadRequest.file().fileNameOnly());
+	}
+
+	/**
+	 * Answer the content of the response to a completed download {@link
+	 * APIRequest}.
+	 *
+	 * @param downloadRequest
+	 *        The {@code APIRequest} that contains the specifics of the
+	 *        download performed.
+	 * @param contentLength
+	 *        The length of the downloaded file in bytes.
+	 * @param contentSha1
+	 *        The lowercase hexadecimal SHA-1 digest the server reported for
+	 *        the file, or {@code null} if it reported none.
+	 * @param verified
+	 *        {@code true} if the downloaded data was checked against the
+	 *        {@code contentSha1}; {@code false} otherwise.
+	 * @return A {@link JSONObject}.
+	 */
+	static JSONObject downloadContent (
+		final APIRequest<?> downloadRequest,
+		final long contentLength,
+		final @Nullable String contentSha1,
+		final boolean verified)
+	{
+		final JSONWriter writer = new JSONWriter();
+		writer.startObject();
+		writer.write("fileId");
+		writer.write(downloadRequest.file().fileId);
+		writer.write("fileName");
+		writer.write(downloadRequest.file().fileName);
+		writer.write("contentLength");
+		writer.write(contentLength);
+		if (contentSha1 != null)
+		{
+			writer.write("contentSha1");
+			writer.write(contentSha1);
+		}
+		writer.write("verified");
+		writer.write(verified);
+		writer.endObject();
+		return (JSONObject)
+			new JSONReader(new StringReader(writer.toString())).read();
+	}
+
+	/**
+	 * Start a {@link SegmentedDownload} of the provided ranges of the file,
+	 * creating a fresh {@link DownloadJournal} first if downloads are
+	 * {@linkplain DownloadConfiguration#isResumable() resumable}.
+	 *
+	 * @param downloadRequest
+	 *        The {@link APIRequest} that contains the specifics of the
+	 *        download being performed.
+	 * @param connection
+	 *        The {@link HttpURLConnection} that received the response for the
+	 *        first range. The {@code SegmentedDownload} takes responsibility
+	 *        for releasing it.
+	 * @param totalLength
+	 *        The total length of the file in bytes.
+	 * @param ranges
+	 *        The {@link ByteRange}s that make up the whole file.
+	 * @param timer
+	 *        The {@link RequestTimer} that times the download.
+	 * @param configuration
+	 *        The {@link DownloadConfiguration} in effect for this download.
+	 */
+	private void startDownload (
+		final APIRequest<?> downloadRequest,
+		final HttpURLConnection connection,
+		final long totalLength,
+		final List<ByteRange> ranges,
+		final RequestTimer timer,
+		final DownloadConfiguration configuration)
+	{
+		final File targetFile = targetFile(downloadRequest);
+		final String contentSha1 =
+			ContentDigest.expectedSha1(connection::getHeaderField);
+		DownloadJournal journal = null;
+		if (configuration.isResumable())
+		{
+			try
+			{
+				journal = DownloadJournal.create(
+					targetFile,
+					downloadRequest.file().fileId,
+					totalLength,
+					contentSha1);
+			}
+			catch (final IOException e)
 			{
-				connection.disconnect();
+				connectionPool.release(connection, false);
+				timer.finish(false);
+				downloadRequest.failureContinuation().accept(
+					new DownloadException(
+						"could not download data to " +
+							targetFile.getAbsolutePath(),
+						e));
+				return;
 			}
 		}
+		new SegmentedDownload(
+				this,
+				downloadRequest,
+				targetFile,
+				journal,
+				totalLength,
+				ranges,
+				contentSha1,
+				timer,
+				configuration)
+			.start(connection);
+	}
+
+	/**
+	 * Complete the download of an empty file: create the target file, or
+	 * truncate it if it already exists, and run the download {@link
+	 * APIRequest}'s continuation.
+	 *
+	 * @param downloadRequest
+	 *        The {@link APIRequest} that contains the specifics of the
+	 *        download being performed.
+	 * @param connection
+	 *        The {@link HttpURLConnection} that received the response.
+	 * @param timer
+	 *        The {@link RequestTimer} that times the download.
+	 * @param configuration
+	 *        The {@link DownloadConfiguration} in effect for this download.
+	 */
+	private static void completeEmptyDownload (
+		final APIRequest<?> downloadRequest,
+		final HttpURLConnection connection,
+		final RequestTimer timer,
+		final DownloadConfiguration configuration)
+	{
+		final Consumer<ApplicationException> failureContinuation =
+			downloadRequest.failureContinuation();
+		final File targetFile = targetFile(downloadRequest);
+		try
+		{
+			FileChannel.open(
+					targetFile.toPath(),
+					StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)
+				.close();
+		}
+		catch (final IOException e)
+		{
+			failureContinuation.accept(
+				new DownloadException(
+					"could not download data to " +
+						targetFile.getAbsolutePath(),
+					e));
+			return;
+		}
+		final String contentSha1 = configuration.isVerifying()
+			? ContentDigest.expectedSha1(connection::getHeaderField)
+			: null;
+		if (contentSha1 != null)
+		{
+			try
+			{
+				ContentDigest.verify(
+					targetFile.getAbsolutePath(),
+					contentSha1,
+					ContentDigest.hex(ContentDigest.newSha1().digest()));
+			}
+			catch (final DownloadException e)
+			{
+				failureContinuation.accept(e);
+				return;
+			}
+		}
+		timer.finish(true);
+		downloadRequest.contentConsumer().accept(
+			downloadContent(
+				downloadRequest, 0, contentSha1, contentSha1 != null));
 	}
 
 	/**
 	 * Process the server's response to an {@link APIRequest} and download
 	 * the accompanying streaming data and save to disk.
 	 *
+	 * <p>
+	 * If downloads are {@linkplain DownloadConfiguration#isResumable()
+	 * resumable} and an earlier attempt to download the same file left a
+	 * {@link DownloadJournal}, only the byte ranges it does not record as
+	 * complete are requested.
+	 * </p>
+	 *
 	 * @param downloadRequest
 	 *        The {@link APIRequest} that contains the specifics of the
 	 *        download being performed.
@@ -309,48 +762,133 @@ implements Client
 	{
 		final Consumer<ApplicationException> failureContinuation =
 			downloadRequest.failureContinuation();
-		HttpURLConnection connection = null;
+		final DownloadConfiguration configuration = downloadConfiguration;
+		final File targetFile = targetFile(downloadRequest);
+		final RequestTimer timer =
+			metrics.startRequest(downloadRequest.catalogue());
+		if (configuration.isResumable())
+		{
+			final DownloadJournal journal = DownloadJournal.load(
+				targetFile, downloadRequest.file().fileId);
+			if (journal != null)
+			{
+				new SegmentedDownload(
+						this,
+						downloadRequest,
+						targetFile,
+						journal,
+						journal.totalLength,
+						journal.missingRanges(configuration.segmentSize()),
+						journal.contentSha1,
+						timer,
+						configuration)
+					.start(null);
+				return;
+			}
+		}
+		// When segmented downloads are enabled the first request only asks
+		// for the first segment; the Content-Range of the response reveals
+		// whether the rest of the file needs to be fetched.
+		final HttpURLConnection connection = createConnection(
+			downloadRequest,
+			configuration.isSegmented()
+				? new ByteRange(0, configuration.segmentSize()).header()
+				: null,
+			timer,
+			failureContinuation);
+		if (connection == null)
+		{
+			// The failure has already been reported.
+			timer.finish(false);
+			return;
+		}
+		boolean reusable = false;
+		boolean handedOff = false;
 		try
 		{
-			connection = createConnection(downloadRequest, failureContinuation);
 			final int code = connection.getResponseCode();
-			if (code != 200)
+			timer.phase(RequestPhase.FIRST_BYTE);
+			final long totalLength = code == 206
+				? SegmentedDownload.totalLength(connection)
+				: connection.getContentLengthLong();
+			if (code == 206 && totalLength >= 0)
 			{
-				final InputStream in =
-					new BufferedInputStream(connection.getErrorStream());
-				final StringBuilder sb = new StringBuilder();
-				try (final InputStreamReader reader = new InputStreamReader(in))
-				{
-					int c = reader.read();
-					while (c != -1)
-					{
-						sb.append((char) c);
-						c = reader.read();
-					}
-					System.err.println("Attempted to reach: "
-						+ connection.getURL().toString());
-					System.err.println(sb);
-					failureContinuation.accept(new ResponseException(
-						code,
-						connection.getResponseMessage(),
-						sb.toString()));
-				}
+				final List<ByteRange> ranges = new ArrayList<>();
+				DownloadJournal.addSegments(
+					ranges, 0, totalLength, configuration.segmentSize());
+				handedOff = true;
+				startDownload(
+					downloadRequest,
+					connection,
+					totalLength,
+					ranges,
+					timer,
+					configuration);
+			}
+			else if (code == 206)
+			{
+				failureContinuation.accept(
+					new DownloadException(
+						"Unintelligible Content-Range for "
+							+ targetFile.getAbsolutePath() + ": "
+							+ connection.getHeaderField("Content-Range")));
+			}
+			else if (SegmentedDownload.isEmptyFile(connection))
+			{
+				// No range of an empty file can be satisfied, so the first
+				// segment was refused; the file is complete once it exists.
+				readBody(connection.getErrorStream());
+				reusable = true;
+				completeEmptyDownload(
+					downloadRequest,
+					connection,
+					timer,
+					configuration);
+			}
+			else if (code != 200)
+			{
+				reportFailedResponse(connection, code, failureContinuation);
+				reusable = true;
+			}
+			else if (totalLength > 0)
+			{
+				// The whole file is arriving over this one connection.
+				handedOff = true;
+				startDownload(
+					downloadRequest,
+					connection,
+					totalLength,
+					Collections.singletonList(new ByteRange(0, totalLength)),
+					timer,
+					configuration);
 			}
 			else
 			{
-				File targetFile = new File(
-					downloadRequest.outputPath() + File.separator
-						+ downloadRequest.file().fileNameOnly());
-
-				try (final InputStream stream = connection.getInputStream())
-				{
-					Files.copy(
-						stream,
+				// The length is unknown, so the file cannot be preallocated
+				// or journaled; just stream the body straight into it.
+				final String contentSha1 = configuration.isVerifying()
+					? ContentDigest.expectedSha1(connection::getHeaderField)
+					: null;
+				final MessageDigest digest = ContentDigest.newSha1();
+				final TransferBufferPool.TransferBuffer transferBuffer =
+					transferBufferPool.acquire(configuration.bufferSize());
+				final long position;
+				try (
+					final InputStream body = connection.getInputStream();
+					final FileChannel channel = FileChannel.open(
 						targetFile.toPath(),
-						StandardCopyOption.REPLACE_EXISTING);
-					downloadRequest.contentConsumer().accept(
-						(JSONObject) new JSONReader(
-							new StringReader("{}")).read());
+						StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING))
+				{
+					position = transferBuffer.copy(
+						body,
+						channel,
+						0,
+						Long.MAX_VALUE - 1,
+						written -> {},
+						contentSha1 == null ? null : digest,
+						bandwidth);
 				}
 				catch (final IOException e)
 				{
@@ -359,7 +897,37 @@ implements Client
 							"could not download data to " +
 								targetFile.getAbsolutePath(),
 							e));
+					return;
 				}
+				finally
+				{
+					transferBufferPool.release(transferBuffer);
+				}
+				reusable = true;
+				timer.phase(RequestPhase.RECEIVE);
+				timer.addBytesRead(position);
+				if (contentSha1 != null)
+				{
+					try
+					{
+						ContentDigest.verify(
+							targetFile.getAbsolutePath(),
+							contentSha1,
+							ContentDigest.hex(digest.digest()));
+					}
+					catch (final DownloadException e)
+					{
+						failureContinuation.accept(e);
+						return;
+					}
+				}
+				timer.finish(true);
+				downloadRequest.contentConsumer().accept(
+					downloadContent(
+						downloadRequest,
+						position,
+						contentSha1,
+						contentSha1 != null));
 			}
 		}
 		catch (final IOException e)
@@ -378,7 +946,136 @@ implements Client
 		}
 		finally
 		{
-			connection.disconnect();
+			if (!handedOff)
+			{
+				timer.finish(false);
+				connectionPool.release(connection, reusable);
+			}
 		}
 	}
+
+	/**
+	 * The {@link TransferMetrics} of the requests this {@link HTTPClient}
+	 * processes.
+	 */
+	private final TransferMetrics metrics = new TransferMetrics();
+
+	/**
+	 * Answer the {@link TransferMetrics} of the requests this {@link
+	 * HTTPClient} processes: per-phase timings, bytes transferred, and
+	 * throughput for each {@link org.availlang.raa.api.APICatalogue}
+	 * operation.
+	 *
+	 * @return A {@code TransferMetrics}.
+	 */
+	public TransferMetrics metrics ()
+	{
+		return metrics;
+	}
+
+	/**
+	 * The {@link DownloadConfiguration} that governs how download {@link
+	 * APIRequest}s transfer their data.
+	 */
+	private volatile DownloadConfiguration downloadConfiguration =
+		new DownloadConfiguration();
+
+	/**
+	 * Answer the {@link DownloadConfiguration} that governs how download {@link
+	 * APIRequest}s transfer their data.
+	 *
+	 * @return A {@code DownloadConfiguration}.
+	 */
+	public DownloadConfiguration downloadConfiguration ()
+	{
+		return downloadConfiguration;
+	}
+
+	/**
+	 * Set the {@link DownloadConfiguration} that governs how download {@link
+	 * APIRequest}s transfer their data.
+	 *
+	 * @param downloadConfiguration
+	 *        The {@code DownloadConfiguration} to use for future downloads.
+	 */
+	public void setDownloadConfiguration (
+		final DownloadConfiguration downloadConfiguration)
+	{
+		this.downloadConfiguration = downloadConfiguration;
+	}
+
+	/**
+	 * The {@link TransferBufferPool} that supplies the buffers downloads are
+	 * written through.
+	 */
+	private final TransferBufferPool transferBufferPool;
+
+	/**
+	 * The {@link TokenBucket} that limits the bandwidth of all downloads
+	 * together to the {@linkplain DownloadConfiguration#currentBandwidthLimit()
+	 * current limit} of the {@link #downloadConfiguration}.
+	 */
+	private final TokenBucket bandwidth = new TokenBucket(
+		() -> downloadConfiguration.currentBandwidthLimit(), null);
+
+	/**
+	 * Answer the {@link TokenBucket} that limits the bandwidth of all
+	 * downloads together.
+	 *
+	 * @return A {@code TokenBucket}.
+	 */
+	TokenBucket bandwidth ()
+	{
+		return bandwidth;
+	}
+
+	/**
+	 * The {@link RequestBodyEncoder} that encodes the bodies of {@code POST}
+	 * requests.
+	 */
+	private final RequestBodyEncoder bodyEncoder = new RequestBodyEncoder();
+
+	/**
+	 * Answer the {@link TransferBufferPool} that supplies the buffers downloads
+	 * are written through.
+	 *
+	 * @return A {@code TransferBufferPool}.
+	 */
+	TransferBufferPool transferBufferPool ()
+	{
+		return transferBufferPool;
+	}
+
+	/**
+	 * Answer the {@link HTTPConnectionPool} this {@link HTTPClient} leases its
+	 * connections from.
+	 *
+	 * @return An {@code HTTPConnectionPool}.
+	 */
+	public HTTPConnectionPool connectionPool ()
+	{
+		return connectionPool;
+	}
+
+	/**
+	 * Construct a {@link HTTPClient}.
+	 *
+	 * @param connectionPool
+	 *        The {@link HTTPConnectionPool} to lease connections from.
+	 */
+	public HTTPClient (final HTTPConnectionPool connectionPool)
+	{
+		this.connectionPool = connectionPool;
+		this.transferBufferPool = new TransferBufferPool(
+			connectionPool.maxConnectionsPerHost());
+	}
+
+	/**
+	 * Construct a {@link HTTPClient} with its own default {@link
+	 * HTTPConnectionPool}.
+	 */
+	public HTTPClient ()
+	{
+		this(new HTTPConnectionPool());
+	}
 }
@@ -0,0 +1,354 @@
+/*
+ * HTTPConnectionPool.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A {@code HTTPConnectionPool} manages the persistent (keep-alive) {@link
+ * HttpURLConnection}s used by an {@link HTTPClient}. Connections are grouped
+ * into a {@link HostPool} per host, so the account's {@code apiUrl} and {@code
+ * downloadUrl} are each governed by their own limits.
+ *
+ * <p>
+ * The sockets themselves live in the JDK's keep-alive cache. The JDK only
+ * returns a socket to that cache after the response body has been consumed and
+ * closed, and never if {@link HttpURLConnection#disconnect()} is called. This
+ * pool therefore manages <em>leases</em>: it caps the number of simultaneous
+ * connections per host and counts how many connections were released for
+ * reuse and how many were discarded.
+ * </p>
+ *
+ * <p>
+ * Whether a released socket is actually reused is decided inside the JDK, by
+ * its keep-alive cache and the server's {@code Keep-Alive} timeout, and is not
+ * observable here. The size of that cache is read once per process from the
+ * {@code http.maxConnections} system property, which {@link
+ * org.availlang.raa.B2Application#main(String[]) main} sets before any
+ * connection is made; this pool never changes JVM-wide properties.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public class HTTPConnectionPool
+{
+	/**
+	 * The default maximum number of simultaneous connections to a single host.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+	/**
+	 * The maximum number of simultaneous connections to a single host.
+	 */
+	private final int maxConnectionsPerHost;
+
+	/**
+	 * Answer the maximum number of simultaneous connections to a single host.
+	 *
+	 * @return An {@code int}.
+	 */
+	public int maxConnectionsPerHost ()
+	{
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * The {@link HostPool}s keyed by {@linkplain #hostKey(URL) host key}.
+	 */
+	private final Map<String, HostPool> hostPools = new ConcurrentHashMap<>();
+
+	/**
+	 * The {@link HostPool} that owns each leased {@link HttpURLConnection}.
+	 */
+	private final Map<HttpURLConnection, HostPool> leases =
+		new ConcurrentHashMap<>();
+
+	/**
+	 * A {@code HostStatistics} is an immutable snapshot of the activity of a
+	 * single {@link HostPool}.
+	 */
+	public static final class HostStatistics
+	{
+		/** The total number of leases granted. */
+		public final long leases;
+
+		/**
+		 * The number of connections released with their response fully
+		 * consumed, and so offered to the JDK keep-alive cache.
+		 */
+		public final long released;
+
+		/**
+		 * The number of connections that were disconnected rather than being
+		 * offered for reuse.
+		 */
+		public final long discarded;
+
+		/** The number of connections currently leased. */
+		public final int active;
+
+		@Override
+		public String toString ()
+		{
+			return String.format(
+				"HostStatistics{leases: %d, released: %d, discarded: %d, "
+					+ "active: %d}",
+				leases, released, discarded, active);
+		}
+
+		/**
+		 * Construct a {@link HostStatistics}.
+		 *
+		 * @param leases
+		 *        The total number of leases granted.
+		 * @param released
+		 *        The number of connections offered for keep-alive reuse.
+		 * @param discarded
+		 *        The number of connections that were disconnected.
+		 * @param active
+		 *        The number of connections currently leased.
+		 */
+		HostStatistics (
+			final long leases,
+			final long released,
+			final long discarded,
+			final int active)
+		{
+			this.leases = leases;
+			this.released = released;
+			this.discarded = discarded;
+			this.active = active;
+		}
+	}
+
+	/**
+	 * A {@code HostPool} governs the connections to a single host.
+	 */
+	private final class HostPool
+	{
+		/**
+		 * The {@link Semaphore} that caps the number of simultaneous
+		 * connections to the host.
+		 */
+		private final Semaphore permits =
+			new Semaphore(maxConnectionsPerHost, true);
+
+		/** The total number of leases granted. */
+		private long leases;
+
+		/** The number of connections offered for keep-alive reuse. */
+		private long released;
+
+		/** The number of connections that were disconnected. */
+		private long discarded;
+
+		/**
+		 * Acquire a lease on a connection to the host, blocking until one is
+		 * available.
+		 *
+		 * @throws InterruptedIOException
+		 *         If interrupted while waiting for a lease.
+		 */
+		void acquire () throws InterruptedIOException
+		{
+			try
+			{
+				permits.acquire();
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+					"Interrupted waiting for a connection lease");
+			}
+			synchronized (this)
+			{
+				leases++;
+			}
+		}
+
+		/**
+		 * Release a lease on a connection to the host.
+		 *
+		 * @param reusable
+		 *        {@code true} if the connection was left in a state the JDK
+		 *        keep-alive cache can reuse; {@code false} if it was
+		 *        disconnected.
+		 */
+		void release (final boolean reusable)
+		{
+			synchronized (this)
+			{
+				if (reusable)
+				{
+					released++;
+				}
+				else
+				{
+					discarded++;
+				}
+			}
+			permits.release();
+		}
+
+		/**
+		 * Answer a {@link HostStatistics} snapshot of this {@link HostPool}.
+		 *
+		 * @return A {@code HostStatistics}.
+		 */
+		synchronized HostStatistics statistics ()
+		{
+			return new HostStatistics(
+				leases,
+				released,
+				discarded,
+				maxConnectionsPerHost - permits.availablePermits());
+		}
+	}
+
+	/**
+	 * Answer the key that identifies the host of the provided {@link URL}.
+	 *
+	 * @param url
+	 *        The {@code URL}.
+	 * @return A String.
+	 */
+	private static String hostKey (final URL url)
+	{
+		final int port = url.getPort() == -1
+			? url.getDefaultPort()
+			: url.getPort();
+		return url.getProtocol() + "://" + url.getHost() + ":" + port;
+	}
+
+	/**
+	 * Lease a connection to the provided {@link URL}, blocking while the
+	 * {@linkplain #maxConnectionsPerHost per-host limit} is reached.
+	 *
+	 * <p>
+	 * Every connection answered by this method must be handed back to {@link
+	 * #release(HttpURLConnection, boolean)} exactly once.
+	 * </p>
+	 *
+	 * @param url
+	 *        The {@code URL} to connect to.
+	 * @return An {@link HttpURLConnection}.
+	 * @throws IOException
+	 *         If the connection could not be opened.
+	 */
+	public HttpURLConnection lease (final URL url) throws IOException
+	{
+		final HostPool hostPool =
+			hostPools.computeIfAbsent(hostKey(url), k -> new HostPool());
+		hostPool.acquire();
+		try
+		{
+			final HttpURLConnection connection =
+				(HttpURLConnection) url.openConnection();
+			leases.put(connection, hostPool);
+			return connection;
+		}
+		catch (final IOException | RuntimeException e)
+		{
+			hostPool.release(false);
+			throw e;
+		}
+	}
+
+	/**
+	 * Release a connection previously answered by {@link #lease(URL)}.
+	 *
+	 * @param connection
+	 *        The leased {@link HttpURLConnection}.
+	 * @param reusable
+	 *        {@code true} if the response body was fully consumed and closed,
+	 *        leaving the connection eligible for keep-alive reuse; {@code
+	 *        false} if the connection is in an unknown state and must be
+	 *        disconnected.
+	 */
+	public void release (
+		final HttpURLConnection connection,
+		final boolean reusable)
+	{
+		final HostPool hostPool = leases.remove(connection);
+		if (!reusable)
+		{
+			connection.disconnect();
+		}
+		if (hostPool != null)
+		{
+			hostPool.release(reusable);
+		}
+	}
+
+	/**
+	 * Answer a {@link HostStatistics} snapshot for every host this {@link
+	 * HTTPConnectionPool} has connected to.
+	 *
+	 * @return A {@link Map} from host key to {@code HostStatistics}.
+	 */
+	public Map<String, HostStatistics> statistics ()
+	{
+		final Map<String, HostStatistics> map = new HashMap<>();
+		hostPools.forEach((host, pool) -> map.put(host, pool.statistics()));
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Construct a {@link HTTPConnectionPool}.
+	 *
+	 * @param maxConnectionsPerHost
+	 *        The maximum number of simultaneous connections to a single host.
+	 */
+	public HTTPConnectionPool (final int maxConnectionsPerHost)
+	{
+		assert maxConnectionsPerHost > 0;
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Construct a {@link HTTPConnectionPool} with the {@linkplain
+	 * #DEFAULT_MAX_CONNECTIONS_PER_HOST default per-host limit}.
+	 */
+	public HTTPConnectionPool ()
+	{
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * RequestBodyEncoder.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import com.avail.utility.json.JSONWriter;
+import org.availlang.raa.ApplicationRuntime;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.api.APIRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@code RequestBodyEncoder} encodes the JSON body of an {@link APIRequest}
+ * as UTF-8.
+ *
+ * <p>
+ * {@link APIRequest#writeTo(JSONWriter)} writes straight into a buffer taken
+ * from a small pool and returned to it once the body has been sent, so no
+ * intermediate String or byte array is built. The buffers are not tied to
+ * threads, so they are reused just as well when each request is sent on a
+ * {@linkplain ApplicationRuntime#useVirtualThreads(boolean) virtual thread}
+ * of its own, which would never reuse a per-thread buffer. Bodies that are
+ * fully determined by their {@linkplain APIRequest#bodyCacheKey() cache key}
+ * are encoded once and the bytes are reused thereafter.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+final class RequestBodyEncoder
+{
+	/**
+	 * The initial capacity of each buffer.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	/**
+	 * The capacity above which a buffer is discarded after use rather than
+	 * returned to the pool, so one unusually large body does not pin memory
+	 * for the life of the encoder.
+	 */
+	private static final int MAXIMUM_RETAINED_BUFFER_SIZE = 65536;
+
+	/**
+	 * The most bodies cached for each {@link APICatalogue} operation.
+	 */
+	private static final int MAXIMUM_CACHED_BODIES = 64;
+
+	/**
+	 * An {@code EncodingBuffer} is a growable byte array together with the
+	 * UTF-8 {@link Writer} that fills it.
+	 */
+	private static final class EncodingBuffer
+	extends ByteArrayOutputStream
+	{
+		/**
+		 * The {@link Writer} that encodes characters into this buffer.
+		 */
+		final Writer writer =
+			new OutputStreamWriter(this, StandardCharsets.UTF_8);
+
+		/**
+		 * Answer the buffer's backing array, of which only the first {@link
+		 * #size()} bytes are valid.
+		 *
+		 * @return A {@code byte} array.
+		 */
+		byte[] bytes ()
+		{
+			return buf;
+		}
+
+		/**
+		 * Construct an {@link EncodingBuffer}.
+		 */
+		EncodingBuffer ()
+		{
+			super(INITIAL_BUFFER_SIZE);
+		}
+	}
+
+	/**
+	 * A {@code BodyConsumer} accepts an encoded request body.
+	 */
+	@FunctionalInterface
+	interface BodyConsumer
+	{
+		/**
+		 * Accept an encoded request body. The bytes are only valid for the
+		 * duration of the call and must not be modified.
+		 *
+		 * @param bytes
+		 *        An array whose first {@code length} bytes are the body.
+		 * @param length
+		 *        The length of the body.
+		 * @throws IOException
+		 *         If the body could not be sent.
+		 */
+		void accept (byte[] bytes, int length) throws IOException;
+	}
+
+	/**
+	 * The most idle {@link EncodingBuffer}s retained. Encoding never blocks,
+	 * so there are rarely more bodies being encoded at once than there are
+	 * processors.
+	 */
+	private static final int MAXIMUM_IDLE_BUFFERS =
+		Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The idle {@link EncodingBuffer}s.
+	 */
+	private final Queue<EncodingBuffer> idle = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The number of {@link #idle} buffers.
+	 */
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	/**
+	 * Acquire an idle {@link EncodingBuffer}, or a new one if there is none.
+	 *
+	 * @return An empty {@code EncodingBuffer}.
+	 */
+	private EncodingBuffer acquire ()
+	{
+		final EncodingBuffer buffer = idle.poll();
+		if (buffer == null)
+		{
+			return new EncodingBuffer();
+		}
+		idleCount.decrementAndGet();
+		buffer.reset();
+		return buffer;
+	}
+
+	/**
+	 * Return an {@link EncodingBuffer} to the pool, unless it has grown too
+	 * large to keep or the pool is full.
+	 *
+	 * @param buffer
+	 *        The {@code EncodingBuffer} no longer in use.
+	 */
+	private void release (final EncodingBuffer buffer)
+	{
+		if (buffer.bytes().length > MAXIMUM_RETAINED_BUFFER_SIZE)
+		{
+			return;
+		}
+		if (idleCount.incrementAndGet() <= MAXIMUM_IDLE_BUFFERS)
+		{
+			idle.add(buffer);
+		}
+		else
+		{
+			idleCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * The cached bodies of each {@link APICatalogue} operation, keyed by
+	 * {@linkplain APIRequest#bodyCacheKey() cache key}.
+	 */
+	private final Map<APICatalogue, ConcurrentMap<String, byte[]>> cache =
+		new EnumMap<>(APICatalogue.class);
+
+	/**
+	 * Encode the body of the provided request and pass it to the {@link
+	 * BodyConsumer}.
+	 *
+	 * @param request
+	 *        The {@link APIRequest} whose body is to be encoded.
+	 * @param consumer
+	 *        The {@code BodyConsumer} that sends the body.
+	 * @throws IOException
+	 *         If the consumer could not send the body.
+	 */
+	void encode (final APIRequest<?> request, final BodyConsumer consumer)
+		throws IOException
+	{
+		final String cacheKey = request.bodyCacheKey();
+		final ConcurrentMap<String, byte[]> cached =
+			cache.get(request.catalogue());
+		if (cacheKey != null)
+		{
+			final byte[] bytes = cached.get(cacheKey);
+			if (bytes != null)
+			{
+				consumer.accept(bytes, bytes.length);
+				return;
+			}
+		}
+		final EncodingBuffer buffer = acquire();
+		try
+		{
+			request.writeTo(new JSONWriter(buffer.writer));
+			buffer.writer.flush();
+			if (cacheKey != null)
+			{
+				final byte[] bytes = buffer.toByteArray();
+				if (cached.size() >= MAXIMUM_CACHED_BODIES)
+				{
+					cached.clear();
+				}
+				cached.putIfAbsent(cacheKey, bytes);
+				consumer.accept(bytes, bytes.length);
+			}
+			else
+			{
+				consumer.accept(buffer.bytes(), buffer.size());
+			}
+		}
+		finally
+		{
+			release(buffer);
+		}
+	}
+
+	/**
+	 * Answer the encoded body of the provided request in an array of its own,
+	 * for a caller that must hold onto the body after its buffer returns to
+	 * the pool.
+	 *
+	 * @param request
+	 *        The {@link APIRequest} whose body is to be encoded.
+	 * @return A {@code byte} array that must not be modified.
+	 */
+	byte[] encode (final APIRequest<?> request)
+	{
+		final byte[][] body = new byte[1][];
+		try
+		{
+			encode(
+				request,
+				(bytes, length) -> body[0] = bytes.length == length
+					? bytes
+					: Arrays.copyOf(bytes, length));
+		}
+		catch (final IOException e)
+		{
+			// The consumer above never throws.
+			throw new AssertionError(e);
+		}
+		return body[0];
+	}
+
+	/**
+	 * Construct a {@link RequestBodyEncoder}.
+	 */
+	RequestBodyEncoder ()
+	{
+		for (final APICatalogue catalogue : APICatalogue.values())
+		{
+			cache.put(catalogue, new ConcurrentHashMap<>());
+		}
+	}
+}
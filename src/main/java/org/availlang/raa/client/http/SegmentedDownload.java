@@ -0,0 +1,868 @@
+/*
+ * SegmentedDownload.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import org.availlang.raa.ApplicationRuntime;
+import org.availlang.raa.ApplicationRuntime.ExitCode;
+import org.availlang.raa.api.APIRequest;
+import org.availlang.raa.api.RequestPriority;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.exceptions.ConnectionException;
+import org.availlang.raa.exceptions.DownloadException;
+import org.availlang.raa.metrics.RequestPhase;
+import org.availlang.raa.metrics.RequestTimer;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@code SegmentedDownload} downloads a single file over several concurrent
+ * connections. The bytes still needed are split into {@linkplain
+ * DownloadConfiguration#segmentSize() fixed-size} {@linkplain ByteRange
+ * ranges} that are fetched with HTTP {@code Range} requests and written at
+ * their offsets into a shared {@link FileChannel}.
+ *
+ * <p>
+ * No thread ever waits on another. Each worker repeatedly claims the next
+ * unfetched range until none remain; the last worker to finish closes the
+ * file and runs the download {@link APIRequest}'s continuation.
+ * </p>
+ *
+ * <p>
+ * When the download is {@linkplain DownloadConfiguration#isResumable()
+ * resumable}, the data is written to a {@linkplain
+ * DownloadJournal#partFile(File) part file} and every completed range is
+ * recorded in a {@link DownloadJournal}. The part file only replaces the
+ * target file once every byte has arrived; after a failure the journal is left
+ * in place so the next attempt fetches only what is missing.
+ * </p>
+ *
+ * <p>
+ * If the server reports the file's SHA-1, a {@link ContentDigest} checks it
+ * before the download is reported complete.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+final class SegmentedDownload
+{
+	/**
+	 * The {@link Pattern} of the value of a {@code Content-Range} response
+	 * header with a known total length.
+	 */
+	private static final Pattern contentRangePattern =
+		Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+)");
+
+	/**
+	 * Answer the total length of the file reported by the {@code
+	 * Content-Range} header of a partial ({@code 206}) response.
+	 *
+	 * @param connection
+	 *        The {@link HttpURLConnection} that received the response.
+	 * @return The total length in bytes, or {@code -1} if the header is
+	 *         missing or does not report the total length.
+	 */
+	static long totalLength (final HttpURLConnection connection)
+	{
+		final String contentRange = connection.getHeaderField("Content-Range");
+		if (contentRange == null)
+		{
+			return -1;
+		}
+		final Matcher matcher = contentRangePattern.matcher(contentRange);
+		return matcher.matches() ? Long.parseLong(matcher.group(3)) : -1;
+	}
+
+	/**
+	 * The {@link Pattern} of the value of the {@code Content-Range} header of
+	 * a {@code 416} response to a range request for an empty file.
+	 */
+	private static final Pattern emptyContentRangePattern =
+		Pattern.compile("bytes\\s+\\*/0");
+
+	/**
+	 * Answer whether the response refused a range request because the file is
+	 * empty. RFC 7233 has a server answer any range request for a zero-length
+	 * file with {@code 416 Range Not Satisfiable} and a {@code Content-Range}
+	 * of {@code bytes *&#47;0}.
+	 *
+	 * @param connection
+	 *        The {@link HttpURLConnection} that received the response.
+	 * @return {@code true} if the file is empty; {@code false} otherwise.
+	 * @throws IOException
+	 *         If the response code could not be read.
+	 */
+	static boolean isEmptyFile (final HttpURLConnection connection)
+		throws IOException
+	{
+		if (connection.getResponseCode() != 416)
+		{
+			return false;
+		}
+		final String contentRange = connection.getHeaderField("Content-Range");
+		return contentRange != null
+			&& emptyContentRangePattern.matcher(contentRange.trim()).matches();
+	}
+
+	/**
+	 * Answer the offset of the first byte in the body of the response. A full
+	 * ({@code 200}) response starts at zero; a partial ({@code 206}) response
+	 * reports its start in the {@code Content-Range} header.
+	 *
+	 * @param connection
+	 *        The {@link HttpURLConnection} that received the response.
+	 * @return The offset, or {@code -1} if it could not be determined.
+	 * @throws IOException
+	 *         If the response code could not be read.
+	 */
+	private static long firstByte (final HttpURLConnection connection)
+		throws IOException
+	{
+		if (connection.getResponseCode() == 200)
+		{
+			return 0;
+		}
+		final String contentRange = connection.getHeaderField("Content-Range");
+		if (contentRange == null)
+		{
+			return -1;
+		}
+		final Matcher matcher = contentRangePattern.matcher(contentRange);
+		return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+	}
+
+	/**
+	 * The {@link HTTPClient} that creates the connections.
+	 */
+	private final HTTPClient client;
+
+	/**
+	 * The {@link APIRequest} that contains the specifics of the download being
+	 * performed.
+	 */
+	private final APIRequest<?> downloadRequest;
+
+	/**
+	 * The {@link File} being downloaded to.
+	 */
+	private final File targetFile;
+
+	/**
+	 * The {@link File} the data is written to: the {@linkplain
+	 * DownloadJournal#partFile(File) part file} if the download is resumable,
+	 * otherwise the {@link #targetFile} itself.
+	 */
+	private final File writeFile;
+
+	/**
+	 * The {@link DownloadJournal} that records completed ranges, or {@code
+	 * null} if the download is not resumable.
+	 */
+	private final @Nullable DownloadJournal journal;
+
+	/**
+	 * The {@link ContentDigest} that verifies the file, or {@code null} if it
+	 * is not being verified.
+	 */
+	private final @Nullable ContentDigest contentDigest;
+
+	/**
+	 * The {@link RequestTimer} that times the download.
+	 */
+	private final RequestTimer timer;
+
+	/**
+	 * The {@link ByteRange}s still to be fetched.
+	 */
+	private final List<ByteRange> pending;
+
+	/**
+	 * The number of bytes written between journal checkpoints within a single
+	 * range.
+	 */
+	private final long checkpointSize;
+
+	/**
+	 * The maximum number of connections used at once.
+	 */
+	private final int connectionCount;
+
+	/**
+	 * The total length of the file in bytes.
+	 */
+	private final long totalLength;
+
+	/**
+	 * The size of the {@linkplain TransferBufferPool.TransferBuffer buffers}
+	 * data is accumulated in before being written.
+	 */
+	private final int bufferSize;
+
+	/**
+	 * The {@link TokenBucket} that limits the bandwidth of this download, over
+	 * all of its connections, beneath the limit of the {@link #client}.
+	 */
+	private final TokenBucket bandwidth;
+
+	/**
+	 * The index into {@link #pending} of the next range to be claimed by a
+	 * worker.
+	 */
+	private final AtomicInteger nextRange = new AtomicInteger();
+
+	/**
+	 * The number of workers that have not yet finished.
+	 */
+	private final AtomicInteger activeWorkers = new AtomicInteger();
+
+	/**
+	 * The first {@link ApplicationException} encountered, or {@code null} if
+	 * all is well so far.
+	 */
+	private final AtomicReference<ApplicationException> failure =
+		new AtomicReference<>();
+
+	/**
+	 * The {@link FileChannel} every range is written to.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Record a failure. Only the first failure is reported; workers stop
+	 * claiming ranges once any failure has been recorded.
+	 *
+	 * @param exception
+	 *        The {@link ApplicationException} describing the failure.
+	 */
+	private void fail (final ApplicationException exception)
+	{
+		failure.compareAndSet(null, exception);
+	}
+
+	/**
+	 * Force the bytes written since the last checkpoint to disk and record
+	 * them in the {@link #journal}, if there is one.
+	 *
+	 * @param first
+	 *        The offset of the first byte written since the last checkpoint.
+	 * @param count
+	 *        The number of bytes written since the last checkpoint.
+	 * @throws IOException
+	 *         If the file could not be forced or the journal written.
+	 */
+	private void checkpoint (final long first, final long count)
+		throws IOException
+	{
+		if (journal != null && count > 0)
+		{
+			channel.force(false);
+			journal.record(new ByteRange(first, count));
+		}
+	}
+
+	/**
+	 * A {@code RangeProgress} tracks how much of a range has been written and
+	 * {@linkplain #checkpoint(long, long) checkpoints} it every {@link
+	 * #checkpointSize} bytes, so that a long range interrupted part way need
+	 * not be fetched again from its start.
+	 */
+	private final class RangeProgress
+	implements TransferBufferPool.Checkpoint
+	{
+		/**
+		 * The {@link ByteRange} being written.
+		 */
+		private final ByteRange range;
+
+		/**
+		 * The number of bytes of the range written so far.
+		 */
+		private long written;
+
+		/**
+		 * The number of bytes of the range checkpointed so far.
+		 */
+		private long checkpointed;
+
+		@Override
+		public void written (final long written) throws IOException
+		{
+			this.written = written;
+			if (written - checkpointed >= checkpointSize)
+			{
+				finish();
+			}
+		}
+
+		/**
+		 * Checkpoint everything written so far.
+		 *
+		 * @throws IOException
+		 *         If the checkpoint could not be recorded.
+		 */
+		void finish () throws IOException
+		{
+			checkpoint(range.first + checkpointed, written - checkpointed);
+			checkpointed = written;
+		}
+
+		/**
+		 * Construct a {@link RangeProgress}.
+		 *
+		 * @param range
+		 *        The {@link ByteRange} being written.
+		 */
+		RangeProgress (final ByteRange range)
+		{
+			this.range = range;
+		}
+	}
+
+	/**
+	 * Copy the body of the response to the {@link #channel} at the offset of
+	 * the provided range through a pooled {@linkplain
+	 * TransferBufferPool.TransferBuffer transfer buffer}.
+	 *
+	 * @param connection
+	 *        The {@link HttpURLConnection} that received the response.
+	 * @param range
+	 *        The {@link ByteRange} the body belongs at.
+	 * @param digest
+	 *        The {@link MessageDigest} to update with the body as it streams,
+	 *        or {@code null} if it is not being digested inline.
+	 * @return The number of bytes read, which exceeds the size of the range
+	 *         if the server sent too much.
+	 * @throws IOException
+	 *         If the body could not be read or written.
+	 */
+	private long copyRange (
+		final HttpURLConnection connection,
+		final ByteRange range,
+		final @Nullable MessageDigest digest)
+		throws IOException
+	{
+		final TransferBufferPool pool = client.transferBufferPool();
+		final TransferBufferPool.TransferBuffer transferBuffer =
+			pool.acquire(bufferSize);
+		final RangeProgress progress = new RangeProgress(range);
+		try (final InputStream stream = connection.getInputStream())
+		{
+			return transferBuffer.copy(
+				stream,
+				channel,
+				range.first,
+				range.count,
+				progress,
+				digest,
+				bandwidth);
+		}
+		finally
+		{
+			pool.release(transferBuffer);
+			progress.finish();
+		}
+	}
+
+	/**
+	 * Write the range received on the provided connection to the file and
+	 * release the connection.
+	 *
+	 * @param connection
+	 *        The {@link HttpURLConnection} that received a response for the
+	 *        range.
+	 * @param range
+	 *        The {@link ByteRange} requested.
+	 * @param connectionTimer
+	 *        The {@link RequestTimer} that times the connection.
+	 */
+	private void writeRange (
+		final HttpURLConnection connection,
+		final ByteRange range,
+		final RequestTimer connectionTimer)
+	{
+		boolean reusable = false;
+		try
+		{
+			if (firstByte(connection) != range.first)
+			{
+				fail(new DownloadException(String.format(
+					"Expected range %s of %s but received %s",
+					range,
+					targetFile.getAbsolutePath(),
+					connection.getHeaderField("Content-Range"))));
+				return;
+			}
+			final MessageDigest digest = contentDigest == null
+				? null
+				: contentDigest.claimInline(range);
+			final long written = copyRange(connection, range, digest);
+			connectionTimer.phase(RequestPhase.RECEIVE);
+			connectionTimer.addBytesRead(written);
+			reusable = written == range.count;
+			if (written == range.count && contentDigest != null)
+			{
+				contentDigest.completed(range, digest != null, channel);
+			}
+			else if (written > range.count)
+			{
+				fail(new DownloadException(String.format(
+					"Range %s of %s was over %d bytes",
+					range,
+					targetFile.getAbsolutePath(),
+					range.count)));
+			}
+			else if (written < range.count)
+			{
+				// The connection ended early, which is as transient as a
+				// reset, so say so.
+				fail(new DownloadException(
+					"could not download data to "
+						+ targetFile.getAbsolutePath(),
+					new EOFException(String.format(
+						"range %s ended after %d of %d bytes",
+						range,
+						written,
+						range.count))));
+			}
+		}
+		catch (final IOException e)
+		{
+			fail(new DownloadException(
+				"could not download data to " + targetFile.getAbsolutePath(),
+				e));
+		}
+		finally
+		{
+			client.connectionPool().release(connection, reusable);
+		}
+	}
+
+	/**
+	 * Delete the {@link #journal} so that the next attempt to download the
+	 * file starts over.
+	 */
+	private void discardJournal ()
+	{
+		assert journal != null;
+		try
+		{
+			journal.delete();
+		}
+		catch (final IOException e)
+		{
+			fail(new DownloadException(
+				"could not discard the download journal of "
+					+ targetFile.getAbsolutePath(),
+				e));
+		}
+	}
+
+	/**
+	 * Fetch the provided range and write it to the file.
+	 *
+	 * @param range
+	 *        The {@link ByteRange} to fetch.
+	 */
+	private void fetchRange (final ByteRange range)
+	{
+		final RequestTimer connectionTimer = timer.connectionTimer();
+		final HttpURLConnection connection = client.createConnection(
+			downloadRequest, range.header(), connectionTimer, this::fail);
+		if (connection == null)
+		{
+			// The failure has already been recorded.
+			return;
+		}
+		final int code;
+		try
+		{
+			code = connection.getResponseCode();
+			connectionTimer.phase(RequestPhase.FIRST_BYTE);
+			if (code != 206)
+			{
+				// A 200 here means the server ignored the Range header and
+				// is sending the whole file; stop it rather than read it.
+				HTTPClient.reportFailedResponse(
+					connection,
+					code,
+					ex -> fail(code == 200
+						? new DownloadException(
+							"Server ignored ranged request for "
+								+ targetFile.getAbsolutePath())
+						: ex));
+				client.connectionPool().release(connection, code != 200);
+				if (code == 200 && journal != null)
+				{
+					// The journal can never be resumed from this server, so
+					// discard it; the next attempt starts over.
+					discardJournal();
+				}
+				return;
+			}
+		}
+		catch (final IOException e)
+		{
+			client.connectionPool().release(connection, false);
+			fail(new ConnectionException("Unexpected Error", e));
+			return;
+		}
+		writeRange(connection, range, connectionTimer);
+	}
+
+	/**
+	 * Claim and fetch ranges until none remain or a failure has been
+	 * recorded, then retire this worker.
+	 */
+	private void work ()
+	{
+		try
+		{
+			int index = nextRange.getAndIncrement();
+			while (index < pending.size() && failure.get() == null)
+			{
+				fetchRange(pending.get(index));
+				index = nextRange.getAndIncrement();
+			}
+		}
+		catch (final Throwable e)
+		{
+			fail(new ApplicationException(
+				ExitCode.UNEXPECTED_EXCEPTION, "Unexpected Error", e));
+		}
+		finally
+		{
+			if (activeWorkers.decrementAndGet() == 0)
+			{
+				complete();
+			}
+		}
+	}
+
+	/**
+	 * Move the completed part file into place and delete the journal.
+	 *
+	 * @throws IOException
+	 *         If the file could not be moved or the journal deleted.
+	 */
+	private void finish () throws IOException
+	{
+		assert journal != null;
+		try
+		{
+			Files.move(
+				writeFile.toPath(),
+				targetFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (final AtomicMoveNotSupportedException e)
+		{
+			Files.move(
+				writeFile.toPath(),
+				targetFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+		journal.delete();
+	}
+
+	/**
+	 * Check the {@link #contentDigest} of the file. If it does not match,
+	 * discard the journal and part file, as resuming would only reproduce the
+	 * corrupt data.
+	 *
+	 * @throws IOException
+	 *         If the file could not be read back or discarded.
+	 */
+	private void verify () throws IOException
+	{
+		assert contentDigest != null;
+		try
+		{
+			contentDigest.verify(targetFile.getAbsolutePath(), channel);
+		}
+		catch (final DownloadException e)
+		{
+			fail(e);
+			if (journal != null)
+			{
+				channel.close();
+				discardJournal();
+				Files.deleteIfExists(writeFile.toPath());
+			}
+		}
+	}
+
+	/**
+	 * Close the file and run the download {@link APIRequest}'s continuation.
+	 * This is run by the last worker to finish.
+	 */
+	private void complete ()
+	{
+		try
+		{
+			if (contentDigest != null && failure.get() == null)
+			{
+				verify();
+			}
+			if (channel != null)
+			{
+				channel.close();
+			}
+			if (journal != null && failure.get() == null)
+			{
+				finish();
+			}
+		}
+		catch (final IOException e)
+		{
+			fail(new DownloadException(
+				"could not download data to " + targetFile.getAbsolutePath(),
+				e));
+		}
+		final ApplicationException exception = failure.get();
+		timer.finish(exception == null);
+		if (exception != null)
+		{
+			if (journal != null)
+			{
+				// Keep the journal so the next attempt can resume.
+				journal.close();
+			}
+			downloadRequest.failureContinuation().accept(exception);
+			return;
+		}
+		try
+		{
+			downloadRequest.contentConsumer().accept(
+				HTTPClient.downloadContent(
+					downloadRequest,
+					totalLength,
+					contentDigest == null ? null : contentDigest.expected,
+					contentDigest != null));
+		}
+		catch (final Throwable e)
+		{
+			downloadRequest.failureContinuation().accept(
+				new ApplicationException(
+					ExitCode.UNEXPECTED_EXCEPTION, "Unexpected Error", e));
+		}
+	}
+
+	/**
+	 * Grow the file to its full length before any data is written, so that
+	 * writes at later offsets never extend it and a lack of disk space is
+	 * discovered before anything is downloaded.
+	 *
+	 * @throws IOException
+	 *         If the file could not be grown.
+	 */
+	private void preallocate () throws IOException
+	{
+		final long growth = totalLength - channel.size();
+		if (growth <= 0)
+		{
+			return;
+		}
+		final long usable =
+			Files.getFileStore(writeFile.toPath()).getUsableSpace();
+		if (usable < growth)
+		{
+			throw new DownloadException(String.format(
+				"%s needs %d more bytes but only %d are available",
+				targetFile.getAbsolutePath(),
+				growth,
+				usable));
+		}
+		channel.write(ByteBuffer.allocate(1), totalLength - 1);
+	}
+
+	/**
+	 * Start the download. If a connection is provided, the first pending range
+	 * is read from it on the calling thread while the remaining ranges are
+	 * fetched by additional workers scheduled in the {@linkplain
+	 * ApplicationRuntime#scheduleTask(RequestPriority, Runnable) lane} of the
+	 * download request, so they never take the threads of interactive
+	 * requests.
+	 *
+	 * @param firstRangeConnection
+	 *        The {@link HttpURLConnection} that received the response for the
+	 *        first pending range, or {@code null} if every range must still be
+	 *        requested. This {@code SegmentedDownload} takes responsibility
+	 *        for releasing it.
+	 */
+	void start (final @Nullable HttpURLConnection firstRangeConnection)
+	{
+		try
+		{
+			// Only a journal with progress to resume from may keep what is
+			// already in the part file.
+			channel = journal == null || journal.completedRanges().isEmpty()
+				? FileChannel.open(
+					writeFile.toPath(),
+					StandardOpenOption.CREATE,
+					StandardOpenOption.READ,
+					StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)
+				: FileChannel.open(
+					writeFile.toPath(),
+					StandardOpenOption.CREATE,
+					StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			preallocate();
+		}
+		catch (final IOException | DownloadException e)
+		{
+			if (firstRangeConnection != null)
+			{
+				client.connectionPool().release(firstRangeConnection, false);
+			}
+			fail(e instanceof DownloadException
+				? (DownloadException) e
+				: new DownloadException(
+					"could not download data to "
+						+ targetFile.getAbsolutePath(),
+					e));
+			complete();
+			return;
+		}
+		if (pending.isEmpty())
+		{
+			// A previous attempt fetched everything but was interrupted
+			// before moving the part file into place.
+			if (firstRangeConnection != null)
+			{
+				client.connectionPool().release(firstRangeConnection, false);
+			}
+			complete();
+			return;
+		}
+		if (firstRangeConnection != null)
+		{
+			// The first range is already on its way; no worker may claim it.
+			nextRange.set(1);
+		}
+		activeWorkers.set(connectionCount);
+		for (int i = 1; i < connectionCount; i++)
+		{
+			ApplicationRuntime.scheduleTask(
+				downloadRequest.priority(),
+				this::work);
+		}
+		if (firstRangeConnection != null)
+		{
+			writeRange(firstRangeConnection, pending.get(0), timer);
+		}
+		work();
+	}
+
+	/**
+	 * Construct a {@link SegmentedDownload}.
+	 *
+	 * @param client
+	 *        The {@link HTTPClient} that creates the connections.
+	 * @param downloadRequest
+	 *        The {@link APIRequest} that contains the specifics of the
+	 *        download being performed.
+	 * @param targetFile
+	 *        The {@link File} being downloaded to.
+	 * @param journal
+	 *        The {@link DownloadJournal} that records completed ranges, or
+	 *        {@code null} if the download is not resumable.
+	 * @param totalLength
+	 *        The total length of the file in bytes.
+	 * @param pending
+	 *        The {@link ByteRange}s still to be fetched, in ascending order.
+	 * @param contentSha1
+	 *        The expected lowercase hexadecimal SHA-1 digest of the whole
+	 *        file, or {@code null} if the server did not report one.
+	 * @param timer
+	 *        The {@link RequestTimer} that times the download.
+	 * @param configuration
+	 *        The {@link DownloadConfiguration} in effect for this download.
+	 */
+	SegmentedDownload (
+		final HTTPClient client,
+		final APIRequest<?> downloadRequest,
+		final File targetFile,
+		final @Nullable DownloadJournal journal,
+		final long totalLength,
+		final List<ByteRange> pending,
+		final @Nullable String contentSha1,
+		final RequestTimer timer,
+		final DownloadConfiguration configuration)
+	{
+		this.client = client;
+		this.downloadRequest = downloadRequest;
+		this.targetFile = targetFile;
+		this.writeFile = journal == null
+			? targetFile
+			: DownloadJournal.partFile(targetFile);
+		this.journal = journal;
+		this.pending = pending;
+		this.timer = timer;
+		if (contentSha1 != null && configuration.isVerifying())
+		{
+			contentDigest = new ContentDigest(contentSha1, totalLength);
+			if (journal != null)
+			{
+				contentDigest.alreadyWritten(journal.completedRanges());
+			}
+		}
+		else
+		{
+			contentDigest = null;
+		}
+		this.totalLength = totalLength;
+		this.checkpointSize = configuration.segmentSize();
+		this.bufferSize = configuration.bufferSize();
+		this.bandwidth = new TokenBucket(
+			configuration::perDownloadBandwidthLimit, client.bandwidth());
+		this.connectionCount = Math.max(
+			1, Math.min(configuration.segmentCount(), pending.size()));
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * TokenBucket.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import javax.annotation.Nullable;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@code TokenBucket} limits the rate at which downloaded bytes are
+ * consumed.
+ *
+ * <p>
+ * The limit is read from a {@link LongSupplier} on every call to {@link
+ * #acquire(long)}, so changing it takes effect on the next chunk of every
+ * transfer in progress. Tokens accrue at the limit up to a quarter second's
+ * worth, and a caller that finds too few takes them anyway and then sleeps
+ * until the debt it ran up would have been repaid. Since each caller's debt
+ * is added to that of those before it, callers are served in the order they
+ * arrive, which shares the bandwidth evenly among the connections drawing on
+ * the bucket.
+ * </p>
+ *
+ * <p>
+ * A bucket may have a parent, such as the bucket for the whole {@link
+ * HTTPClient} above the bucket for a single download, in which case the bytes
+ * must be acquired from both.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+final class TokenBucket
+{
+	/**
+	 * The number of seconds' worth of tokens that may accrue while the bucket
+	 * is idle.
+	 */
+	private static final double BURST_SECONDS = 0.25;
+
+	/**
+	 * The number of nanoseconds in a second.
+	 */
+	private static final double NANOS_PER_SECOND = 1.0e9;
+
+	/**
+	 * The {@link LongSupplier} of the limit in bytes per second, or {@link
+	 * DownloadConfiguration#UNLIMITED}.
+	 */
+	private final LongSupplier limit;
+
+	/**
+	 * The {@link TokenBucket} bytes must also be acquired from, or {@code
+	 * null} if none.
+	 */
+	private final @Nullable TokenBucket parent;
+
+	/**
+	 * The number of tokens available, which is negative while callers are
+	 * waiting to repay tokens they have already taken.
+	 */
+	private double tokens;
+
+	/**
+	 * The {@link System#nanoTime()} at which {@link #tokens} was last
+	 * refilled.
+	 */
+	private long refilled = System.nanoTime();
+
+	/**
+	 * Take the provided number of tokens, answering how long the caller must
+	 * wait before using them.
+	 *
+	 * @param bytes
+	 *        The number of bytes about to be consumed.
+	 * @param now
+	 *        The current {@link System#nanoTime()}.
+	 * @return The number of nanoseconds to wait.
+	 */
+	synchronized long reserve (final long bytes, final long now)
+	{
+		final long rate = limit.getAsLong();
+		if (rate == DownloadConfiguration.UNLIMITED)
+		{
+			tokens = 0;
+			refilled = now;
+			return 0;
+		}
+		tokens = Math.min(
+			rate * BURST_SECONDS,
+			tokens + (now - refilled) * rate / NANOS_PER_SECOND);
+		refilled = now;
+		tokens -= bytes;
+		return tokens >= 0
+			? 0
+			: (long) Math.ceil(-tokens * NANOS_PER_SECOND / rate);
+	}
+
+	/**
+	 * Acquire the provided number of bytes, first from this bucket and then
+	 * from its parent, sleeping as long as the limits require.
+	 *
+	 * @param bytes
+	 *        The number of bytes about to be consumed.
+	 * @throws InterruptedIOException
+	 *         If the thread was interrupted while waiting.
+	 */
+	void acquire (final long bytes) throws InterruptedIOException
+	{
+		final long wait = reserve(bytes, System.nanoTime());
+		if (wait > 0)
+		{
+			try
+			{
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+					"interrupted while waiting for bandwidth");
+			}
+		}
+		if (parent != null)
+		{
+			parent.acquire(bytes);
+		}
+	}
+
+	/**
+	 * Construct a {@link TokenBucket}.
+	 *
+	 * @param limit
+	 *        The {@link LongSupplier} of the limit in bytes per second, or
+	 *        {@link DownloadConfiguration#UNLIMITED}.
+	 * @param parent
+	 *        The {@code TokenBucket} bytes must also be acquired from, or
+	 *        {@code null} if none.
+	 */
+	TokenBucket (
+		final LongSupplier limit,
+		final @Nullable TokenBucket parent)
+	{
+		this.limit = limit;
+		this.parent = parent;
+	}
+}
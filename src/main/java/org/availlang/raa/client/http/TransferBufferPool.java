@@ -0,0 +1,288 @@
+/*
+ * TransferBufferPool.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@code TransferBufferPool} is a pool of the {@linkplain TransferBuffer
+ * buffers} used to move downloaded data from a response {@link InputStream}
+ * to a {@link FileChannel}.
+ *
+ * <p>
+ * Direct buffers are expensive to allocate and are only reclaimed when the
+ * garbage collector gets around to it, so they are reused across downloads
+ * rather than allocated for each one.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+final class TransferBufferPool
+{
+	/**
+	 * The largest number of bytes read from a response stream at once.
+	 */
+	private static final int MAXIMUM_READ_SIZE = 65536;
+
+	/**
+	 * A {@code TransferBuffer} pairs a direct {@link ByteBuffer}, in which
+	 * data is accumulated until it can be written to disk in one large write,
+	 * with the heap array that a response {@link InputStream} reads into.
+	 */
+	static final class TransferBuffer
+	{
+		/**
+		 * The direct {@link ByteBuffer} data is accumulated in.
+		 */
+		private final ByteBuffer buffer;
+
+		/**
+		 * The array the response stream is read into.
+		 */
+		private final byte[] staging;
+
+		/**
+		 * Copy the provided stream to the channel, starting at the indicated
+		 * position, until the stream is exhausted or the indicated number of
+		 * bytes has been written. Data is written whenever the buffer fills
+		 * and once more at the end.
+		 *
+		 * @param stream
+		 *        The {@link InputStream} to read.
+		 * @param channel
+		 *        The {@link FileChannel} to write to.
+		 * @param position
+		 *        The position in the file of the first byte read.
+		 * @param limit
+		 *        The maximum number of bytes to write. If the stream has more
+		 *        than this, one more byte is read and counted but never
+		 *        written, so the caller can detect the overrun.
+		 * @param checkpoint
+		 *        The {@link Checkpoint} to notify after each write.
+		 * @param digest
+		 *        The {@link MessageDigest} to update with every byte written,
+		 *        in order, or {@code null} if the data is not being digested.
+		 * @param bandwidth
+		 *        The {@link TokenBucket} to acquire every byte read from.
+		 * @return The number of bytes read.
+		 * @throws IOException
+		 *         If the stream could not be read or the channel written.
+		 */
+		long copy (
+			final InputStream stream,
+			final FileChannel channel,
+			final long position,
+			final long limit,
+			final Checkpoint checkpoint,
+			final @Nullable MessageDigest digest,
+			final TokenBucket bandwidth)
+			throws IOException
+		{
+			buffer.clear();
+			long read = 0;
+			long written = 0;
+			try
+			{
+				while (read <= limit)
+				{
+					final int count = stream.read(
+						staging,
+						0,
+						(int) Math.min(
+							Math.min(staging.length, buffer.remaining()),
+							limit - read + 1));
+					if (count == -1)
+					{
+						break;
+					}
+					bandwidth.acquire(count);
+					read += count;
+					if (read > limit)
+					{
+						break;
+					}
+					buffer.put(staging, 0, count);
+					if (digest != null)
+					{
+						digest.update(staging, 0, count);
+					}
+					if (!buffer.hasRemaining())
+					{
+						written += flush(channel, position + written);
+						checkpoint.written(written);
+					}
+				}
+			}
+			finally
+			{
+				if (buffer.position() > 0)
+				{
+					written += flush(channel, position + written);
+					checkpoint.written(written);
+				}
+			}
+			return read;
+		}
+
+		/**
+		 * Write the accumulated data to the channel and empty the buffer.
+		 *
+		 * @param channel
+		 *        The {@link FileChannel} to write to.
+		 * @param position
+		 *        The position in the file of the first accumulated byte.
+		 * @return The number of bytes written.
+		 * @throws IOException
+		 *         If the channel could not be written.
+		 */
+		private int flush (final FileChannel channel, final long position)
+			throws IOException
+		{
+			buffer.flip();
+			final int total = buffer.remaining();
+			long offset = position;
+			while (buffer.hasRemaining())
+			{
+				offset += channel.write(buffer, offset);
+			}
+			buffer.clear();
+			return total;
+		}
+
+		/**
+		 * Construct a {@link TransferBuffer}.
+		 *
+		 * @param size
+		 *        The capacity of the direct buffer.
+		 */
+		private TransferBuffer (final int size)
+		{
+			this.buffer = ByteBuffer.allocateDirect(size);
+			this.staging = new byte[Math.min(size, MAXIMUM_READ_SIZE)];
+		}
+	}
+
+	/**
+	 * A {@code Checkpoint} is notified each time a {@link TransferBuffer}
+	 * writes accumulated data to disk.
+	 */
+	@FunctionalInterface
+	interface Checkpoint
+	{
+		/**
+		 * Note that data has been written to disk.
+		 *
+		 * @param written
+		 *        The total number of bytes written so far by the copy.
+		 * @throws IOException
+		 *         If the checkpoint could not be recorded.
+		 */
+		void written (long written) throws IOException;
+	}
+
+	/**
+	 * The idle {@link TransferBuffer}s.
+	 */
+	private final Queue<TransferBuffer> idle = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The number of {@link #idle} buffers.
+	 */
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	/**
+	 * The most idle buffers retained.
+	 */
+	private final int maximumIdle;
+
+	/**
+	 * Acquire a {@link TransferBuffer} of the requested size. An idle buffer
+	 * of a different size, left over from before the size was changed, is
+	 * dropped.
+	 *
+	 * @param size
+	 *        The required capacity.
+	 * @return A {@code TransferBuffer}.
+	 */
+	TransferBuffer acquire (final int size)
+	{
+		TransferBuffer transferBuffer = idle.poll();
+		while (transferBuffer != null)
+		{
+			idleCount.decrementAndGet();
+			if (transferBuffer.buffer.capacity() == size)
+			{
+				return transferBuffer;
+			}
+			transferBuffer = idle.poll();
+		}
+		return new TransferBuffer(size);
+	}
+
+	/**
+	 * Return a {@link TransferBuffer} to the pool.
+	 *
+	 * @param transferBuffer
+	 *        The {@code TransferBuffer} no longer in use.
+	 */
+	void release (final TransferBuffer transferBuffer)
+	{
+		if (idleCount.incrementAndGet() <= maximumIdle)
+		{
+			idle.add(transferBuffer);
+		}
+		else
+		{
+			idleCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Construct a {@link TransferBufferPool}.
+	 *
+	 * @param maximumIdle
+	 *        The most idle buffers retained.
+	 */
+	TransferBufferPool (final int maximumIdle)
+	{
+		this.maximumIdle = maximumIdle;
+	}
+}
@@ -31,10 +31,20 @@
  */
 
 package org.availlang.raa.exceptions;
+import com.avail.utility.json.JSONException;
+import com.avail.utility.json.JSONObject;
+import com.avail.utility.json.JSONReader;
 import org.availlang.raa.ApplicationRuntime.ExitCode;
 import org.availlang.raa.api.APIRequest;
 
+import javax.annotation.Nullable;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 /**
  * A {@code ResponseException} is an {@link ApplicationException} thrown when an
@@ -45,6 +55,139 @@ import java.net.HttpURLConnection;
 public class ResponseException
 extends ApplicationException
 {
+	/**
+	 * The {@link HttpURLConnection#HTTP_UNAVAILABLE} response code with which
+	 * B2 asks a client to back off.
+	 */
+	public static final int SERVICE_UNAVAILABLE =
+		HttpURLConnection.HTTP_UNAVAILABLE;
+
+	/**
+	 * The {@code 429 Too Many Requests} response code with which B2 asks a
+	 * client to back off.
+	 */
+	public static final int TOO_MANY_REQUESTS = 429;
+
+	/**
+	 * The {@link HttpURLConnection#HTTP_UNAUTHORIZED} response code with
+	 * which B2 rejects a request's authorization token.
+	 */
+	public static final int UNAUTHORIZED = HttpURLConnection.HTTP_UNAUTHORIZED;
+
+	/**
+	 * The integer failure {@linkplain HttpURLConnection#getResponseCode()
+	 * response code}.
+	 */
+	public final int responseCode;
+
+	/**
+	 * The {@code code} from the B2 error object in the body of the response,
+	 * such as {@code "bad_auth_token"}, or {@code null} if the body was not a
+	 * B2 error object.
+	 */
+	public final @Nullable String b2Code;
+
+	/**
+	 * The time the server asked the client to wait, in milliseconds, before
+	 * trying again, or {@code -1} if it did not send a {@code Retry-After}
+	 * header.
+	 */
+	public final long retryAfterMillis;
+
+	/**
+	 * Is this the server asking the client to send fewer requests?
+	 *
+	 * @return {@code true} if the {@link #responseCode} is {@link
+	 *         #SERVICE_UNAVAILABLE} or {@link #TOO_MANY_REQUESTS}; {@code
+	 *         false} otherwise.
+	 */
+	public boolean isThrottled ()
+	{
+		return responseCode == SERVICE_UNAVAILABLE
+			|| responseCode == TOO_MANY_REQUESTS;
+	}
+
+	/**
+	 * Is this the server rejecting an authorization token that is no longer
+	 * valid, such that a new token from a fresh authentication would be
+	 * accepted?
+	 *
+	 * @return {@code true} if the {@link #responseCode} is {@link
+	 *         #UNAUTHORIZED} and the {@link #b2Code} is {@code
+	 *         "expired_auth_token"} or {@code "bad_auth_token"}; {@code false}
+	 *         otherwise.
+	 */
+	public boolean isExpiredAuthorization ()
+	{
+		return responseCode == UNAUTHORIZED
+			&& ("expired_auth_token".equals(b2Code)
+				|| "bad_auth_token".equals(b2Code));
+	}
+
+	/**
+	 * Answer the {@code code} from the B2 error object in the provided
+	 * response body.
+	 *
+	 * @param details
+	 *        The body of the failed response.
+	 * @return A String, or {@code null} if the body was not a B2 error object.
+	 */
+	private static @Nullable String b2Code (final String details)
+	{
+		if (!details.startsWith("{"))
+		{
+			return null;
+		}
+		try
+		{
+			final JSONObject error = (JSONObject)
+				new JSONReader(new StringReader(details)).read();
+			return error != null && error.containsKey("code")
+				? error.getString("code")
+				: null;
+		}
+		catch (final JSONException|ClassCastException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Answer the delay, in milliseconds, requested by the provided {@code
+	 * Retry-After} header, which is either a number of seconds or an HTTP date.
+	 *
+	 * @param retryAfter
+	 *        The value of the header, or {@code null} if there was none.
+	 * @return The delay, or {@code -1} if there was no valid header.
+	 */
+	private static long retryAfterMillis (final @Nullable String retryAfter)
+	{
+		if (retryAfter == null)
+		{
+			return -1;
+		}
+		try
+		{
+			return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+		}
+		catch (final NumberFormatException e)
+		{
+			// Not a number of seconds, so try a date.
+		}
+		try
+		{
+			final Instant when = ZonedDateTime
+				.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+				.toInstant();
+			return Math.max(
+				0, Duration.between(Instant.now(), when).toMillis());
+		}
+		catch (final DateTimeParseException e)
+		{
+			return -1;
+		}
+	}
+
 	/**
 	 * Construct a {@link ResponseException}.
 	 *
@@ -56,11 +199,15 @@ extends ApplicationException
 	 *        response message}.
 	 * @param details
 	 *        Any additional error details.
+	 * @param retryAfter
+	 *        The value of the response's {@code Retry-After} header, or {@code
+	 *        null} if it had none.
 	 */
 	public ResponseException (
 		final int responseCode,
 		final String responseMessage,
-		final String details)
+		final String details,
+		final @Nullable String retryAfter)
 	{
 		super(
 			ExitCode.BAD_RESPONSE,
@@ -69,5 +216,28 @@ extends ApplicationException
 				responseMessage,
 				responseCode,
 				details));
+		this.responseCode = responseCode;
+		this.b2Code = b2Code(details);
+		this.retryAfterMillis = retryAfterMillis(retryAfter);
+	}
+
+	/**
+	 * Construct a {@link ResponseException}.
+	 *
+	 * @param responseCode
+	 *        The integer failure {@linkplain
+	 *        HttpURLConnection#getResponseCode() response code}.
+	 * @param responseMessage
+	 *        The failure {@linkplain HttpURLConnection#getResponseMessage()
+	 *        response message}.
+	 * @param details
+	 *        Any additional error details.
+	 */
+	public ResponseException (
+		final int responseCode,
+		final String responseMessage,
+		final String details)
+	{
+		this(responseCode, responseMessage, details, null);
 	}
 }
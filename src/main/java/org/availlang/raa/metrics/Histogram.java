@@ -0,0 +1,237 @@
+/*
+ * Histogram.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@code Histogram} records a distribution of non-negative {@code long}
+ * values and answers percentiles of it.
+ *
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is divided into
+ * {@value #SUB_BUCKETS} equal buckets, so a reported percentile is never more
+ * than about six percent above the true value, whatever the magnitude. The
+ * histogram is lock-free, and recording a value never allocates, so it is
+ * cheap enough to update on every request.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public final class Histogram
+{
+	/**
+	 * The number of bits of a value, after its leading one, that select its
+	 * bucket.
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/**
+	 * The number of buckets each power of two is divided into.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The number of buckets needed to hold any non-negative {@code long}.
+	 */
+	private static final int BUCKET_COUNT =
+		(Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	/**
+	 * Answer the index of the bucket the provided value is counted in.
+	 *
+	 * @param value
+	 *        A non-negative {@code long}.
+	 * @return An index into {@link #counts}.
+	 */
+	private static int bucket (final long value)
+	{
+		if (value < SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+		final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		final int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS
+			+ (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * Answer the largest value counted in the indicated bucket.
+	 *
+	 * @param bucket
+	 *        An index into {@link #counts}.
+	 * @return A {@code long}.
+	 */
+	private static long highestValue (final int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		final int shift = bucket / SUB_BUCKETS - 1;
+		final long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+
+	/**
+	 * The number of values counted in each bucket.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * The number of values recorded.
+	 */
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * The sum of the values recorded.
+	 */
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * The largest value recorded.
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a value. Negative values, which can only arise from a clock
+	 * misbehaving, are recorded as zero.
+	 *
+	 * @param value
+	 *        The {@code long} to record.
+	 */
+	public void record (final long value)
+	{
+		final long clamped = Math.max(0, value);
+		counts.incrementAndGet(bucket(clamped));
+		count.increment();
+		sum.add(clamped);
+		long previous = max.get();
+		while (clamped > previous && !max.compareAndSet(previous, clamped))
+		{
+			previous = max.get();
+		}
+	}
+
+	/**
+	 * Answer the number of values recorded.
+	 *
+	 * @return A {@code long}.
+	 */
+	public long count ()
+	{
+		return count.sum();
+	}
+
+	/**
+	 * Answer the mean of the values recorded.
+	 *
+	 * @return A {@code double}, or {@code 0} if nothing has been recorded.
+	 */
+	public double mean ()
+	{
+		final long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Answer the largest value recorded.
+	 *
+	 * @return A {@code long}, or {@code 0} if nothing has been recorded.
+	 */
+	public long max ()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Answer the value at or below which the indicated percentage of the
+	 * recorded values fall.
+	 *
+	 * @param percentile
+	 *        A percentage from {@code 0} to {@code 100}.
+	 * @return The upper bound of the bucket that holds the percentile, which
+	 *         is never more than the {@link #max()}, or {@code 0} if nothing
+	 *         has been recorded.
+	 */
+	public long percentile (final double percentile)
+	{
+		if (percentile < 0 || percentile > 100)
+		{
+			throw new IllegalArgumentException(
+				"percentile must be from 0 to 100: " + percentile);
+		}
+		// Take a snapshot so the answer is consistent with itself even while
+		// values are being recorded.
+		final long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+		{
+			return 0;
+		}
+		final long rank =
+			Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= rank)
+			{
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public String toString ()
+	{
+		return String.format(
+			"Histogram{count: %d, mean: %.1f, p50: %d, p90: %d, p99: %d, "
+				+ "max: %d}",
+			count(),
+			mean(),
+			percentile(50),
+			percentile(90),
+			percentile(99),
+			max());
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * OperationMetrics.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.metrics;
+import org.availlang.raa.api.APICatalogue;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@code OperationMetrics} accumulates the timings and transfer volumes of
+ * every request made for a single {@link APICatalogue} operation.
+ *
+ * <p>
+ * Durations are recorded in nanoseconds and throughput in bytes per second.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public final class OperationMetrics
+{
+	/**
+	 * The {@link APICatalogue} operation measured.
+	 */
+	public final APICatalogue catalogue;
+
+	/**
+	 * The {@link Histogram} of the duration of each {@link RequestPhase}.
+	 */
+	private final Map<RequestPhase, Histogram> phases;
+
+	/**
+	 * The {@link Histogram} of the total duration of each request.
+	 */
+	private final Histogram duration = new Histogram();
+
+	/**
+	 * The {@link Histogram} of the rate at which each successful request
+	 * received its response body.
+	 */
+	private final Histogram throughput = new Histogram();
+
+	/**
+	 * The number of requests completed.
+	 */
+	private final LongAdder requests = new LongAdder();
+
+	/**
+	 * The number of requests that failed.
+	 */
+	private final LongAdder failures = new LongAdder();
+
+	/**
+	 * The total number of bytes received.
+	 */
+	private final LongAdder bytesRead = new LongAdder();
+
+	/**
+	 * The total number of bytes sent.
+	 */
+	private final LongAdder bytesWritten = new LongAdder();
+
+	/**
+	 * Answer the {@link Histogram} of the durations, in nanoseconds, of the
+	 * indicated phase of each exchange. A request that uses several
+	 * connections, like a segmented download, records each connection's
+	 * phases separately.
+	 *
+	 * @param phase
+	 *        The {@link RequestPhase}.
+	 * @return A {@code Histogram}.
+	 */
+	public Histogram phase (final RequestPhase phase)
+	{
+		return phases.get(phase);
+	}
+
+	/**
+	 * Answer the {@link Histogram} of the total durations, in nanoseconds, of
+	 * the requests.
+	 *
+	 * @return A {@code Histogram}.
+	 */
+	public Histogram duration ()
+	{
+		return duration;
+	}
+
+	/**
+	 * Answer the {@link Histogram} of the rates, in bytes per second, at which
+	 * successful requests received their response bodies, measured from the
+	 * first byte of the response to the completion of the request.
+	 *
+	 * @return A {@code Histogram}.
+	 */
+	public Histogram throughput ()
+	{
+		return throughput;
+	}
+
+	/**
+	 * Answer the number of requests completed.
+	 *
+	 * @return A {@code long}.
+	 */
+	public long requests ()
+	{
+		return requests.sum();
+	}
+
+	/**
+	 * Answer the number of requests that failed.
+	 *
+	 * @return A {@code long}.
+	 */
+	public long failures ()
+	{
+		return failures.sum();
+	}
+
+	/**
+	 * Answer the total number of bytes received.
+	 *
+	 * @return A {@code long}.
+	 */
+	public long bytesRead ()
+	{
+		return bytesRead.sum();
+	}
+
+	/**
+	 * Answer the total number of bytes sent.
+	 *
+	 * @return A {@code long}.
+	 */
+	public long bytesWritten ()
+	{
+		return bytesWritten.sum();
+	}
+
+	/**
+	 * Record a completed request.
+	 *
+	 * @param durationNanos
+	 *        The total duration of the request.
+	 * @param receiveNanos
+	 *        The time from the first byte of the response to the completion of
+	 *        the request, or {@code -1} if no response arrived.
+	 * @param read
+	 *        The number of bytes received.
+	 * @param written
+	 *        The number of bytes sent.
+	 * @param succeeded
+	 *        {@code true} if the request succeeded; {@code false} otherwise.
+	 */
+	void completed (
+		final long durationNanos,
+		final long receiveNanos,
+		final long read,
+		final long written,
+		final boolean succeeded)
+	{
+		requests.increment();
+		if (!succeeded)
+		{
+			failures.increment();
+		}
+		duration.record(durationNanos);
+		bytesRead.add(read);
+		bytesWritten.add(written);
+		if (succeeded && read > 0 && receiveNanos > 0)
+		{
+			throughput.record(
+				(long) (read * (double) TimeUnit.SECONDS.toNanos(1)
+					/ receiveNanos));
+		}
+	}
+
+	@Override
+	public String toString ()
+	{
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format(
+			"%s: %d requests (%d failed), %d bytes read, %d bytes written%n",
+			catalogue,
+			requests(),
+			failures(),
+			bytesRead(),
+			bytesWritten()));
+		phases.forEach((phase, histogram) ->
+			sb.append(String.format("\t%s ns: %s%n", phase, histogram)));
+		sb.append(String.format("\tduration ns: %s%n", duration));
+		sb.append(String.format("\tthroughput B/s: %s", throughput));
+		return sb.toString();
+	}
+
+	/**
+	 * Construct an {@link OperationMetrics}.
+	 *
+	 * @param catalogue
+	 *        The {@link APICatalogue} operation measured.
+	 */
+	OperationMetrics (final APICatalogue catalogue)
+	{
+		this.catalogue = catalogue;
+		final Map<RequestPhase, Histogram> map =
+			new EnumMap<>(RequestPhase.class);
+		for (final RequestPhase phase : RequestPhase.values())
+		{
+			map.put(phase, new Histogram());
+		}
+		this.phases = Collections.unmodifiableMap(map);
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * RequestPhase.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.metrics;
+
+/**
+ * A {@code RequestPhase} is one of the consecutive phases of an HTTP exchange
+ * that a {@link RequestTimer} times separately.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public enum RequestPhase
+{
+	/**
+	 * Resolving the host name. This is near zero whenever the JVM's address
+	 * cache already holds the host.
+	 */
+	RESOLVE,
+
+	/**
+	 * Establishing the connection, including the TCP handshake and, for
+	 * {@code https}, the TLS handshake. {@link java.net.HttpURLConnection}
+	 * performs both in a single call, so they cannot be timed apart. This is
+	 * near zero when a warm keep-alive connection is reused.
+	 */
+	CONNECT,
+
+	/**
+	 * Writing the request body.
+	 */
+	SEND,
+
+	/**
+	 * Waiting for the response status line and headers once the request has
+	 * been sent; the time to first byte.
+	 */
+	FIRST_BYTE,
+
+	/**
+	 * Reading the response body.
+	 */
+	RECEIVE
+}
@@ -0,0 +1,198 @@
+/*
+ * RequestTimer.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.metrics;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@code RequestTimer} times a single request as it passes through its
+ * {@linkplain RequestPhase phases} and counts the bytes it transfers, then
+ * records the results in the request's {@link OperationMetrics} when it is
+ * {@linkplain #finish(boolean) finished}.
+ *
+ * <p>
+ * The phases of one connection are marked by one thread at a time. A request
+ * that uses several connections at once times each of them with its own
+ * {@linkplain #connectionTimer() connection timer}, which contributes its
+ * bytes to the request as a whole.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public final class RequestTimer
+{
+	/**
+	 * The {@link OperationMetrics} the results are recorded in.
+	 */
+	private final OperationMetrics metrics;
+
+	/**
+	 * The {@code RequestTimer} of the whole request, or {@code null} if this
+	 * is that timer.
+	 */
+	private final @Nullable RequestTimer request;
+
+	/**
+	 * The {@link System#nanoTime()} at which timing started.
+	 */
+	private final long start = System.nanoTime();
+
+	/**
+	 * The {@link System#nanoTime()} at which the current phase started.
+	 */
+	private long mark = start;
+
+	/**
+	 * The {@link System#nanoTime()} at which the first byte of a response
+	 * arrived, or {@code -1} if none has yet.
+	 */
+	private final AtomicLong firstByte = new AtomicLong(-1);
+
+	/**
+	 * The number of bytes received.
+	 */
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	/**
+	 * The number of bytes sent.
+	 */
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	/**
+	 * Whether the request has been {@linkplain #finish(boolean) finished}.
+	 */
+	private final AtomicBoolean finished = new AtomicBoolean();
+
+	/**
+	 * Answer the timer of the whole request.
+	 *
+	 * @return A {@code RequestTimer}.
+	 */
+	private RequestTimer request ()
+	{
+		return request == null ? this : request;
+	}
+
+	/**
+	 * Note that the indicated phase has just ended and the next has begun.
+	 *
+	 * @param phase
+	 *        The {@link RequestPhase} that ended.
+	 */
+	public void phase (final RequestPhase phase)
+	{
+		final long now = System.nanoTime();
+		metrics.phase(phase).record(now - mark);
+		mark = now;
+		if (phase == RequestPhase.FIRST_BYTE)
+		{
+			request().firstByte.compareAndSet(-1, now);
+		}
+	}
+
+	/**
+	 * Answer a timer for an additional connection made on behalf of this
+	 * request. Its phases are timed on their own; its bytes are counted
+	 * toward this request.
+	 *
+	 * @return A {@code RequestTimer}.
+	 */
+	public RequestTimer connectionTimer ()
+	{
+		return new RequestTimer(metrics, request());
+	}
+
+	/**
+	 * Count bytes received.
+	 *
+	 * @param count
+	 *        The number of bytes.
+	 */
+	public void addBytesRead (final long count)
+	{
+		request().bytesRead.addAndGet(count);
+	}
+
+	/**
+	 * Count bytes sent.
+	 *
+	 * @param count
+	 *        The number of bytes.
+	 */
+	public void addBytesWritten (final long count)
+	{
+		request().bytesWritten.addAndGet(count);
+	}
+
+	/**
+	 * Record the results of the request. Only the first call has any effect.
+	 *
+	 * @param succeeded
+	 *        {@code true} if the request succeeded; {@code false} otherwise.
+	 */
+	public void finish (final boolean succeeded)
+	{
+		assert request == null : "Only the request's own timer may finish it";
+		if (!finished.compareAndSet(false, true))
+		{
+			return;
+		}
+		final long now = System.nanoTime();
+		final long first = firstByte.get();
+		metrics.completed(
+			now - start,
+			first < 0 ? -1 : now - first,
+			bytesRead.get(),
+			bytesWritten.get(),
+			succeeded);
+	}
+
+	/**
+	 * Construct a {@link RequestTimer}.
+	 *
+	 * @param metrics
+	 *        The {@link OperationMetrics} the results are recorded in.
+	 * @param request
+	 *        The {@code RequestTimer} of the whole request, or {@code null}
+	 *        if this is that timer.
+	 */
+	RequestTimer (
+		final OperationMetrics metrics,
+		final @Nullable RequestTimer request)
+	{
+		this.metrics = metrics;
+		this.request = request;
+	}
+}
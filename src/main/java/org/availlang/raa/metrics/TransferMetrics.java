@@ -0,0 +1,122 @@
+/*
+ * TransferMetrics.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.metrics;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.api.APIRequest;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A {@code TransferMetrics} holds the {@link OperationMetrics} of each {@link
+ * APICatalogue} operation a client performs.
+ *
+ * <p>
+ * A client {@linkplain #startRequest(APICatalogue) starts} a {@link
+ * RequestTimer} for each {@link APIRequest} it processes; anyone may query the
+ * accumulated metrics at any time to see where requests spend their time.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public final class TransferMetrics
+{
+	/**
+	 * The {@link OperationMetrics} of each {@link APICatalogue} operation.
+	 */
+	private final Map<APICatalogue, OperationMetrics> operations;
+
+	/**
+	 * Answer the {@link OperationMetrics} of the indicated operation.
+	 *
+	 * @param catalogue
+	 *        The {@link APICatalogue} operation.
+	 * @return An {@code OperationMetrics}.
+	 */
+	public OperationMetrics operation (final APICatalogue catalogue)
+	{
+		return operations.get(catalogue);
+	}
+
+	/**
+	 * Answer the {@link OperationMetrics} of every operation.
+	 *
+	 * @return An unmodifiable {@link Map} from {@link APICatalogue} to {@code
+	 *         OperationMetrics}.
+	 */
+	public Map<APICatalogue, OperationMetrics> operations ()
+	{
+		return operations;
+	}
+
+	/**
+	 * Start timing a request.
+	 *
+	 * @param catalogue
+	 *        The {@link APICatalogue} operation being requested.
+	 * @return A {@link RequestTimer}.
+	 */
+	public RequestTimer startRequest (final APICatalogue catalogue)
+	{
+		return new RequestTimer(operations.get(catalogue), null);
+	}
+
+	@Override
+	public String toString ()
+	{
+		final StringBuilder sb = new StringBuilder("TransferMetrics");
+		operations.values().forEach(metrics ->
+		{
+			if (metrics.requests() > 0)
+			{
+				sb.append(String.format("%n")).append(metrics);
+			}
+		});
+		return sb.toString();
+	}
+
+	/**
+	 * Construct a {@link TransferMetrics}.
+	 */
+	public TransferMetrics ()
+	{
+		final Map<APICatalogue, OperationMetrics> map =
+			new EnumMap<>(APICatalogue.class);
+		for (final APICatalogue catalogue : APICatalogue.values())
+		{
+			map.put(catalogue, new OperationMetrics(catalogue));
+		}
+		this.operations = Collections.unmodifiableMap(map);
+	}
+}
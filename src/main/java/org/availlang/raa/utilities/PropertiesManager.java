@@ -31,8 +31,11 @@
  */
 
 package org.availlang.raa.utilities;
+import org.availlang.raa.ApplicationRuntime;
 import org.availlang.raa.ApplicationRuntime.ExitCode;
 import org.availlang.raa.api.AuthenticationContext;
+import org.availlang.raa.api.RequestPriority;
+import org.availlang.raa.client.Client;
 import org.availlang.raa.exceptions.PropertiesException;
 
 import javax.annotation.Nullable;
@@ -40,6 +43,16 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
 import java.util.Properties;
 
 /**
@@ -58,7 +71,66 @@ public class PropertiesManager
 		ACCOUNT_ID("accountId"),
 
 		/** The {@link AuthenticationContext#applicationKey} properties key. */
-		APPLICATION_KEY("applicationKey");
+		APPLICATION_KEY("applicationKey"),
+
+		/**
+		 * The properties key that selects the {@link Client} implementation;
+		 * either {@value PropertiesManager#HTTP_CLIENT} or {@value
+		 * PropertiesManager#ASYNC_HTTP_CLIENT}.
+		 */
+		CLIENT("client"),
+
+		/**
+		 * The properties key for the number of requests that may wait to be
+		 * sent at once; see {@link
+		 * AuthenticationContext#setQueueCapacity(int)}.
+		 */
+		QUEUE_CAPACITY("queueCapacity"),
+
+		/**
+		 * The properties key for the number of interactive tasks, such as
+		 * listings, the application's threads run at once; see {@link
+		 * ApplicationRuntime#setTargetConcurrency(int)}.
+		 */
+		TARGET_CONCURRENCY("targetConcurrency"),
+
+		/**
+		 * The properties key for the number of bulk tasks, such as downloads,
+		 * the application's threads run at once; see {@link
+		 * ApplicationRuntime#setTargetConcurrency(RequestPriority, int)}.
+		 */
+		BULK_CONCURRENCY("bulkConcurrency"),
+
+		/**
+		 * The properties key that selects the threads that run the
+		 * application's tasks; either {@value
+		 * PropertiesManager#PLATFORM_THREADS} or {@value
+		 * PropertiesManager#VIRTUAL_THREADS}.
+		 */
+		THREADS("threads"),
+
+		/**
+		 * The properties key that, when {@code true}, keeps the credentials
+		 * from each authentication in the {@linkplain
+		 * PropertiesManager#credentialCachePath credential cache} so that the
+		 * next run of the application can reuse them.
+		 */
+		CREDENTIAL_CACHE("credentialCache"),
+
+		/** The cached authorization token properties key. */
+		AUTHORIZATION_TOKEN("authorizationToken"),
+
+		/** The cached download url properties key. */
+		DOWNLOAD_URL("downloadUrl"),
+
+		/** The cached api url properties key. */
+		API_URL("apiUrl"),
+
+		/**
+		 * The properties key for the time, in milliseconds since the epoch, at
+		 * which the cached authorization token expires.
+		 */
+		EXPIRES_AT("expiresAt");
 
 		/**
 		 * The key to access the related field in the {@link
@@ -79,6 +151,30 @@ public class PropertiesManager
 		}
 	}
 
+	/**
+	 * The {@link PropertyKey#CLIENT} value that selects the blocking {@link
+	 * Client}.
+	 */
+	public static final String HTTP_CLIENT = "http";
+
+	/**
+	 * The {@link PropertyKey#CLIENT} value that selects the non-blocking
+	 * {@link Client}.
+	 */
+	public static final String ASYNC_HTTP_CLIENT = "async-http";
+
+	/**
+	 * The {@link PropertyKey#THREADS} value that selects a pool of platform
+	 * threads.
+	 */
+	public static final String PLATFORM_THREADS = "platform";
+
+	/**
+	 * The {@link PropertyKey#THREADS} value that selects a virtual thread for
+	 * each task.
+	 */
+	public static final String VIRTUAL_THREADS = "virtual";
+
 	/**
 	 * Answer the sole {@link PropertiesManager} used by this application.
 	 */
@@ -92,6 +188,25 @@ public class PropertiesManager
 	 */
 	private final Properties properties = new Properties();
 
+	/**
+	 * The location of the credential cache, kept apart from the {@link
+	 * #appConfigPath} as it is rewritten with every authentication.
+	 */
+	private final String credentialCachePath = "config/credentials.properties";
+
+	/**
+	 * A synchronization object that keeps writes to the credential cache from
+	 * interleaving.
+	 */
+	private final Object credentialCacheLock = new Object();
+
+	/**
+	 * The time in milliseconds that cached credentials must have left before
+	 * they expire to be reused; any less and authenticating anew is better
+	 * than refreshing almost at once.
+	 */
+	private static final long MINIMUM_CACHED_LIFETIME = 300_000;
+
 	/**
 	 * Retrieve the properties file and answer a {@linkplain
 	 * Properties#load(InputStream) loaded} {@link Properties}.
@@ -136,6 +251,315 @@ public class PropertiesManager
 		return properties.getProperty(key.key);
 	}
 
+	/**
+	 * Answer the configured String property for the given {@link PropertyKey},
+	 * loading the properties file if it exists and has not yet been loaded.
+	 *
+	 * @param key
+	 *        The {@code PropertyKey} to retrieve the value for.
+	 * @param defaultValue
+	 *        The value to answer if the property is not configured.
+	 * @return A String.
+	 */
+	private static String configuredProperty (
+		final PropertyKey key,
+		final String defaultValue)
+	{
+		if (soleInstance.properties.isEmpty() && propertiesFileExists())
+		{
+			soleInstance.retrieveProperties();
+		}
+		final String value = soleInstance.getProperty(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Answer the configured {@link PropertyKey#CLIENT} that selects the {@link
+	 * Client} implementation to use.
+	 *
+	 * @return Either {@link #HTTP_CLIENT} (the default) or {@link
+	 *         #ASYNC_HTTP_CLIENT}.
+	 */
+	public static String clientType ()
+	{
+		return configuredProperty(PropertyKey.CLIENT, HTTP_CLIENT);
+	}
+
+	/**
+	 * Answer the configured {@link PropertyKey#QUEUE_CAPACITY}, the number of
+	 * requests that may wait to be sent at once.
+	 *
+	 * @return A positive {@code int}; {@link
+	 *         AuthenticationContext#DEFAULT_QUEUE_CAPACITY} if the property is
+	 *         not configured or is not a positive integer.
+	 */
+	public static int queueCapacity ()
+	{
+		return configuredPositiveInt(
+			PropertyKey.QUEUE_CAPACITY,
+			AuthenticationContext.DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Answer the configured {@link PropertyKey#TARGET_CONCURRENCY}, the number
+	 * of interactive tasks the application's threads run at once.
+	 *
+	 * @return A positive {@code int}; the current {@link
+	 *         ApplicationRuntime#parallelism()} if the property is not
+	 *         configured or is not a positive integer.
+	 */
+	public static int targetConcurrency ()
+	{
+		return configuredPositiveInt(
+			PropertyKey.TARGET_CONCURRENCY,
+			ApplicationRuntime.parallelism());
+	}
+
+	/**
+	 * Answer the configured {@link PropertyKey#BULK_CONCURRENCY}, the number
+	 * of bulk tasks the application's threads run at once.
+	 *
+	 * @return A positive {@code int}; the current {@link
+	 *         ApplicationRuntime#parallelism(RequestPriority)} of the {@link
+	 *         RequestPriority#BULK} lane if the property is not configured or
+	 *         is not a positive integer.
+	 */
+	public static int bulkConcurrency ()
+	{
+		return configuredPositiveInt(
+			PropertyKey.BULK_CONCURRENCY,
+			ApplicationRuntime.parallelism(RequestPriority.BULK));
+	}
+
+	/**
+	 * Answer whether the configured {@link PropertyKey#THREADS} selects a
+	 * virtual thread for each of the application's tasks.
+	 *
+	 * @return {@code true} for {@link #VIRTUAL_THREADS}; {@code false} for
+	 *         {@link #PLATFORM_THREADS}, the default.
+	 */
+	public static boolean virtualThreads ()
+	{
+		return VIRTUAL_THREADS.equals(
+			configuredProperty(PropertyKey.THREADS, PLATFORM_THREADS).trim());
+	}
+
+	/**
+	 * Answer the configured positive {@code int} property for the given
+	 * {@link PropertyKey}.
+	 *
+	 * @param key
+	 *        The {@code PropertyKey} to retrieve the value for.
+	 * @param defaultValue
+	 *        The value to answer if the property is not configured or is not
+	 *        a positive integer.
+	 * @return A positive {@code int}.
+	 */
+	private static int configuredPositiveInt (
+		final PropertyKey key,
+		final int defaultValue)
+	{
+		final String value =
+			configuredProperty(key, Integer.toString(defaultValue));
+		try
+		{
+			final int number = Integer.parseInt(value.trim());
+			if (number > 0)
+			{
+				return number;
+			}
+		}
+		catch (final NumberFormatException e)
+		{
+			// Reported below.
+		}
+		System.err.println(
+			"Invalid " + key.key + " \"" + value + "\"; using "
+				+ defaultValue);
+		return defaultValue;
+	}
+
+	/**
+	 * Answer whether the configured {@link PropertyKey#CREDENTIAL_CACHE} keeps
+	 * the credentials from each authentication for the next run of the
+	 * application.
+	 *
+	 * @return {@code true} if the credential cache is in use; {@code false}
+	 *         (the default) otherwise.
+	 */
+	public static boolean credentialCacheEnabled ()
+	{
+		return Boolean.parseBoolean(
+			configuredProperty(PropertyKey.CREDENTIAL_CACHE, "false").trim());
+	}
+
+	/**
+	 * Update the application's {@link AuthenticationContext} with the
+	 * credentials in the credential cache, provided that they were obtained
+	 * for the given account and are not about to expire.
+	 *
+	 * @param accountId
+	 *        The identifier for the account being authenticated.
+	 * @return {@code true} if the cached credentials were restored; {@code
+	 *         false} if the account must be authenticated anew.
+	 */
+	public static boolean retrieveCachedCredentials (final String accountId)
+	{
+		if (!FileUtility.fileExists(soleInstance.credentialCachePath))
+		{
+			return false;
+		}
+		final Properties cache = new Properties();
+		try (final FileInputStream stream =
+			     new FileInputStream(soleInstance.credentialCachePath))
+		{
+			cache.load(stream);
+		}
+		catch (final IOException e)
+		{
+			System.err.println("Could not read credential cache");
+			return false;
+		}
+		final String token =
+			cache.getProperty(PropertyKey.AUTHORIZATION_TOKEN.key);
+		final String downloadUrl =
+			cache.getProperty(PropertyKey.DOWNLOAD_URL.key);
+		final String apiUrl = cache.getProperty(PropertyKey.API_URL.key);
+		final String expiresAt = cache.getProperty(PropertyKey.EXPIRES_AT.key);
+		if (!accountId.equals(cache.getProperty(PropertyKey.ACCOUNT_ID.key))
+			|| token == null
+			|| downloadUrl == null
+			|| apiUrl == null
+			|| expiresAt == null)
+		{
+			return false;
+		}
+		final long timeUntilExpires;
+		try
+		{
+			timeUntilExpires =
+				Long.parseLong(expiresAt.trim()) - System.currentTimeMillis();
+		}
+		catch (final NumberFormatException e)
+		{
+			return false;
+		}
+		if (timeUntilExpires < MINIMUM_CACHED_LIFETIME)
+		{
+			return false;
+		}
+		AuthenticationContext.restoreAuthorizationData(
+			token, downloadUrl, apiUrl, timeUntilExpires);
+		return true;
+	}
+
+	/**
+	 * Replace the contents of the credential cache.
+	 *
+	 * <p>
+	 * The cache holds a bearer token, and several runs of the application,
+	 * such as overlapping scheduled ones, may share it. It is therefore
+	 * written to a temporary file that only the owner may read, where the
+	 * file system supports POSIX permissions, which is then moved over the
+	 * cache atomically; another process sees either the old credentials or
+	 * the new ones, never part of them.
+	 * </p>
+	 *
+	 * <p>
+	 * The cache is only an optimization, so failing to write it is reported
+	 * but does not end the application.
+	 * </p>
+	 *
+	 * @param accountId
+	 *        The identifier for the account the credentials were obtained for.
+	 * @param authorizationToken
+	 *        The authorization token to use with all secure API calls.
+	 * @param downloadUrl
+	 *        The String url that is to be used for future downloads.
+	 * @param apiUrl
+	 *        The String to make authenticated API calls to.
+	 * @param expiresAt
+	 *        The time, in milliseconds since the epoch, at which the {@code
+	 *        authorizationToken} expires.
+	 */
+	public static void cacheCredentials (
+		final String accountId,
+		final String authorizationToken,
+		final String downloadUrl,
+		final String apiUrl,
+		final long expiresAt)
+	{
+		final Properties cache = new Properties();
+		cache.setProperty(PropertyKey.ACCOUNT_ID.key, accountId);
+		cache.setProperty(
+			PropertyKey.AUTHORIZATION_TOKEN.key, authorizationToken);
+		cache.setProperty(PropertyKey.DOWNLOAD_URL.key, downloadUrl);
+		cache.setProperty(PropertyKey.API_URL.key, apiUrl);
+		cache.setProperty(
+			PropertyKey.EXPIRES_AT.key, Long.toString(expiresAt));
+		final Path cachePath = Paths.get(
+			FileUtility.platformAppropriatePath(
+				soleInstance.credentialCachePath)).toAbsolutePath();
+		synchronized (soleInstance.credentialCacheLock)
+		{
+			Path temporary = null;
+			try
+			{
+				Files.createDirectories(cachePath.getParent());
+				temporary = FileSystems.getDefault()
+						.supportedFileAttributeViews().contains("posix")
+					? Files.createTempFile(
+						cachePath.getParent(),
+						"credentials",
+						".tmp",
+						PosixFilePermissions.asFileAttribute(EnumSet.of(
+							PosixFilePermission.OWNER_READ,
+							PosixFilePermission.OWNER_WRITE)))
+					: Files.createTempFile(
+						cachePath.getParent(), "credentials", ".tmp");
+				try (final OutputStream stream =
+					     Files.newOutputStream(temporary))
+				{
+					cache.store(stream, "");
+				}
+				try
+				{
+					Files.move(
+						temporary,
+						cachePath,
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (final AtomicMoveNotSupportedException e)
+				{
+					Files.move(
+						temporary,
+						cachePath,
+						StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			catch (final IOException e)
+			{
+				System.err.println("Could not update credential cache");
+				e.printStackTrace();
+			}
+			finally
+			{
+				if (temporary != null)
+				{
+					try
+					{
+						Files.deleteIfExists(temporary);
+					}
+					catch (final IOException e)
+					{
+						// Only left behind if the move failed too.
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Update the application's {@link AuthenticationContext} with the account
 	 * information from the file.
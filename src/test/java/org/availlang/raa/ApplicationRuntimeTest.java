@@ -0,0 +1,179 @@
+/*
+ * ApplicationRuntimeTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa;
+import org.availlang.raa.api.RequestPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code ApplicationRuntimeTest} is a set of JUnit tests for the tasks run
+ * by the {@link ApplicationRuntime}, on its thread pools or on virtual
+ * threads.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class ApplicationRuntimeTest
+{
+	/**
+	 * The number of tasks each test schedules.
+	 */
+	private static final int TASKS = 8;
+
+	/**
+	 * Whether this Java has virtual threads.
+	 */
+	private static final boolean hasVirtualThreads =
+		Runtime.version().feature() >= 21;
+
+	/**
+	 * Run {@link #TASKS} tasks in the {@link RequestPriority#BULK} lane, each
+	 * of which holds its thread for a few milliseconds.
+	 *
+	 * @param applicationThreads
+	 *        The number of tasks that found themselves on an application
+	 *        thread.
+	 * @param mostAtOnce
+	 *        The most tasks that were running at once.
+	 * @throws InterruptedException
+	 *         If interrupted while waiting for the tasks.
+	 */
+	private static void runTasks (
+		final AtomicInteger applicationThreads,
+		final AtomicInteger mostAtOnce)
+		throws InterruptedException
+	{
+		final AtomicInteger running = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(TASKS);
+		for (int i = 0; i < TASKS; i++)
+		{
+			ApplicationRuntime.scheduleTask(RequestPriority.BULK, () ->
+			{
+				try
+				{
+					mostAtOnce.accumulateAndGet(
+						running.incrementAndGet(), Math::max);
+					if (ApplicationRuntime.isApplicationThread())
+					{
+						applicationThreads.incrementAndGet();
+					}
+					Thread.sleep(5);
+				}
+				catch (final InterruptedException e)
+				{
+					// The test fails on the count.
+				}
+				finally
+				{
+					running.decrementAndGet();
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+
+	@AfterEach
+	void restore ()
+	{
+		// The target concurrency set applies to whichever of the virtual
+		// threads and the pool is in use, so restore each in turn.
+		ApplicationRuntime.setTargetConcurrency(
+			RequestPriority.BULK,
+			ApplicationRuntime.DEFAULT_VIRTUAL_CONCURRENCY);
+		ApplicationRuntime.useVirtualThreads(false);
+		ApplicationRuntime.setTargetConcurrency(
+			RequestPriority.BULK,
+			ApplicationRuntime.DEFAULT_TARGET_CONCURRENCY);
+	}
+
+	@Test
+	@DisplayName("Virtual threads are used only where Java has them")
+	void virtualThreads () throws InterruptedException
+	{
+		assertFalse(ApplicationRuntime.isApplicationThread());
+		assertEquals(
+			hasVirtualThreads, ApplicationRuntime.useVirtualThreads(true));
+		final long completed =
+			ApplicationRuntime.completedTasks(RequestPriority.BULK);
+		final AtomicInteger applicationThreads = new AtomicInteger();
+		runTasks(applicationThreads, new AtomicInteger());
+		assertEquals(TASKS, applicationThreads.get());
+		final long deadline = System.currentTimeMillis() + 10_000;
+		while (ApplicationRuntime.completedTasks(RequestPriority.BULK)
+				< completed + TASKS
+			&& System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(1);
+		}
+		assertEquals(
+			completed + TASKS,
+			ApplicationRuntime.completedTasks(RequestPriority.BULK));
+		assertFalse(ApplicationRuntime.useVirtualThreads(false));
+	}
+
+	@Test
+	@DisplayName("Capped tasks run one at a time on application threads")
+	void cappedTasks () throws InterruptedException
+	{
+		for (final boolean virtual : new boolean[] {false, true})
+		{
+			if (ApplicationRuntime.useVirtualThreads(virtual) != virtual)
+			{
+				continue;
+			}
+			ApplicationRuntime.setTargetConcurrency(RequestPriority.BULK, 1);
+			assertEquals(
+				1, ApplicationRuntime.parallelism(RequestPriority.BULK));
+			// Idle threads beyond the new size stop soon after, not at once.
+			final long deadline = System.currentTimeMillis() + 10_000;
+			while (ApplicationRuntime.poolSize(RequestPriority.BULK) > 1
+				&& System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(1);
+			}
+			final AtomicInteger applicationThreads = new AtomicInteger();
+			final AtomicInteger mostAtOnce = new AtomicInteger();
+			runTasks(applicationThreads, mostAtOnce);
+			assertEquals(TASKS, applicationThreads.get());
+			assertEquals(1, mostAtOnce.get());
+			restore();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * ExecutorBenchmark.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * An {@code ExecutorBenchmark} compares how long the {@link
+ * ApplicationRuntime} takes to run many tasks that block on I/O, such as the
+ * downloads of small files, with its pool of platform threads and with
+ * {@linkplain ApplicationRuntime#useVirtualThreads(boolean) virtual threads},
+ * and how many platform threads each needs.
+ *
+ * <p>
+ * This is not a unit test; run its {@link #main(String[]) main} method
+ * directly, with Java 21 or later to include virtual threads. Each task
+ * blocks by sleeping rather than on a server, so the figures cover only the
+ * scheduling of the tasks.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public class ExecutorBenchmark
+{
+	/**
+	 * The number of tasks in a round.
+	 */
+	private static final int TASKS = 10_000;
+
+	/**
+	 * How long, in milliseconds, each task blocks.
+	 */
+	private static final long LATENCY_MILLIS = 20;
+
+	/**
+	 * The number of threads of a pool large enough to overlap most of the
+	 * blocking.
+	 */
+	private static final int LARGE_POOL = 1_000;
+
+	/**
+	 * Run {@link #TASKS} tasks and report how long they took and how many
+	 * more platform threads were alive at once than before they started;
+	 * the idle threads of an earlier round may not have stopped yet.
+	 *
+	 * @param label
+	 *        What runs the tasks.
+	 * @throws InterruptedException
+	 *         If interrupted while waiting for the tasks.
+	 */
+	private static void round (final String label)
+		throws InterruptedException
+	{
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.resetPeakThreadCount();
+		final int alive = threads.getThreadCount();
+		final CountDownLatch done = new CountDownLatch(TASKS);
+		final long start = System.nanoTime();
+		for (int i = 0; i < TASKS; i++)
+		{
+			ApplicationRuntime.scheduleTask(() ->
+			{
+				try
+				{
+					Thread.sleep(LATENCY_MILLIS);
+				}
+				catch (final InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			});
+		}
+		done.await();
+		System.out.printf(
+			"%-32s %6.0f ms, %5d more platform threads%n",
+			label,
+			(System.nanoTime() - start) / 1e6,
+			threads.getPeakThreadCount() - alive);
+	}
+
+	/**
+	 * Run the benchmark.
+	 *
+	 * @param args
+	 *        Unused.
+	 * @throws InterruptedException
+	 *         If interrupted while waiting for the tasks.
+	 */
+	public static void main (final String[] args) throws InterruptedException
+	{
+		System.out.printf(
+			"Running %d tasks that each block for %d ms%n",
+			TASKS,
+			LATENCY_MILLIS);
+		round(String.format(
+			"pool of %d threads:", ApplicationRuntime.parallelism()));
+		ApplicationRuntime.setTargetConcurrency(LARGE_POOL);
+		round(String.format("pool of %d threads:", LARGE_POOL));
+		if (!ApplicationRuntime.useVirtualThreads(true))
+		{
+			System.out.println("Virtual threads need Java 21 or later");
+			return;
+		}
+		ApplicationRuntime.setTargetConcurrency(TASKS);
+		round(String.format(
+			"virtual threads, %d at once:", ApplicationRuntime.parallelism()));
+		System.out.println(ApplicationRuntime.executorGauges());
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * AdmissionQueueTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.api;
+import org.availlang.raa.api.b2api.B2ListBucketsRequest;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.exceptions.DeadlineException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code AdmissionQueueTest} is a set of JUnit tests for the {@link
+ * AdmissionQueue}.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class AdmissionQueueTest
+{
+	/**
+	 * The {@link ApplicationException}s the requests failed with.
+	 */
+	private final List<ApplicationException> failures =
+		new CopyOnWriteArrayList<>();
+
+	/**
+	 * Answer a new {@link APIRequest} of the provided {@link RequestPriority}
+	 * that records its failure in {@link #failures}.
+	 *
+	 * @param priority
+	 *        The {@code RequestPriority} of the request.
+	 * @return An {@code APIRequest}.
+	 */
+	private APIRequest<?> request (final RequestPriority priority)
+	{
+		final APIRequest<?> request =
+			new B2ListBucketsRequest(r -> {}, failures::add);
+		request.setPriority(priority);
+		return request;
+	}
+
+	@Test
+	@DisplayName("Only as many requests as the capacity are offered space")
+	void capacity ()
+	{
+		final AdmissionQueue queue = new AdmissionQueue(2);
+		assertTrue(queue.offer(request(RequestPriority.BULK)));
+		assertTrue(queue.offer(request(RequestPriority.BULK)));
+		assertFalse(queue.offer(request(RequestPriority.INTERACTIVE)));
+		assertEquals(2, queue.size());
+		// Requests that cannot be refused are admitted regardless.
+		queue.add(request(RequestPriority.BULK));
+		assertEquals(3, queue.size());
+		assertNotNull(queue.poll());
+		assertFalse(queue.offer(request(RequestPriority.BULK)));
+		assertNotNull(queue.poll());
+		assertTrue(queue.offer(request(RequestPriority.BULK)));
+		assertFalse(queue.offer(request(RequestPriority.BULK)));
+		queue.setCapacity(3);
+		assertTrue(queue.offer(request(RequestPriority.BULK)));
+		assertFalse(queue.offer(request(RequestPriority.BULK)));
+		assertEquals(3, queue.size());
+	}
+
+	@Test
+	@DisplayName("A producer waiting for space is released by a poll")
+	void blockedPut () throws InterruptedException
+	{
+		final AdmissionQueue queue = new AdmissionQueue(1);
+		final APIRequest<?> first = request(RequestPriority.BULK);
+		final APIRequest<?> second = request(RequestPriority.BULK);
+		queue.put(first);
+		final CountDownLatch admitted = new CountDownLatch(1);
+		final Thread producer = new Thread(() ->
+		{
+			try
+			{
+				queue.put(second);
+				admitted.countDown();
+			}
+			catch (final InterruptedException e)
+			{
+				// The test fails on the latch.
+			}
+		});
+		producer.start();
+		assertFalse(admitted.await(100, TimeUnit.MILLISECONDS));
+		assertEquals(1, queue.size());
+		assertSame(first, queue.poll());
+		assertTrue(admitted.await(10, TimeUnit.SECONDS));
+		assertSame(second, queue.poll());
+		assertNull(queue.poll());
+		producer.join();
+	}
+
+	@Test
+	@DisplayName("A producer waiting for space can be interrupted")
+	void interruptedPut () throws InterruptedException
+	{
+		final AdmissionQueue queue = new AdmissionQueue(1);
+		queue.put(request(RequestPriority.BULK));
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final Thread producer = new Thread(() ->
+		{
+			try
+			{
+				queue.put(request(RequestPriority.BULK));
+			}
+			catch (final InterruptedException e)
+			{
+				interrupted.countDown();
+			}
+		});
+		producer.start();
+		producer.interrupt();
+		assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+		assertEquals(1, queue.size());
+	}
+
+	@Test
+	@DisplayName("Interactive requests are answered before bulk ones")
+	void priority ()
+	{
+		final AdmissionQueue queue = new AdmissionQueue(10);
+		final APIRequest<?> bulk1 = request(RequestPriority.BULK);
+		final APIRequest<?> interactive1 =
+			request(RequestPriority.INTERACTIVE);
+		final APIRequest<?> bulk2 = request(RequestPriority.BULK);
+		final APIRequest<?> interactive2 =
+			request(RequestPriority.INTERACTIVE);
+		queue.offer(bulk1);
+		queue.offer(interactive1);
+		queue.offer(bulk2);
+		queue.offer(interactive2);
+		assertSame(bulk1, queue.poll(RequestPriority.BULK));
+		queue.add(bulk1);
+		assertSame(interactive1, queue.poll());
+		assertSame(interactive2, queue.poll());
+		final List<APIRequest<?>> drained = new ArrayList<>();
+		queue.offer(interactive1);
+		assertEquals(3, queue.drainTo(drained));
+		assertEquals(Arrays.asList(interactive1, bulk2, bulk1), drained);
+		assertEquals(0, queue.size());
+		assertTrue(failures.isEmpty());
+	}
+
+	@Test
+	@DisplayName("Expired requests fail with a DeadlineException")
+	void expired () throws InterruptedException
+	{
+		final AdmissionQueue queue = new AdmissionQueue(10);
+		final APIRequest<?> expired = request(RequestPriority.INTERACTIVE);
+		expired.setTimeout(1);
+		final APIRequest<?> live = request(RequestPriority.BULK);
+		queue.offer(expired);
+		queue.offer(live);
+		Thread.sleep(5);
+		assertSame(live, queue.poll());
+		assertEquals(1, failures.size());
+		assertTrue(failures.get(0) instanceof DeadlineException);
+		assertEquals(0, queue.size());
+
+		final APIRequest<?> drainedExpired =
+			request(RequestPriority.BULK);
+		drainedExpired.setTimeout(1);
+		queue.offer(drainedExpired);
+		queue.offer(live);
+		Thread.sleep(5);
+		final List<APIRequest<?>> drained = new ArrayList<>();
+		assertEquals(1, queue.drainTo(drained));
+		assertEquals(Arrays.asList(live), drained);
+		assertEquals(2, failures.size());
+		assertTrue(failures.get(1) instanceof DeadlineException);
+		assertEquals(0, queue.size());
+	}
+}
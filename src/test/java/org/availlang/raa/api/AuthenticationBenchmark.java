@@ -0,0 +1,239 @@
+/*
+ * AuthenticationBenchmark.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.api;
+import org.availlang.raa.ApplicationRuntime;
+import org.availlang.raa.api.AuthenticationContext.DrainStatistics;
+import org.availlang.raa.api.b2api.B2ListBucketsRequest;
+import org.availlang.raa.client.Client;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@code AuthenticationBenchmark} measures how {@link
+ * AuthenticationContext#processRequest(APIRequest)} copes with many threads
+ * submitting requests at once: the submission rate as the number of threads
+ * grows, and whether submitters are held up while the application
+ * re-authenticates.
+ *
+ * <p>
+ * This is not a unit test; run its {@link #main(String[]) main} method
+ * directly. The {@link Client} discards every request, so the figures cover
+ * only the authentication check and the hand-off to the application's thread
+ * pool.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public class AuthenticationBenchmark
+{
+	/**
+	 * The number of requests each thread submits in a round.
+	 */
+	private static final int REQUESTS_PER_THREAD = 100_000;
+
+	/**
+	 * The number of untimed warm-up rounds.
+	 */
+	private static final int WARM_UP_ROUNDS = 3;
+
+	/**
+	 * How long, in milliseconds, the simulated {@code b2_authorize_account}
+	 * call takes.
+	 */
+	private static final long AUTHENTICATION_MILLIS = 200;
+
+	/**
+	 * The number of requests the {@link Client} has received.
+	 */
+	private static final LongAdder received = new LongAdder();
+
+	/**
+	 * How long, in milliseconds, the next authentication takes.
+	 */
+	private static volatile long authenticationMillis;
+
+	/**
+	 * Authenticate without a server, taking {@link #authenticationMillis}.
+	 *
+	 * @param accountId
+	 *        Unused.
+	 * @param applicationKey
+	 *        Unused.
+	 */
+	private static void authenticate (
+		final String accountId,
+		final String applicationKey)
+	{
+		try
+		{
+			Thread.sleep(authenticationMillis);
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		AuthenticationContext.setAuthorizationData(
+			"token", "download-url", "api-url", TimeUnit.HOURS.toMillis(1));
+	}
+
+	/**
+	 * Submit {@link #REQUESTS_PER_THREAD} requests from each of the provided
+	 * number of threads, and wait until the {@link Client} has received them
+	 * all.
+	 *
+	 * @param threadCount
+	 *        The number of submitting threads.
+	 * @param duringSubmission
+	 *        A {@link Runnable} to run once the threads have started.
+	 * @return The time, in nanoseconds, that all the submissions took.
+	 * @throws Exception
+	 *         If a thread could not be coordinated.
+	 */
+	private static long round (
+		final int threadCount,
+		final Runnable duringSubmission)
+		throws Exception
+	{
+		final long expected = received.sum()
+			+ (long) threadCount * REQUESTS_PER_THREAD;
+		final CyclicBarrier barrier = new CyclicBarrier(threadCount + 1);
+		final Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++)
+		{
+			final APIRequest<?>[] requests =
+				new APIRequest<?>[REQUESTS_PER_THREAD];
+			for (int i = 0; i < REQUESTS_PER_THREAD; i++)
+			{
+				requests[i] = new B2ListBucketsRequest(
+					response -> { /* Do nothing */ },
+					Throwable::printStackTrace);
+			}
+			threads[t] = new Thread(() ->
+			{
+				try
+				{
+					barrier.await();
+				}
+				catch (final Exception e)
+				{
+					throw new RuntimeException(e);
+				}
+				for (final APIRequest<?> request : requests)
+				{
+					AuthenticationContext.processRequest(request);
+				}
+			});
+			threads[t].start();
+		}
+		barrier.await();
+		final long start = System.nanoTime();
+		duringSubmission.run();
+		for (final Thread thread : threads)
+		{
+			thread.join();
+		}
+		final long elapsed = System.nanoTime() - start;
+		while (received.sum() < expected)
+		{
+			Thread.sleep(1);
+		}
+		return elapsed;
+	}
+
+	/**
+	 * Run the benchmark.
+	 *
+	 * @param args
+	 *        Unused.
+	 * @throws Exception
+	 *         If a thread could not be coordinated.
+	 */
+	public static void main (final String[] args) throws Exception
+	{
+		final Client client = new Client()
+		{
+			@Override
+			public <Response extends APIResponse> void processRequest (
+				final APIRequest<Response> request)
+			{
+				received.increment();
+			}
+		};
+		ApplicationRuntime.initialize(
+			client, AuthenticationBenchmark::authenticate);
+		AuthenticationContext.soleInstance.updateAccountInfo(
+			"account", "key");
+		AuthenticationContext.authenticate();
+
+		final int processors = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < WARM_UP_ROUNDS; i++)
+		{
+			round(processors, () -> { /* Do nothing */ });
+		}
+		System.out.printf(
+			"Submitting %d requests per thread (%d processors)%n",
+			REQUESTS_PER_THREAD,
+			processors);
+		for (int threads = 1; threads <= processors << 1; threads <<= 1)
+		{
+			final long elapsed = round(threads, () -> { /* Do nothing */ });
+			System.out.printf(
+				"%3d threads: %8.2f requests/ms%n",
+				threads,
+				(double) threads * REQUESTS_PER_THREAD / (elapsed / 1e6));
+		}
+
+		authenticationMillis = AUTHENTICATION_MILLIS;
+		final Thread authenticator =
+			new Thread(AuthenticationContext::authenticate);
+		final long elapsed = round(processors, authenticator::start);
+		authenticator.join();
+		System.out.printf(
+			"%3d threads during a %d ms authentication: "
+				+ "all submitted in %.2f ms%n",
+			processors,
+			AUTHENTICATION_MILLIS,
+			elapsed / 1e6);
+		for (final RequestPriority lane : RequestPriority.values())
+		{
+			final DrainStatistics drain =
+				AuthenticationContext.soleInstance.lastDrain(lane);
+			if (drain != null)
+			{
+				System.out.println(drain);
+			}
+		}
+	}
+}
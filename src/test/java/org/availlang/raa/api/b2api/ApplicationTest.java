@@ -36,6 +36,10 @@ import org.availlang.raa.ApplicationState;
 import org.availlang.raa.B2Bucket;
 import org.availlang.raa.B2File;
 import org.availlang.raa.api.AuthenticationContext;
+import org.availlang.raa.api.AuthenticationContext.DrainStatistics;
+import org.availlang.raa.api.RequestPriority;
+import org.availlang.raa.exceptions.ResponseException;
+import org.availlang.raa.exceptions.StateException;
 import org.availlang.raa.utilities.PropertiesManager;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -51,6 +55,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -192,6 +199,121 @@ class ApplicationTest
 		AuthenticationContext.authenticate();
 		assertEquals(ApplicationState.AUTHENTICATED, ApplicationRuntime.state());
 		assertEquals(0, AuthenticationContext.queueCount());
+
+		// The waiting requests are passed to the Client by tasks of their
+		// lanes, which record how long it took once each lane is done.
+		final long deadline = System.currentTimeMillis() + 10_000;
+		while ((AuthenticationContext.soleInstance.lastDrain(
+					RequestPriority.INTERACTIVE) == null
+				|| AuthenticationContext.soleInstance.lastDrain(
+					RequestPriority.BULK) == null)
+			&& System.currentTimeMillis() < deadline)
+		{
+			Thread.yield();
+		}
+		final DrainStatistics interactive =
+			AuthenticationContext.soleInstance.lastDrain(
+				RequestPriority.INTERACTIVE);
+		final DrainStatistics bulk =
+			AuthenticationContext.soleInstance.lastDrain(RequestPriority.BULK);
+		assertNotNull(interactive);
+		assertNotNull(bulk);
+		assertEquals(2, interactive.requests);
+		assertEquals(1, bulk.requests);
+		assertTrue(bulk.stampNanos <= bulk.totalNanos);
+	}
+
+	@Test
+	@DisplayName("A closed session is never re-authenticated")
+	void closedSession ()
+	{
+		final AuthenticationContext session =
+			AuthenticationContext.session("closed", "key");
+		assertEquals(ApplicationState.ACCOUNT_INITIALIZED, session.state());
+		session.close();
+		assertEquals(
+			ApplicationState.ACCOUNT_UNINITIALIZED, session.state());
+
+		// The authorization is refused before any authenticator runs.
+		final CompletableFuture<AuthenticationContext> authentication =
+			session.authorize();
+		assertTrue(authentication.isCompletedExceptionally());
+		final CompletionException refused = assertThrows(
+			CompletionException.class, authentication::join);
+		assertTrue(refused.getCause() instanceof StateException);
+		assertEquals(
+			ApplicationState.ACCOUNT_UNINITIALIZED, session.state());
+		assertNotSame(
+			session, AuthenticationContext.session("closed", "key"));
+		AuthenticationContext.session("closed", "key").close();
+	}
+
+	@Test
+	@DisplayName("A request with an expired token is replayed once")
+	void expiredToken () throws InterruptedException
+	{
+		final String apiUrl = "api-url";
+		final String downloadUrl = "download-url";
+		final TestClient client = new TestClient(
+			apiUrl,
+			downloadUrl,
+			Arrays.asList(new B2Bucket("b1", "bucket-1")),
+			new HashMap<>());
+		// Each authentication issues a new token; only the second is accepted.
+		final AtomicInteger authentications = new AtomicInteger();
+		client.expectedAuthToken = "token-2";
+		ApplicationRuntime.initialize(
+			client,
+			(account, key) -> AuthenticationContext.setAuthorizationData(
+				"token-" + authentications.incrementAndGet(),
+				downloadUrl,
+				apiUrl,
+				3_600_000));
+		PropertiesManager.updateAccountInfo("A1234", "K123456");
+		PropertiesManager.retrieveAccountInfo();
+		AuthenticationContext.authenticate();
+		assertEquals(1, authentications.get());
+
+		// The server answers once that the token has expired; the request is
+		// sent again with the token of a single new authentication.
+		client.failures.add(expired());
+		AuthenticationContext.processRequest(client.listBucketsRequest());
+		TestClient.await(() ->
+			client.responses.size() + client.failed.size() == 1);
+		assertEquals(1, client.responses.size());
+		assertTrue(client.failed.isEmpty());
+		assertEquals(2, authentications.get());
+		assertEquals(2, client.requestsProcessed.get());
+		assertEquals(
+			ApplicationState.AUTHENTICATED, ApplicationRuntime.state());
+
+		// A token rejected again straight after authenticating is not fixed
+		// by another authentication, so the failure is passed on.
+		client.failures.add(expired());
+		client.failures.add(expired());
+		AuthenticationContext.processRequest(client.listBucketsRequest());
+		TestClient.await(() -> client.failed.size() == 1);
+		assertTrue(
+			((ResponseException) client.failed.get(0))
+				.isExpiredAuthorization());
+		assertEquals(1, client.responses.size());
+		assertEquals(3, authentications.get());
+		assertEquals(4, client.requestsProcessed.get());
+	}
+
+	/**
+	 * Answer the {@link ResponseException} with which B2 rejects an expired
+	 * authorization token.
+	 *
+	 * @return A {@code ResponseException}.
+	 */
+	private static ResponseException expired ()
+	{
+		return new ResponseException(
+			ResponseException.UNAUTHORIZED,
+			"Unauthorized",
+			"{\"status\": 401, \"code\": \"expired_auth_token\", "
+				+ "\"message\": \"Authorization token has expired\"}");
 	}
 
 	@AfterEach
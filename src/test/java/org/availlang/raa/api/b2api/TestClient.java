@@ -42,15 +42,23 @@ import org.availlang.raa.api.APIResponse;
 import org.availlang.raa.api.AuthenticationContext;
 import org.availlang.raa.client.Client;
 import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.exceptions.ConnectionException;
 import org.junit.jupiter.api.Assertions;
 
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 /**
  * A {@code TestClient} is an implementation of {@link Client} for unit testing.
@@ -137,9 +145,201 @@ implements Client
 		return new ApplicationException(exitCode, message);
 	}
 
+	/**
+	 * The number of requests this {@link TestClient} has been asked to
+	 * process.
+	 */
+	public final AtomicInteger requestsProcessed = new AtomicInteger();
+
+	/**
+	 * The {@link ApplicationException}s to answer the next requests with, in
+	 * order, in place of their simulated responses.
+	 */
+	public final Queue<ApplicationException> failures =
+		new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Should requests be held as {@link PendingResponse}s, to be answered when
+	 * the test chooses, rather than answered at once?
+	 */
+	public volatile boolean deferResponses = false;
+
+	/**
+	 * Should a cancelled {@link PendingResponse} be left for the test to
+	 * {@linkplain PendingResponse#fail(ApplicationException) fail}, as a
+	 * connection may take a while to report that it was closed, rather than
+	 * failing at once?
+	 */
+	public volatile boolean deferCancellations = false;
+
+	/**
+	 * The {@link PendingResponse}s of the requests held while {@link
+	 * #deferResponses} was set, in the order they arrived.
+	 */
+	public final List<PendingResponse> pending =
+		Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	 * The {@link B2ListBucketsResponse}s received by the requests made with
+	 * {@link #listBucketsRequest()}, in the order they arrived.
+	 */
+	public final List<B2ListBucketsResponse> responses =
+		new CopyOnWriteArrayList<>();
+
+	/**
+	 * The {@link ApplicationException}s the requests made with {@link
+	 * #listBucketsRequest()} failed with, in the order they arrived.
+	 */
+	public final List<ApplicationException> failed =
+		new CopyOnWriteArrayList<>();
+
+	/**
+	 * Answer a new {@link B2ListBucketsRequest} that records its outcome in
+	 * {@link #responses} or {@link #failed}.
+	 *
+	 * @return A {@code B2ListBucketsRequest}.
+	 */
+	public B2ListBucketsRequest listBucketsRequest ()
+	{
+		return new B2ListBucketsRequest(responses::add, failed::add);
+	}
+
+	/**
+	 * Wait up to ten seconds for the provided condition to hold, as the
+	 * outcomes of requests sent from the application's threads arrive
+	 * asynchronously.
+	 *
+	 * @param condition
+	 *        The {@link BooleanSupplier} that tests the condition.
+	 * @throws InterruptedException
+	 *         If interrupted while waiting.
+	 */
+	public static void await (final BooleanSupplier condition)
+		throws InterruptedException
+	{
+		final long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean())
+		{
+			Assertions.assertTrue(
+				System.currentTimeMillis() < deadline, "timed out");
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * A {@code PendingResponse} is a request held by a {@link TestClient}
+	 * until the test answers it. Like a real connection, it registers a
+	 * {@linkplain APIRequest#addCanceller(Runnable) canceller} that fails it.
+	 */
+	public final class PendingResponse
+	{
+		/**
+		 * The held {@link APIRequest}.
+		 */
+		public final APIRequest<?> request;
+
+		/**
+		 * Whether the request has been answered.
+		 */
+		private final AtomicBoolean answered = new AtomicBoolean(false);
+
+		/**
+		 * Whether the request was answered by its canceller.
+		 */
+		public volatile boolean cancelled = false;
+
+		/**
+		 * The {@link Runnable} registered as the request's canceller.
+		 */
+		private final Runnable canceller = this::cancel;
+
+		/**
+		 * Fail the request as cancelled, unless it has already been answered
+		 * or the failure is {@linkplain #deferCancellations deferred}.
+		 */
+		private void cancel ()
+		{
+			if (deferCancellations)
+			{
+				cancelled = true;
+				return;
+			}
+			if (answered.compareAndSet(false, true))
+			{
+				cancelled = true;
+				request.failureContinuation().accept(
+					new ConnectionException("Cancelled"));
+			}
+		}
+
+		/**
+		 * Answer the request with its simulated response, unless it has
+		 * already been answered.
+		 */
+		public void respond ()
+		{
+			if (answered.compareAndSet(false, true))
+			{
+				request.removeCanceller(canceller);
+				TestClient.this.respond(request);
+			}
+		}
+
+		/**
+		 * Answer the request with the provided failure, unless it has already
+		 * been answered.
+		 *
+		 * @param failure
+		 *        The {@link ApplicationException} to fail with.
+		 */
+		public void fail (final ApplicationException failure)
+		{
+			if (answered.compareAndSet(false, true))
+			{
+				request.removeCanceller(canceller);
+				request.failureContinuation().accept(failure);
+			}
+		}
+
+		/**
+		 * Construct a {@link PendingResponse}.
+		 *
+		 * @param request
+		 *        The held {@link APIRequest}.
+		 */
+		PendingResponse (final APIRequest<?> request)
+		{
+			this.request = request;
+			request.addCanceller(canceller);
+		}
+	}
+
 	@Override
 	public <Response extends APIResponse> void processRequest (
 		final APIRequest<Response> request)
+	{
+		requestsProcessed.incrementAndGet();
+		if (deferResponses)
+		{
+			pending.add(new PendingResponse(request));
+			return;
+		}
+		final ApplicationException failure = failures.poll();
+		if (failure != null)
+		{
+			request.failureContinuation().accept(failure);
+			return;
+		}
+		respond(request);
+	}
+
+	/**
+	 * Answer the provided {@link APIRequest} with its simulated response.
+	 *
+	 * @param request
+	 *        The {@code APIRequest} to answer.
+	 */
+	private void respond (final APIRequest<?> request)
 	{
 		switch (request.catalogue())
 		{
@@ -302,7 +502,7 @@ implements Client
 	 *        The simulated {@linkplain B2File files} contained in the {@link
 	 *        B2Bucket}s in {@link #buckets}.
 	 */
-	TestClient (
+	public TestClient (
 		final String expectedApiUrl,
 		final String expectedDownloadUrl,
 		final List<B2Bucket> bucketList,
@@ -322,5 +522,5 @@ implements Client
 	/**
 	 * Construct an empty {@link TestClient}.
 	 */
-	TestClient () { }
+	public TestClient () { }
 }
@@ -0,0 +1,115 @@
+/*
+ * AdaptiveConcurrencyLimiterTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.api.b2api.B2ListBucketsRequest;
+import org.availlang.raa.api.b2api.TestClient;
+import org.availlang.raa.client.AdaptiveConcurrencyLimiter.EndpointLimit;
+import org.availlang.raa.exceptions.DeadlineException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code AdaptiveConcurrencyLimiterTest} is a set of JUnit tests for the
+ * {@link AdaptiveConcurrencyLimiter}, which sends its requests through a
+ * {@link TestClient} that holds them until the test answers them.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class AdaptiveConcurrencyLimiterTest
+{
+	/**
+	 * The {@link TestClient} that answers the requests.
+	 */
+	private final TestClient testClient = new TestClient();
+
+	/**
+	 * The {@link AdaptiveConcurrencyLimiter} under test, which allows a
+	 * single request in flight.
+	 */
+	private final AdaptiveConcurrencyLimiter limiter =
+		new AdaptiveConcurrencyLimiter(testClient, 1, 1, 1);
+
+	@Test
+	@DisplayName("Requests beyond the limit wait for a slot")
+	void waiting () throws InterruptedException
+	{
+		testClient.deferResponses = true;
+		final EndpointLimit endpoint =
+			limiter.endpoint(APICatalogue.B2_LIST_BUCKETS);
+		limiter.processRequest(testClient.listBucketsRequest());
+		limiter.processRequest(testClient.listBucketsRequest());
+		assertEquals(1, testClient.pending.size());
+		assertEquals(1, endpoint.inFlight());
+		assertEquals(1, endpoint.waiting());
+		testClient.pending.get(0).respond();
+		TestClient.await(() -> testClient.pending.size() == 2);
+		assertEquals(1, endpoint.inFlight());
+		assertEquals(0, endpoint.waiting());
+		testClient.pending.get(1).respond();
+		assertEquals(2, testClient.responses.size());
+		assertEquals(0, endpoint.inFlight());
+		assertEquals(2, endpoint.completed());
+	}
+
+	@Test
+	@DisplayName("A request that expires while waiting is never sent")
+	void expiredWhileWaiting () throws InterruptedException
+	{
+		testClient.deferResponses = true;
+		final EndpointLimit endpoint =
+			limiter.endpoint(APICatalogue.B2_LIST_BUCKETS);
+		limiter.processRequest(testClient.listBucketsRequest());
+		final B2ListBucketsRequest expiring = testClient.listBucketsRequest();
+		expiring.setTimeout(1);
+		limiter.processRequest(expiring);
+		limiter.processRequest(testClient.listBucketsRequest());
+		assertEquals(2, endpoint.waiting());
+		Thread.sleep(5);
+		testClient.pending.get(0).respond();
+		assertEquals(1, testClient.failed.size());
+		assertTrue(testClient.failed.get(0) instanceof DeadlineException);
+		// The expired request took no slot; the one behind it did.
+		TestClient.await(() -> testClient.pending.size() == 2);
+		assertNotSame(expiring, testClient.pending.get(1).request);
+		assertEquals(1, endpoint.inFlight());
+		assertEquals(0, endpoint.waiting());
+		testClient.pending.get(1).respond();
+		assertEquals(2, testClient.responses.size());
+		assertEquals(0, endpoint.inFlight());
+		assertEquals(2, endpoint.completed());
+		assertEquals(0, endpoint.failed());
+	}
+}
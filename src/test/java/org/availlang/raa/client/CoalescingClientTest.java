@@ -0,0 +1,244 @@
+/*
+ * CoalescingClientTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client;
+import org.availlang.raa.B2Bucket;
+import org.availlang.raa.B2File;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.api.b2api.B2BucketListFileNamesRequest;
+import org.availlang.raa.api.b2api.B2DownloadFileByIdRequest;
+import org.availlang.raa.api.b2api.B2ListBucketsRequest;
+import org.availlang.raa.api.b2api.B2ListBucketsResponse;
+import org.availlang.raa.api.b2api.TestClient;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.exceptions.ConnectionException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code CoalescingClientTest} is a set of JUnit tests for the {@link
+ * CoalescingClient}, which sends its requests through a {@link TestClient}.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class CoalescingClientTest
+{
+	/**
+	 * The simulated {@link B2Bucket}s.
+	 */
+	private final B2Bucket b1 = new B2Bucket("b1", "bucket-1");
+
+	/**
+	 * The simulated {@link B2Bucket}s.
+	 */
+	private final B2Bucket b2 = new B2Bucket("b2", "bucket-2");
+
+	/**
+	 * The {@link TestClient} that answers the requests.
+	 */
+	private final TestClient testClient;
+
+	/**
+	 * The {@link CoalescingClient} under test.
+	 */
+	private final CoalescingClient client;
+
+	@Test
+	@DisplayName("Identical requests in flight together share one call")
+	void fanOut ()
+	{
+		testClient.deferResponses = true;
+		client.processRequest(testClient.listBucketsRequest());
+		client.processRequest(testClient.listBucketsRequest());
+		client.processRequest(testClient.listBucketsRequest());
+		assertEquals(1, testClient.pending.size());
+		assertEquals(2, client.coalesced(APICatalogue.B2_LIST_BUCKETS));
+		testClient.pending.get(0).respond();
+		assertEquals(3, testClient.responses.size());
+		assertTrue(testClient.failed.isEmpty());
+		// Each request receives a response of its own.
+		final List<B2ListBucketsResponse> responses = testClient.responses;
+		assertNotSame(responses.get(0), responses.get(1));
+		assertNotSame(responses.get(1), responses.get(2));
+		// Once the call has completed, the next request makes its own.
+		client.processRequest(testClient.listBucketsRequest());
+		assertEquals(2, testClient.pending.size());
+		assertEquals(2, client.coalesced(APICatalogue.B2_LIST_BUCKETS));
+	}
+
+	@Test
+	@DisplayName("A shared call's failure reaches every request")
+	void failureFanOut ()
+	{
+		testClient.deferResponses = true;
+		client.processRequest(testClient.listBucketsRequest());
+		client.processRequest(testClient.listBucketsRequest());
+		final ApplicationException reset = new ConnectionException("reset");
+		testClient.pending.get(0).fail(reset);
+		assertEquals(Arrays.asList(reset, reset), testClient.failed);
+		assertTrue(testClient.responses.isEmpty());
+	}
+
+	@Test
+	@DisplayName("Only identical requests share a call")
+	void distinctRequests ()
+	{
+		testClient.deferResponses = true;
+		final List<Object> outcomes = new CopyOnWriteArrayList<>();
+		client.processRequest(new B2BucketListFileNamesRequest(
+			b1, outcomes::add, outcomes::add));
+		client.processRequest(new B2BucketListFileNamesRequest(
+			b1, outcomes::add, outcomes::add));
+		client.processRequest(new B2BucketListFileNamesRequest(
+			b2, outcomes::add, outcomes::add));
+		// The list buckets request is keyed by its body cache key, so
+		// requests for different accounts are distinct.
+		final B2ListBucketsRequest other = testClient.listBucketsRequest();
+		other.setAccountId("other");
+		client.processRequest(testClient.listBucketsRequest());
+		client.processRequest(other);
+		assertEquals(4, testClient.pending.size());
+		assertEquals(1, client.coalesced(APICatalogue.B2_LIST_FILE_NAMES));
+		assertEquals(0, client.coalesced(APICatalogue.B2_LIST_BUCKETS));
+		new ArrayList<>(testClient.pending)
+			.forEach(TestClient.PendingResponse::respond);
+		assertEquals(3, outcomes.size());
+		assertEquals(2, testClient.responses.size());
+		// Operations that are not coalescable are always sent.
+		final B2File file = new B2File("f1b1", "f1b1");
+		client.processRequest(new B2DownloadFileByIdRequest(
+			file, "out", r -> {}, testClient.failed::add));
+		client.processRequest(new B2DownloadFileByIdRequest(
+			file, "out", r -> {}, testClient.failed::add));
+		assertEquals(6, testClient.pending.size());
+	}
+
+	@Test
+	@DisplayName("A request sent again while in flight makes its own call")
+	void resentInFlight ()
+	{
+		testClient.deferResponses = true;
+		final B2ListBucketsRequest request = testClient.listBucketsRequest();
+		client.processRequest(request);
+		client.processRequest(request);
+		assertEquals(2, testClient.pending.size());
+		assertEquals(0, client.coalesced(APICatalogue.B2_LIST_BUCKETS));
+		testClient.pending.get(0).respond();
+		testClient.pending.get(1).respond();
+		assertEquals(2, testClient.responses.size());
+	}
+
+	@Test
+	@DisplayName("Requests racing a landing flight each get one outcome")
+	void landingRace () throws InterruptedException
+	{
+		// The test client answers at once, so flights land while other
+		// threads are joining them.
+		final int threads = 8;
+		final int perThread = 2_000;
+		final AtomicInteger outcomes = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final List<Throwable> errors = new CopyOnWriteArrayList<>();
+		for (int t = 0; t < threads; t++)
+		{
+			new Thread(() ->
+			{
+				try
+				{
+					start.await();
+					for (int i = 0; i < perThread; i++)
+					{
+						final int[] seen = new int[1];
+						client.processRequest(new B2ListBucketsRequest(
+							r ->
+							{
+								seen[0]++;
+								outcomes.incrementAndGet();
+							},
+							e -> errors.add(e)));
+						// The outcome arrives before the call returns, as
+						// either the leader's or a follower's.
+						if (seen[0] > 1)
+						{
+							errors.add(new AssertionError("two outcomes"));
+						}
+					}
+				}
+				catch (final Throwable e)
+				{
+					errors.add(e);
+				}
+				finally
+				{
+					done.countDown();
+				}
+			}).start();
+		}
+		start.countDown();
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		assertEquals(Collections.emptyList(), errors);
+		// A follower whose flight has not yet landed when its thread moves
+		// on completes as soon as it does; wait for any stragglers.
+		TestClient.await(() -> outcomes.get() == threads * perThread);
+		assertEquals(
+			threads * perThread,
+			testClient.requestsProcessed.get()
+				+ client.coalesced(APICatalogue.B2_LIST_BUCKETS));
+	}
+
+	/**
+	 * Construct a {@link CoalescingClientTest}.
+	 */
+	CoalescingClientTest ()
+	{
+		final Map<String, List<B2File>> bucketMap = new HashMap<>();
+		bucketMap.put(b1.bucketName, Collections.emptyList());
+		bucketMap.put(b2.bucketName, Collections.emptyList());
+		testClient = new TestClient(
+			"", "", Arrays.asList(b1, b2), bucketMap);
+		client = new CoalescingClient(testClient);
+	}
+}
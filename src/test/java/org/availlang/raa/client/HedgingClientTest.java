@@ -0,0 +1,261 @@
+/*
+ * HedgingClientTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.api.b2api.TestClient;
+import org.availlang.raa.api.b2api.TestClient.PendingResponse;
+import org.availlang.raa.client.AdaptiveConcurrencyLimiter.EndpointLimit;
+import org.availlang.raa.client.HedgingClient.HedgeStatistics;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.exceptions.ConnectionException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code HedgingClientTest} is a set of JUnit tests for the {@link
+ * HedgingClient}, which sends its requests through a {@link TestClient} that
+ * holds them until the test answers them.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class HedgingClientTest
+{
+	/**
+	 * The number of latencies that must be seen before a request is hedged.
+	 */
+	private static final int MINIMUM_SAMPLES = 3;
+
+	/**
+	 * The {@link TestClient} that answers the requests.
+	 */
+	private final TestClient testClient = new TestClient();
+
+	/**
+	 * Send {@link #MINIMUM_SAMPLES} requests that are answered at once, so
+	 * that the provided {@link HedgingClient} hedges after about a
+	 * millisecond, then hold the answers to any further requests.
+	 *
+	 * @param hedging
+	 *        The {@code HedgingClient}.
+	 */
+	private void warmUp (final HedgingClient hedging)
+	{
+		for (int i = 0; i < MINIMUM_SAMPLES; i++)
+		{
+			hedging.processRequest(testClient.listBucketsRequest());
+		}
+		assertEquals(MINIMUM_SAMPLES, testClient.responses.size());
+		testClient.responses.clear();
+		testClient.deferResponses = true;
+	}
+
+	/**
+	 * Send a request through the provided {@link HedgingClient} and wait for
+	 * its hedge to be sent.
+	 *
+	 * @param hedging
+	 *        The {@code HedgingClient}.
+	 * @throws InterruptedException
+	 *         If interrupted while waiting.
+	 */
+	private void sendHedged (final HedgingClient hedging)
+		throws InterruptedException
+	{
+		hedging.processRequest(testClient.listBucketsRequest());
+		TestClient.await(() -> testClient.pending.size() == 2);
+		assertSame(
+			testClient.pending.get(0).request,
+			testClient.pending.get(1).request);
+	}
+
+	@Test
+	@DisplayName("No request is hedged before enough latencies are seen")
+	void minimumSamples () throws InterruptedException
+	{
+		final HedgingClient hedging =
+			new HedgingClient(testClient, 50, MINIMUM_SAMPLES);
+		for (int i = 0; i < MINIMUM_SAMPLES - 1; i++)
+		{
+			hedging.processRequest(testClient.listBucketsRequest());
+		}
+		testClient.deferResponses = true;
+		hedging.processRequest(testClient.listBucketsRequest());
+		Thread.sleep(100);
+		assertEquals(1, testClient.pending.size());
+		final HedgeStatistics statistics =
+			hedging.statistics(APICatalogue.B2_LIST_BUCKETS);
+		assertEquals(0, statistics.hedges());
+		assertEquals(MINIMUM_SAMPLES, statistics.requests());
+		testClient.pending.get(0).respond();
+		assertEquals(MINIMUM_SAMPLES, testClient.responses.size());
+	}
+
+	@Test
+	@DisplayName("A slow request is hedged once and the hedge's answer wins")
+	void hedgeWins () throws InterruptedException
+	{
+		final HedgingClient hedging =
+			new HedgingClient(testClient, 50, MINIMUM_SAMPLES);
+		warmUp(hedging);
+		sendHedged(hedging);
+		// However long the round lasts, it is hedged only once.
+		Thread.sleep(100);
+		assertEquals(2, testClient.pending.size());
+		final PendingResponse original = testClient.pending.get(0);
+		final PendingResponse hedge = testClient.pending.get(1);
+		hedge.respond();
+		assertEquals(1, testClient.responses.size());
+		// The original was cancelled, and its failure suppressed.
+		assertTrue(original.cancelled);
+		assertFalse(hedge.cancelled);
+		assertTrue(testClient.failed.isEmpty());
+		final HedgeStatistics statistics =
+			hedging.statistics(APICatalogue.B2_LIST_BUCKETS);
+		assertEquals(MINIMUM_SAMPLES + 1, statistics.requests());
+		assertEquals(1, statistics.hedges());
+		// Non-hedgeable operations are never counted.
+		assertEquals(
+			0,
+			hedging.statistics(APICatalogue.B2_DOWNLOAD_FILE_BY_ID)
+				.requests());
+	}
+
+	@Test
+	@DisplayName("The original's answer wins and the hedge is cancelled")
+	void originalWins () throws InterruptedException
+	{
+		final HedgingClient hedging =
+			new HedgingClient(testClient, 50, MINIMUM_SAMPLES);
+		warmUp(hedging);
+		sendHedged(hedging);
+		final PendingResponse original = testClient.pending.get(0);
+		final PendingResponse hedge = testClient.pending.get(1);
+		original.respond();
+		assertTrue(hedge.cancelled);
+		assertEquals(1, testClient.responses.size());
+		assertTrue(testClient.failed.isEmpty());
+		// A late answer from the loser is not passed on either.
+		hedge.respond();
+		assertEquals(1, testClient.responses.size());
+	}
+
+	@Test
+	@DisplayName("A failure is held while the other attempt may succeed")
+	void failureHeld () throws InterruptedException
+	{
+		final HedgingClient hedging =
+			new HedgingClient(testClient, 50, MINIMUM_SAMPLES);
+		warmUp(hedging);
+		sendHedged(hedging);
+		final PendingResponse original = testClient.pending.get(0);
+		final PendingResponse hedge = testClient.pending.get(1);
+		hedge.fail(new ConnectionException("reset"));
+		assertFalse(original.cancelled);
+		assertTrue(testClient.failed.isEmpty());
+		original.respond();
+		assertEquals(1, testClient.responses.size());
+		assertTrue(testClient.failed.isEmpty());
+	}
+
+	@Test
+	@DisplayName("A failure is passed on once every attempt has failed")
+	void everyAttemptFails () throws InterruptedException
+	{
+		final HedgingClient hedging =
+			new HedgingClient(testClient, 50, MINIMUM_SAMPLES);
+		warmUp(hedging);
+		sendHedged(hedging);
+		final ApplicationException reset = new ConnectionException("reset");
+		final ApplicationException refused =
+			new ConnectionException("refused");
+		testClient.pending.get(0).fail(reset);
+		assertTrue(testClient.failed.isEmpty());
+		testClient.pending.get(1).fail(refused);
+		assertEquals(1, testClient.failed.size());
+		assertSame(refused, testClient.failed.get(0));
+		assertTrue(testClient.responses.isEmpty());
+	}
+
+	@Test
+	@DisplayName("A cancelled attempt's late failure is not the next round's")
+	void staleCancellation () throws InterruptedException
+	{
+		final HedgingClient hedging =
+			new HedgingClient(testClient, 50, MINIMUM_SAMPLES);
+		warmUp(hedging);
+		testClient.deferCancellations = true;
+		sendHedged(hedging);
+		final PendingResponse original = testClient.pending.get(0);
+		testClient.pending.get(1).respond();
+		assertTrue(original.cancelled);
+		assertEquals(1, testClient.responses.size());
+		// The request is sent again before the cancelled original reports.
+		hedging.processRequest(original.request);
+		TestClient.await(() -> testClient.pending.size() >= 3);
+		final PendingResponse resent = testClient.pending.get(2);
+		original.fail(new ConnectionException("Cancelled"));
+		assertFalse(resent.cancelled);
+		assertTrue(testClient.failed.isEmpty());
+		resent.respond();
+		assertEquals(2, testClient.responses.size());
+		assertTrue(testClient.failed.isEmpty());
+	}
+
+	@Test
+	@DisplayName("Cancelled hedges are not counted against the endpoint")
+	void limiterIgnoresCancelled () throws InterruptedException
+	{
+		final AdaptiveConcurrencyLimiter limiter =
+			new AdaptiveConcurrencyLimiter(testClient);
+		final HedgingClient hedging =
+			new HedgingClient(limiter, 50, MINIMUM_SAMPLES);
+		warmUp(hedging);
+		sendHedged(hedging);
+		final EndpointLimit endpoint =
+			limiter.endpoint(APICatalogue.B2_LIST_BUCKETS);
+		assertEquals(2, endpoint.inFlight());
+		testClient.pending.get(1).respond();
+		assertTrue(testClient.pending.get(0).cancelled);
+		assertEquals(0, endpoint.inFlight());
+		assertEquals(MINIMUM_SAMPLES + 1, endpoint.completed());
+		assertEquals(0, endpoint.failed());
+		assertEquals(1, endpoint.cancelled());
+		// A later request is accounted for as usual.
+		testClient.deferResponses = false;
+		hedging.processRequest(testClient.listBucketsRequest());
+		assertEquals(MINIMUM_SAMPLES + 2, endpoint.completed());
+		assertEquals(1, endpoint.cancelled());
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * RetryPolicyTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client;
+import org.availlang.raa.ApplicationRuntime.ExitCode;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.exceptions.ConnectionException;
+import org.availlang.raa.exceptions.DownloadException;
+import org.availlang.raa.exceptions.ResponseException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code RetryPolicyTest} is a set of JUnit tests for the failure
+ * classification and backoff of a {@link RetryPolicy}.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class RetryPolicyTest
+{
+	/**
+	 * Answer a {@link ResponseException} with the provided response code.
+	 *
+	 * @param code
+	 *        The HTTP response code.
+	 * @param retryAfter
+	 *        The value of the {@code Retry-After} header, or {@code null}.
+	 * @return A {@code ResponseException}.
+	 */
+	private static ResponseException response (
+		final int code,
+		final String retryAfter)
+	{
+		return new ResponseException(code, "HTTP " + code, "", retryAfter);
+	}
+
+	@Test
+	@DisplayName("Transient failures are retryable")
+	void retryable ()
+	{
+		final RetryPolicy policy = RetryPolicy.DEFAULT;
+		assertTrue(policy.isRetryable(new ConnectionException("reset")));
+		for (final int code : new int[] {408, 429, 500, 502, 503, 504})
+		{
+			assertTrue(
+				policy.isRetryable(response(code, null)), "HTTP " + code);
+		}
+		assertTrue(policy.isRetryable(
+			new DownloadException("reset", new SocketException("reset"))));
+		assertTrue(policy.isRetryable(
+			new DownloadException(
+				"slow", new SocketTimeoutException("timed out"))));
+		// The transient cause may be wrapped.
+		assertTrue(policy.isRetryable(
+			new DownloadException(
+				"short",
+				new IOException("wrapped", new EOFException("eof")))));
+	}
+
+	@Test
+	@DisplayName("Permanent failures are not retryable")
+	void notRetryable ()
+	{
+		final RetryPolicy policy = RetryPolicy.DEFAULT;
+		for (final int code : new int[] {400, 401, 403, 404, 416})
+		{
+			assertFalse(
+				policy.isRetryable(response(code, null)), "HTTP " + code);
+		}
+		assertFalse(policy.isRetryable(
+			new DownloadException("disk full", new IOException("no space"))));
+		assertFalse(policy.isRetryable(new DownloadException("bad digest")));
+		assertFalse(policy.isRetryable(
+			new ApplicationException(
+				ExitCode.UNEXPECTED_EXCEPTION, "Unexpected Error")));
+	}
+
+	@Test
+	@DisplayName("Backoff grows from the initial delay to the maximum")
+	void backoff ()
+	{
+		final RetryPolicy policy = new RetryPolicy(10, 100, 1_000);
+		final ApplicationException failure = new ConnectionException("reset");
+		for (int i = 0; i < 200; i++)
+		{
+			final long first = policy.delayMillis(1, failure);
+			assertTrue(first >= 0 && first <= 100, "first retry: " + first);
+			final long third = policy.delayMillis(3, failure);
+			assertTrue(third >= 0 && third <= 400, "third retry: " + third);
+			final long late = policy.delayMillis(9, failure);
+			assertTrue(late >= 0 && late <= 1_000, "ninth retry: " + late);
+			final long huge = policy.delayMillis(Integer.MAX_VALUE, failure);
+			assertTrue(huge >= 0 && huge <= 1_000, "last retry: " + huge);
+		}
+		// The delay is jittered, so not every retry waits the same time.
+		long minimum = Long.MAX_VALUE;
+		long maximum = Long.MIN_VALUE;
+		for (int i = 0; i < 200; i++)
+		{
+			final long delay = policy.delayMillis(4, failure);
+			minimum = Math.min(minimum, delay);
+			maximum = Math.max(maximum, delay);
+		}
+		assertTrue(minimum < maximum);
+		assertEquals(0, RetryPolicy.NEVER.delayMillis(1, failure));
+	}
+
+	@Test
+	@DisplayName("The server's Retry-After is a lower bound on the delay")
+	void retryAfter ()
+	{
+		final RetryPolicy policy = new RetryPolicy(5, 100, 1_000);
+		for (int i = 0; i < 100; i++)
+		{
+			final long delay = policy.delayMillis(1, response(503, "7"));
+			assertTrue(delay >= 7_000, "delay: " + delay);
+			assertTrue(policy.delayMillis(1, response(429, "0")) <= 100);
+		}
+		// Without the header, only the jittered backoff applies.
+		assertTrue(policy.delayMillis(1, response(503, null)) <= 100);
+	}
+
+	@Test
+	@DisplayName("Invalid policies are refused")
+	void invalid ()
+	{
+		assertThrows(
+			IllegalArgumentException.class, () -> new RetryPolicy(0, 0, 0));
+		assertThrows(
+			IllegalArgumentException.class, () -> new RetryPolicy(3, -1, 0));
+		assertThrows(
+			IllegalArgumentException.class,
+			() -> new RetryPolicy(3, 1_000, 100));
+	}
+}
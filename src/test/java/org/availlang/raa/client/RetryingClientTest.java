@@ -0,0 +1,189 @@
+/*
+ * RetryingClientTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client;
+import org.availlang.raa.api.APICatalogue;
+import org.availlang.raa.api.b2api.B2ListBucketsRequest;
+import org.availlang.raa.api.b2api.B2ListBucketsResponse;
+import org.availlang.raa.api.b2api.TestClient;
+import org.availlang.raa.client.RetryingClient.RetryStatistics;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.availlang.raa.exceptions.ConnectionException;
+import org.availlang.raa.exceptions.ResponseException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code RetryingClientTest} is a set of JUnit tests for the {@link
+ * RetryingClient}, which sends its requests through a {@link TestClient}
+ * scripted to fail.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class RetryingClientTest
+{
+	/**
+	 * The {@link TestClient} the {@link #client} sends through.
+	 */
+	private final TestClient testClient = new TestClient();
+
+	/**
+	 * The {@link RetryingClient} under test, which retries immediately.
+	 */
+	private final RetryingClient client =
+		new RetryingClient(testClient, new RetryPolicy(3, 0, 0));
+
+	/**
+	 * The {@link B2ListBucketsResponse} of the {@link #request}, once it has
+	 * succeeded.
+	 */
+	private final AtomicReference<B2ListBucketsResponse> response =
+		new AtomicReference<>();
+
+	/**
+	 * The {@link ApplicationException} the {@link #request} failed with, once
+	 * it has failed.
+	 */
+	private final AtomicReference<ApplicationException> failure =
+		new AtomicReference<>();
+
+	/**
+	 * Counted down once the {@link #request} has succeeded or failed.
+	 */
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	/**
+	 * The {@link B2ListBucketsRequest} sent.
+	 */
+	private final B2ListBucketsRequest request = new B2ListBucketsRequest(
+		r ->
+		{
+			response.set(r);
+			done.countDown();
+		},
+		e ->
+		{
+			failure.set(e);
+			done.countDown();
+		});
+
+	/**
+	 * Send the {@link #request} and wait for its outcome.
+	 *
+	 * @throws InterruptedException
+	 *         If interrupted while waiting.
+	 */
+	private void send () throws InterruptedException
+	{
+		client.processRequest(request);
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Answer the {@link RetryStatistics} of the {@link #request}.
+	 *
+	 * @return A {@code RetryStatistics}.
+	 */
+	private RetryStatistics statistics ()
+	{
+		return client.statistics(APICatalogue.B2_LIST_BUCKETS);
+	}
+
+	@Test
+	@DisplayName("Transient failures are retried until the request succeeds")
+	void recovers () throws InterruptedException
+	{
+		testClient.failures.add(new ConnectionException("reset"));
+		testClient.failures.add(
+			new ResponseException(503, "Service Unavailable", ""));
+		send();
+		assertNotNull(response.get());
+		assertNull(failure.get());
+		assertEquals(3, testClient.requestsProcessed.get());
+		assertEquals(2, statistics().retries());
+		assertEquals(1, statistics().recovered());
+		assertEquals(0, statistics().exhausted());
+	}
+
+	@Test
+	@DisplayName("The last failure is reported once the attempts run out")
+	void attemptCap () throws InterruptedException
+	{
+		final ApplicationException last = new ConnectionException("third");
+		testClient.failures.add(new ConnectionException("first"));
+		testClient.failures.add(new ConnectionException("second"));
+		testClient.failures.add(last);
+		testClient.failures.add(new ConnectionException("never sent"));
+		send();
+		assertNull(response.get());
+		assertSame(last, failure.get());
+		assertEquals(3, testClient.requestsProcessed.get());
+		assertEquals(2, statistics().retries());
+		assertEquals(0, statistics().recovered());
+		assertEquals(1, statistics().exhausted());
+	}
+
+	@Test
+	@DisplayName("A failure that is not retryable is reported at once")
+	void notRetryable () throws InterruptedException
+	{
+		final ApplicationException badRequest =
+			new ResponseException(400, "Bad Request", "");
+		testClient.failures.add(badRequest);
+		send();
+		assertSame(badRequest, failure.get());
+		assertEquals(1, testClient.requestsProcessed.get());
+		assertEquals(0, statistics().retries());
+		assertEquals(0, statistics().exhausted());
+	}
+
+	@Test
+	@DisplayName("A request past its deadline is not retried")
+	void expired () throws InterruptedException
+	{
+		final ApplicationException reset = new ConnectionException("reset");
+		testClient.failures.add(reset);
+		request.setTimeout(1);
+		Thread.sleep(5);
+		assertTrue(request.hasExpired());
+		send();
+		assertSame(reset, failure.get());
+		assertEquals(1, testClient.requestsProcessed.get());
+		assertEquals(0, statistics().retries());
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * ContentDigestTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import org.availlang.raa.exceptions.DownloadException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code ContentDigestTest} is a set of JUnit tests for the SHA-1
+ * verification of downloaded files by {@link ContentDigest}.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class ContentDigestTest
+{
+	/**
+	 * The length of the test file.
+	 */
+	private static final int LENGTH = 200_000;
+
+	/**
+	 * The contents of the test file.
+	 */
+	private final byte[] contents = new byte[LENGTH];
+
+	/**
+	 * The lowercase hexadecimal SHA-1 of the {@link #contents}.
+	 */
+	private String sha1;
+
+	/**
+	 * The test file.
+	 */
+	private Path file;
+
+	/**
+	 * The {@link FileChannel} open on the {@link #file}.
+	 */
+	private FileChannel channel;
+
+	@BeforeEach
+	void createFile () throws IOException
+	{
+		for (int i = 0; i < LENGTH; i++)
+		{
+			contents[i] = (byte) (i * 31 + (i >> 8));
+		}
+		sha1 = ContentDigest.hex(ContentDigest.newSha1().digest(contents));
+		file = Files.createTempFile("digest", ".part");
+		Files.write(file, contents);
+		channel = FileChannel.open(
+			file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Write the provided range of the {@link #contents} through the provided
+	 * {@link ContentDigest}, the way a download connection does.
+	 *
+	 * @param digest
+	 *        The {@code ContentDigest}.
+	 * @param range
+	 *        The {@link ByteRange} to write.
+	 * @return {@code true} if the range was digested inline; {@code false}
+	 *         otherwise.
+	 * @throws IOException
+	 *         If a range could not be read back.
+	 */
+	private boolean write (final ContentDigest digest, final ByteRange range)
+		throws IOException
+	{
+		final MessageDigest inline = digest.claimInline(range);
+		if (inline != null)
+		{
+			inline.update(ByteBuffer.wrap(
+				contents, (int) range.first, (int) range.count));
+		}
+		digest.completed(range, inline != null, channel);
+		return inline != null;
+	}
+
+	@Test
+	@DisplayName("The expected SHA-1 is read from the response headers")
+	void expectedSha1 ()
+	{
+		final Map<String, String> headers = new HashMap<>();
+		assertNull(ContentDigest.expectedSha1(headers::get));
+		headers.put(ContentDigest.CONTENT_SHA1, sha1.toUpperCase());
+		assertEquals(sha1, ContentDigest.expectedSha1(headers::get));
+		headers.put(ContentDigest.CONTENT_SHA1, "unverified:" + sha1);
+		assertEquals(sha1, ContentDigest.expectedSha1(headers::get));
+		headers.put(ContentDigest.CONTENT_SHA1, "none");
+		assertNull(ContentDigest.expectedSha1(headers::get));
+		headers.put(ContentDigest.LARGE_FILE_SHA1, sha1);
+		assertEquals(sha1, ContentDigest.expectedSha1(headers::get));
+		headers.put(ContentDigest.LARGE_FILE_SHA1, "not a digest");
+		assertNull(ContentDigest.expectedSha1(headers::get));
+	}
+
+	@Test
+	@DisplayName("Ranges completed out of order are read back in order")
+	void outOfOrder () throws IOException, DownloadException
+	{
+		final ContentDigest digest = new ContentDigest(sha1, LENGTH);
+		assertFalse(write(digest, new ByteRange(150_000, 50_000)));
+		assertTrue(write(digest, new ByteRange(0, 50_000)));
+		assertFalse(write(digest, new ByteRange(100_000, 50_000)));
+		assertTrue(write(digest, new ByteRange(50_000, 50_000)));
+		digest.verify("file", channel);
+	}
+
+	@Test
+	@DisplayName("A resumed part file is read back before new ranges")
+	void resumed () throws IOException, DownloadException
+	{
+		final ContentDigest digest = new ContentDigest(sha1, LENGTH);
+		digest.alreadyWritten(Arrays.asList(
+			new ByteRange(0, 70_000), new ByteRange(120_000, 30_000)));
+		// Nothing has been digested yet, so the gap must be read back; once
+		// it is, the resumed ranges either side of it are read back too, and
+		// the last range continues the digested prefix.
+		assertFalse(write(digest, new ByteRange(70_000, 50_000)));
+		assertTrue(write(digest, new ByteRange(150_000, 50_000)));
+		digest.verify("file", channel);
+	}
+
+	@Test
+	@DisplayName("A resumed part file is digested after a new first range")
+	void resumedAfterPrefix () throws IOException, DownloadException
+	{
+		final ContentDigest digest = new ContentDigest(sha1, LENGTH);
+		digest.alreadyWritten(Arrays.asList(new ByteRange(40_000, 160_000)));
+		assertTrue(write(digest, new ByteRange(0, 40_000)));
+		digest.verify("file", channel);
+	}
+
+	@Test
+	@DisplayName("A resumed part file with corrupt bytes fails verification")
+	void resumedMismatch () throws IOException
+	{
+		channel.write(ByteBuffer.wrap(new byte[] {0x55}), 1_000);
+		final ContentDigest digest = new ContentDigest(sha1, LENGTH);
+		digest.alreadyWritten(Arrays.asList(new ByteRange(0, 100_000)));
+		write(digest, new ByteRange(100_000, 100_000));
+		final DownloadException e = assertThrows(
+			DownloadException.class, () -> digest.verify("file", channel));
+		assertTrue(e.getMessage().contains("expected " + sha1));
+	}
+
+	@Test
+	@DisplayName("A file with a missing range fails verification")
+	void incomplete () throws IOException
+	{
+		final ContentDigest digest = new ContentDigest(sha1, LENGTH);
+		digest.alreadyWritten(Arrays.asList(new ByteRange(0, 100_000)));
+		write(digest, new ByteRange(150_000, 50_000));
+		final DownloadException e = assertThrows(
+			DownloadException.class, () -> digest.verify("file", channel));
+		assertTrue(e.getMessage().contains("only 100000 of 200000"));
+	}
+
+	@AfterEach
+	void deleteFile () throws IOException
+	{
+		channel.close();
+		Files.delete(file);
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * DownloadJournalTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code DownloadJournalTest} is a set of JUnit tests for resuming a
+ * download from its {@link DownloadJournal}.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class DownloadJournalTest
+{
+	/**
+	 * The directory the test journals are written to.
+	 */
+	private Path directory;
+
+	/**
+	 * The {@link File} being downloaded to.
+	 */
+	private File targetFile;
+
+	@BeforeEach
+	void createDirectory () throws IOException
+	{
+		directory = Files.createTempDirectory("journal");
+		targetFile = directory.resolve("file.txt").toFile();
+		Files.createFile(DownloadJournal.partFile(targetFile).toPath());
+	}
+
+	/**
+	 * Replace the journal of the {@link #targetFile} with the provided lines.
+	 *
+	 * @param contents
+	 *        The raw contents of the journal.
+	 * @throws IOException
+	 *         If the journal could not be written.
+	 */
+	private void writeJournal (final String contents) throws IOException
+	{
+		Files.write(
+			directory.resolve("file.txt.part.journal"),
+			contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	@DisplayName("A recorded journal is resumed with its ranges and SHA-1")
+	void resume () throws IOException
+	{
+		final String sha1 = "0123456789abcdef0123456789abcdef01234567";
+		final DownloadJournal journal =
+			DownloadJournal.create(targetFile, "id", 100, sha1);
+		journal.record(new ByteRange(0, 10));
+		journal.record(new ByteRange(40, 20));
+		journal.close();
+		final DownloadJournal loaded = DownloadJournal.load(targetFile, "id");
+		assertNotNull(loaded);
+		assertEquals(100, loaded.totalLength);
+		assertEquals(sha1, loaded.contentSha1);
+		assertEquals("[0-9, 40-59]", loaded.completedRanges().toString());
+		assertEquals(30, loaded.completedBytes());
+		loaded.delete();
+		assertNull(DownloadJournal.load(targetFile, "id"));
+	}
+
+	@Test
+	@DisplayName("A journal of another file, or without a part file, is unused")
+	void foreign () throws IOException
+	{
+		DownloadJournal.create(targetFile, "id", 100, null).close();
+		assertNull(DownloadJournal.load(targetFile, "other-id"));
+		assertNotNull(DownloadJournal.load(targetFile, "id"));
+		Files.delete(DownloadJournal.partFile(targetFile).toPath());
+		assertNull(DownloadJournal.load(targetFile, "id"));
+	}
+
+	@Test
+	@DisplayName("A journal with a torn or malformed header is unused")
+	void tornHeader () throws IOException
+	{
+		writeJournal("");
+		assertNull(DownloadJournal.load(targetFile, "id"));
+		writeJournal("id");
+		assertNull(DownloadJournal.load(targetFile, "id"));
+		writeJournal("id 1x");
+		assertNull(DownloadJournal.load(targetFile, "id"));
+		writeJournal("id 100 sha1 extra\n0 10\n");
+		assertNull(DownloadJournal.load(targetFile, "id"));
+	}
+
+	@Test
+	@DisplayName("Torn and impossible range lines are ignored")
+	void tornRanges () throws IOException
+	{
+		writeJournal(
+			"id 100\n0 10\n20\n30 -5\n90 20\nx 5\n50 10\n60");
+		final DownloadJournal journal = DownloadJournal.load(targetFile, "id");
+		assertNotNull(journal);
+		assertNull(journal.contentSha1);
+		assertEquals("[0-9, 50-59]", journal.completedRanges().toString());
+		journal.close();
+	}
+
+	@Test
+	@DisplayName("Overlapping and adjacent ranges are merged")
+	void merged () throws IOException
+	{
+		final DownloadJournal journal =
+			DownloadJournal.create(targetFile, "id", 100, null);
+		journal.record(new ByteRange(50, 10));
+		journal.record(new ByteRange(15, 15));
+		journal.record(new ByteRange(10, 10));
+		journal.record(new ByteRange(60, 5));
+		journal.record(new ByteRange(52, 3));
+		assertEquals("[10-29, 50-64]", journal.completedRanges().toString());
+		assertEquals(35, journal.completedBytes());
+		journal.close();
+	}
+
+	@Test
+	@DisplayName("The missing ranges are the gaps, split into segments")
+	void missingRanges () throws IOException
+	{
+		final DownloadJournal journal =
+			DownloadJournal.create(targetFile, "id", 100, null);
+		assertEquals(
+			"[0-39, 40-79, 80-99]", journal.missingRanges(40).toString());
+		journal.record(new ByteRange(10, 20));
+		journal.record(new ByteRange(50, 10));
+		assertEquals(
+			"[0-9, 30-44, 45-49, 60-74, 75-89, 90-99]",
+			journal.missingRanges(15).toString());
+		journal.record(new ByteRange(0, 10));
+		journal.record(new ByteRange(30, 20));
+		journal.record(new ByteRange(60, 40));
+		assertTrue(journal.missingRanges(15).isEmpty());
+		journal.close();
+	}
+
+	@AfterEach
+	void deleteDirectory () throws IOException
+	{
+		try (final Stream<Path> paths = Files.walk(directory))
+		{
+			paths.sorted(Comparator.reverseOrder())
+				.forEach(path -> path.toFile().delete());
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * HTTPClientTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import com.sun.net.httpserver.HttpServer;
+import org.availlang.raa.B2File;
+import org.availlang.raa.api.b2api.B2DownloadFileByIdRequest;
+import org.availlang.raa.api.b2api.B2DownloadFileResponse;
+import org.availlang.raa.exceptions.ApplicationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code HTTPClientTest} is a set of JUnit tests for the download handling
+ * of {@link HTTPClient}, run against a local {@link HttpServer}.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class HTTPClientTest
+{
+	/**
+	 * The local {@link HttpServer} that stands in for the download server.
+	 */
+	private HttpServer server;
+
+	/**
+	 * The directory the test downloads are written to.
+	 */
+	private Path outputDirectory;
+
+	@BeforeEach
+	void startServer () throws IOException
+	{
+		server = HttpServer.create(
+			new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		// Answer the way RFC 7233 requires for an empty file: any range
+		// request is unsatisfiable, and a plain request has no body.
+		server.createContext("/", exchange ->
+		{
+			exchange.getRequestBody().readAllBytes();
+			if (exchange.getRequestHeaders().containsKey("Range"))
+			{
+				exchange.getResponseHeaders().add("Content-Range", "bytes */0");
+				exchange.sendResponseHeaders(416, -1);
+			}
+			else
+			{
+				exchange.sendResponseHeaders(200, -1);
+			}
+			exchange.close();
+		});
+		server.start();
+		outputDirectory = Files.createTempDirectory("download");
+	}
+
+	/**
+	 * Download the file with the provided name from the {@link #server} with
+	 * the provided {@link HTTPClient}.
+	 *
+	 * @param client
+	 *        The {@code HTTPClient} to download with.
+	 * @param fileName
+	 *        The name of the file.
+	 * @param response
+	 *        Set to the {@link B2DownloadFileResponse} on success.
+	 * @param failure
+	 *        Set to the {@link ApplicationException} on failure.
+	 */
+	private void download (
+		final HTTPClient client,
+		final String fileName,
+		final AtomicReference<B2DownloadFileResponse> response,
+		final AtomicReference<ApplicationException> failure)
+	{
+		final B2DownloadFileByIdRequest request =
+			new B2DownloadFileByIdRequest(
+				new B2File(fileName, "id-" + fileName),
+				outputDirectory.toString(),
+				response::set,
+				failure::set);
+		request.setBaseClientLocationIdentifier(
+			"http://" + server.getAddress().getHostString() + ":"
+				+ server.getAddress().getPort());
+		client.processRequest(request);
+	}
+
+	@Test
+	@DisplayName("Download an empty file with a segmented first request")
+	void emptyFileSegmented () throws IOException
+	{
+		final HTTPClient client = new HTTPClient();
+		assertTrue(client.downloadConfiguration().isSegmented());
+		// A stale file of the same name must be truncated.
+		final Path target = outputDirectory.resolve("empty.txt");
+		Files.write(target, "stale".getBytes(StandardCharsets.UTF_8));
+		final AtomicReference<B2DownloadFileResponse> response =
+			new AtomicReference<>();
+		final AtomicReference<ApplicationException> failure =
+			new AtomicReference<>();
+		download(client, "empty.txt", response, failure);
+		assertNull(failure.get());
+		assertNotNull(response.get());
+		assertEquals(0, response.get().contentLength());
+		assertEquals("id-empty.txt", response.get().fileId());
+		assertTrue(Files.exists(target));
+		assertEquals(0, Files.size(target));
+	}
+
+	@Test
+	@DisplayName("Download an empty file that does not yet exist locally")
+	void emptyFileCreated () throws IOException
+	{
+		final HTTPClient client = new HTTPClient();
+		final AtomicReference<B2DownloadFileResponse> response =
+			new AtomicReference<>();
+		final AtomicReference<ApplicationException> failure =
+			new AtomicReference<>();
+		download(client, "new.txt", response, failure);
+		assertNull(failure.get());
+		assertNotNull(response.get());
+		assertEquals(0, Files.size(outputDirectory.resolve("new.txt")));
+	}
+
+	@AfterEach
+	void stopServer () throws IOException
+	{
+		server.stop(0);
+		try (final Stream<Path> paths = Files.walk(outputDirectory))
+		{
+			paths.sorted(Comparator.reverseOrder())
+				.forEach(path -> path.toFile().delete());
+		}
+	}
+}
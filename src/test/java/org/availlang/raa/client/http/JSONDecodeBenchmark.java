@@ -0,0 +1,232 @@
+/*
+ * JSONDecodeBenchmark.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import com.avail.utility.json.JSONObject;
+import com.avail.utility.json.JSONReader;
+import com.avail.utility.json.JSONWriter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A {@code JSONDecodeBenchmark} compares the cost of decoding a large {@code
+ * b2_list_file_names} page with the original copy-then-parse approach against
+ * {@link HTTPClient#readJSONObject(InputStream)}, which parses straight off
+ * the response stream.
+ *
+ * <p>
+ * This is not a unit test; run its {@link #main(String[]) main} method
+ * directly. The reported allocation figures rely on the HotSpot {@code
+ * com.sun.management.ThreadMXBean} extension.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+public class JSONDecodeBenchmark
+{
+	/**
+	 * The number of file entries on the simulated page.
+	 */
+	private static final int FILE_COUNT = 10_000;
+
+	/**
+	 * The number of untimed warm-up iterations for each approach.
+	 */
+	private static final int WARM_UP_ITERATIONS = 20;
+
+	/**
+	 * The number of timed iterations for each approach.
+	 */
+	private static final int ITERATIONS = 50;
+
+	/**
+	 * Answer the UTF-8 encoded body of a simulated {@code b2_list_file_names}
+	 * response.
+	 *
+	 * @return A {@code byte} array.
+	 */
+	private static byte[] page ()
+	{
+		final JSONWriter writer = new JSONWriter();
+		writer.startObject();
+		writer.write("files");
+		writer.startArray();
+		for (int i = 0; i < FILE_COUNT; i++)
+		{
+			writer.startObject();
+			writer.write("accountId");
+			writer.write("a1b2c3d4e5f6");
+			writer.write("action");
+			writer.write("upload");
+			writer.write("contentLength");
+			writer.write(1024L * i);
+			writer.write("contentSha1");
+			writer.write("da39a3ee5e6b4b0d3255bfef95601890afd80709");
+			writer.write("contentType");
+			writer.write("application/octet-stream");
+			writer.write("fileId");
+			writer.write(String.format("4_z27c88f1d182b150646ff0b16_f%08d", i));
+			writer.write("fileName");
+			writer.write(String.format("backups/2018/03/file-%08d.dat", i));
+			writer.write("uploadTimestamp");
+			writer.write(1521000000000L + i);
+			writer.endObject();
+		}
+		writer.endArray();
+		writer.write("nextFileName");
+		writer.writeNull();
+		writer.endObject();
+		return writer.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decode the body the way {@link HTTPClient} originally did: one {@code
+	 * char} at a time into a {@link StringBuilder}, then parsed through a
+	 * {@link StringReader}.
+	 *
+	 * @param stream
+	 *        The response {@link InputStream}.
+	 * @return The decoded {@link JSONObject}.
+	 * @throws IOException
+	 *         If the stream could not be read.
+	 */
+	private static JSONObject copyThenParse (final InputStream stream)
+		throws IOException
+	{
+		final StringBuilder sb = new StringBuilder();
+		try (final InputStreamReader reader =
+			new InputStreamReader(new BufferedInputStream(stream)))
+		{
+			int c = reader.read();
+			while (c != -1)
+			{
+				sb.append((char) c);
+				c = reader.read();
+			}
+		}
+		return (JSONObject) new JSONReader(
+			new StringReader(sb.toString())).read();
+	}
+
+	/**
+	 * A decoding approach under measurement.
+	 */
+	@FunctionalInterface
+	private interface Decoder
+	{
+		/**
+		 * Decode the provided response {@link InputStream}.
+		 *
+		 * @param stream
+		 *        The {@code InputStream}.
+		 * @return The decoded {@link JSONObject}.
+		 * @throws IOException
+		 *         If the stream could not be read.
+		 */
+		JSONObject decode (InputStream stream) throws IOException;
+	}
+
+	/**
+	 * Measure the provided {@link Decoder} and print the median latency and
+	 * mean allocation per page.
+	 *
+	 * @param label
+	 *        The label to print with the results.
+	 * @param body
+	 *        The response body to decode.
+	 * @param decoder
+	 *        The {@code Decoder} to measure.
+	 * @throws IOException
+	 *         If the body could not be decoded.
+	 */
+	private static void measure (
+		final String label,
+		final byte[] body,
+		final Decoder decoder)
+		throws IOException
+	{
+		final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean)
+				ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		for (int i = 0; i < WARM_UP_ITERATIONS; i++)
+		{
+			decoder.decode(new ByteArrayInputStream(body));
+		}
+		final long[] nanos = new long[ITERATIONS];
+		long allocated = 0;
+		for (int i = 0; i < ITERATIONS; i++)
+		{
+			final long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+			final long start = System.nanoTime();
+			decoder.decode(new ByteArrayInputStream(body));
+			nanos[i] = System.nanoTime() - start;
+			allocated +=
+				threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+		}
+		Arrays.sort(nanos);
+		System.out.printf(
+			"%-16s median %7.2f ms/page, p90 %7.2f ms/page, "
+				+ "%8.2f MiB allocated/page%n",
+			label,
+			nanos[ITERATIONS / 2] / 1e6,
+			nanos[ITERATIONS * 9 / 10] / 1e6,
+			allocated / (double) ITERATIONS / (1024 * 1024));
+	}
+
+	/**
+	 * Run the benchmark.
+	 *
+	 * @param args
+	 *        Unused.
+	 * @throws IOException
+	 *         If a page could not be decoded.
+	 */
+	public static void main (final String[] args) throws IOException
+	{
+		final byte[] body = page();
+		System.out.printf(
+			"Decoding a %d-file page (%d KiB)%n",
+			FILE_COUNT,
+			body.length / 1024);
+		measure("copy-then-parse", body, JSONDecodeBenchmark::copyThenParse);
+		measure("streaming", body, HTTPClient::readJSONObject);
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * TokenBucketTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.client.http;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code TokenBucketTest} is a set of JUnit tests for the bandwidth shaping
+ * of {@link TokenBucket}.
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class TokenBucketTest
+{
+	/**
+	 * The number of nanoseconds in a millisecond.
+	 */
+	private static final long MILLIS = 1_000_000L;
+
+	/**
+	 * Answer a {@link System#nanoTime()} far enough after the provided
+	 * {@link TokenBucket} was constructed for it to have filled completely.
+	 *
+	 * @param bucket
+	 *        The {@code TokenBucket}.
+	 * @return A {@code long}.
+	 */
+	private static long filled (final TokenBucket bucket)
+	{
+		final long now = System.nanoTime() + 1_000 * MILLIS;
+		assertEquals(0, bucket.reserve(0, now));
+		return now;
+	}
+
+	@Test
+	@DisplayName("A full bucket allows a quarter second's burst")
+	void burst ()
+	{
+		final TokenBucket bucket = new TokenBucket(() -> 1000, null);
+		final long start = filled(bucket);
+		assertEquals(0, bucket.reserve(250, start));
+		assertEquals(100 * MILLIS, bucket.reserve(100, start));
+	}
+
+	@Test
+	@DisplayName("Each caller waits behind the debt of those before it")
+	void debt ()
+	{
+		final TokenBucket bucket = new TokenBucket(() -> 1000, null);
+		final long start = filled(bucket);
+		assertEquals(250 * MILLIS, bucket.reserve(500, start));
+		assertEquals(750 * MILLIS, bucket.reserve(500, start));
+		// A quarter second later, that much of the debt has been repaid.
+		assertEquals(
+			600 * MILLIS, bucket.reserve(100, start + 250 * MILLIS));
+	}
+
+	@Test
+	@DisplayName("An idle bucket refills only to its burst")
+	void refill ()
+	{
+		final TokenBucket bucket = new TokenBucket(() -> 1000, null);
+		final long start = filled(bucket);
+		assertEquals(500 * MILLIS, bucket.reserve(750, start));
+		assertEquals(0, bucket.reserve(0, start + 10_000 * MILLIS));
+		assertEquals(0, bucket.reserve(250, start + 10_000 * MILLIS));
+		assertEquals(1 * MILLIS, bucket.reserve(1, start + 10_000 * MILLIS));
+	}
+
+	@Test
+	@DisplayName("A change of limit applies to the next reservation")
+	void changeLimit ()
+	{
+		final AtomicLong limit = new AtomicLong(1000);
+		final TokenBucket bucket = new TokenBucket(limit::get, null);
+		final long start = filled(bucket);
+		assertEquals(0, bucket.reserve(250, start));
+		limit.set(4000);
+		assertEquals(250 * MILLIS, bucket.reserve(1000, start));
+		limit.set(DownloadConfiguration.UNLIMITED);
+		assertEquals(0, bucket.reserve(1_000_000, start));
+		// Lifting the limit forgives the debt.
+		limit.set(1000);
+		assertEquals(100 * MILLIS, bucket.reserve(100, start));
+	}
+
+	@Test
+	@DisplayName("Bytes are acquired from the parent bucket too")
+	void parent () throws InterruptedIOException
+	{
+		// The parent starts empty, so it makes the unlimited child wait.
+		final long start = System.nanoTime();
+		final TokenBucket parent = new TokenBucket(() -> 1000, null);
+		final TokenBucket child = new TokenBucket(
+			() -> DownloadConfiguration.UNLIMITED, parent);
+		child.acquire(100);
+		assertTrue(System.nanoTime() - start >= 100 * MILLIS);
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * PropertiesManagerTest.java
+ * Copyright © 2018, Richard Arriaga.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of the contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.availlang.raa.utilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@code PropertiesManagerTest} is a set of JUnit tests for the credential
+ * cache kept by the {@link PropertiesManager}.
+ *
+ * <p>
+ * <strong>NOTE:</strong> Running this test will delete the credential cache
+ * if one exists.
+ * </p>
+ *
+ * @author Richard Arriaga &lt;rich@availlang.org&gt;
+ */
+class PropertiesManagerTest
+{
+	/**
+	 * The location of the credential cache.
+	 */
+	private static final Path cache =
+		Paths.get("config", "credentials.properties");
+
+	@AfterEach
+	void cleanup () throws IOException
+	{
+		Files.deleteIfExists(cache);
+	}
+
+	@Test
+	@DisplayName("The credential cache is replaced whole and kept private")
+	void cacheCredentials () throws IOException
+	{
+		PropertiesManager.cacheCredentials(
+			"account", "first-token", "download", "api", 1000L);
+		PropertiesManager.cacheCredentials(
+			"account", "second-token", "download", "api", 2000L);
+		final Properties cached = new Properties();
+		try (final InputStream stream = Files.newInputStream(cache))
+		{
+			cached.load(stream);
+		}
+		assertEquals("second-token", cached.getProperty("authorizationToken"));
+		assertEquals("2000", cached.getProperty("expiresAt"));
+		if (FileSystems.getDefault().supportedFileAttributeViews()
+			.contains("posix"))
+		{
+			assertEquals(
+				EnumSet.of(
+					PosixFilePermission.OWNER_READ,
+					PosixFilePermission.OWNER_WRITE),
+				Files.getPosixFilePermissions(cache));
+		}
+		// No temporary file is left behind.
+		try (final Stream<Path> files = Files.list(cache.getParent()))
+		{
+			assertTrue(files.noneMatch(
+				f -> f.getFileName().toString().endsWith(".tmp")));
+		}
+	}
+}